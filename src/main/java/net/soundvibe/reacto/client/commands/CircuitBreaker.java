@@ -0,0 +1,163 @@
+package net.soundvibe.reacto.client.commands;
+
+import java.util.Objects;
+
+/**
+ * Circuit breaker of a single command handler.
+ * Failure rate is calculated over a count based sliding window of the latest calls.
+ * When it exceeds the threshold, breaker opens and rejects all calls for the configured wait duration.
+ * Then it becomes half-open and lets a limited number of probe calls through:
+ * if all of them succeed breaker closes again, otherwise it opens for another wait duration.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final CircuitBreakerOptions options;
+    private final long waitDurationInNanos;
+    private final boolean[] outcomes;
+
+    private volatile State state = State.CLOSED;
+    private int position;
+    private int recordedCalls;
+    private int failedCalls;
+    private long openedAt;
+    private int probesInFlight;
+    private int probesSucceeded;
+
+    public CircuitBreaker(CircuitBreakerOptions options) {
+        Objects.requireNonNull(options, "options cannot be null");
+        this.options = options;
+        this.waitDurationInNanos = options.getWaitDurationInOpenState().toNanos();
+        this.outcomes = new boolean[options.getSlidingWindowSize()];
+    }
+
+    public State state() {
+        return state;
+    }
+
+    /**
+     * @return failure rate of the calls recorded in the sliding window
+     */
+    public synchronized double failureRate() {
+        return recordedCalls == 0 ? 0.0 : (double) failedCalls / recordedCalls;
+    }
+
+    /**
+     * Checks if call would be permitted without acquiring a permission
+     * @return true if breaker is closed or it could let a probe call through
+     */
+    public synchronized boolean isCallPermitted() {
+        switch (currentState()) {
+            case CLOSED: return true;
+            case HALF_OPEN: return probesInFlight + probesSucceeded < options.getPermittedCallsInHalfOpenState();
+            default: return false;
+        }
+    }
+
+    /**
+     * Acquires a permission to execute a call. Every acquired permission must be followed by
+     * {@link #onSuccess()}, {@link #onError()} or {@link #release()}.
+     * @return true if call is permitted
+     */
+    public synchronized boolean tryAcquirePermission() {
+        switch (currentState()) {
+            case CLOSED: return true;
+            case HALF_OPEN:
+                if (probesInFlight + probesSucceeded < options.getPermittedCallsInHalfOpenState()) {
+                    probesInFlight++;
+                    return true;
+                }
+                return false;
+            default: return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        switch (state) {
+            case CLOSED:
+                record(false);
+                break;
+            case HALF_OPEN:
+                probesInFlight = Math.max(0, probesInFlight - 1);
+                if (++probesSucceeded >= options.getPermittedCallsInHalfOpenState()) {
+                    transitionTo(State.CLOSED);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    public synchronized void onError() {
+        switch (state) {
+            case CLOSED:
+                record(true);
+                if (recordedCalls >= options.getMinimumNumberOfCalls() &&
+                        failureRate() >= options.getFailureRateThreshold()) {
+                    transitionTo(State.OPEN);
+                }
+                break;
+            case HALF_OPEN:
+                transitionTo(State.OPEN);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Releases acquired permission without recording an outcome, e.g. when call was cancelled
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            probesInFlight = Math.max(0, probesInFlight - 1);
+        }
+    }
+
+    private State currentState() {
+        if (state == State.OPEN && options.getTicker().nanoTime() - openedAt >= waitDurationInNanos) {
+            transitionTo(State.HALF_OPEN);
+        }
+        return state;
+    }
+
+    private void record(boolean failed) {
+        if (recordedCalls == outcomes.length) {
+            if (outcomes[position]) failedCalls--;
+        } else {
+            recordedCalls++;
+        }
+        outcomes[position] = failed;
+        if (failed) failedCalls++;
+        position = (position + 1) % outcomes.length;
+    }
+
+    private void transitionTo(State newState) {
+        switch (newState) {
+            case OPEN:
+                openedAt = options.getTicker().nanoTime();
+                break;
+            case HALF_OPEN:
+                probesInFlight = 0;
+                probesSucceeded = 0;
+                break;
+            case CLOSED:
+                position = 0;
+                recordedCalls = 0;
+                failedCalls = 0;
+                break;
+        }
+        state = newState;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker{" +
+                "state=" + state +
+                ", failureRate=" + failureRate() +
+                '}';
+    }
+}
@@ -0,0 +1,121 @@
+package net.soundvibe.reacto.client.commands;
+
+import net.soundvibe.reacto.utils.Ticker;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Configuration of {@link CircuitBreaker}s created for command handlers.
+ */
+public final class CircuitBreakerOptions {
+
+    private int slidingWindowSize = 20;
+    private int minimumNumberOfCalls = 10;
+    private double failureRateThreshold = 0.5;
+    private Duration waitDurationInOpenState = Duration.ofSeconds(5L);
+    private int permittedCallsInHalfOpenState = 3;
+    private Ticker ticker = Ticker.SYSTEM;
+
+    public static CircuitBreakerOptions defaults() {
+        return new CircuitBreakerOptions();
+    }
+
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    /**
+     * Sets how many of the latest calls are used to calculate the failure rate
+     * @param slidingWindowSize number of calls in the sliding window
+     * @return CircuitBreakerOptions
+     */
+    public CircuitBreakerOptions setSlidingWindowSize(int slidingWindowSize) {
+        if (slidingWindowSize < 1) throw new IllegalArgumentException("slidingWindowSize cannot be less than 1 but was " + slidingWindowSize);
+        this.slidingWindowSize = slidingWindowSize;
+        return this;
+    }
+
+    public int getMinimumNumberOfCalls() {
+        return minimumNumberOfCalls;
+    }
+
+    /**
+     * Sets how many calls should be recorded before the failure rate is taken into account
+     * @param minimumNumberOfCalls minimum number of recorded calls
+     * @return CircuitBreakerOptions
+     */
+    public CircuitBreakerOptions setMinimumNumberOfCalls(int minimumNumberOfCalls) {
+        if (minimumNumberOfCalls < 1) throw new IllegalArgumentException("minimumNumberOfCalls cannot be less than 1 but was " + minimumNumberOfCalls);
+        this.minimumNumberOfCalls = minimumNumberOfCalls;
+        return this;
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * Sets failure rate in range (0, 1] at which circuit breaker opens
+     * @param failureRateThreshold failure rate threshold
+     * @return CircuitBreakerOptions
+     */
+    public CircuitBreakerOptions setFailureRateThreshold(double failureRateThreshold) {
+        if (failureRateThreshold <= 0.0 || failureRateThreshold > 1.0)
+            throw new IllegalArgumentException("failureRateThreshold should be in range (0, 1] but was " + failureRateThreshold);
+        this.failureRateThreshold = failureRateThreshold;
+        return this;
+    }
+
+    public Duration getWaitDurationInOpenState() {
+        return waitDurationInOpenState;
+    }
+
+    /**
+     * Sets how long circuit breaker stays open before letting probe requests through
+     * @param waitDurationInOpenState wait duration
+     * @return CircuitBreakerOptions
+     */
+    public CircuitBreakerOptions setWaitDurationInOpenState(Duration waitDurationInOpenState) {
+        Objects.requireNonNull(waitDurationInOpenState, "waitDurationInOpenState cannot be null");
+        this.waitDurationInOpenState = waitDurationInOpenState;
+        return this;
+    }
+
+    public int getPermittedCallsInHalfOpenState() {
+        return permittedCallsInHalfOpenState;
+    }
+
+    /**
+     * Sets how many probe requests should succeed in half-open state before circuit breaker closes again
+     * @param permittedCallsInHalfOpenState number of probe requests
+     * @return CircuitBreakerOptions
+     */
+    public CircuitBreakerOptions setPermittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+        if (permittedCallsInHalfOpenState < 1)
+            throw new IllegalArgumentException("permittedCallsInHalfOpenState cannot be less than 1 but was " + permittedCallsInHalfOpenState);
+        this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+        return this;
+    }
+
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    public CircuitBreakerOptions setTicker(Ticker ticker) {
+        Objects.requireNonNull(ticker, "ticker cannot be null");
+        this.ticker = ticker;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreakerOptions{" +
+                "slidingWindowSize=" + slidingWindowSize +
+                ", minimumNumberOfCalls=" + minimumNumberOfCalls +
+                ", failureRateThreshold=" + failureRateThreshold +
+                ", waitDurationInOpenState=" + waitDurationInOpenState +
+                ", permittedCallsInHalfOpenState=" + permittedCallsInHalfOpenState +
+                '}';
+    }
+}
@@ -0,0 +1,66 @@
+package net.soundvibe.reacto.client.commands;
+
+import com.codahale.metrics.Gauge;
+import net.soundvibe.reacto.client.events.CommandHandler;
+import net.soundvibe.reacto.discovery.types.ServiceRecord;
+import net.soundvibe.reacto.metric.Metrics;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds circuit breaker of every command handler. Breakers outlive command executors,
+ * which are created for every command execution, so that handler failures are tracked across executions.
+ * State and failure rate of every breaker are published as gauges in {@link Metrics#REGISTRY}.
+ */
+public final class CircuitBreakers {
+
+    public static final String NAME_GAUGE_STATE = "Gauge:State";
+    public static final String NAME_GAUGE_FAILURE_RATE = "Gauge:FailureRate";
+
+    public static final CircuitBreakers DEFAULT = new CircuitBreakers(CircuitBreakerOptions.defaults());
+
+    private final CircuitBreakerOptions options;
+    private final Map<CommandHandler, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    public CircuitBreakers(CircuitBreakerOptions options) {
+        Objects.requireNonNull(options, "options cannot be null");
+        this.options = options;
+    }
+
+    public CircuitBreaker of(CommandHandler commandHandler) {
+        final CircuitBreaker circuitBreaker = breakers.get(commandHandler);
+        return circuitBreaker != null ? circuitBreaker : breakers.computeIfAbsent(commandHandler, this::create);
+    }
+
+    public Optional<CircuitBreaker> find(CommandHandler commandHandler) {
+        return Optional.ofNullable(breakers.get(commandHandler));
+    }
+
+    /**
+     * Forgets circuit breaker of the command handler which is not used anymore
+     * @param commandHandler command handler to forget
+     */
+    public void remove(CommandHandler commandHandler) {
+        if (breakers.remove(commandHandler) != null) {
+            Metrics.REGISTRY.remove(getName(commandHandler, NAME_GAUGE_STATE));
+            Metrics.REGISTRY.remove(getName(commandHandler, NAME_GAUGE_FAILURE_RATE));
+        }
+    }
+
+    private CircuitBreaker create(CommandHandler commandHandler) {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(options);
+        Metrics.REGISTRY.gauge(getName(commandHandler, NAME_GAUGE_STATE),
+                () -> (Gauge<String>) () -> circuitBreaker.state().name());
+        Metrics.REGISTRY.gauge(getName(commandHandler, NAME_GAUGE_FAILURE_RATE),
+                () -> (Gauge<Double>) circuitBreaker::failureRate);
+        return circuitBreaker;
+    }
+
+    public static String getName(CommandHandler commandHandler, String name) {
+        final ServiceRecord serviceRecord = commandHandler.serviceRecord();
+        return serviceRecord == null ?
+                "CircuitBreaker:" + System.identityHashCode(commandHandler) + ":" + name :
+                "CircuitBreaker:" + serviceRecord.name + ":" + serviceRecord.registrationId + ":" + name;
+    }
+}
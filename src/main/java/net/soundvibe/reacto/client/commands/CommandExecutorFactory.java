@@ -14,4 +14,12 @@ public interface CommandExecutorFactory {
     CommandExecutor create(List<CommandHandler> commandHandlers,
                            LoadBalancer<CommandHandler> loadBalancer);
 
+    /**
+     * Forgets state, which command executors of this factory keep for given handler, e.g. after its record has disappeared
+     * @param commandHandler command handler to forget
+     */
+    default void remove(CommandHandler commandHandler) {
+        //no state by default
+    }
+
 }
@@ -0,0 +1,72 @@
+package net.soundvibe.reacto.client.commands;
+
+import java.util.Arrays;
+
+/**
+ * Latency statistics of a single command handler: exponentially weighted moving average
+ * and percentiles over a sliding window of the latest samples.
+ */
+public final class LatencyStats {
+
+    private final double alpha;
+    private final long[] samples;
+
+    private int position;
+    private int count;
+    private double ewma;
+
+    public LatencyStats(int windowSize, double alpha) {
+        if (windowSize < 1) throw new IllegalArgumentException("windowSize cannot be less than 1 but was " + windowSize);
+        if (alpha <= 0.0 || alpha > 1.0) throw new IllegalArgumentException("alpha should be in range (0, 1] but was " + alpha);
+        this.alpha = alpha;
+        this.samples = new long[windowSize];
+    }
+
+    public synchronized void record(long latencyInNanos) {
+        ewma = count == 0 ? latencyInNanos : ewma + alpha * (latencyInNanos - ewma);
+        samples[position] = latencyInNanos;
+        position = (position + 1) % samples.length;
+        if (count < samples.length) count++;
+    }
+
+    public synchronized int count() {
+        return count;
+    }
+
+    /**
+     * @return moving average of latency in nanoseconds
+     */
+    public synchronized double ewma() {
+        return ewma;
+    }
+
+    /**
+     * @param quantile quantile in range [0, 1], e.g. 0.99
+     * @return latency in nanoseconds at given quantile of the sliding window
+     */
+    public long percentile(double quantile) {
+        final long[] copy;
+        synchronized (this) {
+            if (count == 0) return 0L;
+            copy = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(copy);
+        final int index = (int) Math.ceil(quantile * copy.length) - 1;
+        return copy[Math.max(0, Math.min(copy.length - 1, index))];
+    }
+
+    public synchronized void reset() {
+        position = 0;
+        count = 0;
+        ewma = 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyStats{" +
+                "ewma=" + ewma() +
+                ", p99=" + percentile(0.99) +
+                ", count=" + count() +
+                '}';
+    }
+}
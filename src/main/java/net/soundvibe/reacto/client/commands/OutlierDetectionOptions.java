@@ -0,0 +1,196 @@
+package net.soundvibe.reacto.client.commands;
+
+import net.soundvibe.reacto.utils.Ticker;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Configuration of latency based {@link OutlierDetector}.
+ */
+public final class OutlierDetectionOptions {
+
+    private int windowSize = 100;
+    private double ewmaAlpha = 0.2;
+    private int minimumSamples = 20;
+    private int minimumHosts = 3;
+    private double outlierFactor = 3.0;
+    private Duration minimumOutlierLatency = Duration.ofMillis(5L);
+    private int maxEjectionPercent = 20;
+    private Duration interval = Duration.ofSeconds(1L);
+    private Duration baseEjectionTime = Duration.ofSeconds(30L);
+    private Duration maxEjectionTime = Duration.ofMinutes(5L);
+    private Ticker ticker = Ticker.SYSTEM;
+
+    public static OutlierDetectionOptions defaults() {
+        return new OutlierDetectionOptions();
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Sets how many latest latency samples of every handler are used to calculate percentiles
+     * @param windowSize number of samples
+     * @return OutlierDetectionOptions
+     */
+    public OutlierDetectionOptions setWindowSize(int windowSize) {
+        if (windowSize < 1) throw new IllegalArgumentException("windowSize cannot be less than 1 but was " + windowSize);
+        this.windowSize = windowSize;
+        return this;
+    }
+
+    public double getEwmaAlpha() {
+        return ewmaAlpha;
+    }
+
+    public OutlierDetectionOptions setEwmaAlpha(double ewmaAlpha) {
+        if (ewmaAlpha <= 0.0 || ewmaAlpha > 1.0) throw new IllegalArgumentException("ewmaAlpha should be in range (0, 1] but was " + ewmaAlpha);
+        this.ewmaAlpha = ewmaAlpha;
+        return this;
+    }
+
+    public int getMinimumSamples() {
+        return minimumSamples;
+    }
+
+    /**
+     * Sets how many samples handler should have before it is compared with its peers
+     * @param minimumSamples minimum number of samples
+     * @return OutlierDetectionOptions
+     */
+    public OutlierDetectionOptions setMinimumSamples(int minimumSamples) {
+        if (minimumSamples < 1) throw new IllegalArgumentException("minimumSamples cannot be less than 1 but was " + minimumSamples);
+        this.minimumSamples = minimumSamples;
+        return this;
+    }
+
+    public int getMinimumHosts() {
+        return minimumHosts;
+    }
+
+    /**
+     * Sets how many handlers with enough samples are needed to detect outliers
+     * @param minimumHosts minimum number of handlers
+     * @return OutlierDetectionOptions
+     */
+    public OutlierDetectionOptions setMinimumHosts(int minimumHosts) {
+        if (minimumHosts < 2) throw new IllegalArgumentException("minimumHosts cannot be less than 2 but was " + minimumHosts);
+        this.minimumHosts = minimumHosts;
+        return this;
+    }
+
+    public double getOutlierFactor() {
+        return outlierFactor;
+    }
+
+    /**
+     * Sets how many times handler's latency should exceed median latency of its peers to be considered as an outlier
+     * @param outlierFactor outlier factor
+     * @return OutlierDetectionOptions
+     */
+    public OutlierDetectionOptions setOutlierFactor(double outlierFactor) {
+        if (outlierFactor <= 1.0) throw new IllegalArgumentException("outlierFactor should be greater than 1 but was " + outlierFactor);
+        this.outlierFactor = outlierFactor;
+        return this;
+    }
+
+    public Duration getMinimumOutlierLatency() {
+        return minimumOutlierLatency;
+    }
+
+    /**
+     * Sets latency below which handler is never considered as an outlier, no matter how fast its peers are
+     * @param minimumOutlierLatency minimum latency of an outlier
+     * @return OutlierDetectionOptions
+     */
+    public OutlierDetectionOptions setMinimumOutlierLatency(Duration minimumOutlierLatency) {
+        Objects.requireNonNull(minimumOutlierLatency, "minimumOutlierLatency cannot be null");
+        this.minimumOutlierLatency = minimumOutlierLatency;
+        return this;
+    }
+
+    public int getMaxEjectionPercent() {
+        return maxEjectionPercent;
+    }
+
+    /**
+     * Sets maximum percent of handlers which can be ejected at the same time.
+     * At least one handler can always be ejected if there are enough handlers to compare.
+     * @param maxEjectionPercent max ejection percent in range [0, 100]
+     * @return OutlierDetectionOptions
+     */
+    public OutlierDetectionOptions setMaxEjectionPercent(int maxEjectionPercent) {
+        if (maxEjectionPercent < 0 || maxEjectionPercent > 100)
+            throw new IllegalArgumentException("maxEjectionPercent should be in range [0, 100] but was " + maxEjectionPercent);
+        this.maxEjectionPercent = maxEjectionPercent;
+        return this;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+
+    /**
+     * Sets how often handlers should be compared with each other
+     * @param interval evaluation interval
+     * @return OutlierDetectionOptions
+     */
+    public OutlierDetectionOptions setInterval(Duration interval) {
+        Objects.requireNonNull(interval, "interval cannot be null");
+        this.interval = interval;
+        return this;
+    }
+
+    public Duration getBaseEjectionTime() {
+        return baseEjectionTime;
+    }
+
+    /**
+     * Sets ejection time of the first ejection. Every consecutive ejection of the same handler doubles it.
+     * @param baseEjectionTime base ejection time
+     * @return OutlierDetectionOptions
+     */
+    public OutlierDetectionOptions setBaseEjectionTime(Duration baseEjectionTime) {
+        Objects.requireNonNull(baseEjectionTime, "baseEjectionTime cannot be null");
+        this.baseEjectionTime = baseEjectionTime;
+        return this;
+    }
+
+    public Duration getMaxEjectionTime() {
+        return maxEjectionTime;
+    }
+
+    public OutlierDetectionOptions setMaxEjectionTime(Duration maxEjectionTime) {
+        Objects.requireNonNull(maxEjectionTime, "maxEjectionTime cannot be null");
+        this.maxEjectionTime = maxEjectionTime;
+        return this;
+    }
+
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    public OutlierDetectionOptions setTicker(Ticker ticker) {
+        Objects.requireNonNull(ticker, "ticker cannot be null");
+        this.ticker = ticker;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "OutlierDetectionOptions{" +
+                "windowSize=" + windowSize +
+                ", ewmaAlpha=" + ewmaAlpha +
+                ", minimumSamples=" + minimumSamples +
+                ", minimumHosts=" + minimumHosts +
+                ", outlierFactor=" + outlierFactor +
+                ", minimumOutlierLatency=" + minimumOutlierLatency +
+                ", maxEjectionPercent=" + maxEjectionPercent +
+                ", interval=" + interval +
+                ", baseEjectionTime=" + baseEjectionTime +
+                ", maxEjectionTime=" + maxEjectionTime +
+                '}';
+    }
+}
@@ -0,0 +1,164 @@
+package net.soundvibe.reacto.client.commands;
+
+import net.soundvibe.reacto.client.events.CommandHandler;
+import net.soundvibe.reacto.internal.RecordListStates;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Tracks latency of every command handler and temporarily ejects handlers which are
+ * statistical outliers compared with their peers, i.e. whose moving average or p99 latency exceeds
+ * the median of their peers by a configured factor.
+ * Number of handlers ejected at the same time is capped and every consecutive ejection of the same handler
+ * doubles its ejection time. Statistics of ejected handler are cleared, so that it is readmitted with a clean slate.
+ * Every list of handlers, e.g. of a command or of a subset of a service, is evaluated on its own schedule,
+ * so that a detector shared by many services evaluates each of them once per interval.
+ */
+public final class OutlierDetector {
+
+    public static final OutlierDetector DEFAULT = new OutlierDetector(OutlierDetectionOptions.defaults());
+
+    private static final double P99 = 0.99;
+
+    private final OutlierDetectionOptions options;
+    private final Map<CommandHandler, HandlerState> states = new ConcurrentHashMap<>();
+    private final RecordListStates<AtomicLong> nextEvaluationsAt;
+
+    public OutlierDetector(OutlierDetectionOptions options) {
+        Objects.requireNonNull(options, "options cannot be null");
+        this.options = options;
+        this.nextEvaluationsAt = new RecordListStates<>(() -> new AtomicLong(options.getTicker().nanoTime()));
+    }
+
+    public void record(CommandHandler commandHandler, long latencyInNanos) {
+        stateOf(commandHandler).latency.record(latencyInNanos);
+    }
+
+    public Optional<LatencyStats> latencyOf(CommandHandler commandHandler) {
+        return Optional.ofNullable(states.get(commandHandler)).map(state -> state.latency);
+    }
+
+    public boolean isEjected(CommandHandler commandHandler) {
+        final HandlerState state = states.get(commandHandler);
+        return state != null && state.isEjected(options.getTicker().nanoTime());
+    }
+
+    /**
+     * Filters out currently ejected handlers. Evaluates given handlers for outliers if evaluation interval has passed.
+     * @param commandHandlers handlers to filter
+     * @return handlers which are not ejected or all given handlers if every one of them is ejected
+     */
+    public List<CommandHandler> filter(List<CommandHandler> commandHandlers) {
+        if (commandHandlers.isEmpty()) return commandHandlers;
+        final AtomicLong nextEvaluationAt = nextEvaluationsAt.of(commandHandlers);
+        final long now = options.getTicker().nanoTime();
+        final long evaluateAt = nextEvaluationAt.get();
+        if (now - evaluateAt >= 0L && nextEvaluationAt.compareAndSet(evaluateAt, now + options.getInterval().toNanos())) {
+            evaluate(commandHandlers, now);
+        }
+
+        List<CommandHandler> result = null;
+        for (int i = 0; i < commandHandlers.size(); i++) {
+            final CommandHandler commandHandler = commandHandlers.get(i);
+            final HandlerState state = states.get(commandHandler);
+            if (state != null && state.isEjected(now)) {
+                if (result == null) {
+                    result = new ArrayList<>(commandHandlers.subList(0, i));
+                }
+            } else if (result != null) {
+                result.add(commandHandler);
+            }
+        }
+        return result == null || result.isEmpty() ? commandHandlers : result;
+    }
+
+    public void remove(CommandHandler commandHandler) {
+        states.remove(commandHandler);
+    }
+
+    synchronized void evaluate(List<CommandHandler> commandHandlers, long now) {
+        final List<HandlerState> candidates = new ArrayList<>(commandHandlers.size());
+        int ejectedHandlers = 0;
+        for (CommandHandler commandHandler : commandHandlers) {
+            final HandlerState state = states.get(commandHandler);
+            if (state == null) continue;
+            if (state.isEjected(now)) {
+                ejectedHandlers++;
+            } else if (state.latency.count() >= options.getMinimumSamples()) {
+                candidates.add(state);
+            }
+        }
+        if (candidates.size() < options.getMinimumHosts()) return;
+
+        final int maxEjectedHandlers = options.getMaxEjectionPercent() == 0 ? 0 :
+                Math.max(1, commandHandlers.size() * options.getMaxEjectionPercent() / 100);
+        final double medianEwma = median(candidates, state -> state.latency.ewma());
+        final double medianP99 = median(candidates, state -> state.latency.percentile(P99));
+        final long minimumOutlierLatency = options.getMinimumOutlierLatency().toNanos();
+
+        candidates.sort(Comparator.comparingDouble((HandlerState state) -> state.latency.ewma()).reversed());
+        for (HandlerState state : candidates) {
+            final double ewma = state.latency.ewma();
+            final long p99 = state.latency.percentile(P99);
+            final boolean isOutlier = (ewma > medianEwma * options.getOutlierFactor() && ewma >= minimumOutlierLatency) ||
+                    (p99 > medianP99 * options.getOutlierFactor() && p99 >= minimumOutlierLatency);
+            if (isOutlier && ejectedHandlers < maxEjectedHandlers) {
+                state.eject(now, ejectionTimeInNanos(++state.ejections));
+                ejectedHandlers++;
+            } else if (!isOutlier && state.ejections > 0) {
+                state.ejections--;
+            }
+        }
+    }
+
+    private long ejectionTimeInNanos(int ejections) {
+        final long base = options.getBaseEjectionTime().toNanos();
+        final long max = options.getMaxEjectionTime().toNanos();
+        final int shift = Math.min(ejections - 1, 30);
+        return base > (max >> shift) ? max : Math.min(max, base << shift);
+    }
+
+    private static double median(List<HandlerState> states, ToDoubleFunction<HandlerState> valueOf) {
+        final double[] values = new double[states.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = valueOf.applyAsDouble(states.get(i));
+        }
+        Arrays.sort(values);
+        final int middle = values.length / 2;
+        return values.length % 2 == 0 ? (values[middle - 1] + values[middle]) / 2.0 : values[middle];
+    }
+
+    private HandlerState stateOf(CommandHandler commandHandler) {
+        final HandlerState state = states.get(commandHandler);
+        return state != null ? state : states.computeIfAbsent(commandHandler,
+                handler -> new HandlerState(new LatencyStats(options.getWindowSize(), options.getEwmaAlpha())));
+    }
+
+    private static final class HandlerState {
+
+        private final LatencyStats latency;
+        private volatile boolean ejected;
+        private volatile long ejectedUntil;
+        private int ejections;
+
+        private HandlerState(LatencyStats latency) {
+            this.latency = latency;
+        }
+
+        private boolean isEjected(long now) {
+            if (!ejected) return false;
+            if (now - ejectedUntil < 0L) return true;
+            ejected = false;
+            return false;
+        }
+
+        private void eject(long now, long ejectionTimeInNanos) {
+            latency.reset();
+            ejectedUntil = now + ejectionTimeInNanos;
+            ejected = true;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package net.soundvibe.reacto.client.commands;
+
+import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+import net.soundvibe.reacto.client.events.CommandHandler;
+import net.soundvibe.reacto.discovery.types.Status;
+import org.slf4j.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tracks health of every command handler from the outcomes of its calls and takes the handler out of service
+ * as soon as it fails a number of calls in a row, fails to connect or exceeds latency SLO a number of calls in a row,
+ * instead of waiting for the service registry to notice. Handler, which is out of service, is probed with
+ * {@link CommandHandler#probe()} every probe interval and is put back into service when a probe succeeds.
+ * Handlers, which cannot be probed, are admitted to serve a single trial command instead and are put back
+ * into service only when that command succeeds.
+ */
+public final class PassiveHealthChecker {
+
+    private static final Logger log = LoggerFactory.getLogger(PassiveHealthChecker.class);
+
+    public static final PassiveHealthChecker DEFAULT = new PassiveHealthChecker(PassiveHealthOptions.defaults());
+
+    private final PassiveHealthOptions options;
+    private final long latencySloInNanos;
+    private final Map<CommandHandler, Health> states = new ConcurrentHashMap<>();
+
+    public PassiveHealthChecker(PassiveHealthOptions options) {
+        Objects.requireNonNull(options, "options cannot be null");
+        this.options = options;
+        this.latencySloInNanos = options.getLatencySlo().toNanos();
+    }
+
+    /**
+     * Called when a command is sent to the handler, so that the command becomes a trial if the handler admits one
+     */
+    public void onRequestStart(CommandHandler commandHandler) {
+        final Health health = states.get(commandHandler);
+        if (health != null) health.startTrial();
+    }
+
+    /**
+     * Called when a command sent to the handler is cancelled, so that the next command becomes a trial instead of it
+     */
+    public void onCancel(CommandHandler commandHandler) {
+        final Health health = states.get(commandHandler);
+        if (health != null) health.cancelTrial();
+    }
+
+    public void onSuccess(CommandHandler commandHandler, long latencyInNanos) {
+        final boolean isSlow = latencySloInNanos > 0L && latencyInNanos > latencySloInNanos;
+        final Health health = isSlow ? stateOf(commandHandler) : states.get(commandHandler);
+        if (health == null) return;
+        if (health.completeTrial(true)) {
+            log.info("Putting {} back into service, because trial command has succeeded", commandHandler.serviceRecord());
+        } else if (health.onSuccess(isSlow)) {
+            takeOutOfService(commandHandler, health, "exceeded latency SLO of " + options.getLatencySlo() + " " +
+                    options.getConsecutiveSlowCalls() + " times in a row");
+        }
+    }
+
+    public void onError(CommandHandler commandHandler, Throwable error) {
+        final Health health = stateOf(commandHandler);
+        if (health.completeTrial(false)) {
+            log.debug("Trial command of {} has failed, keeping it out of service", commandHandler.serviceRecord(), error);
+            scheduleProbe(commandHandler, health);
+        } else if (health.onError(options.getConnectionErrors().test(error))) {
+            takeOutOfService(commandHandler, health, "failed with " + error);
+        }
+    }
+
+    /**
+     * @return {@link Status#OUT_OF_SERVICE} if the handler is taken out of service, {@link Status#UP} otherwise
+     */
+    public Status statusOf(CommandHandler commandHandler) {
+        return isInService(commandHandler) ? Status.UP : Status.OUT_OF_SERVICE;
+    }
+
+    public boolean isInService(CommandHandler commandHandler) {
+        final Health health = states.get(commandHandler);
+        return health == null || !health.isOutOfService;
+    }
+
+    /**
+     * Filters out handlers, which are out of service and do not admit a trial command
+     * @param commandHandlers handlers to filter
+     * @return the same list instance if every handler is in service,
+     * handlers in service or all given handlers if every one of them is out of service
+     */
+    public List<CommandHandler> filter(List<CommandHandler> commandHandlers) {
+        if (states.isEmpty()) return commandHandlers;
+        List<CommandHandler> result = null;
+        for (int i = 0; i < commandHandlers.size(); i++) {
+            final CommandHandler commandHandler = commandHandlers.get(i);
+            final Health health = states.get(commandHandler);
+            final boolean isInService = health == null || !health.isOutOfService || health.trial == Trial.ADMITTED;
+            if (!isInService && result == null) {
+                result = new ArrayList<>(commandHandlers.subList(0, i));
+            } else if (isInService && result != null) {
+                result.add(commandHandler);
+            }
+        }
+        return result == null || result.isEmpty() ? commandHandlers : result;
+    }
+
+    /**
+     * Forgets health of the command handler which is not used anymore and stops probing it
+     * @param commandHandler command handler to forget
+     */
+    public void remove(CommandHandler commandHandler) {
+        final Health health = states.remove(commandHandler);
+        if (health != null) health.stopProbing();
+    }
+
+    private Health stateOf(CommandHandler commandHandler) {
+        final Health health = states.get(commandHandler);
+        return health != null ? health : states.computeIfAbsent(commandHandler, handler -> new Health());
+    }
+
+    private void takeOutOfService(CommandHandler commandHandler, Health health, String reason) {
+        log.warn("Taking {} out of service, because it {}", commandHandler.serviceRecord(), reason);
+        scheduleProbe(commandHandler, health);
+    }
+
+    private void scheduleProbe(CommandHandler commandHandler, Health health) {
+        health.probe = Flowable.timer(options.getProbeInterval().toNanos(), TimeUnit.NANOSECONDS, options.getScheduler())
+                .concatMap(tick -> Flowable.defer(commandHandler::probe)
+                        .timeout(options.getProbeTimeout().toNanos(), TimeUnit.NANOSECONDS, options.getScheduler()))
+                .firstElement()
+                .subscribe(value -> {
+                    if (states.get(commandHandler) != health) return;
+                    health.putBackIntoService();
+                    log.info("Putting {} back into service, because probe has succeeded", commandHandler.serviceRecord());
+                }, error -> {
+                    if (states.get(commandHandler) != health) return;
+                    log.debug("Probe of {} has failed, keeping it out of service", commandHandler.serviceRecord(), error);
+                    scheduleProbe(commandHandler, health);
+                }, () -> {
+                    if (states.get(commandHandler) != health) return;
+                    health.admitTrial();
+                    log.debug("Admitting trial command to {}, because it cannot be probed", commandHandler.serviceRecord());
+                });
+    }
+
+    private enum Trial {
+        NONE, ADMITTED, STARTED
+    }
+
+    private final class Health {
+
+        private volatile boolean isOutOfService;
+        private volatile Trial trial = Trial.NONE;
+        private volatile Disposable probe;
+        private int failures;
+        private int connectionErrors;
+        private int slowCalls;
+
+        /**
+         * @return true if the handler has been taken out of service by this call
+         */
+        private synchronized boolean onSuccess(boolean isSlow) {
+            failures = 0;
+            connectionErrors = 0;
+            slowCalls = isSlow ? slowCalls + 1 : 0;
+            return takeOutOfServiceIf(slowCalls >= options.getConsecutiveSlowCalls());
+        }
+
+        /**
+         * @return true if the handler has been taken out of service by this call
+         */
+        private synchronized boolean onError(boolean isConnectionError) {
+            failures++;
+            connectionErrors = isConnectionError ? connectionErrors + 1 : 0;
+            slowCalls = 0;
+            return takeOutOfServiceIf(failures >= options.getConsecutiveFailures() ||
+                    (isConnectionError && connectionErrors >= options.getConsecutiveConnectionErrors()));
+        }
+
+        private boolean takeOutOfServiceIf(boolean isUnhealthy) {
+            if (!isUnhealthy || isOutOfService) return false;
+            isOutOfService = true;
+            return true;
+        }
+
+        private synchronized void putBackIntoService() {
+            failures = 0;
+            connectionErrors = 0;
+            slowCalls = 0;
+            trial = Trial.NONE;
+            isOutOfService = false;
+        }
+
+        private synchronized void admitTrial() {
+            if (isOutOfService) trial = Trial.ADMITTED;
+        }
+
+        private void startTrial() {
+            if (trial != Trial.ADMITTED) return;
+            synchronized (this) {
+                if (trial == Trial.ADMITTED) trial = Trial.STARTED;
+            }
+        }
+
+        private void cancelTrial() {
+            if (trial != Trial.STARTED) return;
+            synchronized (this) {
+                if (trial == Trial.STARTED) trial = Trial.ADMITTED;
+            }
+        }
+
+        /**
+         * @return true if the outcome was of a trial command, which puts the handler back into service if it has succeeded
+         */
+        private boolean completeTrial(boolean isSuccessful) {
+            if (trial != Trial.STARTED) return false;
+            synchronized (this) {
+                if (trial != Trial.STARTED) return false;
+                if (isSuccessful) {
+                    putBackIntoService();
+                } else {
+                    trial = Trial.NONE;
+                }
+                return true;
+            }
+        }
+
+        private void stopProbing() {
+            final Disposable disposable = probe;
+            if (disposable != null) disposable.dispose();
+        }
+    }
+}
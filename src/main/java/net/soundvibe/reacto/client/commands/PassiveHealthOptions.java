@@ -0,0 +1,173 @@
+package net.soundvibe.reacto.client.commands;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import net.soundvibe.reacto.errors.ConnectionClosedUnexpectedly;
+
+import java.io.InterruptedIOException;
+import java.net.*;
+import java.nio.channels.ClosedChannelException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Configuration of {@link PassiveHealthChecker}.
+ */
+public final class PassiveHealthOptions {
+
+    public static final Predicate<Throwable> CONNECTION_ERRORS = error -> error instanceof SocketException ||
+            error instanceof UnknownHostException ||
+            error instanceof ClosedChannelException ||
+            error instanceof ConnectionClosedUnexpectedly ||
+            (error instanceof InterruptedIOException && !(error instanceof SocketTimeoutException));
+
+    private int consecutiveFailures = 5;
+    private int consecutiveConnectionErrors = 1;
+    private Predicate<Throwable> connectionErrors = CONNECTION_ERRORS;
+    private Duration latencySlo = Duration.ZERO;
+    private int consecutiveSlowCalls = 5;
+    private Duration probeInterval = Duration.ofSeconds(1L);
+    private Duration probeTimeout = Duration.ofSeconds(1L);
+    private Scheduler scheduler = Schedulers.computation();
+
+    public static PassiveHealthOptions defaults() {
+        return new PassiveHealthOptions();
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Sets how many calls in a row should fail for the handler to be taken out of service
+     * @param consecutiveFailures number of consecutive failures
+     * @return PassiveHealthOptions
+     */
+    public PassiveHealthOptions setConsecutiveFailures(int consecutiveFailures) {
+        if (consecutiveFailures < 1) throw new IllegalArgumentException("consecutiveFailures cannot be less than 1 but was " + consecutiveFailures);
+        this.consecutiveFailures = consecutiveFailures;
+        return this;
+    }
+
+    public int getConsecutiveConnectionErrors() {
+        return consecutiveConnectionErrors;
+    }
+
+    /**
+     * Sets how many calls in a row should fail with connection errors for the handler to be taken out of service.
+     * Connection errors mean that the service is not reachable at all, so they take it out sooner than other failures.
+     * @param consecutiveConnectionErrors number of consecutive connection errors
+     * @return PassiveHealthOptions
+     */
+    public PassiveHealthOptions setConsecutiveConnectionErrors(int consecutiveConnectionErrors) {
+        if (consecutiveConnectionErrors < 1)
+            throw new IllegalArgumentException("consecutiveConnectionErrors cannot be less than 1 but was " + consecutiveConnectionErrors);
+        this.consecutiveConnectionErrors = consecutiveConnectionErrors;
+        return this;
+    }
+
+    public Predicate<Throwable> getConnectionErrors() {
+        return connectionErrors;
+    }
+
+    /**
+     * @param connectionErrors tells if the error means that the service could not be reached, {@link #CONNECTION_ERRORS} by default
+     * @return PassiveHealthOptions
+     */
+    public PassiveHealthOptions setConnectionErrors(Predicate<Throwable> connectionErrors) {
+        Objects.requireNonNull(connectionErrors, "connectionErrors cannot be null");
+        this.connectionErrors = connectionErrors;
+        return this;
+    }
+
+    public Duration getLatencySlo() {
+        return latencySlo;
+    }
+
+    /**
+     * Sets latency above which successful call is considered slow. Zero disables latency checks, which is the default.
+     * @param latencySlo latency service level objective
+     * @return PassiveHealthOptions
+     */
+    public PassiveHealthOptions setLatencySlo(Duration latencySlo) {
+        Objects.requireNonNull(latencySlo, "latencySlo cannot be null");
+        if (latencySlo.isNegative()) throw new IllegalArgumentException("latencySlo cannot be negative but was " + latencySlo);
+        this.latencySlo = latencySlo;
+        return this;
+    }
+
+    public int getConsecutiveSlowCalls() {
+        return consecutiveSlowCalls;
+    }
+
+    /**
+     * Sets how many calls in a row should exceed latency SLO for the handler to be taken out of service
+     * @param consecutiveSlowCalls number of consecutive slow calls
+     * @return PassiveHealthOptions
+     */
+    public PassiveHealthOptions setConsecutiveSlowCalls(int consecutiveSlowCalls) {
+        if (consecutiveSlowCalls < 1) throw new IllegalArgumentException("consecutiveSlowCalls cannot be less than 1 but was " + consecutiveSlowCalls);
+        this.consecutiveSlowCalls = consecutiveSlowCalls;
+        return this;
+    }
+
+    public Duration getProbeInterval() {
+        return probeInterval;
+    }
+
+    /**
+     * Sets how often handler, which is out of service, should be probed
+     * @param probeInterval probe interval
+     * @return PassiveHealthOptions
+     */
+    public PassiveHealthOptions setProbeInterval(Duration probeInterval) {
+        Objects.requireNonNull(probeInterval, "probeInterval cannot be null");
+        if (probeInterval.isNegative()) throw new IllegalArgumentException("probeInterval cannot be negative but was " + probeInterval);
+        this.probeInterval = probeInterval;
+        return this;
+    }
+
+    public Duration getProbeTimeout() {
+        return probeTimeout;
+    }
+
+    /**
+     * Sets how long to wait for the probe to complete before it is considered failed
+     * @param probeTimeout probe timeout
+     * @return PassiveHealthOptions
+     */
+    public PassiveHealthOptions setProbeTimeout(Duration probeTimeout) {
+        Objects.requireNonNull(probeTimeout, "probeTimeout cannot be null");
+        if (probeTimeout.isNegative() || probeTimeout.isZero())
+            throw new IllegalArgumentException("probeTimeout should be positive but was " + probeTimeout);
+        this.probeTimeout = probeTimeout;
+        return this;
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @param scheduler scheduler of probes, {@link Schedulers#computation()} by default
+     * @return PassiveHealthOptions
+     */
+    public PassiveHealthOptions setScheduler(Scheduler scheduler) {
+        Objects.requireNonNull(scheduler, "scheduler cannot be null");
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "PassiveHealthOptions{" +
+                "consecutiveFailures=" + consecutiveFailures +
+                ", consecutiveConnectionErrors=" + consecutiveConnectionErrors +
+                ", latencySlo=" + latencySlo +
+                ", consecutiveSlowCalls=" + consecutiveSlowCalls +
+                ", probeInterval=" + probeInterval +
+                ", probeTimeout=" + probeTimeout +
+                '}';
+    }
+}
@@ -6,9 +6,12 @@ import net.soundvibe.reacto.client.events.CommandHandler;
 import net.soundvibe.reacto.discovery.LoadBalancer;
 import net.soundvibe.reacto.errors.CannotFindEventHandlers;
 import net.soundvibe.reacto.types.*;
+import net.soundvibe.reacto.utils.Ticker;
 import org.reactivestreams.Publisher;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author OZY on 2016.09.06.
@@ -17,35 +20,185 @@ public final class ReactoCommandExecutor implements CommandExecutor {
 
     private final List<CommandHandler> commandHandlers;
     private final LoadBalancer<CommandHandler> loadBalancer;
+    private final CircuitBreakers circuitBreakers;
+    private final OutlierDetector outlierDetector;
+    private final PassiveHealthChecker passiveHealthChecker;
+    private final RetryPolicy retryPolicy;
+    private final Ticker ticker;
 
-    public static final CommandExecutorFactory FACTORY = ReactoCommandExecutor::new;
+    public static final CommandExecutorFactory FACTORY = Builder.create().build();
 
     public ReactoCommandExecutor(List<CommandHandler> commandHandlers,
                                  LoadBalancer<CommandHandler> loadBalancer) {
+        this(commandHandlers, loadBalancer, Builder.create());
+    }
+
+    private ReactoCommandExecutor(List<CommandHandler> commandHandlers,
+                                  LoadBalancer<CommandHandler> loadBalancer,
+                                  Builder builder) {
         Objects.requireNonNull(commandHandlers, "commandHandlers cannot be null");
         Objects.requireNonNull(loadBalancer, "loadBalancer cannot be null");
         this.commandHandlers = commandHandlers;
         this.loadBalancer = loadBalancer;
+        this.circuitBreakers = builder.circuitBreakers;
+        this.outlierDetector = builder.outlierDetector;
+        this.passiveHealthChecker = builder.passiveHealthChecker;
+        this.retryPolicy = builder.retryPolicy;
+        this.ticker = builder.ticker;
     }
 
     @Override
     public Flowable<Event> execute(Command command) {
         if (commandHandlers.isEmpty()) return Flowable.error(new CannotFindEventHandlers("No command handlers found for command: " + command));
-        return Flowable.just(commandHandlers)
-                .map(loadBalancer::balance)
-                .concatMap(eventHandler -> eventHandler.observe(command)
-                        .onErrorResumeNext((Function<? super Throwable, ? extends Publisher<? extends Event>>) error -> handleError(error, command, eventHandler)))
-                ;
+        return execute(command, 0, Collections.emptySet());
     }
 
-    private Flowable<Event> handleError(Throwable error, Command command, CommandHandler commandHandler) {
-        return Flowable.just(commandHandler)
-                .doOnNext(this::removeHandler)
-                .flatMap(any -> commandHandlers.isEmpty() ?  Flowable.error(error) : Flowable.just(command))
-                .flatMap(this::execute);
+    private Flowable<Event> execute(Command command, int retry, Set<CommandHandler> failedHandlers) {
+        return Flowable.defer(() -> {
+            final List<CommandHandler> availableHandlers = findAvailableHandlers(failedHandlers);
+            if (availableHandlers.isEmpty()) {
+                return Flowable.error(new CannotFindEventHandlers("All command handlers are unavailable for command: " + command));
+            }
+            final CommandHandler commandHandler = loadBalancer.balance(availableHandlers, command);
+            final CircuitBreaker circuitBreaker = circuitBreakers.of(commandHandler);
+            if (!circuitBreaker.tryAcquirePermission()) {
+                return handleError(new CannotFindEventHandlers("Circuit breaker is open for " + commandHandler.serviceRecord()),
+                        command, commandHandler, retry, failedHandlers);
+            }
+            final AtomicBoolean hasEmitted = new AtomicBoolean(false);
+            final long startedAt = ticker.nanoTime();
+            loadBalancer.onRequestStart(commandHandler);
+            passiveHealthChecker.onRequestStart(commandHandler);
+            return commandHandler.observe(command)
+                    .doOnNext(event -> hasEmitted.lazySet(true))
+                    .doOnComplete(() -> {
+                        final long latency = ticker.nanoTime() - startedAt;
+                        circuitBreaker.onSuccess();
+                        outlierDetector.record(commandHandler, latency);
+                        passiveHealthChecker.onSuccess(commandHandler, latency);
+                        loadBalancer.onRequestFinish(commandHandler, latency, true);
+                    })
+                    .doOnError(error -> {
+                        circuitBreaker.onError();
+                        passiveHealthChecker.onError(commandHandler, error);
+                        loadBalancer.onRequestFinish(commandHandler, ticker.nanoTime() - startedAt, false);
+                    })
+                    .doOnCancel(() -> {
+                        circuitBreaker.release();
+                        passiveHealthChecker.onCancel(commandHandler);
+                        loadBalancer.onRequestFinish(commandHandler, ticker.nanoTime() - startedAt, true);
+                    })
+                    .onErrorResumeNext((Function<? super Throwable, ? extends Publisher<? extends Event>>) error -> hasEmitted.get() ?
+                            Flowable.error(error) :
+                            handleError(error, command, commandHandler, retry, failedHandlers));
+        });
     }
 
-    private synchronized void removeHandler(CommandHandler commandHandler) {
-        commandHandlers.remove(commandHandler);
+    private List<CommandHandler> findAvailableHandlers(Set<CommandHandler> failedHandlers) {
+        final List<CommandHandler> healthyHandlers = outlierDetector.filter(passiveHealthChecker.filter(permittedHandlers()));
+        if (failedHandlers.isEmpty() || healthyHandlers.size() <= 1) return healthyHandlers;
+        final List<CommandHandler> untriedHandlers = new ArrayList<>(healthyHandlers);
+        untriedHandlers.removeAll(failedHandlers);
+        return untriedHandlers.isEmpty() ? healthyHandlers : untriedHandlers;
+    }
+
+    /**
+     * @return the same handler list instance if every circuit breaker permits calls,
+     * so that load balancers can keep their state per list
+     */
+    private List<CommandHandler> permittedHandlers() {
+        List<CommandHandler> permittedHandlers = null;
+        for (int i = 0; i < commandHandlers.size(); i++) {
+            final CommandHandler commandHandler = commandHandlers.get(i);
+            final boolean isPermitted = circuitBreakers.of(commandHandler).isCallPermitted();
+            if (!isPermitted && permittedHandlers == null) {
+                permittedHandlers = new ArrayList<>(commandHandlers.subList(0, i));
+            } else if (isPermitted && permittedHandlers != null) {
+                permittedHandlers.add(commandHandler);
+            }
+        }
+        return permittedHandlers == null ? commandHandlers : permittedHandlers;
+    }
+
+    private Flowable<Event> handleError(Throwable error, Command command, CommandHandler commandHandler,
+                                        int retry, Set<CommandHandler> failedHandlers) {
+        if (!retryPolicy.shouldRetry(retry)) return Flowable.error(error);
+        final Set<CommandHandler> newFailedHandlers = new HashSet<>(failedHandlers);
+        newFailedHandlers.add(commandHandler);
+        return Flowable.timer(retryPolicy.backoffInNanos(retry), TimeUnit.NANOSECONDS, retryPolicy.scheduler)
+                .concatMap(tick -> execute(command, retry + 1, newFailedHandlers));
+    }
+
+    public static final class Builder {
+
+        private CircuitBreakers circuitBreakers = CircuitBreakers.DEFAULT;
+        private OutlierDetector outlierDetector = OutlierDetector.DEFAULT;
+        private PassiveHealthChecker passiveHealthChecker = PassiveHealthChecker.DEFAULT;
+        private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+        private Ticker ticker = Ticker.SYSTEM;
+
+        public static Builder create() {
+            return new Builder();
+        }
+
+        public Builder circuitBreakers(CircuitBreakers circuitBreakers) {
+            Objects.requireNonNull(circuitBreakers, "circuitBreakers cannot be null");
+            this.circuitBreakers = circuitBreakers;
+            return this;
+        }
+
+        public Builder outlierDetector(OutlierDetector outlierDetector) {
+            Objects.requireNonNull(outlierDetector, "outlierDetector cannot be null");
+            this.outlierDetector = outlierDetector;
+            return this;
+        }
+
+        public Builder passiveHealthChecker(PassiveHealthChecker passiveHealthChecker) {
+            Objects.requireNonNull(passiveHealthChecker, "passiveHealthChecker cannot be null");
+            this.passiveHealthChecker = passiveHealthChecker;
+            return this;
+        }
+
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            Objects.requireNonNull(retryPolicy, "retryPolicy cannot be null");
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        public Builder ticker(Ticker ticker) {
+            Objects.requireNonNull(ticker, "ticker cannot be null");
+            this.ticker = ticker;
+            return this;
+        }
+
+        /**
+         * @return factory of executors, which share circuit breakers, outlier detector and passive health checker
+         * of this builder and forget their state of removed handlers
+         */
+        public CommandExecutorFactory build() {
+            final Builder builder = copy();
+            return new CommandExecutorFactory() {
+                @Override
+                public CommandExecutor create(List<CommandHandler> commandHandlers, LoadBalancer<CommandHandler> loadBalancer) {
+                    return new ReactoCommandExecutor(commandHandlers, loadBalancer, builder);
+                }
+
+                @Override
+                public void remove(CommandHandler commandHandler) {
+                    builder.circuitBreakers.remove(commandHandler);
+                    builder.outlierDetector.remove(commandHandler);
+                    builder.passiveHealthChecker.remove(commandHandler);
+                }
+            };
+        }
+
+        private Builder copy() {
+            return create()
+                    .circuitBreakers(circuitBreakers)
+                    .outlierDetector(outlierDetector)
+                    .passiveHealthChecker(passiveHealthChecker)
+                    .retryPolicy(retryPolicy)
+                    .ticker(ticker);
+        }
     }
 }
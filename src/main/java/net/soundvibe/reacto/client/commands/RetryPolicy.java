@@ -0,0 +1,74 @@
+package net.soundvibe.reacto.client.commands;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import net.soundvibe.reacto.utils.RandomSource;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Bounded retries with exponential backoff and full jitter.
+ * Delay before retry {@code n} (starting from 0) is a random value between 0 and
+ * {@code min(maxBackoff, initialBackoff * 2^n)}, so that failed clients do not retry in lockstep.
+ */
+public final class RetryPolicy {
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, Duration.ofMillis(10L), Duration.ofSeconds(1L));
+    public static final RetryPolicy NONE = new RetryPolicy(0, Duration.ZERO, Duration.ZERO);
+
+    public final int maxRetries;
+    public final Duration initialBackoff;
+    public final Duration maxBackoff;
+    public final Scheduler scheduler;
+    private final RandomSource random;
+
+    public RetryPolicy(int maxRetries, Duration initialBackoff, Duration maxBackoff) {
+        this(maxRetries, initialBackoff, maxBackoff, Schedulers.computation());
+    }
+
+    public RetryPolicy(int maxRetries, Duration initialBackoff, Duration maxBackoff, Scheduler scheduler) {
+        this(maxRetries, initialBackoff, maxBackoff, scheduler, RandomSource.THREAD_LOCAL);
+    }
+
+    /**
+     * @param random draws jitter of the backoff
+     */
+    public RetryPolicy(int maxRetries, Duration initialBackoff, Duration maxBackoff, Scheduler scheduler, RandomSource random) {
+        if (maxRetries < 0) throw new IllegalArgumentException("maxRetries cannot be negative but was " + maxRetries);
+        Objects.requireNonNull(initialBackoff, "initialBackoff cannot be null");
+        Objects.requireNonNull(maxBackoff, "maxBackoff cannot be null");
+        Objects.requireNonNull(scheduler, "scheduler cannot be null");
+        Objects.requireNonNull(random, "random cannot be null");
+        this.maxRetries = maxRetries;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.scheduler = scheduler;
+        this.random = random;
+    }
+
+    public boolean shouldRetry(int retry) {
+        return retry < maxRetries;
+    }
+
+    /**
+     * @param retry zero based retry number
+     * @return jittered backoff in nanoseconds before given retry
+     */
+    public long backoffInNanos(int retry) {
+        final long cap = maxBackoff.toNanos();
+        final long base = initialBackoff.toNanos();
+        final long exponential = retry >= 62 || base > (cap >> Math.min(retry, 62)) ? cap : base << retry;
+        final long bound = Math.min(cap, exponential);
+        return bound <= 0L ? 0L : random.nextLong(bound + 1L);
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{" +
+                "maxRetries=" + maxRetries +
+                ", initialBackoff=" + initialBackoff +
+                ", maxBackoff=" + maxBackoff +
+                '}';
+    }
+}
@@ -13,4 +13,23 @@ public interface CommandHandler extends Named {
 
     ServiceRecord serviceRecord();
 
+    /**
+     * Actively checks if the service of this handler can serve commands again, after passive health checks
+     * have taken it out of service. Default implementation cannot check the service without a real command,
+     * so it completes empty and the handler is admitted to serve a single trial command instead.
+     * @return Flowable, which emits a value if the service is healthy, emits an error if it is not
+     * or completes empty if the service can be checked only by a trial command
+     */
+    default Flowable<Any> probe() {
+        return Flowable.empty();
+    }
+
+    /**
+     * Implement if handler needs to close resources. It is called when service record of the handler disappears
+     * or the handler is evicted from {@link CommandHandlerRegistry}
+     */
+    default void close() {
+        //implement if need to close resources
+    }
+
 }
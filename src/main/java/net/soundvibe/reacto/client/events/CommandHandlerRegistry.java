@@ -1,29 +1,47 @@
 package net.soundvibe.reacto.client.events;
 
 import net.soundvibe.reacto.discovery.types.*;
+import net.soundvibe.reacto.internal.BoundedCache;
+import org.slf4j.*;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.*;
 import java.util.stream.Stream;
 
 /**
+ * Creates and caches command handlers of service records by their registration id.
+ * Handler is recreated when its record changes. Handlers, whose records disappear or which are evicted
+ * because the cache is full, are closed and removal listeners are notified, so that state kept per handler,
+ * e.g. circuit breakers, outlier statistics or load balancer state, could be forgotten.
+ * Service registries listen for removals and release the state of load balancers and command executors they use.
  * @author Linas on 2017.01.18.
  */
 public final class CommandHandlerRegistry {
 
+    private static final Logger log = LoggerFactory.getLogger(CommandHandlerRegistry.class);
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10_000L;
+
     private final Map<ServiceType, CommandHandlerFactory> handlers;
 
-    private final Map<ServiceRecord, CommandHandler> cache;
+    private final List<Consumer<? super CommandHandler>> removalListeners;
 
-    private static final CommandHandlerRegistry EMPTY = new CommandHandlerRegistry(Collections.emptyMap());
+    private final BoundedCache<String, CommandHandler> cache;
 
+    /**
+     * @return new registry without handler factories, every one of them has its own removal listeners
+     */
     public static CommandHandlerRegistry empty() {
-        return EMPTY;
+        return Builder.create().build();
     }
 
-    private CommandHandlerRegistry(Map<ServiceType, CommandHandlerFactory> handlers) {
-        this.handlers = handlers;
-        this.cache = new ConcurrentHashMap<>(handlers.size());
+    private CommandHandlerRegistry(Builder builder) {
+        this.handlers = new EnumMap<>(builder.handlers);
+        this.removalListeners = new CopyOnWriteArrayList<>(builder.removalListeners);
+        this.cache = BoundedCache.Builder.create()
+                .maximumSize(builder.maximumSize)
+                .build(this::onRemoved);
     }
 
     public Optional<CommandHandlerFactory> findFactory(ServiceType serviceType) {
@@ -31,14 +49,60 @@ public final class CommandHandlerRegistry {
     }
 
     public Stream<CommandHandler> find(ServiceRecord serviceRecord) {
-        return findFactory(serviceRecord.type)
-                .map(factory -> Stream.of(cache.computeIfAbsent(serviceRecord, factory::create)))
-                .orElseGet(Stream::empty);
+        final CommandHandlerFactory factory = handlers.get(serviceRecord.type);
+        if (factory == null) return Stream.empty();
+        final CommandHandler commandHandler = cache.computeIfAbsent(serviceRecord.registrationId, id -> factory.create(serviceRecord));
+        if (commandHandler.serviceRecord() == null || commandHandler.serviceRecord().equals(serviceRecord)) {
+            return Stream.of(commandHandler);
+        }
+        cache.invalidate(serviceRecord.registrationId, commandHandler);
+        return Stream.of(cache.computeIfAbsent(serviceRecord.registrationId, id -> factory.create(serviceRecord)));
+    }
+
+    /**
+     * Closes and forgets handler of the record, which has disappeared
+     * @param registrationId registration id of the record
+     */
+    public void remove(String registrationId) {
+        cache.invalidate(registrationId);
+    }
+
+    /**
+     * Closes and forgets handlers of every record, which should not be retained
+     * @param isRetained returns true for registration ids of records which are still available
+     */
+    public void retainIf(Predicate<? super String> isRetained) {
+        Objects.requireNonNull(isRetained, "isRetained cannot be null");
+        cache.retainIf((registrationId, commandHandler) -> isRetained.test(registrationId));
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @param removalListener notified before removed handler is closed,
+     *                        e.g. to forget its state in load balancers or command executors, which use this registry
+     */
+    public void addRemovalListener(Consumer<? super CommandHandler> removalListener) {
+        Objects.requireNonNull(removalListener, "removalListener cannot be null");
+        removalListeners.add(removalListener);
+    }
+
+    private void onRemoved(String registrationId, CommandHandler commandHandler) {
+        try {
+            removalListeners.forEach(listener -> listener.accept(commandHandler));
+            commandHandler.close();
+        } catch (RuntimeException e) {
+            log.warn("Unable to close command handler of {}", registrationId, e);
+        }
     }
 
     public static final class Builder {
 
         private final Map<ServiceType, CommandHandlerFactory> handlers = new EnumMap<>(ServiceType.class);
+        private final List<Consumer<? super CommandHandler>> removalListeners = new ArrayList<>();
+        private long maximumSize = DEFAULT_MAXIMUM_SIZE;
 
         public static Builder create() {
             return new Builder();
@@ -49,12 +113,25 @@ public final class CommandHandlerRegistry {
             return this;
         }
 
-        public CommandHandlerRegistry build() {
-            return new CommandHandlerRegistry(this.handlers);
+        public Builder maximumSize(long maximumSize) {
+            if (maximumSize < 1L) throw new IllegalArgumentException("maximumSize cannot be less than 1 but was " + maximumSize);
+            this.maximumSize = maximumSize;
+            return this;
         }
 
+        /**
+         * @param removalListener notified before removed handler is closed,
+         *                        e.g. to forget its state in custom circuit breakers or load balancers
+         * @return Builder
+         */
+        public Builder onRemoval(Consumer<? super CommandHandler> removalListener) {
+            Objects.requireNonNull(removalListener, "removalListener cannot be null");
+            removalListeners.add(removalListener);
+            return this;
+        }
 
+        public CommandHandlerRegistry build() {
+            return new CommandHandlerRegistry(this);
+        }
     }
-
-
 }
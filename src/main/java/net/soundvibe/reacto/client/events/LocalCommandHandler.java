@@ -30,6 +30,16 @@ public final class LocalCommandHandler implements CommandHandler {
                 .orElseGet(() -> Flowable.error(new CannotDiscoverService("Unable to find service for " + command)));
     }
 
+    /**
+     * Commands are executed in this process, so the service is reachable as long as it registers the commands
+     */
+    @Override
+    public Flowable<Any> probe() {
+        return !commandRegistry.isEmpty() ?
+                Flowable.just(Any.VOID) :
+                Flowable.error(new CannotDiscoverService("No commands are registered by " + serviceRecord));
+    }
+
     @Override
     public ServiceRecord serviceRecord() {
         return this.serviceRecord;
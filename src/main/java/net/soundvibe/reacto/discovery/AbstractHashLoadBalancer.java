@@ -0,0 +1,97 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.types.Command;
+import net.soundvibe.reacto.utils.*;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Base of load balancers, which route commands with the same key to the same record.
+ * Load of every record is bounded by {@code ceil(balanceFactor * (outstanding requests + 1) / records)},
+ * so when the preferred record for a hot key is already full, request spills over to the next preferred record.
+ * Commands without a key are sent to a random record.
+ */
+abstract class AbstractHashLoadBalancer<T> implements LoadBalancer<T> {
+
+    public static final double DEFAULT_BALANCE_FACTOR = 1.25;
+
+    private final CommandHashKey hashKey;
+    private final Function<? super T, String> nodeId;
+    private final double balanceFactor;
+    private final RandomSource random;
+    private final OutstandingRequests<T> outstandingRequests = new OutstandingRequests<>();
+
+    AbstractHashLoadBalancer(CommandHashKey hashKey, Function<? super T, String> nodeId, double balanceFactor,
+                             RandomSource random) {
+        Objects.requireNonNull(hashKey, "hashKey cannot be null");
+        Objects.requireNonNull(nodeId, "nodeId cannot be null");
+        Objects.requireNonNull(random, "random cannot be null");
+        if (balanceFactor < 1.0) throw new IllegalArgumentException("balanceFactor cannot be less than 1 but was " + balanceFactor);
+        this.hashKey = hashKey;
+        this.nodeId = nodeId;
+        this.balanceFactor = balanceFactor;
+        this.random = random;
+    }
+
+    @Override
+    public T balance(List<T> records) {
+        if (records.isEmpty()) throw new IllegalArgumentException("No elements to balance");
+        return records.get(random.nextInt(records.size()));
+    }
+
+    @Override
+    public T balance(List<T> records, Command command) {
+        if (records.isEmpty()) throw new IllegalArgumentException("No elements to balance");
+        if (records.size() == 1) return records.get(0);
+        final OptionalLong hash = hashKey.hashOf(command);
+        return hash.isPresent() ? select(records, hash.getAsLong()) : balance(records);
+    }
+
+    /**
+     * @param records at least two records to select from
+     * @param keyHash hash of the command key
+     * @return record for given key
+     */
+    protected abstract T select(List<T> records, long keyHash);
+
+    @Override
+    public void onRequestStart(T record) {
+        outstandingRequests.increment(record);
+    }
+
+    @Override
+    public void onRequestFinish(T record, long latencyInNanos, boolean isSuccessful) {
+        outstandingRequests.decrement(record);
+    }
+
+    @Override
+    public void remove(T record) {
+        outstandingRequests.remove(record);
+    }
+
+    public int outstandingRequests(T record) {
+        return outstandingRequests.count(record);
+    }
+
+    protected final long nodeHash(T record) {
+        return Hashing.hash(nodeId.apply(record));
+    }
+
+    protected final String nodeId(T record) {
+        return nodeId.apply(record);
+    }
+
+    protected final int capacity(List<T> records) {
+        if (Double.isInfinite(balanceFactor)) return Integer.MAX_VALUE;
+        long outstanding = 0L;
+        for (int i = 0; i < records.size(); i++) {
+            outstanding += outstandingRequests.count(records.get(i));
+        }
+        return (int) Math.ceil(balanceFactor * (outstanding + 1) / records.size());
+    }
+
+    protected final boolean hasCapacity(T record, int capacity) {
+        return outstandingRequests.count(record) < capacity;
+    }
+}
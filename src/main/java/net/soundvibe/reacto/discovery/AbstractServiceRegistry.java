@@ -1,48 +1,199 @@
 package net.soundvibe.reacto.discovery;
 
 import io.reactivex.Flowable;
+import io.reactivex.disposables.*;
+import io.reactivex.schedulers.Schedulers;
 import net.soundvibe.reacto.client.commands.*;
 import net.soundvibe.reacto.client.events.*;
-import net.soundvibe.reacto.discovery.types.ServiceRecord;
+import net.soundvibe.reacto.discovery.types.*;
 import net.soundvibe.reacto.errors.*;
 import net.soundvibe.reacto.internal.*;
 import net.soundvibe.reacto.mappers.ServiceRegistryMapper;
 import net.soundvibe.reacto.metric.ObserverMetric;
+import net.soundvibe.reacto.server.CommandRegistry;
 import net.soundvibe.reacto.types.*;
+import net.soundvibe.reacto.utils.RandomSource;
+import org.slf4j.*;
 
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
 
 import static java.util.stream.Collectors.toList;
 
 /**
  * @author Linas on 2017.01.18.
  */
-public abstract class AbstractServiceRegistry implements ServiceRegistry {
+public abstract class AbstractServiceRegistry implements ServiceRegistry, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(AbstractServiceRegistry.class);
+    private static final Disposable CLOSED = Disposables.disposed();
 
     private final ServiceRegistryMapper mapper;
     private final CommandHandlerRegistry commandHandlerRegistry;
-    private final Cache<String, Flowable<List<ServiceRecord>>> commandCache = ExpiringCache.periodically(10L, TimeUnit.SECONDS);
+    private final DeterministicSubsetter subsetter;
+    private final WeakIdentityCache<List<ServiceRecord>, List<CommandHandler>> handlersCache = new WeakIdentityCache<>();
+    private final ServiceRecordLog recordLog;
+    private final RefreshAheadCache<CommandDescriptor, List<ServiceRecord>> commandCache;
+    private final Duration watchRetryDelay;
+    private final Duration evictionInterval;
+    private final Path snapshotPath;
+    private final Duration snapshotInterval;
+    private final CommandRegistry localCommands;
+    private final double remoteShare;
+    private final RandomSource random;
+    private final AtomicReference<Disposable> backgroundTasks = new AtomicReference<>();
+    private Set<String> missingRegistrationIds = Collections.emptySet();
+    private final WeakIdentityCache<Object, Boolean> knownStateOwners = new WeakIdentityCache<>();
+    private final Map<LoadBalancer<CommandHandler>, Boolean> loadBalancers = new WeakHashMap<>();
+    private final Map<CommandExecutorFactory, Boolean> commandExecutorFactories = new WeakHashMap<>();
 
     protected AbstractServiceRegistry(CommandHandlerRegistry commandHandlerRegistry, ServiceRegistryMapper mapper) {
+        this(commandHandlerRegistry, mapper, ServiceRegistryOptions.defaults());
+    }
+
+    protected AbstractServiceRegistry(CommandHandlerRegistry commandHandlerRegistry, ServiceRegistryMapper mapper,
+                                      ServiceRegistryOptions options) {
         Objects.requireNonNull(mapper, "mapper cannot be null");
         Objects.requireNonNull(commandHandlerRegistry, "commandHandlerRegistry cannot be null");
+        Objects.requireNonNull(options, "options cannot be null");
         this.commandHandlerRegistry = commandHandlerRegistry;
         this.mapper = mapper;
+        this.watchRetryDelay = options.getDiscoveryCacheTtl();
+        this.evictionInterval = options.getEvictionInterval();
+        this.recordLog = new ServiceRecordLog(options.getChangeLogSize());
+        this.subsetter = options.getSubsetSize() == ServiceRegistryOptions.NO_SUBSETTING ? null :
+                new DeterministicSubsetter(options.getSubsetSize(), options.getClientId());
+        this.commandCache = new RefreshAheadCache<>(options.getDiscoveryCacheTtl(), options.getDiscoveryCacheJitter(),
+                options.getNegativeCacheTtl(), options.getMaxNegativeCacheTtl(), options.getTicker(), this::onRecordsChanged,
+                options.getRefreshScheduler());
+        this.snapshotPath = options.getSnapshotPath().orElse(null);
+        this.snapshotInterval = options.getSnapshotInterval();
+        this.localCommands = options.getLocalCommands().orElse(null);
+        this.remoteShare = options.getRemoteShare();
+        this.random = options.getRandom();
+        commandHandlerRegistry.addRemovalListener(this::forgetHandler);
+        restoreSnapshot();
     }
 
     protected Flowable<Event> execute(Command command, LoadBalancer<CommandHandler> loadBalancer,
                                       CommandExecutorFactory commandExecutorFactory) {
-        return Flowable.fromCallable(() -> ObserverMetric.findObserver(command))
+        trackStateOf(loadBalancer, commandExecutorFactory);
+        return timed(CommandDescriptor.fromCommand(command), () -> cachedRecordsOf(command)
+                .compose(records -> findExecutor(records, command.name, loadBalancer, commandExecutorFactory))
+                .concatMap(commandExecutor -> commandExecutor.execute(command)));
+    }
+
+    /**
+     * Remembers load balancer and command executor factory, which keep state of handlers of this registry,
+     * so that their state of removed handlers is forgotten. They are not kept alive by this registry.
+     */
+    private void trackStateOf(LoadBalancer<CommandHandler> loadBalancer, CommandExecutorFactory commandExecutorFactory) {
+        if (knownStateOwners.getIfPresent(loadBalancer) == null) {
+            synchronized (loadBalancers) {
+                loadBalancers.put(loadBalancer, Boolean.TRUE);
+            }
+            knownStateOwners.put(loadBalancer, Boolean.TRUE);
+        }
+        if (knownStateOwners.getIfPresent(commandExecutorFactory) == null) {
+            synchronized (commandExecutorFactories) {
+                commandExecutorFactories.put(commandExecutorFactory, Boolean.TRUE);
+            }
+            knownStateOwners.put(commandExecutorFactory, Boolean.TRUE);
+        }
+    }
+
+    private void forgetHandler(CommandHandler commandHandler) {
+        final List<LoadBalancer<CommandHandler>> currentLoadBalancers;
+        synchronized (loadBalancers) {
+            currentLoadBalancers = new ArrayList<>(loadBalancers.keySet());
+        }
+        final List<CommandExecutorFactory> currentFactories;
+        synchronized (commandExecutorFactories) {
+            currentFactories = new ArrayList<>(commandExecutorFactories.keySet());
+        }
+        currentLoadBalancers.forEach(loadBalancer -> loadBalancer.remove(commandHandler));
+        currentFactories.forEach(commandExecutorFactory -> commandExecutorFactory.remove(commandHandler));
+    }
+
+    /**
+     * Records events, errors and duration of the command, which are emitted by the flowable supplied on subscription
+     */
+    private static <E> Flowable<E> timed(CommandDescriptor commandDescriptor, Callable<? extends Flowable<E>> events) {
+        return Flowable.fromCallable(() -> ObserverMetric.<E>findObserver(commandDescriptor))
                 .flatMap(metric -> Flowable.using(metric::startTimer,
-                        pair -> commandCache.computeIfAbsent(commandKey(command), key -> findRecordsOf(command).cache())
-                                .compose(records -> findExecutor(records, command.name, loadBalancer, commandExecutorFactory))
-                                .concatMap(commandExecutor -> commandExecutor.execute(command))
-                                .doOnEach(pair.key),
+                        pair -> events.call().doOnEach(pair.key),
                         pair -> pair.value.stop())
                 );
     }
 
+    /**
+     * Finds records of the command through discovery cache of this registry
+     * @param command command for which to look for services
+     * @return cached, possibly stale, records or records being discovered
+     */
+    Flowable<List<ServiceRecord>> cachedRecordsOf(Command command) {
+        if (backgroundTasks.get() == null) startBackgroundTasks();
+        return commandCache.get(CommandDescriptor.fromCommand(command), key -> findRecordsOf(command)
+                .map(records -> commandCache.getIfPresent(key)
+                        .filter(records::equals)
+                        .orElse(records)));
+    }
+
+    /**
+     * @return version of discovered records, which is incremented on every change of them
+     */
+    public long version() {
+        return recordLog.version();
+    }
+
+    /**
+     * Returns changes of discovered records made after given version, so that followers, e.g. other registries
+     * or clients, keep their views in sync without transferring every record. If the changes are no longer kept,
+     * the delta is a reset, which adds every currently discovered record.
+     * @param version version, returned by {@link #version()} or {@link ServiceRecordsDelta#toVersion} earlier
+     * @return changes since given version
+     * @throws IllegalArgumentException if version is greater than current version
+     */
+    public ServiceRecordsDelta changesSince(long version) {
+        return recordLog.changesSince(version);
+    }
+
+    private void onRecordsChanged(CommandDescriptor commandDescriptor, List<ServiceRecord> previous, List<ServiceRecord> current) {
+        recordLog.track(previous, current);
+        if (subsetter != null || previous == null || current == null) return;
+        final List<CommandHandler> handlers = handlersCache.getIfPresent(previous);
+        //registry finds at most one handler per record, so equal sizes mean handlers are in the order of records
+        if (handlers != null && handlers.size() == previous.size()) {
+            handlersCache.put(current, patchHandlers(previous, handlers, current));
+        }
+    }
+
+    /**
+     * Reuses handlers of unchanged records, so that only handlers of added or updated records are looked up
+     */
+    private List<CommandHandler> patchHandlers(List<ServiceRecord> previous, List<CommandHandler> handlers,
+                                               List<ServiceRecord> current) {
+        final Map<ServiceRecord, CommandHandler> handlersByRecord = new IdentityHashMap<>(previous.size() * 2);
+        for (int i = 0; i < previous.size(); i++) {
+            handlersByRecord.put(previous.get(i), handlers.get(i));
+        }
+        final List<CommandHandler> patched = new ArrayList<>(current.size());
+        current.forEach(record -> {
+            final CommandHandler handler = handlersByRecord.get(record);
+            if (handler != null) {
+                patched.add(handler);
+            } else {
+                commandHandlerRegistry.find(record).forEach(patched::add);
+            }
+        });
+        return Collections.unmodifiableList(patched);
+    }
+
     /**
      * Finds up and running services using service discovery
      * @param command command for which to start looking for a service
@@ -51,8 +202,136 @@ public abstract class AbstractServiceRegistry implements ServiceRegistry {
      */
     protected abstract Flowable<List<ServiceRecord>> findRecordsOf(Command command);
 
-    private String commandKey(Command command) {
-        return command.name + ":" + command.eventType();
+    /**
+     * Streams changes of service records as they happen, so that discovered records are updated
+     * without waiting for them to expire. Implementations, which support it, should override this method.
+     * Stream is subscribed on the first command execution and resubscribed after failure.
+     * @return Flowable of service record changes, empty by default
+     */
+    protected Flowable<ServiceRecordChange> watch() {
+        return Flowable.empty();
+    }
+
+    /**
+     * Applies changes streamed by {@link #watch()} to the discovered records
+     * @return Flowable, which applies changes as they are received
+     */
+    Flowable<?> applyChanges() {
+        return watch().doOnNext(this::apply);
+    }
+
+    private void startBackgroundTasks() {
+        final CompositeDisposable tasks = new CompositeDisposable();
+        if (!backgroundTasks.compareAndSet(null, tasks)) return;
+        tasks.add(applyChanges()
+                .doOnError(error -> log.warn("Service record changes stream failed, resubscribing in {}", watchRetryDelay, error))
+                .retryWhen(errors -> errors.flatMap(error -> Flowable.timer(watchRetryDelay.toMillis(), TimeUnit.MILLISECONDS)))
+                .subscribe(change -> {}, error -> log.error("Unable to watch service record changes", error)));
+        tasks.add(Flowable.interval(evictionInterval.toNanos(), TimeUnit.NANOSECONDS, Schedulers.computation())
+                .subscribe(tick -> evictRemovedHandlers()));
+        if (snapshotPath != null) {
+            tasks.add(Flowable.interval(snapshotInterval.toMillis(), TimeUnit.MILLISECONDS, Schedulers.io())
+                    .subscribe(tick -> saveSnapshot()));
+        }
+    }
+
+    /**
+     * Stops watching service record changes, evicting handlers and saving snapshots for good and saves the last
+     * snapshot of discovered records. Background tasks are not restarted by later executions.
+     * Registries, which hold other resources, release them too.
+     */
+    @Override
+    public void close() {
+        final Disposable tasks = backgroundTasks.getAndSet(CLOSED);
+        if (tasks != null && tasks != CLOSED) {
+            tasks.dispose();
+            if (snapshotPath != null) saveSnapshot();
+        }
+    }
+
+    private void restoreSnapshot() {
+        if (snapshotPath == null) return;
+        try {
+            DiscoverySnapshot.read(snapshotPath).ifPresent(snapshot -> {
+                snapshot.records.forEach(commandCache::putStale);
+                log.info("Restored {} commands from discovery snapshot {} written at {}",
+                        snapshot.records.size(), snapshotPath, snapshot.writtenAt);
+            });
+        } catch (RuntimeException e) {
+            log.warn("Unable to restore discovery snapshot from {}", snapshotPath, e);
+        }
+    }
+
+    void saveSnapshot() {
+        try {
+            final Map<CommandDescriptor, List<ServiceRecord>> records = commandCache.snapshot();
+            if (!records.isEmpty()) DiscoverySnapshot.write(snapshotPath, records);
+        } catch (RuntimeException e) {
+            log.warn("Unable to save discovery snapshot to {}", snapshotPath, e);
+        }
+    }
+
+    void apply(ServiceRecordChange change) {
+        update(change, (commandDescriptor, records) -> applyChange(change, commandDescriptor, records));
+        if (change.type == ServiceRecordChange.Type.REMOVED) closeHandlerOf(change.record.registrationId);
+    }
+
+    /**
+     * Updates discovered records of every command with the change
+     * @param updater returns updated records, the same records if they are not changed or null if they should be discovered again
+     */
+    void update(ServiceRecordChange change,
+                BiFunction<? super CommandDescriptor, ? super List<ServiceRecord>, ? extends List<ServiceRecord>> updater) {
+        commandCache.updateAll(updater);
+        if (change.type != ServiceRecordChange.Type.REMOVED) commandCache.retryNegativeIf(change.record::isCompatibleWith);
+    }
+
+    boolean isDiscovered(String registrationId) {
+        return commandCache.snapshot().values().stream()
+                .anyMatch(records -> indexOf(registrationId, records) >= 0);
+    }
+
+    void closeHandlerOf(String registrationId) {
+        commandHandlerRegistry.remove(registrationId);
+    }
+
+    /**
+     * Closes command handlers of records, which were not discovered during two consecutive evictions,
+     * so that handlers created for records, which are just being discovered, are not closed prematurely
+     */
+    synchronized void evictRemovedHandlers() {
+        final Set<String> registrationIds = new HashSet<>();
+        commandCache.snapshot().values().forEach(records -> records.forEach(record -> registrationIds.add(record.registrationId)));
+        final Set<String> previouslyMissingIds = missingRegistrationIds;
+        final Set<String> missingIds = new HashSet<>();
+        commandHandlerRegistry.retainIf(registrationId -> registrationIds.contains(registrationId) ||
+                (!previouslyMissingIds.contains(registrationId) && missingIds.add(registrationId)));
+        missingRegistrationIds = missingIds;
+    }
+
+    static List<ServiceRecord> applyChange(ServiceRecordChange change, CommandDescriptor commandDescriptor, List<ServiceRecord> records) {
+        final int index = indexOf(change.record.registrationId, records);
+        if (index >= 0 && change.record.generation() < records.get(index).generation()) return records;
+        final boolean isCompatible = change.type != ServiceRecordChange.Type.REMOVED && change.record.isCompatibleWith(commandDescriptor);
+        if (isCompatible && index >= 0 && records.get(index).equals(change.record)) return records;
+        if (!isCompatible && index < 0) return records;
+
+        final List<ServiceRecord> newRecords = new ArrayList<>(records);
+        if (!isCompatible) {
+            newRecords.remove(index);
+        } else if (index >= 0) {
+            newRecords.set(index, change.record);
+        } else {
+            newRecords.add(change.record);
+        }
+        return newRecords.isEmpty() ? null : Collections.unmodifiableList(newRecords);
+    }
+
+    static int indexOf(String registrationId, List<ServiceRecord> records) {
+        for (int i = 0; i < records.size(); i++) {
+            if (records.get(i).registrationId.equals(registrationId)) return i;
+        }
+        return -1;
     }
 
     Flowable<CommandExecutor> findExecutor(Flowable<List<ServiceRecord>> records,
@@ -62,9 +341,8 @@ public abstract class AbstractServiceRegistry implements ServiceRegistry {
         return records
                 .filter(recs -> !recs.isEmpty())
                 .switchIfEmpty(Flowable.defer(() -> Flowable.error(new CannotDiscoverService("Unable to discover any of " + name))))
-                .flatMap(recs -> Flowable.just(recs.stream()
-                        .flatMap(commandHandlerRegistry::find)
-                        .collect(toList()))
+                .map(recs -> subsetter == null ? recs : subsetter.subsetOf(recs))
+                .flatMap(recs -> Flowable.just(handlersCache.computeIfAbsent(recs, this::findHandlers))
                         .flatMap(eventHandlers -> eventHandlers.isEmpty() ?
                                 Flowable.error(new CannotFindEventHandlers("Unable to find at least one compatible event handler for " + recs)) :
                                 Flowable.just(eventHandlers))
@@ -72,6 +350,29 @@ public abstract class AbstractServiceRegistry implements ServiceRegistry {
                 .map(eventHandlers -> commandExecutorFactory.create(eventHandlers, loadBalancer));
     }
 
+    private List<CommandHandler> findHandlers(List<ServiceRecord> records) {
+        return Collections.unmodifiableList(records.stream()
+                .flatMap(commandHandlerRegistry::find)
+                .collect(toList()));
+    }
+
+    /**
+     * @return events of the command executed in this JVM on subscription or null if the command is not registered locally
+     */
+    @SuppressWarnings("unchecked")
+    private <E, C> Flowable<E> executeLocally(C command, Class<? extends E> eventClass) {
+        if (command instanceof Command && eventClass.isAssignableFrom(Event.class)) {
+            final CommandDescriptor commandDescriptor = CommandDescriptor.fromCommand((Command) command);
+            return localCommands.findCommand(commandDescriptor)
+                    .map(commandExecutor -> timed(commandDescriptor, () -> (Flowable<E>) commandExecutor.execute((Command) command)))
+                    .orElse(null);
+        }
+        return localCommands.<C, E>findTypedCommand((Class<? extends C>) command.getClass(), eventClass)
+                .map(function -> timed(CommandDescriptor.ofTypes(command.getClass(), eventClass),
+                        () -> (Flowable<E>) function.apply(command)))
+                .orElse(null);
+    }
+
     @Override
     public <E, C> Flowable<E> execute(
             C command,
@@ -82,6 +383,11 @@ public abstract class AbstractServiceRegistry implements ServiceRegistry {
         if (eventClass == null) return Flowable.error(new IllegalArgumentException("eventClass cannot be null"));
         if (loadBalancer == null) return Flowable.error(new IllegalArgumentException("loadBalancer cannot be null"));
 
+        if (localCommands != null && (remoteShare == 0.0 || random.nextDouble() >= remoteShare)) {
+            final Flowable<E> localEvents = executeLocally(command, eventClass);
+            if (localEvents != null) return localEvents;
+        }
+
         if (command instanceof Command && eventClass.isAssignableFrom(Event.class)) {
             //noinspection unchecked
             return (Flowable<E>) execute((Command)command, loadBalancer, commandExecutorFactory);
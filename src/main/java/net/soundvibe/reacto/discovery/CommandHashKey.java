@@ -0,0 +1,52 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.types.Command;
+import net.soundvibe.reacto.utils.Hashing;
+
+import java.util.Objects;
+import java.util.OptionalLong;
+
+/**
+ * Extracts the key used by hash based load balancers to route similar commands to the same handler
+ */
+@FunctionalInterface
+public interface CommandHashKey {
+
+    /**
+     * @param command command to route
+     * @return hash of the routing key or empty, if command has no key
+     */
+    OptionalLong hashOf(Command command);
+
+    /**
+     * @param key metadata key, which value should be used as routing key
+     * @return hash key of given command metadata value
+     */
+    static CommandHashKey metaData(String key) {
+        Objects.requireNonNull(key, "key cannot be null");
+        return command -> command.valueOf(key)
+                .map(value -> OptionalLong.of(Hashing.hash(value)))
+                .orElseGet(OptionalLong::empty);
+    }
+
+    /**
+     * @return hash key of command payload
+     */
+    static CommandHashKey payload() {
+        return command -> command.payload
+                .map(payload -> OptionalLong.of(Hashing.hash(payload)))
+                .orElseGet(OptionalLong::empty);
+    }
+
+    /**
+     * @param fallback key to use when this key is missing
+     * @return hash key, which falls back to other key
+     */
+    default CommandHashKey orElse(CommandHashKey fallback) {
+        Objects.requireNonNull(fallback, "fallback cannot be null");
+        return command -> {
+            final OptionalLong hash = hashOf(command);
+            return hash.isPresent() ? hash : fallback.hashOf(command);
+        };
+    }
+}
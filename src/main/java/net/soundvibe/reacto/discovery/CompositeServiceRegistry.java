@@ -0,0 +1,331 @@
+package net.soundvibe.reacto.discovery;
+
+import io.reactivex.*;
+import io.reactivex.schedulers.Schedulers;
+import net.soundvibe.reacto.client.events.CommandHandlerRegistry;
+import net.soundvibe.reacto.discovery.types.*;
+import net.soundvibe.reacto.mappers.ServiceRegistryMapper;
+import net.soundvibe.reacto.types.*;
+import org.slf4j.*;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Service registry, which discovers records using several tiers of service registries, e.g. local,
+ * per host file and cluster store. Every tier keeps its own discovery cache configured by its {@link ServiceRegistryOptions}.
+ * Failed tiers are treated as if they have found nothing.
+ * Records are deduplicated by registration id, record of the tier with the highest priority wins.
+ * Changes pushed by tiers, see {@link #watch()}, are applied to the discovery cache of the composite registry at once,
+ * if they come from the tier, which records are used, or from a tier, which records would win over them.
+ * Otherwise affected records are discovered again, so that tier priority and mode are respected.
+ * <p>
+ * Discovery cache of the composite registry is kept on top of the caches of tiers, so records of a tier,
+ * which does not push its changes, can be stale for up to discovery cache ttl of the tier plus the one of the composite.
+ * Use a short discovery cache ttl for the composite registry, when tiers keep records for long.
+ */
+public final class CompositeServiceRegistry extends AbstractServiceRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(CompositeServiceRegistry.class);
+
+    public enum Mode {
+        /**
+         * Tiers are queried one by one in priority order and the first non empty answer is used
+         */
+        SEQUENTIAL,
+        /**
+         * Tiers are queried at once and the first non empty answer is used, slower tiers are cancelled
+         */
+        PARALLEL,
+        /**
+         * Tiers are queried at once and answers are merged. Answers, which arrive later than merge window
+         * after the first non empty one, are not waited for
+         */
+        MERGE
+    }
+
+    public static final Duration DEFAULT_MERGE_WINDOW = Duration.ofMillis(50L);
+
+    private final List<AbstractServiceRegistry> tiers;
+    private final Mode mode;
+    private final Duration mergeWindow;
+    private final Scheduler scheduler;
+
+    private CompositeServiceRegistry(Builder builder) {
+        super(builder.commandHandlerRegistry, builder.mapper, builder.options);
+        this.tiers = Collections.unmodifiableList(new ArrayList<>(builder.tiers));
+        this.mode = builder.mode;
+        this.mergeWindow = builder.mergeWindow;
+        this.scheduler = builder.scheduler;
+    }
+
+    @Override
+    protected Flowable<List<ServiceRecord>> findRecordsOf(Command command) {
+        switch (mode) {
+            case SEQUENTIAL:
+                return Flowable.range(0, tiers.size())
+                        .concatMap(index -> recordsOf(index, command), 1)
+                        .take(1)
+                        .map(answer -> TierRecords.of(distinct(answer.value), answer.key, answer.key));
+            case PARALLEL:
+                return Flowable.range(0, tiers.size())
+                        .flatMap(index -> recordsOf(index, command))
+                        .take(1)
+                        .map(answer -> TierRecords.of(distinct(answer.value), answer.key, answer.key));
+            default:
+                return Flowable.range(0, tiers.size())
+                        .flatMap(index -> recordsOf(index, command))
+                        .publish(answers -> answers.takeUntil(answers.take(1).delay(mergeWindow.toNanos(), TimeUnit.NANOSECONDS, scheduler)))
+                        .toList()
+                        .filter(answers -> !answers.isEmpty())
+                        .map(answers -> TierRecords.of(merge(answers),
+                                answers.stream().mapToInt(Pair::getKey).min().orElse(0),
+                                answers.stream().mapToInt(Pair::getKey).max().orElse(0)))
+                        .toFlowable();
+        }
+    }
+
+    /**
+     * Streams changes pushed by every tier
+     */
+    @Override
+    protected Flowable<ServiceRecordChange> watch() {
+        return Flowable.merge(tiers.stream()
+                .map(AbstractServiceRegistry::watch)
+                .collect(toList()));
+    }
+
+    @Override
+    Flowable<?> applyChanges() {
+        return Flowable.merge(IntStream.range(0, tiers.size())
+                .mapToObj(tier -> tiers.get(tier).watch().doOnNext(change -> apply(tier, change)))
+                .collect(toList()));
+    }
+
+    /**
+     * Applies the change pushed by the tier to records, which it can only affect the same way discovery would,
+     * and lets records, which would be discovered differently, be discovered again.
+     * Handler of the removed record is closed at once only if no other tier can still have the record.
+     */
+    void apply(int tier, ServiceRecordChange change) {
+        final String registrationId = change.record.registrationId;
+        final AtomicBoolean isKept = new AtomicBoolean(false);
+        update(change, (commandDescriptor, records) -> {
+            final List<ServiceRecord> newRecords = applyChange(tier, change, commandDescriptor, records);
+            if (newRecords == null && change.type == ServiceRecordChange.Type.REMOVED && indexOf(registrationId, records) >= 0) {
+                isKept.set(true);
+            }
+            return newRecords;
+        });
+        if (change.type == ServiceRecordChange.Type.REMOVED && !isKept.get() && !isDiscovered(registrationId)) {
+            closeHandlerOf(registrationId);
+        }
+    }
+
+    private List<ServiceRecord> applyChange(int tier, ServiceRecordChange change, CommandDescriptor commandDescriptor,
+                                            List<ServiceRecord> records) {
+        if (records instanceof TierRecords) {
+            final TierRecords tierRecords = (TierRecords) records;
+            if (tier == tierRecords.firstTier && tier == tierRecords.lastTier) {
+                return tierRecords.with(applyChange(change, commandDescriptor, tierRecords.records), tier);
+            }
+            if (mode == Mode.MERGE && tier <= tierRecords.firstTier && change.type != ServiceRecordChange.Type.REMOVED) {
+                return tierRecords.with(applyChange(change, commandDescriptor, tierRecords.records), tier);
+            }
+            if (mode == Mode.SEQUENTIAL && tier > tierRecords.lastTier) return records;
+        }
+        final boolean isAffected = indexOf(change.record.registrationId, records) >= 0 ||
+                (change.type != ServiceRecordChange.Type.REMOVED && change.record.isCompatibleWith(commandDescriptor));
+        return isAffected ? null : records;
+    }
+
+    /**
+     * Closes the composite registry and its tiers, which background tasks are started by the composite
+     */
+    @Override
+    public void close() {
+        super.close();
+        tiers.forEach(AbstractServiceRegistry::close);
+    }
+
+    private Flowable<Pair<Integer, List<ServiceRecord>>> recordsOf(int index, Command command) {
+        final AbstractServiceRegistry tier = tiers.get(index);
+        return tier.cachedRecordsOf(command)
+                .filter(records -> !records.isEmpty())
+                .take(1)
+                .map(records -> Pair.of(index, records))
+                .onErrorResumeNext(error -> {
+                    log.debug("Tier {} was unable to find records of {}", tier, command, error);
+                    return Flowable.empty();
+                });
+    }
+
+    static List<ServiceRecord> merge(List<Pair<Integer, List<ServiceRecord>>> answers) {
+        final List<Pair<Integer, List<ServiceRecord>>> sortedAnswers = new ArrayList<>(answers);
+        sortedAnswers.sort(Comparator.comparing(Pair::getKey));
+        return distinct(sortedAnswers.stream()
+                .flatMap(answer -> answer.value.stream())
+                .collect(toList()));
+    }
+
+    static List<ServiceRecord> distinct(List<ServiceRecord> records) {
+        final Map<String, ServiceRecord> recordsById = new LinkedHashMap<>(records.size() * 2);
+        for (ServiceRecord record : records) {
+            recordsById.putIfAbsent(record.registrationId, record);
+        }
+        return recordsById.size() == records.size() ? records :
+                Collections.unmodifiableList(new ArrayList<>(recordsById.values()));
+    }
+
+    /**
+     * Records discovered by the composite registry, which remember indexes of tiers they were found by
+     */
+    private static final class TierRecords extends AbstractList<ServiceRecord> implements RandomAccess {
+
+        private final List<ServiceRecord> records;
+        private final int firstTier;
+        private final int lastTier;
+
+        private TierRecords(List<ServiceRecord> records, int firstTier, int lastTier) {
+            this.records = records;
+            this.firstTier = firstTier;
+            this.lastTier = lastTier;
+        }
+
+        static List<ServiceRecord> of(List<ServiceRecord> records, int firstTier, int lastTier) {
+            return new TierRecords(records, firstTier, lastTier);
+        }
+
+        /**
+         * @return these records if they are not changed, null if no records are left
+         * or changed records found by given tier too
+         */
+        List<ServiceRecord> with(List<ServiceRecord> newRecords, int tier) {
+            if (newRecords == records) return this;
+            return newRecords == null ? null : of(newRecords, Math.min(tier, firstTier), lastTier);
+        }
+
+        @Override
+        public ServiceRecord get(int index) {
+            return records.get(index);
+        }
+
+        @Override
+        public int size() {
+            return records.size();
+        }
+    }
+
+    /**
+     * Registers every tier in priority order
+     */
+    @Override
+    public Flowable<Any> register() {
+        return Flowable.fromIterable(tiers)
+                .concatMap(AbstractServiceRegistry::register)
+                .ignoreElements()
+                .andThen(Flowable.just(Any.VOID));
+    }
+
+    /**
+     * Unregisters every tier in priority order
+     */
+    @Override
+    public Flowable<Any> unregister() {
+        return Flowable.fromIterable(tiers)
+                .concatMap(AbstractServiceRegistry::unregister)
+                .ignoreElements()
+                .andThen(Flowable.just(Any.VOID));
+    }
+
+    @Override
+    public String toString() {
+        return "CompositeServiceRegistry{" +
+                "tiers=" + tiers +
+                ", mode=" + mode +
+                ", mergeWindow=" + mergeWindow +
+                '}';
+    }
+
+    public static final class Builder {
+
+        private final List<AbstractServiceRegistry> tiers = new ArrayList<>();
+        private CommandHandlerRegistry commandHandlerRegistry;
+        private ServiceRegistryMapper mapper;
+        private ServiceRegistryOptions options = ServiceRegistryOptions.defaults();
+        private Mode mode = Mode.SEQUENTIAL;
+        private Duration mergeWindow = DEFAULT_MERGE_WINDOW;
+        private Scheduler scheduler = Schedulers.computation();
+
+        public static Builder create() {
+            return new Builder();
+        }
+
+        /**
+         * Adds a tier, tiers added earlier have higher priority
+         * @param tier service registry of the tier
+         * @return Builder
+         */
+        public Builder tier(AbstractServiceRegistry tier) {
+            Objects.requireNonNull(tier, "tier cannot be null");
+            tiers.add(tier);
+            return this;
+        }
+
+        /**
+         * @param commandHandlerRegistry creates command handlers for records of every tier
+         * @return Builder
+         */
+        public Builder commandHandlerRegistry(CommandHandlerRegistry commandHandlerRegistry) {
+            Objects.requireNonNull(commandHandlerRegistry, "commandHandlerRegistry cannot be null");
+            this.commandHandlerRegistry = commandHandlerRegistry;
+            return this;
+        }
+
+        public Builder mapper(ServiceRegistryMapper mapper) {
+            Objects.requireNonNull(mapper, "mapper cannot be null");
+            this.mapper = mapper;
+            return this;
+        }
+
+        /**
+         * @param options options of the composite registry, its discovery cache is kept on top of the caches of tiers,
+         * so its ttl adds to the staleness of records of tiers, which do not push their changes
+         * @return Builder
+         */
+        public Builder options(ServiceRegistryOptions options) {
+            Objects.requireNonNull(options, "options cannot be null");
+            this.options = options;
+            return this;
+        }
+
+        public Builder mode(Mode mode) {
+            Objects.requireNonNull(mode, "mode cannot be null");
+            this.mode = mode;
+            return this;
+        }
+
+        public Builder mergeWindow(Duration mergeWindow) {
+            Objects.requireNonNull(mergeWindow, "mergeWindow cannot be null");
+            if (mergeWindow.isNegative()) throw new IllegalArgumentException("mergeWindow cannot be negative but was " + mergeWindow);
+            this.mergeWindow = mergeWindow;
+            return this;
+        }
+
+        public Builder scheduler(Scheduler scheduler) {
+            Objects.requireNonNull(scheduler, "scheduler cannot be null");
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public CompositeServiceRegistry build() {
+            if (tiers.isEmpty()) throw new IllegalArgumentException("At least one tier should be added");
+            return new CompositeServiceRegistry(this);
+        }
+    }
+}
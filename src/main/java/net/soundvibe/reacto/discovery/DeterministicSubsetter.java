@@ -0,0 +1,46 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.discovery.types.ServiceRecord;
+import net.soundvibe.reacto.internal.*;
+
+import java.util.*;
+
+/**
+ * Deterministic subsetting: clients are grouped into rounds, every round shuffles records with the same seed
+ * and splits them into disjoint subsets, so that each record is used by the same number of clients of the round.
+ * Records are ordered by registration id first, so that every client sees them in the same order.
+ * Subset of the same list instance is computed only once.
+ */
+public final class DeterministicSubsetter {
+
+    private final int subsetSize;
+    private final int clientId;
+    private final Cache<List<ServiceRecord>, List<ServiceRecord>> subsets = new WeakIdentityCache<>();
+
+    public DeterministicSubsetter(int subsetSize, int clientId) {
+        if (subsetSize < 1) throw new IllegalArgumentException("subsetSize cannot be less than 1 but was " + subsetSize);
+        if (clientId < 0) throw new IllegalArgumentException("clientId cannot be negative but was " + clientId);
+        this.subsetSize = subsetSize;
+        this.clientId = clientId;
+    }
+
+    /**
+     * @param records all records of a service
+     * @return stable subset of given records, which this client should use
+     */
+    public List<ServiceRecord> subsetOf(List<ServiceRecord> records) {
+        if (records.size() <= subsetSize) return records;
+        return subsets.computeIfAbsent(records, this::computeSubset);
+    }
+
+    private List<ServiceRecord> computeSubset(List<ServiceRecord> records) {
+        final List<ServiceRecord> sortedRecords = new ArrayList<>(records);
+        sortedRecords.sort(Comparator.comparing(record -> record.registrationId));
+        final int subsetCount = sortedRecords.size() / subsetSize;
+        final int round = clientId / subsetCount;
+        Collections.shuffle(sortedRecords, new Random(round));
+        final int subsetId = clientId % subsetCount;
+        final int start = subsetId * subsetSize;
+        return Collections.unmodifiableList(new ArrayList<>(sortedRecords.subList(start, start + subsetSize)));
+    }
+}
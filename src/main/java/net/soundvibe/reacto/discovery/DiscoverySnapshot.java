@@ -0,0 +1,116 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.discovery.types.*;
+import net.soundvibe.reacto.types.CommandDescriptor;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Compact binary snapshot of discovered service records by command, used to warm up discovery cache on startup.
+ * Every record is stored once, encoded by {@link ServiceRecordCodec} in a single batch, so that commands shared
+ * by records are stored once too. Command index refers to records by their position:
+ * <pre>
+ * magic, version, written at millis,
+ * records length, encoded records,
+ * command count, [command type, event type, record count, [record position]...]...
+ * </pre>
+ * Snapshot is written to a temporary file first and then atomically moved over the previous one.
+ */
+public final class DiscoverySnapshot {
+
+    private static final int MAGIC = 0x52435453;
+    private static final int VERSION = 2;
+
+    public final Instant writtenAt;
+    public final Map<CommandDescriptor, List<ServiceRecord>> records;
+
+    private DiscoverySnapshot(Instant writtenAt, Map<CommandDescriptor, List<ServiceRecord>> records) {
+        this.writtenAt = writtenAt;
+        this.records = records;
+    }
+
+    public static void write(Path path, Map<CommandDescriptor, List<ServiceRecord>> records) {
+        Objects.requireNonNull(path, "path cannot be null");
+        Objects.requireNonNull(records, "records cannot be null");
+        final Map<String, Integer> positions = new HashMap<>();
+        final List<ServiceRecord> uniqueRecords = new ArrayList<>();
+        records.values().forEach(list -> list.forEach(record -> positions.computeIfAbsent(record.registrationId, id -> {
+            uniqueRecords.add(record);
+            return uniqueRecords.size() - 1;
+        })));
+
+        try {
+            final Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            final Path temporaryFile = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(System.currentTimeMillis());
+                final byte[] encodedRecords = ServiceRecordCodec.encodeAll(uniqueRecords);
+                out.writeInt(encodedRecords.length);
+                out.write(encodedRecords);
+                out.writeInt(records.size());
+                for (Map.Entry<CommandDescriptor, List<ServiceRecord>> entry : records.entrySet()) {
+                    out.writeUTF(entry.getKey().commandType);
+                    out.writeUTF(entry.getKey().eventType);
+                    out.writeInt(entry.getValue().size());
+                    for (ServiceRecord record : entry.getValue()) {
+                        out.writeInt(positions.get(record.registrationId));
+                    }
+                }
+            }
+            try {
+                Files.move(temporaryFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param path snapshot file
+     * @return snapshot or empty if file does not exist
+     * @throws UncheckedIOException if file cannot be read or is not a valid snapshot
+     */
+    public static Optional<DiscoverySnapshot> read(Path path) {
+        Objects.requireNonNull(path, "path cannot be null");
+        if (!Files.isRegularFile(path)) return Optional.empty();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a discovery snapshot: " + path);
+            final int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported discovery snapshot version " + version + ": " + path);
+            final Instant writtenAt = Instant.ofEpochMilli(in.readLong());
+            final byte[] encodedRecords = new byte[in.readInt()];
+            in.readFully(encodedRecords);
+            final List<ServiceRecord> uniqueRecords = decode(encodedRecords, path);
+            final int commandCount = in.readInt();
+            final Map<CommandDescriptor, List<ServiceRecord>> records = new LinkedHashMap<>(commandCount * 2);
+            for (int i = 0; i < commandCount; i++) {
+                final CommandDescriptor commandDescriptor = CommandDescriptor.ofNames(in.readUTF(), in.readUTF());
+                final int size = in.readInt();
+                final List<ServiceRecord> list = new ArrayList<>(size);
+                for (int j = 0; j < size; j++) {
+                    list.add(uniqueRecords.get(in.readInt()));
+                }
+                records.put(commandDescriptor, Collections.unmodifiableList(list));
+            }
+            return Optional.of(new DiscoverySnapshot(writtenAt, records));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<ServiceRecord> decode(byte[] encodedRecords, Path path) throws IOException {
+        try {
+            return ServiceRecordCodec.decodeAll(encodedRecords);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid records of discovery snapshot: " + path, e);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package net.soundvibe.reacto.discovery;
 
+import net.soundvibe.reacto.types.Command;
+
 import java.util.List;
 
 /**
@@ -9,4 +11,40 @@ public interface LoadBalancer<T> {
 
     T balance(List<T> records);
 
+    /**
+     * Selects a record for the given command. Load balancers, which route by command contents, should override it.
+     * @param records records to select from
+     * @param command command to be sent
+     * @return selected record
+     */
+    default T balance(List<T> records, Command command) {
+        return balance(records);
+    }
+
+    /**
+     * Called when request is sent to the record, selected by this load balancer
+     * @param record record which received the request
+     */
+    default void onRequestStart(T record) {
+        //do nothing
+    }
+
+    /**
+     * Called exactly once for every started request, when it completes, fails or is cancelled
+     * @param record record which received the request
+     * @param latencyInNanos time elapsed since the request was started
+     * @param isSuccessful false if request has failed
+     */
+    default void onRequestFinish(T record, long latencyInNanos, boolean isSuccessful) {
+        //do nothing
+    }
+
+    /**
+     * Forgets state of the record, which is not available anymore
+     * @param record removed record
+     */
+    default void remove(T record) {
+        //do nothing
+    }
+
 }
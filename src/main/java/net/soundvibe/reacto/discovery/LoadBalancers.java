@@ -1,6 +1,9 @@
 package net.soundvibe.reacto.discovery;
 
 import net.soundvibe.reacto.client.events.CommandHandler;
+import net.soundvibe.reacto.utils.WebUtils;
+
+import java.time.Duration;
 
 /**
  * @author OZY on 2016.08.26.
@@ -11,4 +14,41 @@ public interface LoadBalancers {
 
     LoadBalancer<CommandHandler> ROUND_ROBIN = new RoundRobinLoadBalancer<>();
 
+    LoadBalancer<CommandHandler> POWER_OF_TWO_CHOICES = new PowerOfTwoChoicesLoadBalancer<>();
+
+    LoadBalancer<CommandHandler> PEAK_EWMA = new PeakEwmaLoadBalancer<>();
+
+    Duration DEFAULT_SLOW_START_WINDOW = Duration.ofSeconds(30L);
+
+    LoadBalancer<CommandHandler> WEIGHTED_ROUND_ROBIN = new WeightedRoundRobinLoadBalancer<>(
+            handler -> handler.serviceRecord().weight(), new SlowStart<>(DEFAULT_SLOW_START_WINDOW));
+
+    LoadBalancer<CommandHandler> WEIGHTED_RANDOM = new WeightedRandomLoadBalancer<>(
+            handler -> handler.serviceRecord().weight(), new SlowStart<>(DEFAULT_SLOW_START_WINDOW));
+
+    /**
+     * @param hashKey key of the command, e.g. {@link CommandHashKey#metaData(String)}
+     * @return rendezvous hashing load balancer, which keeps commands with the same key on the same handler
+     */
+    static LoadBalancer<CommandHandler> rendezvous(CommandHashKey hashKey) {
+        return new RendezvousHashLoadBalancer<>(hashKey, handler -> handler.serviceRecord().registrationId);
+    }
+
+    /**
+     * @param hashKey key of the command, e.g. {@link CommandHashKey#metaData(String)}
+     * @return Maglev hashing load balancer, which keeps commands with the same key on the same handler
+     */
+    static LoadBalancer<CommandHandler> maglev(CommandHashKey hashKey) {
+        return new MaglevLoadBalancer<>(hashKey, handler -> handler.serviceRecord().registrationId);
+    }
+
+    /**
+     * @param delegate load balancer, which selects a handler from the closest locality tier
+     * @param localZone zone of this client
+     * @return load balancer, which prefers handlers on the same host, then in the same zone and only then remote ones
+     */
+    static LoadBalancer<CommandHandler> zoneAware(LoadBalancer<CommandHandler> delegate, String localZone) {
+        return new ZoneAwareLoadBalancer<>(delegate, WebUtils.getLocalAddress(), localZone,
+                handler -> handler.serviceRecord().host(), handler -> handler.serviceRecord().zone());
+    }
 }
@@ -23,6 +23,8 @@ public final class LocalServiceRegistry extends AbstractServiceRegistry {
 
     private final AtomicBoolean isClosed = new AtomicBoolean(true);
 
+    private final ServiceRecord localRecord = createRecord();
+
     public LocalServiceRegistry(ServiceRegistryMapper mapper,
                                 CommandRegistry commandRegistry) {
         super(CommandHandlerRegistry.Builder.create()
@@ -30,7 +32,8 @@ public final class LocalServiceRegistry extends AbstractServiceRegistry {
                         ServiceType.LOCAL,
                         serviceRecord -> new LocalCommandHandler(serviceRecord, commandRegistry))
                 .build(),
-                mapper);
+                mapper,
+                ServiceRegistryOptions.defaults().setLocalCommands(commandRegistry));
         this.commandRegistry = commandRegistry;
     }
 
@@ -53,7 +56,7 @@ public final class LocalServiceRegistry extends AbstractServiceRegistry {
     @Override
     protected Flowable<List<ServiceRecord>> findRecordsOf(Command command) {
         return commandRegistry.findCommand(CommandDescriptor.fromCommand(command)).isPresent() ?
-                Flowable.just(singletonList(createRecord())) :
+                Flowable.just(singletonList(localRecord)) :
                 Flowable.empty();
     }
 
@@ -0,0 +1,119 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.internal.RecordListStates;
+import net.soundvibe.reacto.utils.*;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Maglev consistent hashing: keys are looked up in a prime sized table, where every record owns
+ * almost the same number of entries. Tables are built once per set of records and a few recently used ones are kept,
+ * so that callers, which balance different sets of records, do not rebuild them. When the set of records changes,
+ * only about 1/N of the entries move to other records. When the record of the key is full,
+ * request spills over to the records of the following table entries.
+ */
+public final class MaglevLoadBalancer<T> extends AbstractHashLoadBalancer<T> {
+
+    public static final int DEFAULT_TABLE_SIZE = 65537;
+    public static final long DEFAULT_MAXIMUM_TABLES = 16L;
+
+    private final int tableSize;
+    private final RecordListStates<Table<T>> tables;
+
+    public MaglevLoadBalancer(CommandHashKey hashKey, Function<? super T, String> nodeId) {
+        this(hashKey, nodeId, DEFAULT_TABLE_SIZE, DEFAULT_BALANCE_FACTOR);
+    }
+
+    /**
+     * @param hashKey extracts the key of the command
+     * @param nodeId extracts stable id of the record
+     * @param tableSize prime size of the lookup table, it should be much bigger than the number of records
+     * @param balanceFactor maximum load of a record relative to average load, {@link Double#POSITIVE_INFINITY} disables spill over
+     */
+    public MaglevLoadBalancer(CommandHashKey hashKey, Function<? super T, String> nodeId, int tableSize, double balanceFactor) {
+        this(hashKey, nodeId, tableSize, balanceFactor, RandomSource.THREAD_LOCAL);
+    }
+
+    /**
+     * @param random picks records for commands without a key
+     */
+    public MaglevLoadBalancer(CommandHashKey hashKey, Function<? super T, String> nodeId, int tableSize, double balanceFactor,
+                              RandomSource random) {
+        super(hashKey, nodeId, balanceFactor, random);
+        if (!isPrime(tableSize)) throw new IllegalArgumentException("tableSize should be prime but was " + tableSize);
+        this.tableSize = tableSize;
+        this.tables = RecordListStates.computing(this::build, DEFAULT_MAXIMUM_TABLES);
+    }
+
+    @Override
+    protected T select(List<T> records, long keyHash) {
+        final Table<T> lookupTable = tables.of(records);
+        final int slot = (int) Long.remainderUnsigned(keyHash, tableSize);
+        final int capacity = capacity(records);
+        for (int probe = 0; probe < tableSize; probe++) {
+            final T record = lookupTable.nodes[lookupTable.entries[(slot + probe) % tableSize]];
+            if (hasCapacity(record, capacity)) return record;
+        }
+        return lookupTable.nodes[lookupTable.entries[slot]];
+    }
+
+    @SuppressWarnings("unchecked")
+    private Table<T> build(List<?> records) {
+        final int size = records.size();
+        final T[] nodes = (T[]) records.toArray();
+        final String[] ids = new String[size];
+        final Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = nodeId(nodes[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> ids[i]));
+        final T[] sortedNodes = (T[]) new Object[size];
+        final long[] offsets = new long[size];
+        final long[] skips = new long[size];
+        for (int i = 0; i < size; i++) {
+            sortedNodes[i] = nodes[order[i]];
+            final long hash = Hashing.hash(ids[order[i]]);
+            offsets[i] = Long.remainderUnsigned(hash, tableSize);
+            skips[i] = Long.remainderUnsigned(Hashing.mix(hash), tableSize - 1) + 1L;
+        }
+
+        final int[] entries = new int[tableSize];
+        Arrays.fill(entries, -1);
+        final long[] next = new long[size];
+        int filled = 0;
+        while (filled < tableSize) {
+            for (int i = 0; i < size && filled < tableSize; i++) {
+                int entry = (int) ((offsets[i] + next[i] * skips[i]) % tableSize);
+                while (entries[entry] >= 0) {
+                    next[i]++;
+                    entry = (int) ((offsets[i] + next[i] * skips[i]) % tableSize);
+                }
+                entries[entry] = i;
+                next[i]++;
+                filled++;
+            }
+        }
+        return new Table<>(sortedNodes, entries);
+    }
+
+    private static boolean isPrime(int value) {
+        if (value < 2) return false;
+        for (int i = 2; (long) i * i <= value; i++) {
+            if (value % i == 0) return false;
+        }
+        return true;
+    }
+
+    private static final class Table<T> {
+
+        private final T[] nodes;
+        private final int[] entries;
+
+        private Table(T[] nodes, int[] entries) {
+            this.nodes = nodes;
+            this.entries = entries;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package net.soundvibe.reacto.discovery;
+
+import io.reactivex.*;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.processors.*;
+import io.reactivex.schedulers.Schedulers;
+import net.soundvibe.reacto.client.events.CommandHandlerRegistry;
+import net.soundvibe.reacto.discovery.types.*;
+import net.soundvibe.reacto.mappers.ServiceRegistryMapper;
+import net.soundvibe.reacto.types.*;
+
+import java.io.IOException;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Service registry for processes running on the same host, which share service records through a memory-mapped file.
+ * Every registered process owns a slot of the file and writes a heartbeat into it periodically.
+ * Records, whose heartbeat is older than liveness timeout, e.g. of crashed processes, are not discovered.
+ * The shared memory is polled without locks or system calls and only records, which have changed since the last poll,
+ * are decoded. Polled changes are applied to an index of records by command, which discovery looks records up in,
+ * and are pushed to discovery cache, see {@link #watch()}.
+ * It needs no external service, so it can be used as a stand-in for real service discovery in integration tests.
+ */
+public final class MappedFileServiceRegistry extends AbstractServiceRegistry {
+
+    public static final int DEFAULT_SLOT_COUNT = 64;
+    public static final int DEFAULT_SLOT_SIZE = 16 * 1024;
+    public static final Duration DEFAULT_HEARTBEAT_INTERVAL = Duration.ofSeconds(1L);
+    public static final Duration DEFAULT_LIVENESS_TIMEOUT = Duration.ofSeconds(3L);
+    public static final Duration DEFAULT_POLL_INTERVAL = Duration.ofMillis(100L);
+
+    private final ServiceRecordSlots slots;
+    private final ServiceRecord serviceRecord;
+    private final Duration heartbeatInterval;
+    private final long livenessTimeoutInMillis;
+    private final Duration pollInterval;
+    private final LongSupplier clock;
+    private final Scheduler scheduler;
+    private final AtomicReference<Registration> registration = new AtomicReference<>();
+    private final FlowableProcessor<ServiceRecordChange> changes = PublishProcessor.<ServiceRecordChange>create().toSerialized();
+    private final AtomicReference<Disposable> polling = new AtomicReference<>();
+    private Map<String, ServiceRecord> polledRecords = Collections.emptyMap();
+    private boolean isClosed;
+    private volatile ServiceRecordIndex index = ServiceRecordIndex.EMPTY;
+
+    private MappedFileServiceRegistry(Builder builder) {
+        super(builder.commandHandlerRegistry, builder.mapper, builder.options);
+        this.slots = ServiceRecordSlots.open(builder.path, builder.slotCount, builder.slotSize);
+        this.serviceRecord = builder.serviceRecord;
+        this.heartbeatInterval = builder.heartbeatInterval;
+        this.livenessTimeoutInMillis = builder.livenessTimeout.toMillis();
+        this.pollInterval = builder.pollInterval;
+        this.clock = builder.clock;
+        this.scheduler = builder.scheduler;
+    }
+
+    /**
+     * Looks records up in the index, which is updated every poll interval
+     */
+    @Override
+    protected Flowable<List<ServiceRecord>> findRecordsOf(Command command) {
+        return Flowable.fromCallable(() -> {
+            startPolling();
+            return index.find(command);
+        }).filter(records -> !records.isEmpty());
+    }
+
+    /**
+     * Pushes added, updated and removed records, including records whose heartbeat has expired, found by every poll
+     */
+    @Override
+    protected Flowable<ServiceRecordChange> watch() {
+        return Flowable.defer(() -> {
+            startPolling();
+            return changes.onBackpressureBuffer();
+        });
+    }
+
+    private void startPolling() {
+        if (polling.get() != null) return;
+        synchronized (this) {
+            if (polling.get() != null || isClosed) return;
+            poll();
+            polling.set(scheduler.schedulePeriodicallyDirect(this::poll,
+                    pollInterval.toNanos(), pollInterval.toNanos(), TimeUnit.NANOSECONDS));
+        }
+    }
+
+    private void poll() {
+        final List<ServiceRecordChange> polledChanges;
+        synchronized (this) {
+            if (isClosed) return;
+            final Map<String, ServiceRecord> current = recordsById(aliveRecords());
+            polledChanges = changesBetween(polledRecords, current);
+            polledRecords = current;
+            ServiceRecordIndex updated = index;
+            for (ServiceRecordChange change : polledChanges) {
+                updated = updated.apply(change);
+            }
+            index = updated;
+        }
+        polledChanges.forEach(changes::onNext);
+    }
+
+    List<ServiceRecord> aliveRecords() {
+        return slots.aliveRecords(clock.getAsLong(), livenessTimeoutInMillis);
+    }
+
+    static List<ServiceRecordChange> changesBetween(Map<String, ServiceRecord> previous, Map<String, ServiceRecord> current) {
+        if (previous.equals(current)) return Collections.emptyList();
+        final List<ServiceRecordChange> changes = new ArrayList<>();
+        current.forEach((registrationId, record) -> {
+            final ServiceRecord previousRecord = previous.get(registrationId);
+            if (previousRecord == null) {
+                changes.add(ServiceRecordChange.added(record));
+            } else if (!previousRecord.equals(record)) {
+                changes.add(ServiceRecordChange.updated(record));
+            }
+        });
+        previous.forEach((registrationId, record) -> {
+            if (!current.containsKey(registrationId)) changes.add(ServiceRecordChange.removed(record));
+        });
+        return changes;
+    }
+
+    private static Map<String, ServiceRecord> recordsById(List<ServiceRecord> records) {
+        final Map<String, ServiceRecord> recordsById = new HashMap<>(records.size() * 2);
+        records.forEach(record -> recordsById.put(record.registrationId, record));
+        return recordsById;
+    }
+
+    @Override
+    public Flowable<Any> register() {
+        return Flowable.fromCallable(() -> {
+            if (serviceRecord == null) throw new IllegalStateException("There is no service record to register");
+            if (registration.get() != null) return Any.VOID;
+            final FileLock lock = slots.claim();
+            final int slot = slots.slotOf(lock);
+            slots.write(slot, serviceRecord, clock.getAsLong());
+            final Disposable heartbeats = Flowable.interval(heartbeatInterval.toMillis(), heartbeatInterval.toMillis(),
+                    TimeUnit.MILLISECONDS, scheduler)
+                    .subscribe(tick -> slots.heartbeat(slot, clock.getAsLong()));
+            if (!registration.compareAndSet(null, new Registration(lock, slot, heartbeats))) {
+                new Registration(lock, slot, heartbeats).release(slots);
+            }
+            return Any.VOID;
+        });
+    }
+
+    @Override
+    public Flowable<Any> unregister() {
+        return Flowable.fromCallable(() -> {
+            final Registration current = registration.getAndSet(null);
+            if (current != null) current.release(slots);
+            return Any.VOID;
+        });
+    }
+
+    /**
+     * Unregisters the service, stops background tasks and closes the shared file
+     */
+    @Override
+    public void close() {
+        unregister().blockingFirst();
+        final Disposable task = polling.getAndSet(null);
+        if (task != null) task.dispose();
+        super.close();
+        changes.onComplete();
+        synchronized (this) {
+            isClosed = true;
+            slots.close();
+        }
+    }
+
+    private static final class Registration {
+
+        private final FileLock lock;
+        private final int slot;
+        private final Disposable heartbeats;
+
+        private Registration(FileLock lock, int slot, Disposable heartbeats) {
+            this.lock = lock;
+            this.slot = slot;
+            this.heartbeats = heartbeats;
+        }
+
+        private void release(ServiceRecordSlots slots) throws IOException {
+            heartbeats.dispose();
+            slots.clear(slot);
+            lock.release();
+        }
+    }
+
+    public static final class Builder {
+
+        private Path path;
+        private ServiceRecord serviceRecord;
+        private CommandHandlerRegistry commandHandlerRegistry;
+        private ServiceRegistryMapper mapper;
+        private ServiceRegistryOptions options = ServiceRegistryOptions.defaults();
+        private int slotCount = DEFAULT_SLOT_COUNT;
+        private int slotSize = DEFAULT_SLOT_SIZE;
+        private Duration heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+        private Duration livenessTimeout = DEFAULT_LIVENESS_TIMEOUT;
+        private Duration pollInterval = DEFAULT_POLL_INTERVAL;
+        private LongSupplier clock = System::currentTimeMillis;
+        private Scheduler scheduler = Schedulers.io();
+
+        public static Builder create() {
+            return new Builder();
+        }
+
+        /**
+         * @param path file shared by all processes on the host, it is created if it does not exist
+         * @return Builder
+         */
+        public Builder path(Path path) {
+            Objects.requireNonNull(path, "path cannot be null");
+            this.path = path;
+            return this;
+        }
+
+        /**
+         * @param serviceRecord record of this process, which is written on {@link #register()},
+         *                      not needed if this process only discovers other services
+         * @return Builder
+         */
+        public Builder serviceRecord(ServiceRecord serviceRecord) {
+            this.serviceRecord = serviceRecord;
+            return this;
+        }
+
+        public Builder commandHandlerRegistry(CommandHandlerRegistry commandHandlerRegistry) {
+            Objects.requireNonNull(commandHandlerRegistry, "commandHandlerRegistry cannot be null");
+            this.commandHandlerRegistry = commandHandlerRegistry;
+            return this;
+        }
+
+        public Builder mapper(ServiceRegistryMapper mapper) {
+            Objects.requireNonNull(mapper, "mapper cannot be null");
+            this.mapper = mapper;
+            return this;
+        }
+
+        public Builder options(ServiceRegistryOptions options) {
+            Objects.requireNonNull(options, "options cannot be null");
+            this.options = options;
+            return this;
+        }
+
+        /**
+         * Sets slot count and size used if the file does not exist yet, otherwise they are read from the file
+         * @param slotCount maximum number of registered processes
+         * @param slotSize size of every slot in bytes, including {@value ServiceRecordSlots#SLOT_HEADER_SIZE} bytes of slot header
+         * @return Builder
+         */
+        public Builder slots(int slotCount, int slotSize) {
+            this.slotCount = slotCount;
+            this.slotSize = slotSize;
+            return this;
+        }
+
+        public Builder heartbeatInterval(Duration heartbeatInterval) {
+            Objects.requireNonNull(heartbeatInterval, "heartbeatInterval cannot be null");
+            if (heartbeatInterval.isZero() || heartbeatInterval.isNegative())
+                throw new IllegalArgumentException("heartbeatInterval should be positive but was " + heartbeatInterval);
+            this.heartbeatInterval = heartbeatInterval;
+            return this;
+        }
+
+        public Builder livenessTimeout(Duration livenessTimeout) {
+            Objects.requireNonNull(livenessTimeout, "livenessTimeout cannot be null");
+            if (livenessTimeout.isZero() || livenessTimeout.isNegative())
+                throw new IllegalArgumentException("livenessTimeout should be positive but was " + livenessTimeout);
+            this.livenessTimeout = livenessTimeout;
+            return this;
+        }
+
+        public Builder pollInterval(Duration pollInterval) {
+            Objects.requireNonNull(pollInterval, "pollInterval cannot be null");
+            if (pollInterval.isZero() || pollInterval.isNegative())
+                throw new IllegalArgumentException("pollInterval should be positive but was " + pollInterval);
+            this.pollInterval = pollInterval;
+            return this;
+        }
+
+        /**
+         * @param clock wall clock in millis, which is shared by all processes on the host
+         * @return Builder
+         */
+        public Builder clock(LongSupplier clock) {
+            Objects.requireNonNull(clock, "clock cannot be null");
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @param scheduler scheduler of heartbeats and polls of the shared file
+         * @return Builder
+         */
+        public Builder scheduler(Scheduler scheduler) {
+            Objects.requireNonNull(scheduler, "scheduler cannot be null");
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public MappedFileServiceRegistry build() {
+            Objects.requireNonNull(path, "path cannot be null");
+            Objects.requireNonNull(commandHandlerRegistry, "commandHandlerRegistry cannot be null");
+            Objects.requireNonNull(mapper, "mapper cannot be null");
+            if (livenessTimeout.compareTo(heartbeatInterval) <= 0)
+                throw new IllegalArgumentException("livenessTimeout should be longer than heartbeatInterval but was " + livenessTimeout);
+            return new MappedFileServiceRegistry(this);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package net.soundvibe.reacto.discovery;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free counters of requests in flight per record
+ */
+public final class OutstandingRequests<T> {
+
+    private final Map<T, AtomicInteger> counters = new ConcurrentHashMap<>();
+
+    public int count(T record) {
+        final AtomicInteger counter = counters.get(record);
+        return counter == null ? 0 : counter.get();
+    }
+
+    public int increment(T record) {
+        return counterOf(record).incrementAndGet();
+    }
+
+    public int decrement(T record) {
+        final AtomicInteger counter = counters.get(record);
+        if (counter == null) return 0;
+        while (true) {
+            final int current = counter.get();
+            if (current <= 0) return 0;
+            if (counter.compareAndSet(current, current - 1)) return current - 1;
+        }
+    }
+
+    public void remove(T record) {
+        counters.remove(record);
+    }
+
+    private AtomicInteger counterOf(T record) {
+        final AtomicInteger counter = counters.get(record);
+        return counter != null ? counter : counters.computeIfAbsent(record, key -> new AtomicInteger());
+    }
+}
@@ -0,0 +1,121 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.utils.*;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency aware load balancer, modelled after Finagle's Peak EWMA.
+ * Every record is scored by peak-sensitive exponentially weighted moving average of its latency,
+ * multiplied by the number of its outstanding requests + 1. Latency spikes are picked up immediately,
+ * while improvements are averaged in over the decay time. Cost decays towards zero while record is idle,
+ * so that slow records are retried eventually. Two distinct records are picked at random and request is sent
+ * to the one with lower score.
+ */
+public final class PeakEwmaLoadBalancer<T> implements LoadBalancer<T> {
+
+    public static final Duration DEFAULT_DECAY_TIME = Duration.ofSeconds(10L);
+
+    private static final double PENALTY = (double) (Long.MAX_VALUE >> 16);
+
+    private final double decayTimeInNanos;
+    private final Ticker ticker;
+    private final RandomSource random;
+    private final Map<T, Cost> costs = new ConcurrentHashMap<>();
+
+    public PeakEwmaLoadBalancer() {
+        this(DEFAULT_DECAY_TIME, Ticker.SYSTEM);
+    }
+
+    public PeakEwmaLoadBalancer(Duration decayTime, Ticker ticker) {
+        this(decayTime, ticker, RandomSource.THREAD_LOCAL);
+    }
+
+    public PeakEwmaLoadBalancer(Duration decayTime, Ticker ticker, RandomSource random) {
+        Objects.requireNonNull(decayTime, "decayTime cannot be null");
+        Objects.requireNonNull(ticker, "ticker cannot be null");
+        Objects.requireNonNull(random, "random cannot be null");
+        if (decayTime.isNegative() || decayTime.isZero()) throw new IllegalArgumentException("decayTime should be positive but was " + decayTime);
+        this.decayTimeInNanos = decayTime.toNanos();
+        this.ticker = ticker;
+        this.random = random;
+    }
+
+    @Override
+    public T balance(List<T> records) {
+        final int size = records.size();
+        if (size == 0) throw new IllegalArgumentException("No elements to balance");
+        if (size == 1) return records.get(0);
+
+        final int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) second++;
+
+        final T firstRecord = records.get(first);
+        final T secondRecord = records.get(second);
+        return load(firstRecord) <= load(secondRecord) ? firstRecord : secondRecord;
+    }
+
+    @Override
+    public void onRequestStart(T record) {
+        costOf(record).start();
+    }
+
+    @Override
+    public void onRequestFinish(T record, long latencyInNanos, boolean isSuccessful) {
+        costOf(record).finish(latencyInNanos, ticker.nanoTime());
+    }
+
+    /**
+     * @param record record to score
+     * @return current score of the record, lower is better
+     */
+    public double load(T record) {
+        final Cost cost = costs.get(record);
+        return cost == null ? 0.0 : cost.load(ticker.nanoTime());
+    }
+
+    @Override
+    public void remove(T record) {
+        costs.remove(record);
+    }
+
+    private Cost costOf(T record) {
+        final Cost cost = costs.get(record);
+        return cost != null ? cost : costs.computeIfAbsent(record, key -> new Cost(ticker.nanoTime()));
+    }
+
+    private final class Cost {
+
+        private long stamp;
+        private double cost;
+        private int pending;
+
+        private Cost(long now) {
+            this.stamp = now;
+        }
+
+        private synchronized void start() {
+            pending++;
+        }
+
+        private synchronized void finish(long latencyInNanos, long now) {
+            if (pending > 0) pending--;
+            observe(latencyInNanos, now);
+        }
+
+        private synchronized double load(long now) {
+            observe(0.0, now);
+            return cost == 0.0 && pending != 0 ? PENALTY + pending : cost * (pending + 1);
+        }
+
+        private void observe(double latencyInNanos, long now) {
+            final long elapsed = Math.max(now - stamp, 0L);
+            stamp = now;
+            final double weight = Math.exp(-elapsed / decayTimeInNanos);
+            cost = latencyInNanos > cost ? latencyInNanos : cost * weight + latencyInNanos * (1.0 - weight);
+        }
+    }
+}
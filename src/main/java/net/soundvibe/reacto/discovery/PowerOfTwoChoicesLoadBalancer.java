@@ -0,0 +1,60 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.utils.RandomSource;
+
+import java.util.*;
+
+/**
+ * Picks two distinct records at random and sends request to the one with fewer outstanding requests.
+ * Outstanding requests are tracked using {@link LoadBalancer#onRequestStart(Object)}
+ * and {@link LoadBalancer#onRequestFinish(Object, long, boolean)} callbacks.
+ */
+public final class PowerOfTwoChoicesLoadBalancer<T> implements LoadBalancer<T> {
+
+    private final RandomSource random;
+    private final OutstandingRequests<T> outstandingRequests = new OutstandingRequests<>();
+
+    public PowerOfTwoChoicesLoadBalancer() {
+        this(RandomSource.THREAD_LOCAL);
+    }
+
+    public PowerOfTwoChoicesLoadBalancer(RandomSource random) {
+        Objects.requireNonNull(random, "random cannot be null");
+        this.random = random;
+    }
+
+    @Override
+    public T balance(List<T> records) {
+        final int size = records.size();
+        if (size == 0) throw new IllegalArgumentException("No elements to balance");
+        if (size == 1) return records.get(0);
+
+        final int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) second++;
+
+        final T firstRecord = records.get(first);
+        final T secondRecord = records.get(second);
+        return outstandingRequests.count(firstRecord) <= outstandingRequests.count(secondRecord) ?
+                firstRecord : secondRecord;
+    }
+
+    @Override
+    public void onRequestStart(T record) {
+        outstandingRequests.increment(record);
+    }
+
+    @Override
+    public void onRequestFinish(T record, long latencyInNanos, boolean isSuccessful) {
+        outstandingRequests.decrement(record);
+    }
+
+    @Override
+    public void remove(T record) {
+        outstandingRequests.remove(record);
+    }
+
+    public int outstandingRequests(T record) {
+        return outstandingRequests.count(record);
+    }
+}
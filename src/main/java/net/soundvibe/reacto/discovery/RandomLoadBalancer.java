@@ -1,5 +1,7 @@
 package net.soundvibe.reacto.discovery;
 
+import net.soundvibe.reacto.utils.RandomSource;
+
 import java.util.*;
 
 /**
@@ -7,8 +9,20 @@ import java.util.*;
  */
 public final class RandomLoadBalancer<T> implements LoadBalancer<T> {
 
+    private final RandomSource random;
+
+    public RandomLoadBalancer() {
+        this(RandomSource.THREAD_LOCAL);
+    }
+
+    public RandomLoadBalancer(RandomSource random) {
+        Objects.requireNonNull(random, "random cannot be null");
+        this.random = random;
+    }
+
     @Override
     public T balance(List<T> records) {
-        return records.get(new Random().nextInt(records.size()));
+        if (records.isEmpty()) throw new IllegalArgumentException("No elements to balance");
+        return records.get(random.nextInt(records.size()));
     }
 }
@@ -0,0 +1,59 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.utils.*;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Highest random weight (rendezvous) hashing: every record is scored by the hash of its id combined with the
+ * command key and the record with the highest score wins. Adding or removing a record remaps only the keys,
+ * which this record wins, i.e. about 1/N of the keys.
+ */
+public final class RendezvousHashLoadBalancer<T> extends AbstractHashLoadBalancer<T> {
+
+    public RendezvousHashLoadBalancer(CommandHashKey hashKey, Function<? super T, String> nodeId) {
+        this(hashKey, nodeId, DEFAULT_BALANCE_FACTOR);
+    }
+
+    /**
+     * @param hashKey extracts the key of the command
+     * @param nodeId extracts stable id of the record
+     * @param balanceFactor maximum load of a record relative to average load, {@link Double#POSITIVE_INFINITY} disables spill over
+     */
+    public RendezvousHashLoadBalancer(CommandHashKey hashKey, Function<? super T, String> nodeId, double balanceFactor) {
+        this(hashKey, nodeId, balanceFactor, RandomSource.THREAD_LOCAL);
+    }
+
+    /**
+     * @param random picks records for commands without a key
+     */
+    public RendezvousHashLoadBalancer(CommandHashKey hashKey, Function<? super T, String> nodeId, double balanceFactor,
+                                      RandomSource random) {
+        super(hashKey, nodeId, balanceFactor, random);
+    }
+
+    @Override
+    protected T select(List<T> records, long keyHash) {
+        final int size = records.size();
+        final long[] scores = new long[size];
+        int best = 0;
+        for (int i = 0; i < size; i++) {
+            scores[i] = Hashing.combine(nodeHash(records.get(i)), keyHash);
+            if (scores[i] > scores[best]) best = i;
+        }
+
+        final int capacity = capacity(records);
+        if (hasCapacity(records.get(best), capacity)) return records.get(best);
+
+        final Integer[] ranking = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            ranking[i] = i;
+        }
+        Arrays.sort(ranking, (left, right) -> Long.compare(scores[right], scores[left]));
+        for (Integer index : ranking) {
+            if (hasCapacity(records.get(index), capacity)) return records.get(index);
+        }
+        return records.get(best);
+    }
+}
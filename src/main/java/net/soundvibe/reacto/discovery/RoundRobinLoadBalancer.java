@@ -1,26 +1,22 @@
 package net.soundvibe.reacto.discovery;
 
-import net.soundvibe.reacto.types.Named;
+import net.soundvibe.reacto.internal.*;
 
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Iterates over every set of records independently. Position of every set is kept in a padded atomic counter,
+ * which is shared by all lists with the same records, so that callers may pass freshly built lists.
  * @author OZY on 2016.08.26.
  */
-public final class RoundRobinLoadBalancer<T extends Named> implements LoadBalancer<T> {
+public final class RoundRobinLoadBalancer<T> implements LoadBalancer<T> {
 
-    private final ConcurrentHashMap<String, Integer> cachedRecords = new ConcurrentHashMap<>();
+    private final RecordListStates<PaddedAtomicLong> positions = new RecordListStates<>(PaddedAtomicLong::new);
 
     @Override
     public T balance(List<T> records) {
         if (records.isEmpty()) throw new IllegalArgumentException("No elements to balance");
-        return records.get(cachedRecords.compute(records.get(0).name(), (name, lastIndex) -> {
-            if (lastIndex == null) {
-                return 0;
-            }
-            final int newIndex = lastIndex + 1;
-            return newIndex >= records.size() ? 0 : newIndex;
-        }));
+        final long position = positions.of(records).getAndIncrement();
+        return records.get((int) ((position & Long.MAX_VALUE) % records.size()));
     }
 }
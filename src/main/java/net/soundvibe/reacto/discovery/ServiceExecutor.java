@@ -18,6 +18,10 @@ public interface ServiceExecutor {
         return execute(command, eventClass, LoadBalancers.ROUND_ROBIN, ReactoCommandExecutor.FACTORY);
     }
 
+    default <E,C> Flowable<E> execute(C command, Class<? extends E> eventClass, LoadBalancer<CommandHandler> loadBalancer) {
+        return execute(command, eventClass, loadBalancer, ReactoCommandExecutor.FACTORY);
+    }
+
     default <E,C> Flowable<E> execute(C command, Class<? extends E> eventClass, CommandExecutorFactory commandExecutorFactory) {
         return execute(command, eventClass, LoadBalancers.ROUND_ROBIN, commandExecutorFactory);
     }
@@ -0,0 +1,123 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.discovery.types.*;
+
+import java.util.*;
+
+/**
+ * Versioned view of every record discovered by a service registry. Every change of discovered records increments
+ * the version and is kept in a bounded log, so that followers catch up by applying only what has changed.
+ * A record may be discovered for several commands, so it is counted and removed only when it disappears from all of them.
+ */
+final class ServiceRecordLog {
+
+    private final ServiceRecordChange[] changes;
+    private final Map<String, Tracked> records = new HashMap<>();
+    private long version;
+
+    ServiceRecordLog(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity cannot be less than 1 but was " + capacity);
+        this.changes = new ServiceRecordChange[capacity];
+    }
+
+    /**
+     * Records changes between previous and current records discovered for the same command
+     * @param previous previous records or null if there were none
+     * @param current current records or null if there are none
+     */
+    synchronized void track(List<ServiceRecord> previous, List<ServiceRecord> current) {
+        final Map<String, ServiceRecord> previousById = byId(previous);
+        final Map<String, ServiceRecord> currentById = byId(current);
+        currentById.forEach((registrationId, record) -> {
+            final ServiceRecord previousRecord = previousById.get(registrationId);
+            if (previousRecord == null) {
+                add(record);
+            } else if (previousRecord != record) {
+                update(record);
+            }
+        });
+        previousById.forEach((registrationId, record) -> {
+            if (!currentById.containsKey(registrationId)) remove(registrationId);
+        });
+    }
+
+    synchronized long version() {
+        return version;
+    }
+
+    /**
+     * @param since version known to the caller
+     * @return changes made after given version or every record, if the oldest of them is no longer kept
+     */
+    synchronized ServiceRecordsDelta changesSince(long since) {
+        if (since > version) throw new IllegalArgumentException("since cannot be greater than current version " + version + " but was " + since);
+        if (since < 0L || version - since > changes.length) {
+            final List<ServiceRecord> current = new ArrayList<>(records.size());
+            records.values().forEach(tracked -> current.add(tracked.record));
+            return ServiceRecordsDelta.reset(since, version, current);
+        }
+        final List<ServiceRecordChange> delta = new ArrayList<>((int) (version - since));
+        for (long changeVersion = since + 1L; changeVersion <= version; changeVersion++) {
+            delta.add(changes[indexOf(changeVersion)]);
+        }
+        return ServiceRecordsDelta.of(since, version, delta);
+    }
+
+    private void add(ServiceRecord record) {
+        final Tracked tracked = records.get(record.registrationId);
+        if (tracked == null) {
+            records.put(record.registrationId, new Tracked(record));
+            append(ServiceRecordChange.added(record));
+            return;
+        }
+        tracked.count++;
+        replace(tracked, record);
+    }
+
+    private void update(ServiceRecord record) {
+        final Tracked tracked = records.get(record.registrationId);
+        if (tracked == null) {
+            add(record);
+        } else {
+            replace(tracked, record);
+        }
+    }
+
+    private void replace(Tracked tracked, ServiceRecord record) {
+        if (record.generation() < tracked.record.generation() || tracked.record.equals(record)) return;
+        tracked.record = record;
+        append(ServiceRecordChange.updated(record));
+    }
+
+    private void remove(String registrationId) {
+        final Tracked tracked = records.get(registrationId);
+        if (tracked == null || --tracked.count > 0) return;
+        records.remove(registrationId);
+        append(ServiceRecordChange.removed(tracked.record));
+    }
+
+    private void append(ServiceRecordChange change) {
+        changes[indexOf(++version)] = change;
+    }
+
+    private int indexOf(long changeVersion) {
+        return (int) ((changeVersion - 1L) % changes.length);
+    }
+
+    private static Map<String, ServiceRecord> byId(List<ServiceRecord> records) {
+        if (records == null || records.isEmpty()) return Collections.emptyMap();
+        final Map<String, ServiceRecord> byId = new HashMap<>(records.size() * 2);
+        records.forEach(record -> byId.put(record.registrationId, record));
+        return byId;
+    }
+
+    private static final class Tracked {
+
+        private ServiceRecord record;
+        private int count = 1;
+
+        private Tracked(ServiceRecord record) {
+            this.record = record;
+        }
+    }
+}
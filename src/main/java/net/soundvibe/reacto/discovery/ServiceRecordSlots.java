@@ -0,0 +1,257 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.discovery.types.*;
+import org.slf4j.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed number of service record slots in a memory-mapped file shared by processes on the same host.
+ * <pre>
+ * file header: magic, version, slot count, slot size
+ * slot: sequence, heartbeat millis, payload length, payload (record encoded by ServiceRecordCodec)
+ * </pre>
+ * Every slot is written only by the process, which holds the file lock of its region, so that slot of a crashed process
+ * is reclaimed as soon as the operating system releases its lock. Writer makes sequence odd while it is writing the payload
+ * and even again when it is done (seqlock), readers retry if sequence has changed while they were reading,
+ * so that neither writers nor readers take locks or make system calls. Heartbeat is written outside of the sequence,
+ * so that heartbeats do not invalidate decoded records cached by readers.
+ * Java 8 has no explicit memory fences, so they are made of a volatile write followed by a volatile read.
+ */
+final class ServiceRecordSlots implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ServiceRecordSlots.class);
+
+    static final int MAGIC = 0x52435346;
+    static final int VERSION = 2;
+    static final int FILE_HEADER_SIZE = 64;
+    static final int SLOT_HEADER_SIZE = 24;
+
+    private static final int SEQUENCE_OFFSET = 0;
+    private static final int HEARTBEAT_OFFSET = 8;
+    private static final int LENGTH_OFFSET = 16;
+    private static final int MAX_READ_ATTEMPTS = 64;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+    private final int slotSize;
+    private final AtomicReferenceArray<DecodedSlot> decodedSlots;
+    private volatile int fence;
+
+    private ServiceRecordSlots(Path path, FileChannel channel, MappedByteBuffer buffer, int slotCount, int slotSize) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.slotCount = slotCount;
+        this.slotSize = slotSize;
+        this.decodedSlots = new AtomicReferenceArray<>(slotCount);
+    }
+
+    /**
+     * Opens slots file or creates it with given slot count and size, if it does not exist yet.
+     * Slot count and size of the existing file are used.
+     */
+    static ServiceRecordSlots open(Path path, int slotCount, int slotSize) {
+        Objects.requireNonNull(path, "path cannot be null");
+        if (slotCount < 1) throw new IllegalArgumentException("slotCount should be positive but was " + slotCount);
+        if (slotSize <= SLOT_HEADER_SIZE || slotSize % 8 != 0)
+            throw new IllegalArgumentException("slotSize should be a multiple of 8 greater than " + SLOT_HEADER_SIZE + " but was " + slotSize);
+        FileChannel channel = null;
+        try {
+            final Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            final int[] layout;
+            final FileLock lock = channel.lock(0L, FILE_HEADER_SIZE, false);
+            try {
+                layout = channel.size() < FILE_HEADER_SIZE ? initialize(channel, slotCount, slotSize) : readLayout(channel, path);
+            } finally {
+                lock.release();
+            }
+            final long size = FILE_HEADER_SIZE + (long) layout[0] * layout[1];
+            if (size > Integer.MAX_VALUE) throw new IOException("Slots file is too large: " + path);
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+            buffer.order(ByteOrder.nativeOrder());
+            return new ServiceRecordSlots(path, channel, buffer, layout[0], layout[1]);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int[] initialize(FileChannel channel, int slotCount, int slotSize) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(slotCount).putInt(slotSize).rewind();
+        channel.write(ByteBuffer.allocate(1), FILE_HEADER_SIZE + (long) slotCount * slotSize - 1L);
+        channel.write(header, 0L);
+        channel.force(false);
+        return new int[] {slotCount, slotSize};
+    }
+
+    private static int[] readLayout(FileChannel channel, Path path) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        channel.read(header, 0L);
+        header.flip();
+        if (header.getInt() != MAGIC) throw new IOException("Not a service record slots file: " + path);
+        final int version = header.getInt();
+        if (version != VERSION) throw new IOException("Unsupported service record slots version " + version + ": " + path);
+        return new int[] {header.getInt(), header.getInt()};
+    }
+
+    int slotCount() {
+        return slotCount;
+    }
+
+    /**
+     * @return lock of the first free slot, which is owned by the caller until the lock is released
+     * @throws IllegalStateException if every slot is taken
+     */
+    FileLock claim() {
+        for (int slot = 0; slot < slotCount; slot++) {
+            try {
+                final FileLock lock = channel.tryLock(offsetOf(slot), slotSize, false);
+                if (lock != null) return lock;
+            } catch (OverlappingFileLockException e) {
+                //slot is owned by this JVM
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        throw new IllegalStateException("All " + slotCount + " service record slots are taken in " + path);
+    }
+
+    int slotOf(FileLock lock) {
+        return (int) ((lock.position() - FILE_HEADER_SIZE) / slotSize);
+    }
+
+    void write(int slot, ServiceRecord record, long heartbeat) {
+        final byte[] payload = ServiceRecordCodec.encode(record);
+        if (payload.length > slotSize - SLOT_HEADER_SIZE)
+            throw new IllegalArgumentException("Service record of " + payload.length + " bytes does not fit into slot of " +
+                    (slotSize - SLOT_HEADER_SIZE) + " bytes: " + record);
+        final int offset = offsetOf(slot);
+        final long sequence = beginWrite(offset);
+        buffer.putInt(offset + LENGTH_OFFSET, payload.length);
+        for (int i = 0; i < payload.length; i++) {
+            buffer.put(offset + SLOT_HEADER_SIZE + i, payload[i]);
+        }
+        buffer.putLong(offset + HEARTBEAT_OFFSET, heartbeat);
+        endWrite(offset, sequence);
+    }
+
+    void heartbeat(int slot, long heartbeat) {
+        buffer.putLong(offsetOf(slot) + HEARTBEAT_OFFSET, heartbeat);
+        fullFence();
+    }
+
+    void clear(int slot) {
+        final int offset = offsetOf(slot);
+        final long sequence = beginWrite(offset);
+        buffer.putInt(offset + LENGTH_OFFSET, 0);
+        buffer.putLong(offset + HEARTBEAT_OFFSET, 0L);
+        endWrite(offset, sequence);
+    }
+
+    /**
+     * @param now current time in millis
+     * @param livenessTimeoutInMillis how long record is alive after its last heartbeat
+     * @return records of every slot, whose heartbeat is not older than liveness timeout
+     */
+    List<ServiceRecord> aliveRecords(long now, long livenessTimeoutInMillis) {
+        final List<ServiceRecord> records = new ArrayList<>();
+        for (int slot = 0; slot < slotCount; slot++) {
+            final int offset = offsetOf(slot);
+            final long heartbeat = buffer.getLong(offset + HEARTBEAT_OFFSET);
+            if (heartbeat == 0L || now - heartbeat > livenessTimeoutInMillis) continue;
+            final ServiceRecord record = read(slot, offset);
+            if (record != null) records.add(record);
+        }
+        return records;
+    }
+
+    private ServiceRecord read(int slot, int offset) {
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            final long sequence = buffer.getLong(offset + SEQUENCE_OFFSET);
+            if ((sequence & 1L) != 0L) continue;
+            final DecodedSlot decoded = decodedSlots.get(slot);
+            if (decoded != null && decoded.sequence == sequence) return decoded.record;
+            fullFence();
+            final int length = buffer.getInt(offset + LENGTH_OFFSET);
+            if (length <= 0 || length > slotSize - SLOT_HEADER_SIZE) {
+                fullFence();
+                if (buffer.getLong(offset + SEQUENCE_OFFSET) == sequence) return null;
+                continue;
+            }
+            final byte[] payload = new byte[length];
+            for (int i = 0; i < length; i++) {
+                payload[i] = buffer.get(offset + SLOT_HEADER_SIZE + i);
+            }
+            fullFence();
+            if (buffer.getLong(offset + SEQUENCE_OFFSET) != sequence) continue;
+            try {
+                final ServiceRecord record = ServiceRecordCodec.decode(payload);
+                decodedSlots.set(slot, new DecodedSlot(sequence, record));
+                return record;
+            } catch (RuntimeException e) {
+                log.warn("Unable to decode service record of slot {} in {}", slot, path, e);
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private long beginWrite(int offset) {
+        final long current = buffer.getLong(offset + SEQUENCE_OFFSET);
+        final long sequence = (current & 1L) == 0L ? current + 1L : current;
+        buffer.putLong(offset + SEQUENCE_OFFSET, sequence);
+        fullFence();
+        return sequence;
+    }
+
+    private void endWrite(int offset, long sequence) {
+        fullFence();
+        buffer.putLong(offset + SEQUENCE_OFFSET, sequence + 1L);
+        fullFence();
+    }
+
+    private int offsetOf(int slot) {
+        return FILE_HEADER_SIZE + slot * slotSize;
+    }
+
+    private void fullFence() {
+        fence = 1;
+        if (fence == 0) throw new IllegalStateException("Unreachable");
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(channel);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            log.warn("Unable to close {}", closeable, e);
+        }
+    }
+
+    private static final class DecodedSlot {
+
+        private final long sequence;
+        private final ServiceRecord record;
+
+        private DecodedSlot(long sequence, ServiceRecord record) {
+            this.sequence = sequence;
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package net.soundvibe.reacto.discovery;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import net.soundvibe.reacto.server.CommandRegistry;
+import net.soundvibe.reacto.utils.*;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Configuration of {@link AbstractServiceRegistry}.
+ */
+public final class ServiceRegistryOptions {
+
+    public static final int NO_SUBSETTING = 0;
+    public static final int DEFAULT_CHANGE_LOG_SIZE = 1024;
+
+    private int subsetSize = NO_SUBSETTING;
+    private int clientId = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+    private Duration discoveryCacheTtl = Duration.ofSeconds(10L);
+    private double discoveryCacheJitter = 0.1;
+    private Duration negativeCacheTtl = Duration.ofSeconds(1L);
+    private Duration maxNegativeCacheTtl = Duration.ofSeconds(30L);
+    private Path snapshotPath;
+    private Duration snapshotInterval = Duration.ofSeconds(30L);
+    private Duration evictionInterval = Duration.ofSeconds(10L);
+    private CommandRegistry localCommands;
+    private double remoteShare = 0.0;
+    private int changeLogSize = DEFAULT_CHANGE_LOG_SIZE;
+    private Ticker ticker = Ticker.SYSTEM;
+    private RandomSource random = RandomSource.THREAD_LOCAL;
+    private Scheduler refreshScheduler = Schedulers.io();
+
+    public static ServiceRegistryOptions defaults() {
+        return new ServiceRegistryOptions();
+    }
+
+    public int getSubsetSize() {
+        return subsetSize;
+    }
+
+    /**
+     * Sets how many records of every service this client should use at most (aperture).
+     * Every client gets a stable subset of records and subsets of different clients are spread evenly over all records.
+     * @param subsetSize size of the subset or {@link #NO_SUBSETTING} to use all records
+     * @return ServiceRegistryOptions
+     */
+    public ServiceRegistryOptions setSubsetSize(int subsetSize) {
+        if (subsetSize < 0) throw new IllegalArgumentException("subsetSize cannot be negative but was " + subsetSize);
+        this.subsetSize = subsetSize;
+        return this;
+    }
+
+    public int getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Sets id of this client used to select its subset. Consecutive ids, e.g. ordinals of stateful set members,
+     * give the most even spread; by default random id is used, which balances load on average.
+     * @param clientId non negative client id
+     * @return ServiceRegistryOptions
+     */
+    public ServiceRegistryOptions setClientId(int clientId) {
+        if (clientId < 0) throw new IllegalArgumentException("clientId cannot be negative but was " + clientId);
+        this.clientId = clientId;
+        return this;
+    }
+
+    public Duration getDiscoveryCacheTtl() {
+        return discoveryCacheTtl;
+    }
+
+    /**
+     * Sets how long discovered records are used before they are refreshed in the background.
+     * Stale records are served while refresh is running or if it fails.
+     * @param discoveryCacheTtl time to live of discovered records
+     * @return ServiceRegistryOptions
+     */
+    public ServiceRegistryOptions setDiscoveryCacheTtl(Duration discoveryCacheTtl) {
+        Objects.requireNonNull(discoveryCacheTtl, "discoveryCacheTtl cannot be null");
+        this.discoveryCacheTtl = discoveryCacheTtl;
+        return this;
+    }
+
+    public double getDiscoveryCacheJitter() {
+        return discoveryCacheJitter;
+    }
+
+    /**
+     * Sets random extension of time to live as a fraction of it, so that records of different commands are not refreshed at once
+     * @param discoveryCacheJitter jitter in range [0, 1]
+     * @return ServiceRegistryOptions
+     */
+    public ServiceRegistryOptions setDiscoveryCacheJitter(double discoveryCacheJitter) {
+        if (discoveryCacheJitter < 0.0 || discoveryCacheJitter > 1.0)
+            throw new IllegalArgumentException("discoveryCacheJitter should be in range [0, 1] but was " + discoveryCacheJitter);
+        this.discoveryCacheJitter = discoveryCacheJitter;
+        return this;
+    }
+
+    public Duration getNegativeCacheTtl() {
+        return negativeCacheTtl;
+    }
+
+    /**
+     * Sets how long failed or empty discovery result is returned to callers before discovery is asked again.
+     * It doubles with every consecutive failure up to {@link #getMaxNegativeCacheTtl()}.
+     * @param negativeCacheTtl time to live of failed discovery result or {@link Duration#ZERO} to disable negative caching
+     * @return ServiceRegistryOptions
+     */
+    public ServiceRegistryOptions setNegativeCacheTtl(Duration negativeCacheTtl) {
+        Objects.requireNonNull(negativeCacheTtl, "negativeCacheTtl cannot be null");
+        this.negativeCacheTtl = negativeCacheTtl;
+        return this;
+    }
+
+    public Duration getMaxNegativeCacheTtl() {
+        return maxNegativeCacheTtl;
+    }
+
+    public ServiceRegistryOptions setMaxNegativeCacheTtl(Duration maxNegativeCacheTtl) {
+        Objects.requireNonNull(maxNegativeCacheTtl, "maxNegativeCacheTtl cannot be null");
+        this.maxNegativeCacheTtl = maxNegativeCacheTtl;
+        return this;
+    }
+
+    public Optional<Path> getSnapshotPath() {
+        return Optional.ofNullable(snapshotPath);
+    }
+
+    /**
+     * Sets file, to which discovered records are periodically saved. On startup records are restored from it
+     * and used until they are refreshed from service discovery, so that commands can be executed even if discovery is down.
+     * @param snapshotPath snapshot file or null to disable snapshots
+     * @return ServiceRegistryOptions
+     */
+    public ServiceRegistryOptions setSnapshotPath(Path snapshotPath) {
+        this.snapshotPath = snapshotPath;
+        return this;
+    }
+
+    public Duration getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public ServiceRegistryOptions setSnapshotInterval(Duration snapshotInterval) {
+        Objects.requireNonNull(snapshotInterval, "snapshotInterval cannot be null");
+        if (snapshotInterval.isZero() || snapshotInterval.isNegative())
+            throw new IllegalArgumentException("snapshotInterval should be positive but was " + snapshotInterval);
+        this.snapshotInterval = snapshotInterval;
+        return this;
+    }
+
+    public Duration getEvictionInterval() {
+        return evictionInterval;
+    }
+
+    /**
+     * Sets how often command handlers of records, which are not discovered anymore, are looked for and closed.
+     * Handlers are closed after two consecutive evictions, which have not found their records.
+     * @param evictionInterval positive interval between evictions
+     * @return ServiceRegistryOptions
+     */
+    public ServiceRegistryOptions setEvictionInterval(Duration evictionInterval) {
+        Objects.requireNonNull(evictionInterval, "evictionInterval cannot be null");
+        if (evictionInterval.isZero() || evictionInterval.isNegative())
+            throw new IllegalArgumentException("evictionInterval should be positive but was " + evictionInterval);
+        this.evictionInterval = evictionInterval;
+        return this;
+    }
+
+    public Optional<CommandRegistry> getLocalCommands() {
+        return Optional.ofNullable(localCommands);
+    }
+
+    /**
+     * Sets commands, which are registered in this JVM. Such commands are executed in-process instead of being
+     * sent to discovered services and typed commands are passed to their functions without being mapped.
+     * @param localCommands commands of this JVM or null to always use discovered services
+     * @return ServiceRegistryOptions
+     */
+    public ServiceRegistryOptions setLocalCommands(CommandRegistry localCommands) {
+        this.localCommands = localCommands;
+        return this;
+    }
+
+    public double getRemoteShare() {
+        return remoteShare;
+    }
+
+    /**
+     * Sets share of local commands, which are still sent to discovered services, so that load is spread to them too
+     * @param remoteShare share in range [0, 1]
+     * @return ServiceRegistryOptions
+     */
+    public ServiceRegistryOptions setRemoteShare(double remoteShare) {
+        if (remoteShare < 0.0 || remoteShare > 1.0)
+            throw new IllegalArgumentException("remoteShare should be in range [0, 1] but was " + remoteShare);
+        this.remoteShare = remoteShare;
+        return this;
+    }
+
+    public int getChangeLogSize() {
+        return changeLogSize;
+    }
+
+    /**
+     * Sets how many latest changes of discovered records are kept for {@link AbstractServiceRegistry#changesSince(long)},
+     * callers, which are further behind, receive all records instead
+     * @param changeLogSize number of kept changes
+     * @return ServiceRegistryOptions
+     */
+    public ServiceRegistryOptions setChangeLogSize(int changeLogSize) {
+        if (changeLogSize < 1) throw new IllegalArgumentException("changeLogSize cannot be less than 1 but was " + changeLogSize);
+        this.changeLogSize = changeLogSize;
+        return this;
+    }
+
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    public ServiceRegistryOptions setTicker(Ticker ticker) {
+        Objects.requireNonNull(ticker, "ticker cannot be null");
+        this.ticker = ticker;
+        return this;
+    }
+
+    public RandomSource getRandom() {
+        return random;
+    }
+
+    /**
+     * Sets source of randomness, which decides whether a local command is sent to discovered services,
+     * e.g. a seeded one to replay a simulation
+     * @param random source of randomness
+     * @return ServiceRegistryOptions
+     */
+    public ServiceRegistryOptions setRandom(RandomSource random) {
+        Objects.requireNonNull(random, "random cannot be null");
+        this.random = random;
+        return this;
+    }
+
+    public Scheduler getRefreshScheduler() {
+        return refreshScheduler;
+    }
+
+    /**
+     * Sets scheduler, on which discovery cache refreshes expired records, so that commands are not delayed by discovery
+     * @param refreshScheduler scheduler of background refreshes
+     * @return ServiceRegistryOptions
+     */
+    public ServiceRegistryOptions setRefreshScheduler(Scheduler refreshScheduler) {
+        Objects.requireNonNull(refreshScheduler, "refreshScheduler cannot be null");
+        this.refreshScheduler = refreshScheduler;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceRegistryOptions{" +
+                "subsetSize=" + subsetSize +
+                ", clientId=" + clientId +
+                ", discoveryCacheTtl=" + discoveryCacheTtl +
+                ", discoveryCacheJitter=" + discoveryCacheJitter +
+                ", negativeCacheTtl=" + negativeCacheTtl +
+                ", maxNegativeCacheTtl=" + maxNegativeCacheTtl +
+                ", snapshotPath=" + snapshotPath +
+                ", snapshotInterval=" + snapshotInterval +
+                ", evictionInterval=" + evictionInterval +
+                ", localCommands=" + localCommands +
+                ", remoteShare=" + remoteShare +
+                ", changeLogSize=" + changeLogSize +
+                '}';
+    }
+}
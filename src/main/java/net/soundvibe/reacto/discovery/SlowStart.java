@@ -0,0 +1,82 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.utils.Ticker;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ramps up the weight of newly discovered records linearly over the configured window,
+ * so that cold instances are not flooded as soon as they appear in discovery.
+ * Records, none of which was seen before, e.g. records of a service, which is balanced for the first time,
+ * are considered warm, so that a shared instance ramps up only records, which join records already in use.
+ */
+public final class SlowStart<T> {
+
+    public static final double DEFAULT_MIN_WEIGHT_FACTOR = 0.1;
+
+    private final long windowInNanos;
+    private final double minWeightFactor;
+    private final Ticker ticker;
+    private final Map<T, Long> firstSeenAt = new ConcurrentHashMap<>();
+
+    public SlowStart(Duration window) {
+        this(window, DEFAULT_MIN_WEIGHT_FACTOR, Ticker.SYSTEM);
+    }
+
+    /**
+     * @param window duration during which weight of a new record grows to its full value
+     * @param minWeightFactor factor of the full weight, which new record starts with, in range (0, 1]
+     * @param ticker time source
+     */
+    public SlowStart(Duration window, double minWeightFactor, Ticker ticker) {
+        Objects.requireNonNull(window, "window cannot be null");
+        Objects.requireNonNull(ticker, "ticker cannot be null");
+        if (window.isNegative()) throw new IllegalArgumentException("window cannot be negative but was " + window);
+        if (minWeightFactor <= 0.0 || minWeightFactor > 1.0)
+            throw new IllegalArgumentException("minWeightFactor should be in range (0, 1] but was " + minWeightFactor);
+        this.windowInNanos = window.toNanos();
+        this.minWeightFactor = minWeightFactor;
+        this.ticker = ticker;
+    }
+
+    public static <T> SlowStart<T> disabled() {
+        return new SlowStart<>(Duration.ZERO);
+    }
+
+    /**
+     * Remembers when given records were seen for the first time
+     * @param records currently available records
+     */
+    public void observe(List<T> records) {
+        if (windowInNanos == 0L) return;
+        int unseen = 0;
+        for (int i = 0; i < records.size(); i++) {
+            if (!firstSeenAt.containsKey(records.get(i))) unseen++;
+        }
+        if (unseen == 0) return;
+        final long now = ticker.nanoTime();
+        final long seenAt = unseen == records.size() ? now - windowInNanos : now;
+        for (int i = 0; i < records.size(); i++) {
+            firstSeenAt.putIfAbsent(records.get(i), seenAt);
+        }
+    }
+
+    /**
+     * @param record record to check
+     * @return factor in range [minWeightFactor, 1], which the weight of given record should be multiplied by
+     */
+    public double factorOf(T record) {
+        if (windowInNanos == 0L) return 1.0;
+        final Long seenAt = firstSeenAt.get(record);
+        if (seenAt == null) return 1.0;
+        final long elapsed = ticker.nanoTime() - seenAt;
+        if (elapsed >= windowInNanos) return 1.0;
+        return Math.max(minWeightFactor, (double) Math.max(0L, elapsed) / windowInNanos);
+    }
+
+    public void remove(T record) {
+        firstSeenAt.remove(record);
+    }
+}
@@ -0,0 +1,62 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.utils.RandomSource;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * Selects a random record with probability proportional to its weight.
+ * Records with zero weight are skipped unless every record has zero weight.
+ */
+public final class WeightedRandomLoadBalancer<T> implements LoadBalancer<T> {
+
+    private final ToIntFunction<? super T> weightOf;
+    private final SlowStart<T> slowStart;
+    private final RandomSource random;
+
+    public WeightedRandomLoadBalancer(ToIntFunction<? super T> weightOf) {
+        this(weightOf, SlowStart.disabled());
+    }
+
+    public WeightedRandomLoadBalancer(ToIntFunction<? super T> weightOf, SlowStart<T> slowStart) {
+        this(weightOf, slowStart, RandomSource.THREAD_LOCAL);
+    }
+
+    public WeightedRandomLoadBalancer(ToIntFunction<? super T> weightOf, SlowStart<T> slowStart, RandomSource random) {
+        Objects.requireNonNull(weightOf, "weightOf cannot be null");
+        Objects.requireNonNull(slowStart, "slowStart cannot be null");
+        Objects.requireNonNull(random, "random cannot be null");
+        this.weightOf = weightOf;
+        this.slowStart = slowStart;
+        this.random = random;
+    }
+
+    @Override
+    public T balance(List<T> records) {
+        if (records.isEmpty()) throw new IllegalArgumentException("No elements to balance");
+        slowStart.observe(records);
+        final int size = records.size();
+        double totalWeight = 0.0;
+        for (int i = 0; i < size; i++) {
+            totalWeight += effectiveWeightOf(records.get(i));
+        }
+        if (totalWeight <= 0.0) return records.get(random.nextInt(size));
+        double point = random.nextDouble() * totalWeight;
+        for (int i = 0; i < size; i++) {
+            final double weight = effectiveWeightOf(records.get(i));
+            if (point < weight) return records.get(i);
+            point -= weight;
+        }
+        return records.get(size - 1);
+    }
+
+    private double effectiveWeightOf(T record) {
+        return Math.max(0.0, weightOf.applyAsInt(record) * slowStart.factorOf(record));
+    }
+
+    @Override
+    public void remove(T record) {
+        slowStart.remove(record);
+    }
+}
@@ -0,0 +1,80 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.internal.RecordListStates;
+import net.soundvibe.reacto.utils.RandomSource;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * Smooth weighted round robin: every record receives a share of commands proportional to its weight
+ * and picks of heavier records are interleaved with lighter ones instead of being sent in bursts.
+ * Records with zero weight are skipped unless every record has zero weight.
+ * Current weights are kept per set of records, so that only callers of the same records contend.
+ */
+public final class WeightedRoundRobinLoadBalancer<T> implements LoadBalancer<T> {
+
+    private final ToIntFunction<? super T> weightOf;
+    private final SlowStart<T> slowStart;
+    private final RandomSource random;
+    private final RecordListStates<State> states = new RecordListStates<>(State::new);
+
+    public WeightedRoundRobinLoadBalancer(ToIntFunction<? super T> weightOf) {
+        this(weightOf, SlowStart.disabled());
+    }
+
+    public WeightedRoundRobinLoadBalancer(ToIntFunction<? super T> weightOf, SlowStart<T> slowStart) {
+        this(weightOf, slowStart, RandomSource.THREAD_LOCAL);
+    }
+
+    public WeightedRoundRobinLoadBalancer(ToIntFunction<? super T> weightOf, SlowStart<T> slowStart, RandomSource random) {
+        Objects.requireNonNull(weightOf, "weightOf cannot be null");
+        Objects.requireNonNull(slowStart, "slowStart cannot be null");
+        Objects.requireNonNull(random, "random cannot be null");
+        this.weightOf = weightOf;
+        this.slowStart = slowStart;
+        this.random = random;
+    }
+
+    @Override
+    public T balance(List<T> records) {
+        if (records.isEmpty()) throw new IllegalArgumentException("No elements to balance");
+        slowStart.observe(records);
+        final State state = states.of(records);
+        synchronized (state) {
+            final double[] currentWeights = state.currentWeightsOf(records.size());
+            int selected = -1;
+            double totalWeight = 0.0;
+            for (int i = 0; i < records.size(); i++) {
+                final T record = records.get(i);
+                final double effectiveWeight = weightOf.applyAsInt(record) * slowStart.factorOf(record);
+                if (effectiveWeight <= 0.0) continue;
+                currentWeights[i] += effectiveWeight;
+                totalWeight += effectiveWeight;
+                if (selected < 0 || currentWeights[i] > currentWeights[selected]) {
+                    selected = i;
+                }
+            }
+            if (selected < 0) return records.get(random.nextInt(records.size()));
+            currentWeights[selected] -= totalWeight;
+            return records.get(selected);
+        }
+    }
+
+    @Override
+    public void remove(T record) {
+        slowStart.remove(record);
+    }
+
+    private static final class State {
+
+        private double[] currentWeights = new double[0];
+
+        private double[] currentWeightsOf(int size) {
+            if (currentWeights.length != size) {
+                currentWeights = new double[size];
+            }
+            return currentWeights;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.internal.RecordListStates;
+import net.soundvibe.reacto.types.Command;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Wraps other load balancer and narrows records down to the closest locality tier:
+ * records on the same host first, then records in the same zone and only then remote records.
+ * Closer tier is skipped when it has fewer than {@code minimumRecords} available records
+ * (unhealthy handlers are already filtered out by command executor) or when it is saturated,
+ * i.e. its records have {@code maxOutstandingPerRecord} requests in flight on average.
+ * Tiers are computed once per set of records, so that the wrapped load balancer gets the same tier list
+ * on every request and keeps its per list state.
+ */
+public final class ZoneAwareLoadBalancer<T> implements LoadBalancer<T> {
+
+    public static final int DEFAULT_MINIMUM_RECORDS = 1;
+    public static final int DEFAULT_MAX_OUTSTANDING_PER_RECORD = 32;
+
+    private final LoadBalancer<T> delegate;
+    private final String localHost;
+    private final String localZone;
+    private final Function<? super T, String> hostOf;
+    private final Function<? super T, String> zoneOf;
+    private final int minimumRecords;
+    private final int maxOutstandingPerRecord;
+    private final OutstandingRequests<T> outstandingRequests = new OutstandingRequests<>();
+    private final RecordListStates<Tiers<T>> tiers = RecordListStates.computing(this::tiersOf, RecordListStates.DEFAULT_MAXIMUM_SIZE);
+
+    public ZoneAwareLoadBalancer(LoadBalancer<T> delegate, String localHost, String localZone,
+                                 Function<? super T, String> hostOf, Function<? super T, String> zoneOf) {
+        this(delegate, localHost, localZone, hostOf, zoneOf, DEFAULT_MINIMUM_RECORDS, DEFAULT_MAX_OUTSTANDING_PER_RECORD);
+    }
+
+    public ZoneAwareLoadBalancer(LoadBalancer<T> delegate, String localHost, String localZone,
+                                 Function<? super T, String> hostOf, Function<? super T, String> zoneOf,
+                                 int minimumRecords, int maxOutstandingPerRecord) {
+        Objects.requireNonNull(delegate, "delegate cannot be null");
+        Objects.requireNonNull(localHost, "localHost cannot be null");
+        Objects.requireNonNull(localZone, "localZone cannot be null");
+        Objects.requireNonNull(hostOf, "hostOf cannot be null");
+        Objects.requireNonNull(zoneOf, "zoneOf cannot be null");
+        if (minimumRecords < 1) throw new IllegalArgumentException("minimumRecords cannot be less than 1 but was " + minimumRecords);
+        if (maxOutstandingPerRecord < 1)
+            throw new IllegalArgumentException("maxOutstandingPerRecord cannot be less than 1 but was " + maxOutstandingPerRecord);
+        this.delegate = delegate;
+        this.localHost = localHost;
+        this.localZone = localZone;
+        this.hostOf = hostOf;
+        this.zoneOf = zoneOf;
+        this.minimumRecords = minimumRecords;
+        this.maxOutstandingPerRecord = maxOutstandingPerRecord;
+    }
+
+    @Override
+    public T balance(List<T> records) {
+        return delegate.balance(closestTierOf(records));
+    }
+
+    @Override
+    public T balance(List<T> records, Command command) {
+        return delegate.balance(closestTierOf(records), command);
+    }
+
+    @Override
+    public void onRequestStart(T record) {
+        outstandingRequests.increment(record);
+        delegate.onRequestStart(record);
+    }
+
+    @Override
+    public void onRequestFinish(T record, long latencyInNanos, boolean isSuccessful) {
+        outstandingRequests.decrement(record);
+        delegate.onRequestFinish(record, latencyInNanos, isSuccessful);
+    }
+
+    @Override
+    public void remove(T record) {
+        outstandingRequests.remove(record);
+        delegate.remove(record);
+    }
+
+    List<T> closestTierOf(List<T> records) {
+        if (records.isEmpty()) throw new IllegalArgumentException("No elements to balance");
+        final Tiers<T> recordTiers = tiers.of(records);
+        if (isAvailable(recordTiers.sameHost)) return recordTiers.sameHost;
+        if (isAvailable(recordTiers.sameZone)) return recordTiers.sameZone;
+        return records;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Tiers<T> tiersOf(List<?> records) {
+        final List<T> sameHost = new ArrayList<>();
+        final List<T> sameZone = new ArrayList<>();
+        for (Object element : records) {
+            final T record = (T) element;
+            if (!localZone.equals(zoneOf.apply(record))) continue;
+            sameZone.add(record);
+            if (localHost.equals(hostOf.apply(record))) sameHost.add(record);
+        }
+        return new Tiers<>(Collections.unmodifiableList(sameHost), Collections.unmodifiableList(sameZone));
+    }
+
+    private boolean isAvailable(List<T> tier) {
+        if (tier.size() < minimumRecords) return false;
+        long outstanding = 0L;
+        for (int i = 0; i < tier.size(); i++) {
+            outstanding += outstandingRequests.count(tier.get(i));
+        }
+        return outstanding < (long) maxOutstandingPerRecord * tier.size();
+    }
+
+    public int outstandingRequests(T record) {
+        return outstandingRequests.count(record);
+    }
+
+    private static final class Tiers<T> {
+
+        private final List<T> sameHost;
+        private final List<T> sameZone;
+
+        private Tiers(List<T> sameHost, List<T> sameZone) {
+            this.sameHost = sameHost;
+            this.sameZone = sameZone;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package net.soundvibe.reacto.discovery.gossip;
+
+import net.soundvibe.reacto.discovery.types.*;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.util.*;
+
+/**
+ * Gossip protocol datagram. Every message piggybacks member updates. Anti-entropy messages carry compact member digests
+ * (id, incarnation and state) instead of full members, so that only members, which differ, are exchanged.
+ * <pre>
+ * magic, version, type, sender id, sequence, [target id, target host, target port],
+ * member count, [id, host, port, incarnation, state, record length, record encoded by ServiceRecordCodec]...,
+ * digest count, [id, incarnation, state]...,
+ * requested id count, [id]...
+ * </pre>
+ */
+final class GossipMessage {
+
+    static final int MAX_SIZE = 65_000;
+
+    private static final short MAGIC = 0x5247;
+    private static final byte VERSION = 2;
+    // id, host, port, incarnation, state and record length of a member with empty strings and no record
+    private static final int MIN_MEMBER_SIZE = 2 + 2 + 4 + 8 + 1 + 4;
+    private static final int MIN_DIGEST_SIZE = 2 + 8 + 1;
+    private static final int MIN_ID_SIZE = 2;
+
+    enum Type {
+        /**
+         * Direct probe, answered with {@link #ACK}
+         */
+        PING,
+        ACK,
+        /**
+         * Asks receiver to probe the target on behalf of the sender and forward its {@link #ACK}
+         */
+        PING_REQ,
+        /**
+         * Digests of all members known to the sender, answered with {@link #SYNC_REPLY}
+         */
+        SYNC,
+        /**
+         * Members, which are newer than sender's digests, and ids of members, which are newer on the sender
+         */
+        SYNC_REPLY,
+        /**
+         * Members requested in {@link #SYNC_REPLY}
+         */
+        UPDATES
+    }
+
+    static final class Digest {
+
+        final String id;
+        final long incarnation;
+        final Member.State state;
+
+        Digest(String id, long incarnation, Member.State state) {
+            this.id = id;
+            this.incarnation = incarnation;
+            this.state = state;
+        }
+
+        static Digest of(Member member) {
+            return new Digest(member.id, member.incarnation, member.state);
+        }
+    }
+
+    final Type type;
+    final String senderId;
+    final long sequence;
+    final String targetId;
+    final InetSocketAddress targetAddress;
+    final List<Member> members;
+    final List<Digest> digests;
+    final List<String> requestedIds;
+
+    GossipMessage(Type type, String senderId, long sequence, String targetId, InetSocketAddress targetAddress,
+                  List<Member> members, List<Digest> digests, List<String> requestedIds) {
+        this.type = type;
+        this.senderId = senderId;
+        this.sequence = sequence;
+        this.targetId = targetId;
+        this.targetAddress = targetAddress;
+        this.members = members;
+        this.digests = digests;
+        this.requestedIds = requestedIds;
+    }
+
+    static GossipMessage of(Type type, String senderId, long sequence, List<Member> members) {
+        return new GossipMessage(type, senderId, sequence, null, null, members, Collections.emptyList(), Collections.emptyList());
+    }
+
+    byte[] encode() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeShort(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(type.ordinal());
+            out.writeUTF(senderId);
+            out.writeLong(sequence);
+            if (type == Type.PING_REQ) {
+                out.writeUTF(targetId);
+                out.writeUTF(targetAddress.getHostString());
+                out.writeInt(targetAddress.getPort());
+            }
+            out.writeInt(members.size());
+            for (Member member : members) {
+                out.write(encode(member));
+            }
+            out.writeInt(digests.size());
+            for (Digest digest : digests) {
+                out.writeUTF(digest.id);
+                out.writeLong(digest.incarnation);
+                out.writeByte(digest.state.ordinal());
+            }
+            out.writeInt(requestedIds.size());
+            for (String requestedId : requestedIds) {
+                out.writeUTF(requestedId);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] encode(Member member) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(member.id);
+            out.writeUTF(member.address.getHostString());
+            out.writeInt(member.address.getPort());
+            out.writeLong(member.incarnation);
+            out.writeByte(member.state.ordinal());
+            if (member.record == null) {
+                out.writeInt(0);
+            } else {
+                final byte[] record = ServiceRecordCodec.encode(member.record);
+                out.writeInt(record.length);
+                out.write(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @throws IOException if bytes are not a well formed gossip message, e.g. a stray or hostile datagram
+     */
+    static GossipMessage decode(byte[] bytes, int length) throws IOException {
+        try {
+            return read(new DataInputStream(new ByteArrayInputStream(bytes, 0, length)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Malformed gossip message", e);
+        }
+    }
+
+    private static GossipMessage read(DataInputStream in) throws IOException {
+        if (in.readShort() != MAGIC) throw new IOException("Not a gossip message");
+        final byte version = in.readByte();
+        if (version != VERSION) throw new IOException("Unsupported gossip message version " + version);
+        final Type type = Type.values()[in.readUnsignedByte()];
+        final String senderId = in.readUTF();
+        final long sequence = in.readLong();
+        String targetId = null;
+        InetSocketAddress targetAddress = null;
+        if (type == Type.PING_REQ) {
+            targetId = in.readUTF();
+            targetAddress = new InetSocketAddress(in.readUTF(), in.readInt());
+        }
+        final int memberCount = readCount(in, MIN_MEMBER_SIZE);
+        final List<Member> members = new ArrayList<>(memberCount);
+        for (int i = 0; i < memberCount; i++) {
+            final String id = in.readUTF();
+            final InetSocketAddress address = new InetSocketAddress(in.readUTF(), in.readInt());
+            final long incarnation = in.readLong();
+            final Member.State state = Member.State.values()[in.readUnsignedByte()];
+            final byte[] encodedRecord = new byte[readCount(in, 1)];
+            in.readFully(encodedRecord);
+            final ServiceRecord record = encodedRecord.length == 0 ? null : ServiceRecordCodec.decode(encodedRecord);
+            members.add(new Member(id, address, incarnation, state, record));
+        }
+        final int digestCount = readCount(in, MIN_DIGEST_SIZE);
+        final List<Digest> digests = new ArrayList<>(digestCount);
+        for (int i = 0; i < digestCount; i++) {
+            digests.add(new Digest(in.readUTF(), in.readLong(), Member.State.values()[in.readUnsignedByte()]));
+        }
+        final int requestedIdCount = readCount(in, MIN_ID_SIZE);
+        final List<String> requestedIds = new ArrayList<>(requestedIdCount);
+        for (int i = 0; i < requestedIdCount; i++) {
+            requestedIds.add(in.readUTF());
+        }
+        return new GossipMessage(type, senderId, sequence, targetId, targetAddress, members, digests, requestedIds);
+    }
+
+    /**
+     * Reads number of elements or bytes, which cannot take more than the bytes left in the message,
+     * so that a malformed message cannot make the receiver allocate more than the datagram holds
+     */
+    private static int readCount(DataInputStream in, int minElementSize) throws IOException {
+        final int count = in.readInt();
+        if (count < 0 || count > in.available() / minElementSize)
+            throw new IOException("Invalid count " + count + " of elements in remaining " + in.available() + " bytes");
+        return count;
+    }
+}
@@ -0,0 +1,445 @@
+package net.soundvibe.reacto.discovery.gossip;
+
+import net.soundvibe.reacto.discovery.types.ServiceRecord;
+import net.soundvibe.reacto.types.Pair;
+import org.slf4j.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * SWIM cluster member over UDP.
+ * <p>
+ * Every protocol period a member probes the next member of a shuffled round-robin list. If the probe is not acknowledged
+ * within ack timeout, the member is probed indirectly through other members. Members, which did not answer during
+ * the period, are suspected and declared dead if they do not refute suspicion within suspicion timeout.
+ * Membership updates are piggybacked on probes and acknowledgements (infection style dissemination) and are also
+ * periodically reconciled with a random member by exchanging member digests (anti-entropy).
+ * <p>
+ * All membership state is owned by a single protocol thread, datagrams are received on a separate thread.
+ */
+final class GossipNode implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(GossipNode.class);
+
+    private final GossipOptions options;
+    private final String id;
+    private final DatagramChannel channel;
+    private final InetSocketAddress address;
+    private final ScheduledExecutorService protocolThread;
+    private final Thread receiverThread;
+    private final BiConsumer<Member, Member> listener;
+    private final Random random = new Random();
+    private final long syncEveryPeriods;
+
+    private final Map<String, Member> members = new HashMap<>();
+    private final Map<String, Integer> pendingUpdates = new LinkedHashMap<>();
+    private final Map<String, Long> suspectedAt = new HashMap<>();
+    private final Map<String, Long> deadAt = new HashMap<>();
+    private final Map<Long, Pair<InetSocketAddress, Long>> relayedProbes = new HashMap<>();
+    private final List<String> probeOrder = new ArrayList<>();
+    private int probeIndex;
+    private long sequence;
+    private long probeSequence = -1L;
+    private String probeTarget;
+    private boolean isProbeAcked;
+    private long periods;
+    private volatile boolean isClosed;
+
+    /**
+     * @param options gossip options
+     * @param listener notified on the protocol thread with previous and new state of every changed member,
+     *                 new state is null if dead member is forgotten
+     */
+    GossipNode(GossipOptions options, BiConsumer<Member, Member> listener) {
+        Objects.requireNonNull(options, "options cannot be null");
+        Objects.requireNonNull(listener, "listener cannot be null");
+        this.options = options;
+        this.id = options.getNodeId();
+        this.listener = listener;
+        this.syncEveryPeriods = Math.max(1L, options.getSyncInterval().toNanos() / options.getProtocolPeriod().toNanos());
+        try {
+            this.channel = DatagramChannel.open();
+            channel.bind(new InetSocketAddress(options.getBindHost(), options.getPort()));
+            final int port = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+            this.address = new InetSocketAddress(options.getAdvertisedHost().orElseGet(GossipNode::localHost), port);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        members.put(id, new Member(id, address, System.currentTimeMillis(), Member.State.ALIVE, null));
+        this.protocolThread = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "reacto-gossip-" + id));
+        this.receiverThread = daemon(this::receive, "reacto-gossip-receiver-" + id);
+    }
+
+    void start() {
+        receiverThread.start();
+        final long period = options.getProtocolPeriod().toNanos();
+        protocolThread.scheduleAtFixedRate(this::safely, 0L, period, TimeUnit.NANOSECONDS);
+    }
+
+    InetSocketAddress address() {
+        return address;
+    }
+
+    String id() {
+        return id;
+    }
+
+    /**
+     * Publishes new service record of this member, or removes it if record is null, by incrementing its incarnation
+     */
+    void publish(ServiceRecord record) {
+        execute(() -> {
+            final Member self = members.get(id);
+            update(new Member(id, address, self.incarnation + 1L, Member.State.ALIVE, record));
+        });
+    }
+
+    /**
+     * @return snapshot of known members, taken on the protocol thread
+     */
+    List<Member> members() {
+        try {
+            return protocolThread.submit(() -> (List<Member>) new ArrayList<>(members.values())).get(5L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
+        } catch (ExecutionException | TimeoutException | RejectedExecutionException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    private void safely() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            log.warn("Gossip protocol period of {} failed", id, e);
+        }
+    }
+
+    private void tick() {
+        final long now = options.getTicker().nanoTime();
+        if (probeTarget != null && !isProbeAcked) suspect(probeTarget, now);
+        expireSuspicions(now);
+        forgetDeadMembers(now);
+
+        probeTarget = nextProbeTarget();
+        isProbeAcked = false;
+        if (probeTarget != null) {
+            final long probe = ++sequence;
+            final String target = probeTarget;
+            probeSequence = probe;
+            send(members.get(target).address, message(GossipMessage.Type.PING, probe));
+            protocolThread.schedule(() -> probeIndirectly(probe, target),
+                    options.getAckTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        }
+        if (periods++ % syncEveryPeriods == 0L || probeTarget == null) sync();
+    }
+
+    private void probeIndirectly(long probe, String target) {
+        final Member member = members.get(target);
+        if (probe != probeSequence || isProbeAcked || member == null) return;
+        final List<Member> helpers = members.values().stream()
+                .filter(m -> !m.id.equals(id) && !m.id.equals(target) && m.state == Member.State.ALIVE)
+                .collect(toList());
+        Collections.shuffle(helpers, random);
+        for (Member helper : helpers.subList(0, Math.min(options.getIndirectProbes(), helpers.size()))) {
+            send(helper.address, new GossipMessage(GossipMessage.Type.PING_REQ, id, probe, target, member.address,
+                    piggyback(), Collections.emptyList(), Collections.emptyList()));
+        }
+    }
+
+    private void sync() {
+        final List<Member> peers = members.values().stream()
+                .filter(m -> !m.id.equals(id) && m.state != Member.State.DEAD)
+                .collect(toList());
+        final InetSocketAddress target;
+        if (!peers.isEmpty()) {
+            target = peers.get(random.nextInt(peers.size())).address;
+        } else if (!options.getSeeds().isEmpty()) {
+            target = options.getSeeds().get(random.nextInt(options.getSeeds().size()));
+        } else {
+            return;
+        }
+        final List<GossipMessage.Digest> digests = members.values().stream().map(GossipMessage.Digest::of).collect(toList());
+        send(target, new GossipMessage(GossipMessage.Type.SYNC, id, ++sequence, null, null,
+                Collections.emptyList(), digests, Collections.emptyList()));
+    }
+
+    private void handle(GossipMessage message, InetSocketAddress sender) {
+        message.members.forEach(this::apply);
+        switch (message.type) {
+            case PING:
+                send(sender, message(GossipMessage.Type.ACK, message.sequence));
+                break;
+            case PING_REQ:
+                final long relayed = ++sequence;
+                relayedProbes.put(relayed, Pair.of(sender, message.sequence));
+                send(message.targetAddress, message(GossipMessage.Type.PING, relayed));
+                protocolThread.schedule(() -> relayedProbes.remove(relayed),
+                        options.getProtocolPeriod().toNanos(), TimeUnit.NANOSECONDS);
+                break;
+            case ACK:
+                if (message.sequence == probeSequence) {
+                    isProbeAcked = true;
+                } else {
+                    final Pair<InetSocketAddress, Long> requester = relayedProbes.remove(message.sequence);
+                    if (requester != null) send(requester.key, message(GossipMessage.Type.ACK, requester.value));
+                }
+                break;
+            case SYNC:
+                reconcile(message, sender);
+                break;
+            case SYNC_REPLY:
+                sendMembers(sender, message.requestedIds.stream()
+                        .map(members::get)
+                        .filter(Objects::nonNull)
+                        .collect(toList()), Collections.emptyList());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void reconcile(GossipMessage sync, InetSocketAddress sender) {
+        final Map<String, GossipMessage.Digest> digests = new HashMap<>(sync.digests.size() * 2);
+        sync.digests.forEach(digest -> digests.put(digest.id, digest));
+        final List<Member> newer = new ArrayList<>();
+        members.values().forEach(member -> {
+            final GossipMessage.Digest digest = digests.get(member.id);
+            if (digest == null || member.overrides(digest.incarnation, digest.state)) newer.add(member);
+        });
+        final List<String> requestedIds = sync.digests.stream()
+                .filter(digest -> {
+                    final Member member = members.get(digest.id);
+                    return member == null ? digest.state != Member.State.DEAD :
+                            new Member(digest.id, member.address, digest.incarnation, digest.state, null).overrides(member);
+                })
+                .map(digest -> digest.id)
+                .collect(toList());
+        sendMembers(sender, newer, requestedIds);
+    }
+
+    /**
+     * Sends given members in as many datagrams as needed, the first one is SYNC_REPLY with requested ids if there are any
+     */
+    private void sendMembers(InetSocketAddress target, List<Member> membersToSend, List<String> requestedIds) {
+        GossipMessage.Type type = requestedIds.isEmpty() ? GossipMessage.Type.UPDATES : GossipMessage.Type.SYNC_REPLY;
+        List<Member> batch = new ArrayList<>();
+        int size = requestedIds.stream().mapToInt(requestedId -> requestedId.length() + 2).sum();
+        for (Member member : membersToSend) {
+            final int memberSize = GossipMessage.encode(member).length;
+            if (!batch.isEmpty() && size + memberSize > GossipMessage.MAX_SIZE - 512) {
+                send(target, new GossipMessage(type, id, ++sequence, null, null, batch, Collections.emptyList(), requestedIds));
+                type = GossipMessage.Type.UPDATES;
+                requestedIds = Collections.emptyList();
+                batch = new ArrayList<>();
+                size = 0;
+            }
+            batch.add(member);
+            size += memberSize;
+        }
+        if (!batch.isEmpty() || !requestedIds.isEmpty()) {
+            send(target, new GossipMessage(type, id, ++sequence, null, null, batch, Collections.emptyList(), requestedIds));
+        }
+    }
+
+    private void apply(Member incoming) {
+        if (incoming.id.equals(id)) {
+            final Member self = members.get(id);
+            if (incoming.state != Member.State.ALIVE && incoming.incarnation >= self.incarnation) {
+                update(new Member(id, address, incoming.incarnation + 1L, Member.State.ALIVE, self.record));
+            }
+            return;
+        }
+        final Member current = members.get(incoming.id);
+        if (current == null ? incoming.state != Member.State.DEAD : incoming.overrides(current)) {
+            update(incoming);
+        }
+    }
+
+    private void update(Member member) {
+        final Member previous = members.put(member.id, member);
+        final long now = options.getTicker().nanoTime();
+        suspectedAt.remove(member.id);
+        deadAt.remove(member.id);
+        if (member.state == Member.State.SUSPECT) suspectedAt.put(member.id, now);
+        if (member.state == Member.State.DEAD) deadAt.put(member.id, now);
+        pendingUpdates.remove(member.id);
+        pendingUpdates.put(member.id, retransmits());
+        listener.accept(previous, member);
+    }
+
+    private void suspect(String memberId, long now) {
+        final Member member = members.get(memberId);
+        if (member != null && member.state == Member.State.ALIVE) {
+            log.debug("Member {} did not answer the probe of {} and is suspected", memberId, id);
+            update(member.withState(Member.State.SUSPECT));
+        }
+    }
+
+    private void expireSuspicions(long now) {
+        final long timeout = options.getSuspicionTimeout().toNanos();
+        new ArrayList<>(suspectedAt.entrySet()).forEach(entry -> {
+            if (now - entry.getValue() >= timeout) {
+                log.info("Member {} did not refute suspicion and is declared dead by {}", entry.getKey(), id);
+                update(members.get(entry.getKey()).withState(Member.State.DEAD));
+            }
+        });
+    }
+
+    private void forgetDeadMembers(long now) {
+        final long retention = options.getDeadMemberRetention().toNanos();
+        new ArrayList<>(deadAt.entrySet()).forEach(entry -> {
+            if (now - entry.getValue() >= retention) {
+                deadAt.remove(entry.getKey());
+                pendingUpdates.remove(entry.getKey());
+                listener.accept(members.remove(entry.getKey()), null);
+            }
+        });
+    }
+
+    private String nextProbeTarget() {
+        while (true) {
+            if (probeIndex >= probeOrder.size()) {
+                probeOrder.clear();
+                members.values().stream()
+                        .filter(member -> !member.id.equals(id) && member.state != Member.State.DEAD)
+                        .forEach(member -> probeOrder.add(member.id));
+                if (probeOrder.isEmpty()) return null;
+                Collections.shuffle(probeOrder, random);
+                probeIndex = 0;
+            }
+            final Member member = members.get(probeOrder.get(probeIndex++));
+            if (member != null && member.state != Member.State.DEAD) return member.id;
+        }
+    }
+
+    private int retransmits() {
+        final int clusterSize = members.size() + 1;
+        return options.getRetransmitMultiplier() * (32 - Integer.numberOfLeadingZeros(clusterSize));
+    }
+
+    private GossipMessage message(GossipMessage.Type type, long messageSequence) {
+        return GossipMessage.of(type, id, messageSequence, piggyback());
+    }
+
+    private List<Member> piggyback() {
+        if (pendingUpdates.isEmpty() || options.getMaxPiggybackedMembers() == 0) return Collections.emptyList();
+        final List<Member> updates = new ArrayList<>(Math.min(pendingUpdates.size(), options.getMaxPiggybackedMembers()));
+        int size = 0;
+        final Iterator<Map.Entry<String, Integer>> iterator = pendingUpdates.entrySet().iterator();
+        while (iterator.hasNext() && updates.size() < options.getMaxPiggybackedMembers()) {
+            final Map.Entry<String, Integer> entry = iterator.next();
+            final Member member = members.get(entry.getKey());
+            if (member == null) {
+                iterator.remove();
+                continue;
+            }
+            final int memberSize = GossipMessage.encode(member).length;
+            if (size + memberSize > GossipMessage.MAX_SIZE - 512) break;
+            updates.add(member);
+            size += memberSize;
+            if (entry.getValue() <= 1) {
+                iterator.remove();
+            } else {
+                entry.setValue(entry.getValue() - 1);
+            }
+        }
+        return updates;
+    }
+
+    private void send(InetSocketAddress target, GossipMessage message) {
+        if (isClosed) return;
+        try {
+            channel.send(ByteBuffer.wrap(message.encode()), target);
+        } catch (IOException e) {
+            log.debug("Unable to send {} from {} to {}", message.type, id, target, e);
+        }
+    }
+
+    private void receive() {
+        final ByteBuffer buffer = ByteBuffer.allocate(GossipMessage.MAX_SIZE + 1024);
+        while (!isClosed) {
+            try {
+                buffer.clear();
+                final InetSocketAddress sender = (InetSocketAddress) channel.receive(buffer);
+                final GossipMessage message = GossipMessage.decode(buffer.array(), buffer.position());
+                execute(() -> handle(message, sender));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.debug("Unable to receive gossip message by {}", id, e);
+            } catch (Throwable e) {
+                log.error("Unexpected failure while receiving gossip message by {}", id, e);
+            }
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            protocolThread.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.warn("Gossip task of {} failed", id, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Gossip node {} is closed", id);
+        }
+    }
+
+    /**
+     * Tells a few members that this member is leaving and stops gossiping
+     */
+    @Override
+    public void close() {
+        if (isClosed) return;
+        try {
+            protocolThread.submit(() -> {
+                final Member self = members.get(id);
+                final Member leaving = new Member(id, address, self.incarnation, Member.State.DEAD, self.record);
+                final List<Member> peers = members.values().stream()
+                        .filter(m -> !m.id.equals(id) && m.state != Member.State.DEAD)
+                        .collect(toList());
+                Collections.shuffle(peers, random);
+                peers.stream().limit(Math.max(3, options.getIndirectProbes()))
+                        .forEach(peer -> send(peer.address, GossipMessage.of(GossipMessage.Type.UPDATES, id, ++sequence,
+                                Collections.singletonList(leaving))));
+            }).get(5L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | RejectedExecutionException e) {
+            log.debug("Unable to tell members that {} is leaving", id, e);
+        }
+        isClosed = true;
+        protocolThread.shutdownNow();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Unable to close gossip channel of {}", id, e);
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static String localHost() {
+        try {
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            return "127.0.0.1";
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package net.soundvibe.reacto.discovery.gossip;
+
+import net.soundvibe.reacto.internal.ObjectId;
+import net.soundvibe.reacto.utils.Ticker;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Configuration of {@link GossipServiceRegistry}.
+ */
+public final class GossipOptions {
+
+    private String nodeId = ObjectId.get().toString();
+    private String bindHost = "0.0.0.0";
+    private String advertisedHost;
+    private int port = 0;
+    private List<InetSocketAddress> seeds = Collections.emptyList();
+    private Duration protocolPeriod = Duration.ofSeconds(1L);
+    private Duration ackTimeout = Duration.ofMillis(300L);
+    private int indirectProbes = 3;
+    private Duration suspicionTimeout = Duration.ofSeconds(5L);
+    private Duration syncInterval = Duration.ofSeconds(10L);
+    private Duration deadMemberRetention = Duration.ofMinutes(1L);
+    private int retransmitMultiplier = 3;
+    private int maxPiggybackedMembers = 8;
+    private Ticker ticker = Ticker.SYSTEM;
+
+    public static GossipOptions defaults() {
+        return new GossipOptions();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public GossipOptions setNodeId(String nodeId) {
+        Objects.requireNonNull(nodeId, "nodeId cannot be null");
+        this.nodeId = nodeId;
+        return this;
+    }
+
+    public String getBindHost() {
+        return bindHost;
+    }
+
+    public GossipOptions setBindHost(String bindHost) {
+        Objects.requireNonNull(bindHost, "bindHost cannot be null");
+        this.bindHost = bindHost;
+        return this;
+    }
+
+    public Optional<String> getAdvertisedHost() {
+        return Optional.ofNullable(advertisedHost);
+    }
+
+    /**
+     * @param advertisedHost host, on which other members reach this member, local address is used by default
+     * @return GossipOptions
+     */
+    public GossipOptions setAdvertisedHost(String advertisedHost) {
+        this.advertisedHost = advertisedHost;
+        return this;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @param port UDP port, 0 means any free port
+     * @return GossipOptions
+     */
+    public GossipOptions setPort(int port) {
+        if (port < 0 || port > 65535) throw new IllegalArgumentException("port should be in range [0, 65535] but was " + port);
+        this.port = port;
+        return this;
+    }
+
+    public List<InetSocketAddress> getSeeds() {
+        return seeds;
+    }
+
+    /**
+     * @param seeds addresses of members, which are contacted to join the cluster
+     * @return GossipOptions
+     */
+    public GossipOptions setSeeds(List<InetSocketAddress> seeds) {
+        Objects.requireNonNull(seeds, "seeds cannot be null");
+        this.seeds = Collections.unmodifiableList(new ArrayList<>(seeds));
+        return this;
+    }
+
+    public Duration getProtocolPeriod() {
+        return protocolPeriod;
+    }
+
+    /**
+     * Sets how often a random member is probed for failure detection
+     * @param protocolPeriod period of the failure detector
+     * @return GossipOptions
+     */
+    public GossipOptions setProtocolPeriod(Duration protocolPeriod) {
+        Objects.requireNonNull(protocolPeriod, "protocolPeriod cannot be null");
+        if (protocolPeriod.isZero() || protocolPeriod.isNegative())
+            throw new IllegalArgumentException("protocolPeriod should be positive but was " + protocolPeriod);
+        this.protocolPeriod = protocolPeriod;
+        return this;
+    }
+
+    public Duration getAckTimeout() {
+        return ackTimeout;
+    }
+
+    /**
+     * Sets how long probed member is waited for before it is probed indirectly through other members
+     * @param ackTimeout timeout of direct probe, should be shorter than protocol period
+     * @return GossipOptions
+     */
+    public GossipOptions setAckTimeout(Duration ackTimeout) {
+        Objects.requireNonNull(ackTimeout, "ackTimeout cannot be null");
+        if (ackTimeout.isZero() || ackTimeout.isNegative())
+            throw new IllegalArgumentException("ackTimeout should be positive but was " + ackTimeout);
+        this.ackTimeout = ackTimeout;
+        return this;
+    }
+
+    public int getIndirectProbes() {
+        return indirectProbes;
+    }
+
+    public GossipOptions setIndirectProbes(int indirectProbes) {
+        if (indirectProbes < 0) throw new IllegalArgumentException("indirectProbes cannot be negative but was " + indirectProbes);
+        this.indirectProbes = indirectProbes;
+        return this;
+    }
+
+    public Duration getSuspicionTimeout() {
+        return suspicionTimeout;
+    }
+
+    /**
+     * Sets how long suspected member has to refute suspicion before it is declared dead
+     * @param suspicionTimeout suspicion timeout
+     * @return GossipOptions
+     */
+    public GossipOptions setSuspicionTimeout(Duration suspicionTimeout) {
+        Objects.requireNonNull(suspicionTimeout, "suspicionTimeout cannot be null");
+        if (suspicionTimeout.isNegative()) throw new IllegalArgumentException("suspicionTimeout cannot be negative but was " + suspicionTimeout);
+        this.suspicionTimeout = suspicionTimeout;
+        return this;
+    }
+
+    public Duration getSyncInterval() {
+        return syncInterval;
+    }
+
+    /**
+     * Sets how often member digests are exchanged with a random member (anti-entropy)
+     * @param syncInterval interval of push-pull synchronization
+     * @return GossipOptions
+     */
+    public GossipOptions setSyncInterval(Duration syncInterval) {
+        Objects.requireNonNull(syncInterval, "syncInterval cannot be null");
+        if (syncInterval.isZero() || syncInterval.isNegative())
+            throw new IllegalArgumentException("syncInterval should be positive but was " + syncInterval);
+        this.syncInterval = syncInterval;
+        return this;
+    }
+
+    public Duration getDeadMemberRetention() {
+        return deadMemberRetention;
+    }
+
+    public GossipOptions setDeadMemberRetention(Duration deadMemberRetention) {
+        Objects.requireNonNull(deadMemberRetention, "deadMemberRetention cannot be null");
+        if (deadMemberRetention.isNegative())
+            throw new IllegalArgumentException("deadMemberRetention cannot be negative but was " + deadMemberRetention);
+        this.deadMemberRetention = deadMemberRetention;
+        return this;
+    }
+
+    public int getRetransmitMultiplier() {
+        return retransmitMultiplier;
+    }
+
+    /**
+     * Sets how many times, multiplied by log2 of cluster size, every membership update is piggybacked
+     * @param retransmitMultiplier retransmit multiplier
+     * @return GossipOptions
+     */
+    public GossipOptions setRetransmitMultiplier(int retransmitMultiplier) {
+        if (retransmitMultiplier < 1)
+            throw new IllegalArgumentException("retransmitMultiplier cannot be less than 1 but was " + retransmitMultiplier);
+        this.retransmitMultiplier = retransmitMultiplier;
+        return this;
+    }
+
+    public int getMaxPiggybackedMembers() {
+        return maxPiggybackedMembers;
+    }
+
+    public GossipOptions setMaxPiggybackedMembers(int maxPiggybackedMembers) {
+        if (maxPiggybackedMembers < 0)
+            throw new IllegalArgumentException("maxPiggybackedMembers cannot be negative but was " + maxPiggybackedMembers);
+        this.maxPiggybackedMembers = maxPiggybackedMembers;
+        return this;
+    }
+
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    public GossipOptions setTicker(Ticker ticker) {
+        Objects.requireNonNull(ticker, "ticker cannot be null");
+        this.ticker = ticker;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "GossipOptions{" +
+                "nodeId='" + nodeId + '\'' +
+                ", bindHost='" + bindHost + '\'' +
+                ", advertisedHost='" + advertisedHost + '\'' +
+                ", port=" + port +
+                ", seeds=" + seeds +
+                ", protocolPeriod=" + protocolPeriod +
+                ", ackTimeout=" + ackTimeout +
+                ", indirectProbes=" + indirectProbes +
+                ", suspicionTimeout=" + suspicionTimeout +
+                ", syncInterval=" + syncInterval +
+                ", deadMemberRetention=" + deadMemberRetention +
+                ", retransmitMultiplier=" + retransmitMultiplier +
+                ", maxPiggybackedMembers=" + maxPiggybackedMembers +
+                '}';
+    }
+}
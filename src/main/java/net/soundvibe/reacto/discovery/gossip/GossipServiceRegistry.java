@@ -0,0 +1,185 @@
+package net.soundvibe.reacto.discovery.gossip;
+
+import io.reactivex.Flowable;
+import io.reactivex.processors.*;
+import net.soundvibe.reacto.client.events.CommandHandlerRegistry;
+import net.soundvibe.reacto.discovery.*;
+import net.soundvibe.reacto.discovery.types.*;
+import net.soundvibe.reacto.mappers.ServiceRegistryMapper;
+import net.soundvibe.reacto.types.*;
+
+import java.net.InetSocketAddress;
+import java.util.*;
+
+/**
+ * Peer-to-peer service registry, which needs no external service. Every process is a member of a cluster, which
+ * disseminates service records of its members over UDP using SWIM gossip protocol, see {@link GossipOptions}.
+ * Records of members, which are declared dead by failure detection, are discovered as {@link Status#DOWN}
+ * until dead members are forgotten. New members join the cluster through any of the seeds.
+ * Gossiped changes are applied to an index of records by command, so that discovery is a single hash lookup.
+ */
+public final class GossipServiceRegistry extends AbstractServiceRegistry {
+
+    private final GossipNode node;
+    private final ServiceRecord serviceRecord;
+    private final FlowableProcessor<ServiceRecordChange> changes = PublishProcessor.<ServiceRecordChange>create().toSerialized();
+    private volatile ServiceRecordIndex index = ServiceRecordIndex.EMPTY;
+
+    private GossipServiceRegistry(Builder builder) {
+        super(builder.commandHandlerRegistry, builder.mapper, builder.registryOptions);
+        this.serviceRecord = builder.serviceRecord;
+        this.node = new GossipNode(builder.options, this::onMemberChanged);
+        node.start();
+    }
+
+    @Override
+    protected Flowable<List<ServiceRecord>> findRecordsOf(Command command) {
+        return Flowable.fromCallable(() -> index.find(command))
+                .filter(records -> !records.isEmpty());
+    }
+
+    /**
+     * Pushes changes of records as soon as they are gossiped to this member
+     */
+    @Override
+    protected Flowable<ServiceRecordChange> watch() {
+        return changes.onBackpressureBuffer();
+    }
+
+    private void onMemberChanged(Member previous, Member current) {
+        final ServiceRecord previousRecord = previous == null ? null : previous.recordView();
+        final ServiceRecord currentRecord = current == null ? null : current.recordView();
+        if (Objects.equals(previousRecord, currentRecord)) return;
+        final List<ServiceRecordChange> recordChanges = new ArrayList<>(2);
+        if (currentRecord == null) {
+            recordChanges.add(ServiceRecordChange.removed(previousRecord));
+        } else if (previousRecord == null || !previousRecord.registrationId.equals(currentRecord.registrationId)) {
+            if (previousRecord != null) recordChanges.add(ServiceRecordChange.removed(previousRecord));
+            recordChanges.add(ServiceRecordChange.added(currentRecord));
+        } else {
+            recordChanges.add(ServiceRecordChange.updated(currentRecord));
+        }
+        ServiceRecordIndex updated = index;
+        for (ServiceRecordChange change : recordChanges) {
+            updated = updated.apply(change);
+        }
+        index = updated;
+        recordChanges.forEach(changes::onNext);
+    }
+
+    /**
+     * @return records currently known to this member, including its own one
+     */
+    Collection<ServiceRecord> knownRecords() {
+        return index.records();
+    }
+
+    GossipNode node() {
+        return node;
+    }
+
+    /**
+     * @return address other members use to reach this member, e.g. to use it as a seed
+     */
+    public InetSocketAddress localAddress() {
+        return node.address();
+    }
+
+    /**
+     * Publishes service record of this process to the cluster
+     */
+    @Override
+    public Flowable<Any> register() {
+        return Flowable.fromCallable(() -> {
+            if (serviceRecord == null) throw new IllegalStateException("There is no service record to register");
+            node.publish(serviceRecord);
+            return Any.VOID;
+        });
+    }
+
+    /**
+     * Removes service record of this process from the cluster, process stays a member of the cluster
+     */
+    @Override
+    public Flowable<Any> unregister() {
+        return Flowable.fromCallable(() -> {
+            node.publish(null);
+            return Any.VOID;
+        });
+    }
+
+    /**
+     * Leaves the cluster and stops background tasks
+     */
+    @Override
+    public void close() {
+        node.close();
+        super.close();
+        changes.onComplete();
+    }
+
+    @Override
+    public String toString() {
+        return "GossipServiceRegistry{" +
+                "id=" + node.id() +
+                ", address=" + node.address() +
+                '}';
+    }
+
+    public static final class Builder {
+
+        private GossipOptions options = GossipOptions.defaults();
+        private ServiceRecord serviceRecord;
+        private CommandHandlerRegistry commandHandlerRegistry;
+        private ServiceRegistryMapper mapper;
+        private ServiceRegistryOptions registryOptions = ServiceRegistryOptions.defaults();
+
+        public static Builder create() {
+            return new Builder();
+        }
+
+        public Builder options(GossipOptions options) {
+            Objects.requireNonNull(options, "options cannot be null");
+            this.options = options;
+            return this;
+        }
+
+        /**
+         * @param serviceRecord record of this process, which is gossiped on {@link #register()},
+         *                      not needed if this process only discovers other services
+         * @return Builder
+         */
+        public Builder serviceRecord(ServiceRecord serviceRecord) {
+            this.serviceRecord = serviceRecord;
+            return this;
+        }
+
+        public Builder commandHandlerRegistry(CommandHandlerRegistry commandHandlerRegistry) {
+            Objects.requireNonNull(commandHandlerRegistry, "commandHandlerRegistry cannot be null");
+            this.commandHandlerRegistry = commandHandlerRegistry;
+            return this;
+        }
+
+        public Builder mapper(ServiceRegistryMapper mapper) {
+            Objects.requireNonNull(mapper, "mapper cannot be null");
+            this.mapper = mapper;
+            return this;
+        }
+
+        public Builder registryOptions(ServiceRegistryOptions registryOptions) {
+            Objects.requireNonNull(registryOptions, "registryOptions cannot be null");
+            this.registryOptions = registryOptions;
+            return this;
+        }
+
+        /**
+         * Joins the cluster
+         * @return GossipServiceRegistry
+         */
+        public GossipServiceRegistry build() {
+            Objects.requireNonNull(commandHandlerRegistry, "commandHandlerRegistry cannot be null");
+            Objects.requireNonNull(mapper, "mapper cannot be null");
+            return new GossipServiceRegistry(this);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package net.soundvibe.reacto.discovery.gossip;
+
+import net.soundvibe.reacto.discovery.types.*;
+
+import java.net.InetSocketAddress;
+import java.util.Objects;
+
+/**
+ * Immutable view of a cluster member. Member with higher incarnation or with the same incarnation and
+ * more severe state overrides the other one, so that every member converges on the same view.
+ */
+final class Member {
+
+    enum State {
+        ALIVE, SUSPECT, DEAD
+    }
+
+    final String id;
+    final InetSocketAddress address;
+    final long incarnation;
+    final State state;
+    final ServiceRecord record;
+
+    Member(String id, InetSocketAddress address, long incarnation, State state, ServiceRecord record) {
+        Objects.requireNonNull(id, "id cannot be null");
+        Objects.requireNonNull(address, "address cannot be null");
+        Objects.requireNonNull(state, "state cannot be null");
+        this.id = id;
+        this.address = address;
+        this.incarnation = incarnation;
+        this.state = state;
+        this.record = record;
+    }
+
+    boolean overrides(Member other) {
+        return incarnation > other.incarnation || (incarnation == other.incarnation && state.ordinal() > other.state.ordinal());
+    }
+
+    boolean overrides(long otherIncarnation, State otherState) {
+        return incarnation > otherIncarnation || (incarnation == otherIncarnation && state.ordinal() > otherState.ordinal());
+    }
+
+    Member withState(State state) {
+        return new Member(id, address, incarnation, state, record);
+    }
+
+    /**
+     * @return service record of the member as seen by the cluster, it is DOWN if the member is dead
+     */
+    ServiceRecord recordView() {
+        if (record == null) return null;
+        if (state != State.DEAD || record.status == Status.DOWN) return record.withGeneration(incarnation);
+        return ServiceRecord.create(record.name, Status.DOWN, record.type, record.registrationId, record.location, record.metadata)
+                .withGeneration(incarnation);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Member member = (Member) o;
+        return incarnation == member.incarnation &&
+                Objects.equals(id, member.id) &&
+                Objects.equals(address, member.address) &&
+                state == member.state &&
+                Objects.equals(record, member.record);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, address, incarnation, state, record);
+    }
+
+    @Override
+    public String toString() {
+        return "Member{" +
+                "id='" + id + '\'' +
+                ", address=" + address +
+                ", incarnation=" + incarnation +
+                ", state=" + state +
+                '}';
+    }
+}
@@ -8,6 +8,7 @@ import net.soundvibe.reacto.types.json.*;
 import net.soundvibe.reacto.utils.WebUtils;
 
 import java.util.*;
+import java.util.stream.*;
 
 import static java.util.stream.Collectors.toList;
 import static net.soundvibe.reacto.types.CommandDescriptor.*;
@@ -22,8 +23,10 @@ public final class ServiceRecord {
     public static final String LOCATION_PORT = "port";
     public static final String LOCATION_ROOT = "root";
     public static final String LOCATION_SSL = "ssl";
+    public static final String LOCATION_ZONE = "zone";
     public static final String METADATA_VERSION = "version";
     public static final String METADATA_COMMANDS = "commands";
+    public static final String METADATA_WEIGHT = "weight";
     public final String name;
     public final Status status;
     public final ServiceType type;
@@ -31,10 +34,18 @@ public final class ServiceRecord {
     public final JsonObject location;
     public final JsonObject metadata;
     public final String objectType = "reacto-service-registry";
+    private final long generation;
 
     private ServiceRecord(String name, Status status, ServiceType type, String registrationId,
                           JsonObject location,
                           JsonObject metadata) {
+        this(name, status, type, registrationId, location, metadata, 0L);
+    }
+
+    private ServiceRecord(String name, Status status, ServiceType type, String registrationId,
+                          JsonObject location,
+                          JsonObject metadata,
+                          long generation) {
         Objects.requireNonNull(name, "name cannot be null");
         Objects.requireNonNull(status, "status cannot be null");
         Objects.requireNonNull(type, "type cannot be null");
@@ -47,6 +58,7 @@ public final class ServiceRecord {
         this.registrationId = registrationId;
         this.location = location;
         this.metadata = metadata;
+        this.generation = generation;
     }
 
     public static ServiceRecord fromJson(String json) {
@@ -73,9 +85,11 @@ public final class ServiceRecord {
                         WebUtils.getLocalAddress(),
                         serviceOptions.port,
                         includeEndDelimiter(includeStartDelimiter(serviceOptions.root)),
-                        serviceOptions.isSsl),
+                        serviceOptions.isSsl,
+                        serviceOptions.zone),
                 JsonObjectBuilder.create()
                         .put(ServiceRecord.METADATA_VERSION, serviceOptions.version)
+                        .put(ServiceRecord.METADATA_WEIGHT, serviceOptions.weight)
                         .putArray(ServiceRecord.METADATA_COMMANDS,
                                 arrayBuilder -> {
                                     commandsToRegister.stream()
@@ -99,12 +113,23 @@ public final class ServiceRecord {
         return new ServiceRecord(name, status, type, registrationId, location, metaData);
     }
 
-    private static JsonObject httpEndpointLocation(String host, int port, String root, boolean isSsl) {
+    /**
+     * Creates a record with already parsed commands, which should match commands of the metadata
+     */
+    static ServiceRecord create(String name, Status status, ServiceType type, String registrationId,
+                                JsonObject location, JsonObject metaData, Set<CommandDescriptor> commands) {
+        final ServiceRecord record = new ServiceRecord(name, status, type, registrationId, location, metaData);
+        record.commands = commands;
+        return record;
+    }
+
+    private static JsonObject httpEndpointLocation(String host, int port, String root, boolean isSsl, String zone) {
         return JsonObjectBuilder.create()
                 .put(LOCATION_HOST, host)
                 .put(LOCATION_PORT, port)
                 .put(LOCATION_ROOT, root)
                 .put(LOCATION_SSL, isSsl)
+                .put(LOCATION_ZONE, zone)
                 .build();
     }
 
@@ -122,6 +147,7 @@ public final class ServiceRecord {
     }
 
     private int hash = 0;
+    private volatile Set<CommandDescriptor> commands;
 
     @Override
     public int hashCode() {
@@ -144,14 +170,80 @@ public final class ServiceRecord {
     }
 
     public boolean isCompatibleWith(Command command) {
-        return status == Status.UP &&
-                metadata.asArray(ServiceRecord.METADATA_COMMANDS)
-                        .map(commands -> commands.stream()
-                                .filter(o -> o instanceof JsonObject)
-                                .map(o -> (JsonObject)o)
-                                .anyMatch(jsonObject -> command.name.equals(jsonObject.asString(COMMAND).orElse(null))
-                                        && command.eventType().equals(jsonObject.asString(EVENT).orElse(null))))
-                        .orElse(false);
+        return isCompatibleWith(CommandDescriptor.fromCommand(command));
+    }
+
+    public boolean isCompatibleWith(CommandDescriptor commandDescriptor) {
+        return status == Status.UP && commands().contains(commandDescriptor);
+    }
+
+    /**
+     * @return immutable set of commands, which this service can handle, parsed once from metadata
+     */
+    public Set<CommandDescriptor> commands() {
+        Set<CommandDescriptor> result = commands;
+        if (result == null) {
+            result = parseCommands(metadata);
+            commands = result;
+        }
+        return result;
+    }
+
+    private static Set<CommandDescriptor> parseCommands(JsonObject metadata) {
+        return metadata.asArray(ServiceRecord.METADATA_COMMANDS)
+                .map(commands -> commands.stream()
+                        .filter(o -> o instanceof JsonObject)
+                        .map(o -> (JsonObject) o)
+                        .flatMap(jsonObject -> jsonObject.asString(COMMAND)
+                                .flatMap(commandType -> jsonObject.asString(EVENT)
+                                        .map(eventType -> Stream.of(CommandDescriptor.ofNames(commandType, eventType))))
+                                .orElseGet(Stream::empty))
+                        .collect(Collectors.collectingAndThen(Collectors.toSet(), Collections::unmodifiableSet)))
+                .orElse(Collections.emptySet());
+    }
+
+    /**
+     * @return capacity weight advertised by this service or {@link ServiceOptions#DEFAULT_WEIGHT} if it has none
+     */
+    public int weight() {
+        return metadata.asNumber(METADATA_WEIGHT)
+                .map(Number::intValue)
+                .filter(weight -> weight >= 0)
+                .orElse(ServiceOptions.DEFAULT_WEIGHT);
+    }
+
+    /**
+     * @return host of this service or empty string if it is unknown
+     */
+    public String host() {
+        return location.asString(LOCATION_HOST).orElse("");
+    }
+
+    /**
+     * @return zone of this service or {@link ServiceOptions#DEFAULT_ZONE} if it has none
+     */
+    public String zone() {
+        return location.asString(LOCATION_ZONE).orElse(ServiceOptions.DEFAULT_ZONE);
+    }
+
+    /**
+     * @return generation assigned by the service registry, which has discovered this record, 0 if it has none.
+     * Record with higher generation of the same registration id is newer.
+     */
+    public long generation() {
+        return generation;
+    }
+
+    /**
+     * Generation is not a part of the record content: it is neither serialized nor compared by {@link #equals(Object)}
+     * @param generation monotonic generation of the record, e.g. incarnation of a gossip member
+     * @return copy of this record with given generation
+     */
+    public ServiceRecord withGeneration(long generation) {
+        if (generation == this.generation) return this;
+        final ServiceRecord record = new ServiceRecord(name, status, type, registrationId, location, metadata, generation);
+        record.commands = commands;
+        return record;
     }
 
     public String toJson() {
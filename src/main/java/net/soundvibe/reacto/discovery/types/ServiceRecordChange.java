@@ -0,0 +1,57 @@
+package net.soundvibe.reacto.discovery.types;
+
+import java.util.Objects;
+
+/**
+ * Change of a single service record pushed by service discovery
+ */
+public final class ServiceRecordChange {
+
+    public enum Type {
+        ADDED, UPDATED, REMOVED
+    }
+
+    public final Type type;
+    public final ServiceRecord record;
+
+    private ServiceRecordChange(Type type, ServiceRecord record) {
+        Objects.requireNonNull(type, "type cannot be null");
+        Objects.requireNonNull(record, "record cannot be null");
+        this.type = type;
+        this.record = record;
+    }
+
+    public static ServiceRecordChange added(ServiceRecord record) {
+        return new ServiceRecordChange(Type.ADDED, record);
+    }
+
+    public static ServiceRecordChange updated(ServiceRecord record) {
+        return new ServiceRecordChange(Type.UPDATED, record);
+    }
+
+    public static ServiceRecordChange removed(ServiceRecord record) {
+        return new ServiceRecordChange(Type.REMOVED, record);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final ServiceRecordChange that = (ServiceRecordChange) o;
+        return type == that.type &&
+                Objects.equals(record, that.record);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, record);
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceRecordChange{" +
+                "type=" + type +
+                ", record=" + record +
+                '}';
+    }
+}
@@ -0,0 +1,517 @@
+package net.soundvibe.reacto.discovery.types;
+
+import net.soundvibe.reacto.internal.BoundedCache;
+import net.soundvibe.reacto.types.CommandDescriptor;
+import net.soundvibe.reacto.types.json.*;
+
+import java.math.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compact binary encoding of service records, which is smaller and many times faster to decode than json.
+ * <pre>
+ * version, record count, [name, status, type, registration id, location, metadata]...
+ * value: tag, [payload]
+ * string: varint (length &lt;&lt; 1), utf-8 bytes | varint (index &lt;&lt; 1 | 1) of the same string written earlier
+ * commands: varint (length &lt;&lt; 1), count, [command type, event type]... | varint (index &lt;&lt; 1 | 1) of the same commands written earlier
+ * </pre>
+ * Numbers are zigzag varints. Strings and command lists are interned within the encoded batch, so keys and commands
+ * shared by many records are written and decoded once and decoded records share the same instances.
+ * Command lists are self-contained, so that they are also interned across decoded batches by their bytes:
+ * records of the same service decoded again and again share the same parsed commands.
+ * Decoded records are equal to records decoded from json.
+ */
+public final class ServiceRecordCodec {
+
+    private static final byte VERSION = 1;
+    private static final int MAX_INTERNED = 1 << 16;
+    private static final BoundedCache<EncodedCommands, Commands> INTERNED_COMMANDS = BoundedCache.Builder.create()
+            .maximumSize(4096L)
+            .build();
+
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int INT = 3;
+    private static final int LONG = 4;
+    private static final int DOUBLE = 5;
+    private static final int STRING = 6;
+    private static final int OBJECT = 7;
+    private static final int ARRAY = 8;
+    private static final int COMMANDS = 9;
+    private static final int BIG_INTEGER = 10;
+    private static final int BIG_DECIMAL = 11;
+
+    private ServiceRecordCodec() {
+        //utility class
+    }
+
+    public static byte[] encode(ServiceRecord record) {
+        Objects.requireNonNull(record, "record cannot be null");
+        return encodeAll(Collections.singletonList(record));
+    }
+
+    public static byte[] encodeAll(Collection<ServiceRecord> records) {
+        Objects.requireNonNull(records, "records cannot be null");
+        final Encoder encoder = new Encoder(records.size() * 256);
+        encoder.writeByte(VERSION);
+        encoder.writeVarint(records.size());
+        for (ServiceRecord record : records) {
+            encoder.writeRecord(record);
+        }
+        return encoder.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if bytes do not contain exactly one encoded record
+     */
+    public static ServiceRecord decode(byte[] bytes) {
+        return decode(bytes, 0, bytes.length);
+    }
+
+    public static ServiceRecord decode(byte[] bytes, int offset, int length) {
+        final List<ServiceRecord> records = decodeAll(bytes, offset, length);
+        if (records.size() != 1) throw new IllegalArgumentException("Expected one service record but was " + records.size());
+        return records.get(0);
+    }
+
+    public static List<ServiceRecord> decodeAll(byte[] bytes) {
+        return decodeAll(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @throws IllegalArgumentException if bytes are not encoded service records
+     */
+    public static List<ServiceRecord> decodeAll(byte[] bytes, int offset, int length) {
+        Objects.requireNonNull(bytes, "bytes cannot be null");
+        final Decoder decoder = new Decoder(bytes, offset, offset + length);
+        try {
+            final int version = decoder.readByte();
+            if (version != VERSION) throw new IllegalArgumentException("Unsupported service record encoding version " + version);
+            final int count = decoder.readCount();
+            final List<ServiceRecord> records = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                records.add(decoder.readRecord());
+            }
+            if (decoder.position != decoder.limit)
+                throw new IllegalArgumentException("Unexpected " + (decoder.limit - decoder.position) + " bytes after service records");
+            return records;
+        } catch (IndexOutOfBoundsException | ClassCastException e) {
+            throw new IllegalArgumentException("Malformed service records at byte " + decoder.position, e);
+        }
+    }
+
+    private static final class Encoder {
+
+        private byte[] buffer;
+        private int position;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final Map<List<CommandDescriptor>, Integer> commandLists = new HashMap<>();
+
+        private Encoder(int capacity) {
+            this.buffer = new byte[Math.max(64, capacity)];
+        }
+
+        private void writeRecord(ServiceRecord record) {
+            writeString(record.name);
+            writeString(record.status.name());
+            writeString(record.type.name());
+            writeString(record.registrationId);
+            writeObject(record.location, false);
+            writeObject(record.metadata, true);
+        }
+
+        private void writeObject(JsonObject object, boolean isMetadata) {
+            writeVarint(object.size());
+            for (Map.Entry<String, Object> entry : object) {
+                writeString(entry.getKey());
+                final List<CommandDescriptor> commands = isMetadata && ServiceRecord.METADATA_COMMANDS.equals(entry.getKey()) ?
+                        asCommands(entry.getValue()) : null;
+                if (commands == null) {
+                    writeValue(entry.getValue());
+                } else {
+                    writeByte(COMMANDS);
+                    writeCommands(commands);
+                }
+            }
+        }
+
+        private void writeValue(Object value) {
+            if (value == null) {
+                writeByte(NULL);
+            } else if (value instanceof Boolean) {
+                writeByte((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                writeByte(INT);
+                writeZigZag(((Number) value).longValue());
+            } else if (value instanceof Long) {
+                writeByte(LONG);
+                writeZigZag((Long) value);
+            } else if (value instanceof Double || value instanceof Float) {
+                writeByte(DOUBLE);
+                writeLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+            } else if (value instanceof BigInteger) {
+                writeByte(BIG_INTEGER);
+                writeString(value.toString());
+            } else if (value instanceof BigDecimal) {
+                writeByte(BIG_DECIMAL);
+                writeString(value.toString());
+            } else if (value instanceof CharSequence) {
+                writeByte(STRING);
+                writeString(value.toString());
+            } else if (value instanceof JsonObject) {
+                writeByte(OBJECT);
+                writeObject((JsonObject) value, false);
+            } else if (value instanceof JsonArray) {
+                final JsonArray array = (JsonArray) value;
+                writeByte(ARRAY);
+                writeVarint(array.size());
+                for (Object item : array) {
+                    writeValue(item);
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported service record value of " + value.getClass());
+            }
+        }
+
+        /**
+         * @return commands if value is an array of command descriptors only, null otherwise
+         */
+        private static List<CommandDescriptor> asCommands(Object value) {
+            if (!(value instanceof JsonArray)) return null;
+            final JsonArray array = (JsonArray) value;
+            final List<CommandDescriptor> commands = new ArrayList<>(array.size());
+            for (Object item : array) {
+                if (!(item instanceof JsonObject)) return null;
+                final JsonObject command = (JsonObject) item;
+                final Optional<String> commandType = command.asString(CommandDescriptor.COMMAND);
+                final Optional<String> eventType = command.asString(CommandDescriptor.EVENT);
+                if (command.size() != 2 || !commandType.isPresent() || !eventType.isPresent()) return null;
+                commands.add(CommandDescriptor.ofNames(commandType.get(), eventType.get()));
+            }
+            return commands;
+        }
+
+        private void writeCommands(List<CommandDescriptor> commands) {
+            final Integer index = commandLists.get(commands);
+            if (index != null) {
+                writeVarint(index << 1 | 1);
+                return;
+            }
+            final Encoder encoder = new Encoder(commands.size() * 64);
+            encoder.writeVarint(commands.size());
+            for (CommandDescriptor command : commands) {
+                encoder.writeRawString(command.commandType);
+                encoder.writeRawString(command.eventType);
+            }
+            writeVarint((long) encoder.position << 1);
+            ensureCapacity(encoder.position);
+            System.arraycopy(encoder.buffer, 0, buffer, position, encoder.position);
+            position += encoder.position;
+            if (commandLists.size() < MAX_INTERNED) commandLists.put(commands, commandLists.size());
+        }
+
+        private void writeString(String value) {
+            final Integer index = strings.get(value);
+            if (index != null) {
+                writeVarint(index << 1 | 1);
+                return;
+            }
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint((long) bytes.length << 1);
+            writeBytes(bytes);
+            if (strings.size() < MAX_INTERNED) strings.put(value, strings.size());
+        }
+
+        private void writeRawString(String value) {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            writeBytes(bytes);
+        }
+
+        private void writeBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void writeZigZag(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        private void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0L) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (position + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static final class Decoder {
+
+        private final byte[] bytes;
+        private final int limit;
+        private int position;
+        private final List<String> strings = new ArrayList<>();
+        private final List<Commands> commandLists = new ArrayList<>();
+
+        private Decoder(byte[] bytes, int offset, int limit) {
+            if (offset < 0 || limit > bytes.length || offset > limit)
+                throw new IndexOutOfBoundsException("offset " + offset + " and limit " + limit + " are out of " + bytes.length + " bytes");
+            this.bytes = bytes;
+            this.position = offset;
+            this.limit = limit;
+        }
+
+        private ServiceRecord readRecord() {
+            final String name = readString();
+            final Status status = statusOf(readString());
+            final ServiceType type = typeOf(readString());
+            final String registrationId = readString();
+            final JsonObject location = new JsonObject(readObject());
+            final int size = readCount();
+            final Map<String, Object> metadata = new LinkedHashMap<>(mapCapacityOf(size));
+            Set<CommandDescriptor> commands = null;
+            for (int i = 0; i < size; i++) {
+                final String key = readString();
+                final int tag = readByte();
+                if (tag == COMMANDS) {
+                    final Commands decoded = readCommands();
+                    metadata.put(key, decoded.array);
+                    if (ServiceRecord.METADATA_COMMANDS.equals(key)) commands = decoded.descriptors;
+                } else {
+                    metadata.put(key, readValue(tag));
+                }
+            }
+            return ServiceRecord.create(name, status, type, registrationId, location, new JsonObject(metadata), commands);
+        }
+
+        private Map<String, Object> readObject() {
+            final int size = readCount();
+            final Map<String, Object> values = new LinkedHashMap<>(mapCapacityOf(size));
+            for (int i = 0; i < size; i++) {
+                values.put(readString(), readValue(readByte()));
+            }
+            return values;
+        }
+
+        private Object readValue(int tag) {
+            switch (tag) {
+                case NULL: return null;
+                case FALSE: return Boolean.FALSE;
+                case TRUE: return Boolean.TRUE;
+                case INT: return (int) readZigZag();
+                case LONG: return readZigZag();
+                case DOUBLE: return Double.longBitsToDouble(readLong());
+                case BIG_INTEGER: return new BigInteger(readString());
+                case BIG_DECIMAL: return new BigDecimal(readString());
+                case STRING: return readString();
+                case OBJECT: return readObject();
+                case ARRAY:
+                    final int size = readCount();
+                    final List<Object> values = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        values.add(readValue(readByte()));
+                    }
+                    return values;
+                case COMMANDS: return readCommands().array;
+                default: throw new IllegalArgumentException("Unknown service record value tag " + tag + " at byte " + (position - 1));
+            }
+        }
+
+        private Commands readCommands() {
+            final int header = readLength();
+            if ((header & 1) != 0) return commandLists.get(header >>> 1);
+            final int length = header >>> 1;
+            if (length > limit - position) throw new IndexOutOfBoundsException("Commands of " + length + " bytes are out of bounds");
+            final EncodedCommands encoded = new EncodedCommands(bytes, position, length);
+            Commands commands = INTERNED_COMMANDS.getIfPresent(encoded).orElse(null);
+            if (commands == null) {
+                commands = INTERNED_COMMANDS.computeIfAbsent(encoded.copy(), key -> new Decoder(key.bytes, 0, key.length).readCommandList());
+            }
+            position += length;
+            if (commandLists.size() < MAX_INTERNED) commandLists.add(commands);
+            return commands;
+        }
+
+        private Commands readCommandList() {
+            final int count = readCount();
+            final List<Object> array = new ArrayList<>(count);
+            final Set<CommandDescriptor> descriptors = new HashSet<>(mapCapacityOf(count));
+            for (int i = 0; i < count; i++) {
+                final String commandType = readRawString();
+                final String eventType = readRawString();
+                final Map<String, Object> command = new LinkedHashMap<>(4);
+                command.put(CommandDescriptor.COMMAND, commandType);
+                command.put(CommandDescriptor.EVENT, eventType);
+                array.add(Collections.unmodifiableMap(command));
+                descriptors.add(CommandDescriptor.ofNames(commandType, eventType));
+            }
+            if (position != limit) throw new IllegalArgumentException("Unexpected " + (limit - position) + " bytes after commands");
+            return new Commands(Collections.unmodifiableList(array), Collections.unmodifiableSet(descriptors));
+        }
+
+        private String readString() {
+            final int header = readLength();
+            if ((header & 1) != 0) return strings.get(header >>> 1);
+            final String value = readString(header >>> 1);
+            if (strings.size() < MAX_INTERNED) strings.add(value);
+            return value;
+        }
+
+        private String readRawString() {
+            return readString(readLength());
+        }
+
+        private String readString(int length) {
+            if (length > limit - position) throw new IndexOutOfBoundsException("String of " + length + " bytes is out of bounds");
+            final String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private int readLength() {
+            final long value = readVarint();
+            if (value < 0L || value > Integer.MAX_VALUE) throw new IllegalArgumentException("Invalid length " + value);
+            return (int) value;
+        }
+
+        /**
+         * Reads number of elements, which is validated against remaining bytes, because every element takes at least one byte,
+         * so that malformed input cannot make the decoder allocate more than the input holds
+         */
+        private int readCount() {
+            final int count = readLength();
+            if (count > limit - position)
+                throw new IndexOutOfBoundsException(count + " elements are out of remaining " + (limit - position) + " bytes");
+            return count;
+        }
+
+        private static int mapCapacityOf(int count) {
+            return (int) Math.min(count * 2L, 1 << 30);
+        }
+
+        private long readZigZag() {
+            final long value = readVarint();
+            return (value >>> 1) ^ -(value & 1L);
+        }
+
+        private long readVarint() {
+            long value = 0L;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IllegalArgumentException("Varint is too long at byte " + position);
+        }
+
+        private long readLong() {
+            long value = 0L;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | readByte();
+            }
+            return value;
+        }
+
+        private int readByte() {
+            if (position >= limit) throw new IndexOutOfBoundsException("Unexpected end of service records");
+            return bytes[position++] & 0xFF;
+        }
+
+        private static Status statusOf(String name) {
+            for (Status status : Status.values()) {
+                if (status.name().equals(name)) return status;
+            }
+            return Status.UNKNOWN;
+        }
+
+        private static ServiceType typeOf(String name) {
+            for (ServiceType type : ServiceType.values()) {
+                if (type.name().equals(name)) return type;
+            }
+            return ServiceType.LOCAL;
+        }
+    }
+
+    /**
+     * Bytes of encoded commands, which may be a view of a larger array while looking up interned commands.
+     * Hash code samples at most 64 bytes, so that lookups of long command lists are cheap, equality compares every byte.
+     */
+    private static final class EncodedCommands {
+
+        private final byte[] bytes;
+        private final int offset;
+        private final int length;
+        private final int hash;
+
+        private EncodedCommands(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+            final int step = Math.max(1, length / 64);
+            int result = length;
+            for (int i = offset; i < offset + length; i += step) {
+                result = 31 * result + bytes[i];
+            }
+            this.hash = result;
+        }
+
+        private EncodedCommands copy() {
+            return new EncodedCommands(Arrays.copyOfRange(bytes, offset, offset + length), 0, length);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final EncodedCommands that = (EncodedCommands) o;
+            if (hash != that.hash || length != that.length) return false;
+            for (int i = 0; i < length; i++) {
+                if (bytes[offset + i] != that.bytes[that.offset + i]) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Commands {
+
+        private final List<Object> array;
+        private final Set<CommandDescriptor> descriptors;
+
+        private Commands(List<Object> array, Set<CommandDescriptor> descriptors) {
+            this.array = array;
+            this.descriptors = descriptors;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package net.soundvibe.reacto.discovery.types;
+
+import net.soundvibe.reacto.types.*;
+
+import java.util.*;
+
+/**
+ * Immutable inverted index of known service records by commands they can handle.
+ * Finding records compatible with a command is a single hash lookup and returns the same list instance
+ * until records of that command change. Only records, which are {@link Status#UP}, are indexed by command.
+ */
+public final class ServiceRecordIndex {
+
+    public static final ServiceRecordIndex EMPTY = new ServiceRecordIndex(Collections.emptyMap(), Collections.emptyMap());
+
+    private final Map<String, ServiceRecord> recordsById;
+    private final Map<CommandDescriptor, List<ServiceRecord>> recordsByCommand;
+
+    private ServiceRecordIndex(Map<String, ServiceRecord> recordsById,
+                               Map<CommandDescriptor, List<ServiceRecord>> recordsByCommand) {
+        this.recordsById = recordsById;
+        this.recordsByCommand = recordsByCommand;
+    }
+
+    public static ServiceRecordIndex of(Collection<ServiceRecord> records) {
+        Objects.requireNonNull(records, "records cannot be null");
+        final Map<String, ServiceRecord> recordsById = new LinkedHashMap<>();
+        records.forEach(record -> recordsById.put(record.registrationId, record));
+        final Map<CommandDescriptor, List<ServiceRecord>> recordsByCommand = new HashMap<>();
+        for (ServiceRecord record : recordsById.values()) {
+            if (record.status != Status.UP) continue;
+            for (CommandDescriptor commandDescriptor : record.commands()) {
+                recordsByCommand.computeIfAbsent(commandDescriptor, descriptor -> new ArrayList<>()).add(record);
+            }
+        }
+        recordsByCommand.replaceAll((descriptor, list) -> Collections.unmodifiableList(list));
+        return new ServiceRecordIndex(Collections.unmodifiableMap(recordsById), Collections.unmodifiableMap(recordsByCommand));
+    }
+
+    /**
+     * @param commandDescriptor command to look up
+     * @return up and running records, which can handle given command
+     */
+    public List<ServiceRecord> find(CommandDescriptor commandDescriptor) {
+        return recordsByCommand.getOrDefault(commandDescriptor, Collections.emptyList());
+    }
+
+    public List<ServiceRecord> find(Command command) {
+        return find(CommandDescriptor.fromCommand(command));
+    }
+
+    public Optional<ServiceRecord> findById(String registrationId) {
+        return Optional.ofNullable(recordsById.get(registrationId));
+    }
+
+    public Collection<ServiceRecord> records() {
+        return recordsById.values();
+    }
+
+    public int size() {
+        return recordsById.size();
+    }
+
+    /**
+     * Applies the change copying only the lists of commands handled by the changed record.
+     * Lists of other commands are shared with this index.
+     * @param change change of a single record
+     * @return new index with applied change
+     */
+    public ServiceRecordIndex apply(ServiceRecordChange change) {
+        Objects.requireNonNull(change, "change cannot be null");
+        final String registrationId = change.record.registrationId;
+        final ServiceRecord oldRecord = recordsById.get(registrationId);
+        final ServiceRecord newRecord = change.type == ServiceRecordChange.Type.REMOVED ? null : change.record;
+        if (Objects.equals(oldRecord, newRecord)) return this;
+
+        final Map<String, ServiceRecord> newRecordsById = new LinkedHashMap<>(recordsById);
+        if (newRecord == null) {
+            newRecordsById.remove(registrationId);
+        } else {
+            newRecordsById.put(registrationId, newRecord);
+        }
+
+        final Set<CommandDescriptor> affectedCommands = new HashSet<>();
+        if (oldRecord != null) affectedCommands.addAll(oldRecord.commands());
+        if (newRecord != null) affectedCommands.addAll(newRecord.commands());
+        final Map<CommandDescriptor, List<ServiceRecord>> newRecordsByCommand = new HashMap<>(recordsByCommand);
+        for (CommandDescriptor commandDescriptor : affectedCommands) {
+            final List<ServiceRecord> records = new ArrayList<>(find(commandDescriptor));
+            records.removeIf(record -> record.registrationId.equals(registrationId));
+            if (newRecord != null && newRecord.isCompatibleWith(commandDescriptor)) {
+                records.add(newRecord);
+            }
+            if (records.isEmpty()) {
+                newRecordsByCommand.remove(commandDescriptor);
+            } else {
+                newRecordsByCommand.put(commandDescriptor, Collections.unmodifiableList(records));
+            }
+        }
+        return new ServiceRecordIndex(Collections.unmodifiableMap(newRecordsById), Collections.unmodifiableMap(newRecordsByCommand));
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceRecordIndex{" +
+                "records=" + recordsById.size() +
+                ", commands=" + recordsByCommand.size() +
+                '}';
+    }
+}
@@ -0,0 +1,68 @@
+package net.soundvibe.reacto.discovery.types;
+
+import java.util.*;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Changes of discovered service records between two versions of a service registry
+ */
+public final class ServiceRecordsDelta {
+
+    public final long fromVersion;
+    public final long toVersion;
+    /**
+     * True if changes since {@link #fromVersion} are no longer known and {@link #changes} add every current record instead,
+     * so that previously known records should be dropped before applying them
+     */
+    public final boolean isReset;
+    public final List<ServiceRecordChange> changes;
+
+    private ServiceRecordsDelta(long fromVersion, long toVersion, boolean isReset, List<ServiceRecordChange> changes) {
+        Objects.requireNonNull(changes, "changes cannot be null");
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.isReset = isReset;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    public static ServiceRecordsDelta of(long fromVersion, long toVersion, List<ServiceRecordChange> changes) {
+        return new ServiceRecordsDelta(fromVersion, toVersion, false, changes);
+    }
+
+    public static ServiceRecordsDelta reset(long fromVersion, long toVersion, Collection<ServiceRecord> records) {
+        Objects.requireNonNull(records, "records cannot be null");
+        return new ServiceRecordsDelta(fromVersion, toVersion, true,
+                records.stream().map(ServiceRecordChange::added).collect(toList()));
+    }
+
+    public boolean isEmpty() {
+        return !isReset && changes.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final ServiceRecordsDelta that = (ServiceRecordsDelta) o;
+        return fromVersion == that.fromVersion &&
+                toVersion == that.toVersion &&
+                isReset == that.isReset &&
+                Objects.equals(changes, that.changes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fromVersion, toVersion, isReset, changes);
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceRecordsDelta{" +
+                "fromVersion=" + fromVersion +
+                ", toVersion=" + toVersion +
+                ", isReset=" + isReset +
+                ", changes=" + changes +
+                '}';
+    }
+}
@@ -0,0 +1,330 @@
+package net.soundvibe.reacto.internal;
+
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.*;
+import io.reactivex.schedulers.Schedulers;
+import net.soundvibe.reacto.utils.Ticker;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.*;
+
+/**
+ * Bounded cache with lock-free reads, least recently used eviction and expiry after write.
+ * <p>
+ * Hits are served from a {@link ConcurrentHashMap} without locking or allocation. Accesses are recorded
+ * into a small lossy buffer, which is replayed into the LRU order under a lock only by the thread that wins {@code tryLock},
+ * so that readers never wait for each other. Misses compute the value once per key and evict least recently used
+ * entries if the cache exceeds its maximum size. Expired entries are treated as missing on read and are removed
+ * by a periodic background sweep.
+ * Removal listener is notified about every evicted, expired or invalidated entry outside of the eviction lock.
+ */
+public final class BoundedCache<T, U> implements Cache<T, U>, Disposable {
+
+    private static final int READ_BUFFER_SIZE = 128;
+    private static final int DRAIN_MASK = 63;
+
+    private final long maximumSize;
+    private final long expireAfterWriteInNanos;
+    private final Ticker ticker;
+    private final BiConsumer<? super T, ? super U> removalListener;
+    private final ConcurrentHashMap<T, Node<T, U>> entries = new ConcurrentHashMap<>();
+    private final LinkedHashMap<T, Node<T, U>> accessOrder = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final AtomicReferenceArray<Node<T, U>> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final Disposable sweeper;
+
+    private BoundedCache(Builder builder, BiConsumer<? super T, ? super U> removalListener) {
+        this.maximumSize = builder.maximumSize;
+        this.expireAfterWriteInNanos = builder.expireAfterWrite.toNanos();
+        this.ticker = builder.ticker;
+        this.removalListener = removalListener;
+        this.sweeper = builder.sweepInterval.isZero() ? Disposables.empty() :
+                builder.scheduler.schedulePeriodicallyDirect(this::cleanUp,
+                        builder.sweepInterval.toNanos(), builder.sweepInterval.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public U computeIfAbsent(T key, Function<? super T, ? extends U> mappingFunction) {
+        final Node<T, U> node = entries.get(key);
+        if (node != null && !isExpired(node, ticker.nanoTime())) {
+            hits.increment();
+            afterRead(node);
+            return node.value;
+        }
+        return computeOnMiss(key, mappingFunction);
+    }
+
+    public Optional<U> getIfPresent(T key) {
+        final Node<T, U> node = entries.get(key);
+        if (node == null || isExpired(node, ticker.nanoTime())) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        afterRead(node);
+        return Optional.of(node.value);
+    }
+
+    public void invalidate(T key) {
+        final Node<T, U> node = entries.remove(key);
+        if (node != null) onRemoved(node);
+    }
+
+    /**
+     * Removes the entry only if it is still mapped to given value
+     * @param key key of the entry
+     * @param value expected value, compared by identity
+     * @return true if the entry was removed
+     */
+    public boolean invalidate(T key, U value) {
+        final Node<T, U> node = entries.get(key);
+        if (node == null || node.value != value || !entries.remove(key, node)) return false;
+        onRemoved(node);
+        return true;
+    }
+
+    /**
+     * Removes every entry, which does not match given predicate
+     * @param predicate returns true for entries which should be kept
+     */
+    public void retainIf(BiPredicate<? super T, ? super U> predicate) {
+        entries.forEach((key, node) -> {
+            if (!predicate.test(key, node.value) && entries.remove(key, node)) onRemoved(node);
+        });
+    }
+
+    public long size() {
+        return entries.size();
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum());
+    }
+
+    /**
+     * Removes expired entries and evicts entries over maximum size. It is run periodically in the background.
+     */
+    public void cleanUp() {
+        final List<Node<T, U>> removed = new ArrayList<>();
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            final long now = ticker.nanoTime();
+            final Iterator<Node<T, U>> iterator = accessOrder.values().iterator();
+            while (iterator.hasNext()) {
+                final Node<T, U> node = iterator.next();
+                if (isExpired(node, now)) {
+                    iterator.remove();
+                    if (entries.remove(node.key, node)) {
+                        expirations.increment();
+                        removed.add(node);
+                    }
+                }
+            }
+            evictOverflow(removed);
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyRemoved(removed);
+    }
+
+    @Override
+    public void dispose() {
+        sweeper.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return sweeper.isDisposed();
+    }
+
+    private U computeOnMiss(T key, Function<? super T, ? extends U> mappingFunction) {
+        final boolean[] isComputed = {false};
+        final List<Node<T, U>> expired = new ArrayList<>(1);
+        final Node<T, U> node = entries.compute(key, (k, current) -> {
+            if (current != null) {
+                if (!isExpired(current, ticker.nanoTime())) return current;
+                expired.add(current);
+            }
+            final U value = mappingFunction.apply(k);
+            if (value == null) return null;
+            isComputed[0] = true;
+            return new Node<>(k, value, ticker.nanoTime());
+        });
+        if (!expired.isEmpty()) {
+            expirations.increment();
+            if (node == null) {
+                onRemoved(expired.get(0));
+            } else {
+                notifyRemoved(expired);
+            }
+        }
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (!isComputed[0]) {
+            hits.increment();
+            afterRead(node);
+            return node.value;
+        }
+        misses.increment();
+        afterWrite(node);
+        return node.value;
+    }
+
+    private boolean isExpired(Node<T, U> node, long now) {
+        return expireAfterWriteInNanos > 0L && now - node.writtenAt >= expireAfterWriteInNanos;
+    }
+
+    private void afterRead(Node<T, U> node) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        readBuffer.lazySet(random.nextInt(READ_BUFFER_SIZE), node);
+        if ((random.nextInt() & DRAIN_MASK) == 0 && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void afterWrite(Node<T, U> node) {
+        final List<Node<T, U>> removed = new ArrayList<>(1);
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            if (entries.get(node.key) == node) {
+                accessOrder.put(node.key, node);
+            }
+            evictOverflow(removed);
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyRemoved(removed);
+    }
+
+    private void onRemoved(Node<T, U> node) {
+        evictionLock.lock();
+        try {
+            accessOrder.remove(node.key, node);
+        } finally {
+            evictionLock.unlock();
+        }
+        removalListener.accept(node.key, node.value);
+    }
+
+    private void notifyRemoved(List<Node<T, U>> removed) {
+        for (Node<T, U> node : removed) {
+            removalListener.accept(node.key, node.value);
+        }
+    }
+
+    private void drainReadBuffer() {
+        for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+            final Node<T, U> node = readBuffer.getAndSet(i, null);
+            if (node != null) {
+                accessOrder.get(node.key);
+            }
+        }
+    }
+
+    private void evictOverflow(List<Node<T, U>> removed) {
+        final Iterator<Node<T, U>> iterator = accessOrder.values().iterator();
+        while (entries.size() > maximumSize && iterator.hasNext()) {
+            final Node<T, U> eldest = iterator.next();
+            iterator.remove();
+            if (entries.remove(eldest.key, eldest)) {
+                evictions.increment();
+                removed.add(eldest);
+            }
+        }
+    }
+
+    private static final class Node<T, U> {
+
+        private final T key;
+        private final U value;
+        private final long writtenAt;
+
+        private Node(T key, U value, long writtenAt) {
+            this.key = key;
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+    }
+
+    public static final class Builder {
+
+        private long maximumSize = Long.MAX_VALUE;
+        private Duration expireAfterWrite = Duration.ZERO;
+        private Duration sweepInterval = Duration.ZERO;
+        private Scheduler scheduler = Schedulers.computation();
+        private Ticker ticker = Ticker.SYSTEM;
+
+        public static Builder create() {
+            return new Builder();
+        }
+
+        public Builder maximumSize(long maximumSize) {
+            if (maximumSize < 1L) throw new IllegalArgumentException("maximumSize cannot be less than 1 but was " + maximumSize);
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * @param expireAfterWrite how long an entry is valid after it was computed, {@link Duration#ZERO} means forever
+         * @return Builder
+         */
+        public Builder expireAfterWrite(Duration expireAfterWrite) {
+            Objects.requireNonNull(expireAfterWrite, "expireAfterWrite cannot be null");
+            if (expireAfterWrite.isNegative()) throw new IllegalArgumentException("expireAfterWrite cannot be negative but was " + expireAfterWrite);
+            this.expireAfterWrite = expireAfterWrite;
+            return this;
+        }
+
+        /**
+         * @param sweepInterval how often expired entries are removed in the background, {@link Duration#ZERO} disables sweeping
+         * @return Builder
+         */
+        public Builder sweepInterval(Duration sweepInterval) {
+            Objects.requireNonNull(sweepInterval, "sweepInterval cannot be null");
+            if (sweepInterval.isNegative()) throw new IllegalArgumentException("sweepInterval cannot be negative but was " + sweepInterval);
+            this.sweepInterval = sweepInterval;
+            return this;
+        }
+
+        public Builder scheduler(Scheduler scheduler) {
+            Objects.requireNonNull(scheduler, "scheduler cannot be null");
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public Builder ticker(Ticker ticker) {
+            Objects.requireNonNull(ticker, "ticker cannot be null");
+            this.ticker = ticker;
+            return this;
+        }
+
+        public <T, U> BoundedCache<T, U> build() {
+            return build((key, value) -> {});
+        }
+
+        /**
+         * @param removalListener notified with key and value of every evicted, expired or invalidated entry
+         * @return BoundedCache
+         */
+        public <T, U> BoundedCache<T, U> build(BiConsumer<? super T, ? super U> removalListener) {
+            Objects.requireNonNull(removalListener, "removalListener cannot be null");
+            return new BoundedCache<>(this, removalListener);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package net.soundvibe.reacto.internal;
+
+/**
+ * Point in time statistics of {@link BoundedCache}
+ */
+public final class CacheStats {
+
+    public final long hits;
+    public final long misses;
+    public final long evictions;
+    public final long expirations;
+
+    public CacheStats(long hits, long misses, long evictions, long expirations) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.expirations = expirations;
+    }
+
+    public long requests() {
+        return hits + misses;
+    }
+
+    public double hitRate() {
+        final long requests = requests();
+        return requests == 0L ? 1.0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", expirations=" + expirations +
+                '}';
+    }
+}
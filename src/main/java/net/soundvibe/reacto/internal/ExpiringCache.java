@@ -1,21 +1,22 @@
 package net.soundvibe.reacto.internal;
 
-import net.soundvibe.reacto.types.Pair;
-
-import java.util.Map;
-import java.util.concurrent.*;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
  * @author OZY on 2016.02.02.
+ * @deprecated use {@link BoundedCache}, which also limits its size and removes expired entries in the background
  */
+@Deprecated
 public final class ExpiringCache<T, U> implements Cache<T, U> {
 
-    private final long durationInMs;
-    private final Map<T, Pair<U, Long>> cache = new ConcurrentHashMap<>();
+    private final BoundedCache<T, U> cache;
 
     private ExpiringCache(long expireIn, TimeUnit timeUnit) {
-        this.durationInMs = timeUnit.toMillis(expireIn);
+        this.cache = BoundedCache.Builder.create()
+                .expireAfterWrite(Duration.ofNanos(timeUnit.toNanos(expireIn)))
+                .build();
     }
 
     /**
@@ -31,9 +32,6 @@ public final class ExpiringCache<T, U> implements Cache<T, U> {
     @Override
     public U computeIfAbsent(T key,
                              Function<? super T, ? extends U> mappingFunction) {
-        return cache.compute(key, (k, v) -> v == null || System.currentTimeMillis() - v.value >= durationInMs ?
-                Pair.of(mappingFunction.apply(k), System.currentTimeMillis()) :
-                v
-        ).getKey();
+        return cache.computeIfAbsent(key, mappingFunction);
     }
 }
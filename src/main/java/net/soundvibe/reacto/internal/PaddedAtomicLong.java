@@ -0,0 +1,56 @@
+package net.soundvibe.reacto.internal;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Atomic long padded to occupy its own cache line, so that hot counters of different
+ * handler lists do not invalidate each other (false sharing).
+ */
+public final class PaddedAtomicLong extends PaddedAtomicLongValue {
+
+    private static final AtomicLongFieldUpdater<PaddedAtomicLongValue> VALUE =
+            AtomicLongFieldUpdater.newUpdater(PaddedAtomicLongValue.class, "value");
+
+    long p9, p10, p11, p12, p13, p14, p15;
+
+    public PaddedAtomicLong() {
+        this(0L);
+    }
+
+    public PaddedAtomicLong(long initialValue) {
+        this.value = initialValue;
+    }
+
+    public long get() {
+        return value;
+    }
+
+    public void set(long newValue) {
+        value = newValue;
+    }
+
+    public long getAndIncrement() {
+        return VALUE.getAndIncrement(this);
+    }
+
+    public long incrementAndGet() {
+        return VALUE.incrementAndGet(this);
+    }
+
+    public boolean compareAndSet(long expect, long update) {
+        return VALUE.compareAndSet(this, expect, update);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(value);
+    }
+}
+
+abstract class PaddedAtomicLongLeftPadding {
+    long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class PaddedAtomicLongValue extends PaddedAtomicLongLeftPadding {
+    volatile long value;
+}
@@ -0,0 +1,55 @@
+package net.soundvibe.reacto.internal;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * State, e.g. of a load balancer, kept per set of records. State is owned by a bounded cache keyed by the records themselves,
+ * so that lists with the same records share it no matter whether callers reuse list instances or build new ones.
+ * Lists seen before are resolved by identity without locking or allocation.
+ */
+public final class RecordListStates<S> {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 16_384L;
+
+    private final Function<? super List<?>, ? extends S> factory;
+    private final WeakIdentityCache<List<?>, S> byIdentity = new WeakIdentityCache<>();
+    private final BoundedCache<List<?>, S> byRecords;
+
+    public RecordListStates(Supplier<S> factory) {
+        this(factory, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public RecordListStates(Supplier<S> factory, long maximumSize) {
+        this(maximumSize, ignoringRecords(factory));
+    }
+
+    private RecordListStates(long maximumSize, Function<? super List<?>, ? extends S> factory) {
+        Objects.requireNonNull(factory, "factory cannot be null");
+        this.factory = factory;
+        this.byRecords = BoundedCache.Builder.create()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    /**
+     * @param factory creates state from the records, e.g. when the state is derived from the records themselves
+     * @param maximumSize maximum number of kept states
+     */
+    public static <S> RecordListStates<S> computing(Function<? super List<?>, ? extends S> factory, long maximumSize) {
+        return new RecordListStates<>(maximumSize, factory);
+    }
+
+    private static <S> Function<List<?>, S> ignoringRecords(Supplier<S> factory) {
+        Objects.requireNonNull(factory, "factory cannot be null");
+        return records -> factory.get();
+    }
+
+    public S of(List<?> records) {
+        final S state = byIdentity.getIfPresent(records);
+        if (state != null) return state;
+        final S sharedState = byRecords.computeIfAbsent(new ArrayList<>(records), factory);
+        byIdentity.put(records, sharedState);
+        return sharedState;
+    }
+}
@@ -0,0 +1,324 @@
+package net.soundvibe.reacto.internal;
+
+import io.reactivex.*;
+import io.reactivex.schedulers.Schedulers;
+import net.soundvibe.reacto.utils.Ticker;
+import org.slf4j.*;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.*;
+
+/**
+ * Cache of asynchronously loaded values, which never blocks callers once the value is loaded.
+ * After the value gets older than its time to live, callers keep receiving the stale value while a single
+ * background refresh loads the new one on the refresh scheduler, so that callers are not blocked by the loader. If refresh fails, stale value is kept and refresh is retried after
+ * another time to live. Refresh, which started before the value was updated by {@link #updateAll(BiFunction)},
+ * is discarded, so that updated value is not overwritten by the older one.
+ * Time to live of every entry is randomly extended by up to {@code jitter} of it, so that entries do not refresh in lockstep.
+ * <p>
+ * Failed or empty loads, for which there is no stale value, are cached too (negative caching): callers get the same
+ * failure immediately until negative time to live passes and then a single caller retries the load.
+ * Negative time to live doubles with every consecutive failure up to its maximum.
+ * Zero negative time to live disables negative caching and every caller retries the load.
+ * <p>
+ * {@link Listener} is notified about every change of loaded values, e.g. to maintain values derived from them.
+ */
+public final class RefreshAheadCache<T, U> {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshAheadCache.class);
+
+    private final long ttlInNanos;
+    private final double jitter;
+    private final long negativeTtlInNanos;
+    private final long maxNegativeTtlInNanos;
+    private final Ticker ticker;
+    private final Listener<T, U> listener;
+    private final Scheduler refreshScheduler;
+    private final Map<T, Entry<U>> entries = new ConcurrentHashMap<>();
+
+    public interface Listener<T, U> {
+        /**
+         * Called while the entry is locked, so that changes of the same key are observed in order
+         * @param key key of the value
+         * @param previous previous value or null if there was none
+         * @param current new value or null if the value was dropped
+         */
+        void onChange(T key, U previous, U current);
+    }
+
+    public RefreshAheadCache(Duration ttl, double jitter, Ticker ticker) {
+        this(ttl, jitter, Duration.ZERO, Duration.ZERO, ticker);
+    }
+
+    public RefreshAheadCache(Duration ttl, double jitter, Duration negativeTtl, Duration maxNegativeTtl, Ticker ticker) {
+        this(ttl, jitter, negativeTtl, maxNegativeTtl, ticker, (key, previous, current) -> {});
+    }
+
+    public RefreshAheadCache(Duration ttl, double jitter, Duration negativeTtl, Duration maxNegativeTtl, Ticker ticker,
+                             Listener<T, U> listener) {
+        this(ttl, jitter, negativeTtl, maxNegativeTtl, ticker, listener, Schedulers.io());
+    }
+
+    public RefreshAheadCache(Duration ttl, double jitter, Duration negativeTtl, Duration maxNegativeTtl, Ticker ticker,
+                             Listener<T, U> listener, Scheduler refreshScheduler) {
+        Objects.requireNonNull(ttl, "ttl cannot be null");
+        Objects.requireNonNull(negativeTtl, "negativeTtl cannot be null");
+        Objects.requireNonNull(maxNegativeTtl, "maxNegativeTtl cannot be null");
+        Objects.requireNonNull(ticker, "ticker cannot be null");
+        Objects.requireNonNull(listener, "listener cannot be null");
+        Objects.requireNonNull(refreshScheduler, "refreshScheduler cannot be null");
+        if (ttl.isNegative()) throw new IllegalArgumentException("ttl cannot be negative but was " + ttl);
+        if (negativeTtl.isNegative()) throw new IllegalArgumentException("negativeTtl cannot be negative but was " + negativeTtl);
+        if (maxNegativeTtl.compareTo(negativeTtl) < 0)
+            throw new IllegalArgumentException("maxNegativeTtl cannot be less than negativeTtl but was " + maxNegativeTtl);
+        if (jitter < 0.0 || jitter > 1.0) throw new IllegalArgumentException("jitter should be in range [0, 1] but was " + jitter);
+        this.ttlInNanos = ttl.toNanos();
+        this.jitter = jitter;
+        this.negativeTtlInNanos = negativeTtl.toNanos();
+        this.maxNegativeTtlInNanos = maxNegativeTtl.toNanos();
+        this.ticker = ticker;
+        this.listener = listener;
+        this.refreshScheduler = refreshScheduler;
+    }
+
+    /**
+     * @param key key of the value
+     * @param loader loads the value for given key, it is subscribed only when value is missing or should be refreshed
+     * @return cached, possibly stale, value, cached failure or the value being loaded if there is no value yet
+     */
+    public Flowable<U> get(T key, Function<? super T, ? extends Flowable<U>> loader) {
+        final Entry<U> existing = entries.get(key);
+        final Entry<U> entry = existing != null ? existing : entries.computeIfAbsent(key, k -> new Entry<>());
+        final U value = entry.value;
+        if (value != null) {
+            if (ticker.nanoTime() - entry.refreshAt >= 0L && entry.isLoading.compareAndSet(false, true)) {
+                refresh(key, entry, loader);
+            }
+            return Flowable.just(value);
+        }
+        if (entry.isNegative) {
+            if (ticker.nanoTime() - entry.retryAt < 0L || !entry.isLoading.compareAndSet(false, true)) {
+                return entry.negativeResult();
+            }
+            return entry.reload(load(key, entry, loader));
+        }
+        return entry.loadingOf(() -> load(key, entry, loader));
+    }
+
+    public Optional<U> getIfPresent(T key) {
+        return Optional.ofNullable(entries.get(key)).map(entry -> entry.value);
+    }
+
+    /**
+     * Replaces every loaded value with the result of given function. Entries, which are still loading, are not updated.
+     * @param updater returns new value for given key and current value, the same value if it should not change
+     *                or null if the entry should be invalidated
+     */
+    public void updateAll(BiFunction<? super T, ? super U, ? extends U> updater) {
+        entries.forEach((key, entry) -> {
+            synchronized (entry) {
+                final U value = entry.value;
+                if (value != null) {
+                    final U newValue = updater.apply(key, value);
+                    if (newValue == null) {
+                        entries.remove(key, entry);
+                        listener.onChange(key, value, null);
+                    } else if (newValue != value) {
+                        entry.value = newValue;
+                        entry.version++;
+                        listener.onChange(key, value, newValue);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Lets the next access retry loading of negatively cached keys, which match given predicate, without waiting
+     * for their negative time to live, e.g. when a change, which could make the load succeed, is pushed
+     * @param isAffected returns true for keys, which should be loaded again
+     */
+    public void retryNegativeIf(Predicate<? super T> isAffected) {
+        entries.forEach((key, entry) -> {
+            if (entry.isNegative && isAffected.test(key)) entry.retryNow(ticker.nanoTime());
+        });
+    }
+
+    /**
+     * Puts a value, which is used until it is refreshed on the first access, e.g. value restored from a snapshot.
+     * Does nothing if the key is already cached.
+     * @param key key of the value
+     * @param value stale value
+     */
+    public void putStale(T key, U value) {
+        Objects.requireNonNull(value, "value cannot be null");
+        final Entry<U> entry = new Entry<>();
+        synchronized (entry) {
+            entry.update(value, ticker.nanoTime());
+            if (entries.putIfAbsent(key, entry) == null) listener.onChange(key, null, value);
+        }
+    }
+
+    /**
+     * @return currently loaded, possibly stale, values
+     */
+    public Map<T, U> snapshot() {
+        final Map<T, U> snapshot = new LinkedHashMap<>(entries.size() * 2);
+        entries.forEach((key, entry) -> {
+            final U value = entry.value;
+            if (value != null) snapshot.put(key, value);
+        });
+        return snapshot;
+    }
+
+    public void invalidate(T key) {
+        final Entry<U> entry = entries.remove(key);
+        if (entry == null) return;
+        synchronized (entry) {
+            if (entry.value != null) listener.onChange(key, entry.value, null);
+        }
+    }
+
+    private Flowable<U> load(T key, Entry<U> entry, Function<? super T, ? extends Flowable<U>> loader) {
+        return Flowable.defer(() -> loader.apply(key))
+                .doOnNext(value -> update(key, entry, value))
+                .doOnError(error -> onLoadFailure(key, entry, error))
+                .doOnComplete(() -> {
+                    if (entry.value == null) onLoadFailure(key, entry, null);
+                })
+                .doFinally(() -> entry.isLoading.set(false))
+                .cache();
+    }
+
+    private void refresh(T key, Entry<U> entry, Function<? super T, ? extends Flowable<U>> loader) {
+        final long version = entry.version;
+        Flowable.defer(() -> loader.apply(key))
+                .subscribeOn(refreshScheduler)
+                .lastElement()
+                .doFinally(() -> entry.isLoading.set(false))
+                .subscribe(
+                        value -> {
+                            synchronized (entry) {
+                                if (!isUpdatedSince(key, entry, version)) update(key, entry, value);
+                            }
+                        },
+                        error -> {
+                            log.warn("Unable to refresh {}, keeping stale value", key, error);
+                            entry.refreshAt = nextRefreshAt();
+                        },
+                        () -> {
+                            synchronized (entry) {
+                                if (!isUpdatedSince(key, entry, version)) onLoadFailure(key, entry, null);
+                            }
+                        });
+    }
+
+    /**
+     * Should be called holding the lock of the entry together with the write of the refreshed value,
+     * so that no update can slip in between
+     * @return true if the value was updated after given version, so that the result of the refresh is older than the value
+     */
+    private boolean isUpdatedSince(T key, Entry<U> entry, long version) {
+        synchronized (entry) {
+            if (entry.version == version) return false;
+            log.debug("Discarding refresh of {}, because the value was updated while refreshing", key);
+            entry.refreshAt = nextRefreshAt();
+            return true;
+        }
+    }
+
+    private void update(T key, Entry<U> entry, U value) {
+        synchronized (entry) {
+            final U previous = entry.value;
+            entry.update(value, nextRefreshAt());
+            if (previous != value) listener.onChange(key, previous, value);
+        }
+    }
+
+    private void onLoadFailure(T key, Entry<U> entry, Throwable error) {
+        synchronized (entry) {
+            final U previous = entry.value;
+            if (negativeTtlInNanos == 0L) {
+                entries.remove(key, entry);
+            } else {
+                entry.fail(error, this::nextRetryAt);
+            }
+            if (previous != null) listener.onChange(key, previous, null);
+        }
+    }
+
+    private long nextRefreshAt() {
+        return ticker.nanoTime() + withJitter(ttlInNanos);
+    }
+
+    private long nextRetryAt(int failures) {
+        final int shift = Math.min(failures - 1, 30);
+        final long negativeTtl = negativeTtlInNanos > (maxNegativeTtlInNanos >> shift) ?
+                maxNegativeTtlInNanos : Math.min(maxNegativeTtlInNanos, negativeTtlInNanos << shift);
+        return ticker.nanoTime() + withJitter(negativeTtl);
+    }
+
+    private long withJitter(long durationInNanos) {
+        return jitter == 0.0 ? durationInNanos :
+                durationInNanos + (long) (ThreadLocalRandom.current().nextDouble(jitter) * durationInNanos);
+    }
+
+    private static final class Entry<U> {
+
+        private volatile U value;
+        private volatile long refreshAt;
+        private volatile Flowable<U> loading;
+        private volatile boolean isNegative;
+        private volatile Throwable error;
+        private volatile long retryAt;
+        private volatile long version;
+        private int failures;
+        private final AtomicBoolean isLoading = new AtomicBoolean(false);
+
+        private synchronized void update(U value, long refreshAt) {
+            this.refreshAt = refreshAt;
+            this.value = value;
+            this.isNegative = false;
+            this.error = null;
+            this.failures = 0;
+        }
+
+        private synchronized void fail(Throwable error, IntToLongFunction retryAtOf) {
+            this.error = error;
+            this.retryAt = retryAtOf.applyAsLong(++failures);
+            this.value = null;
+            this.loading = null;
+            this.isNegative = true;
+        }
+
+        private synchronized void retryNow(long now) {
+            if (!isNegative) return;
+            this.retryAt = now;
+            this.failures = 0;
+        }
+
+        private Flowable<U> negativeResult() {
+            final Throwable cachedError = error;
+            return cachedError == null ? Flowable.empty() : Flowable.error(cachedError);
+        }
+
+        private synchronized Flowable<U> reload(Flowable<U> newLoading) {
+            loading = newLoading;
+            return newLoading;
+        }
+
+        private Flowable<U> loadingOf(Supplier<Flowable<U>> loader) {
+            final Flowable<U> current = loading;
+            if (current != null) return current;
+            synchronized (this) {
+                if (loading == null) {
+                    loading = loader.get();
+                }
+                return loading;
+            }
+        }
+    }
+}
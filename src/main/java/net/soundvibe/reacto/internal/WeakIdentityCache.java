@@ -0,0 +1,88 @@
+package net.soundvibe.reacto.internal;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Small lossy cache keyed by object identity, which does not keep its keys alive.
+ * Lookups are lock-free and allocate nothing when the key is found. Every key may reside in one of
+ * a few consecutive slots; when all of them are taken by live keys, the first one is replaced.
+ */
+public final class WeakIdentityCache<T, U> implements Cache<T, U> {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final int PROBES = 4;
+
+    private final AtomicReferenceArray<Entry<T, U>> entries;
+    private final int mask;
+
+    public WeakIdentityCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of slots, rounded up to the power of two
+     */
+    public WeakIdentityCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity cannot be less than 1 but was " + capacity);
+        final int size = Math.max(PROBES, Integer.highestOneBit(capacity - 1) << 1);
+        this.entries = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    @Override
+    public U computeIfAbsent(T key, Function<? super T, ? extends U> mappingFunction) {
+        final U value = getIfPresent(key);
+        if (value != null) return value;
+        final U computed = mappingFunction.apply(key);
+        put(key, computed);
+        return computed;
+    }
+
+    /**
+     * @return value cached for the key or null if there is none
+     */
+    public U getIfPresent(T key) {
+        final int home = spread(System.identityHashCode(key)) & mask;
+        for (int probe = 0; probe < PROBES; probe++) {
+            final Entry<T, U> entry = entries.get((home + probe) & mask);
+            if (entry != null && entry.get() == key) return entry.value;
+        }
+        return null;
+    }
+
+    /**
+     * Caches the value for the key, replacing the value cached for the same key or the first slot if all of them are taken
+     */
+    public void put(T key, U value) {
+        final int home = spread(System.identityHashCode(key)) & mask;
+        int freeSlot = -1;
+        for (int probe = 0; probe < PROBES; probe++) {
+            final int slot = (home + probe) & mask;
+            final Entry<T, U> entry = entries.get(slot);
+            final T entryKey = entry == null ? null : entry.get();
+            if (entry != null && entryKey == key) {
+                freeSlot = slot;
+                break;
+            }
+            if (entryKey == null && freeSlot < 0) freeSlot = slot;
+        }
+        entries.set(freeSlot < 0 ? home : freeSlot, new Entry<>(key, value));
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Entry<T, U> extends WeakReference<T> {
+
+        private final U value;
+
+        private Entry(T key, U value) {
+            super(key);
+            this.value = value;
+        }
+    }
+}
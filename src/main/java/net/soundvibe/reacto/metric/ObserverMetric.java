@@ -22,7 +22,12 @@ public final class ObserverMetric<T> implements Subscriber<T> {
 
     @SuppressWarnings("unchecked")
     public static <T> ObserverMetric<T> findObserver(Command command) {
-        return observers.computeIfAbsent(CommandDescriptor.fromCommand(command), ObserverMetric::new);
+        return findObserver(CommandDescriptor.fromCommand(command));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> ObserverMetric<T> findObserver(CommandDescriptor commandDescriptor) {
+        return observers.computeIfAbsent(commandDescriptor, ObserverMetric::new);
     }
 
     private ObserverMetric(CommandDescriptor commandDescriptor) {
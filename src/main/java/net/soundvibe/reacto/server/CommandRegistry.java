@@ -19,6 +19,7 @@ import static java.util.Objects.requireNonNull;
 public final class CommandRegistry implements Iterable<Pair<CommandDescriptor, CommandExecutor>> {
 
     private final Map<CommandDescriptor, CommandExecutor> commands = new ConcurrentHashMap<>();
+    private final Map<CommandDescriptor, Function<?, ? extends Flowable<?>>> typedCommands = new ConcurrentHashMap<>();
     private final CommandRegistryMapper mapper;
 
     private CommandRegistry() {
@@ -47,7 +48,9 @@ public final class CommandRegistry implements Iterable<Pair<CommandDescriptor, C
                 .compose(c -> mapper.toGenericCommand(c, commandType));
         final Function<Command, Flowable<Event>> after = before
                 .andThen(observable -> observable.map(mapper::toEvent));
-        add(CommandDescriptor.ofTypes(commandType, eventType), after::apply);
+        final CommandDescriptor descriptor = CommandDescriptor.ofTypes(commandType, eventType);
+        add(descriptor, after::apply);
+        typedCommands.put(descriptor, onInvoke);
         return this;
     }
 
@@ -89,6 +92,18 @@ public final class CommandRegistry implements Iterable<Pair<CommandDescriptor, C
         return Optional.ofNullable(commands.get(descriptor));
     }
 
+    /**
+     * Finds typed command function, which can be invoked in the same JVM without mapping commands and events
+     * @param commandType type of the command
+     * @param eventType type of the events
+     * @return registered typed command function
+     */
+    @SuppressWarnings("unchecked")
+    public <C, E> Optional<Function<C, Flowable<? extends E>>> findTypedCommand(Class<? extends C> commandType,
+                                                                                Class<? extends E> eventType) {
+        return Optional.ofNullable((Function<C, Flowable<? extends E>>) typedCommands.get(CommandDescriptor.ofTypes(commandType, eventType)));
+    }
+
     public Stream<Pair<CommandDescriptor, CommandExecutor>> stream() {
         return StreamSupport.stream(spliterator(), false);
     }
@@ -8,11 +8,15 @@ import java.util.Objects;
 public final class ServiceOptions {
 
     public static final int DEFAULT_PORT = 80;
+    public static final int DEFAULT_WEIGHT = 100;
+    public static final String DEFAULT_ZONE = "default";
     public final String serviceName;
     public final String root;
     public final String version;
     public final boolean isSsl;
     public final int port;
+    public final int weight;
+    public final String zone;
 
     public ServiceOptions(String serviceName, String root) {
         this(serviceName, root, "UNKNOWN", false, DEFAULT_PORT);
@@ -23,11 +27,30 @@ public final class ServiceOptions {
     }
 
     public ServiceOptions(String serviceName, String root, String version, boolean isSsl, int port) {
+        this(serviceName, root, version, isSsl, port, DEFAULT_WEIGHT);
+    }
+
+    /**
+     * @param weight capacity of this instance relative to other instances of the same service,
+     *               e.g. number of cores. Weighted load balancers send proportionally more commands to heavier instances.
+     */
+    public ServiceOptions(String serviceName, String root, String version, boolean isSsl, int port, int weight) {
+        this(serviceName, root, version, isSsl, port, weight, DEFAULT_ZONE);
+    }
+
+    /**
+     * @param zone availability zone or data center of this instance. Zone aware load balancers prefer instances in their own zone.
+     */
+    public ServiceOptions(String serviceName, String root, String version, boolean isSsl, int port, int weight, String zone) {
+        Objects.requireNonNull(zone, "zone cannot be null");
+        if (weight < 0) throw new IllegalArgumentException("weight cannot be negative but was " + weight);
         this.serviceName = serviceName;
         this.root = root;
         this.version = version;
         this.isSsl = isSsl;
         this.port = port;
+        this.weight = weight;
+        this.zone = zone;
     }
 
     @Override
@@ -37,6 +60,8 @@ public final class ServiceOptions {
         final ServiceOptions that = (ServiceOptions) o;
         return isSsl == that.isSsl &&
                 port == that.port &&
+                weight == that.weight &&
+                Objects.equals(zone, that.zone) &&
                 Objects.equals(serviceName, that.serviceName) &&
                 Objects.equals(root, that.root) &&
                 Objects.equals(version, that.version);
@@ -44,7 +69,7 @@ public final class ServiceOptions {
 
     @Override
     public int hashCode() {
-        return Objects.hash(serviceName, root, version, isSsl, port);
+        return Objects.hash(serviceName, root, version, isSsl, port, weight, zone);
     }
 
     @Override
@@ -55,6 +80,8 @@ public final class ServiceOptions {
                 ", version='" + version + '\'' +
                 ", isSsl=" + isSsl +
                 ", port=" + port +
+                ", weight=" + weight +
+                ", zone='" + zone + '\'' +
                 '}';
     }
 }
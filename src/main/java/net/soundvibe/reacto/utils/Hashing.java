@@ -0,0 +1,44 @@
+package net.soundvibe.reacto.utils;
+
+/**
+ * Fast non-cryptographic 64 bit hashes, stable across JVMs
+ */
+public interface Hashing {
+
+    long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    long FNV_PRIME = 0x100000001b3L;
+
+    static long hash(CharSequence value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    static long hash(byte[] value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : value) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * SplitMix64 finalizer, spreads every input bit over all output bits
+     * @param value value to mix
+     * @return mixed value
+     */
+    static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    static long combine(long left, long right) {
+        return mix(left ^ (right + 0x9e3779b97f4a7c15L + (left << 6) + (left >>> 2)));
+    }
+}
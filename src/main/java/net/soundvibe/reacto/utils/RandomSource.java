@@ -0,0 +1,57 @@
+package net.soundvibe.reacto.utils;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Source of uniformly distributed random numbers.
+ * Routing policies draw random numbers through this interface so that their decisions could be reproduced with a seed.
+ */
+@FunctionalInterface
+public interface RandomSource {
+
+    RandomSource THREAD_LOCAL = new RandomSource() {
+        @Override
+        public double nextDouble() {
+            return ThreadLocalRandom.current().nextDouble();
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            return ThreadLocalRandom.current().nextInt(bound);
+        }
+
+        @Override
+        public long nextLong(long bound) {
+            return ThreadLocalRandom.current().nextLong(bound);
+        }
+    };
+
+    /**
+     * @return random number between 0 (inclusive) and 1 (exclusive)
+     */
+    double nextDouble();
+
+    /**
+     * @param bound positive upper bound
+     * @return random number between 0 (inclusive) and bound (exclusive)
+     */
+    default int nextInt(int bound) {
+        return (int) (nextDouble() * bound);
+    }
+
+    /**
+     * @param bound positive upper bound
+     * @return random number between 0 (inclusive) and bound (exclusive)
+     */
+    default long nextLong(long bound) {
+        return Math.min((long) (nextDouble() * bound), bound - 1L);
+    }
+
+    /**
+     * @return source, which draws the same sequence of numbers for the same seed
+     */
+    static RandomSource seeded(long seed) {
+        return new Random(seed)::nextDouble;
+    }
+}
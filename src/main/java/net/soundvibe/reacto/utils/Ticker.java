@@ -0,0 +1,14 @@
+package net.soundvibe.reacto.utils;
+
+/**
+ * Source of monotonic time in nanoseconds.
+ * Routing policies read time through this interface so that they could be driven by a virtual clock in tests.
+ */
+@FunctionalInterface
+public interface Ticker {
+
+    Ticker SYSTEM = System::nanoTime;
+
+    long nanoTime();
+
+}
@@ -0,0 +1,102 @@
+package net.soundvibe.reacto.client.commands;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    private final AtomicLong time = new AtomicLong(0L);
+
+    private final CircuitBreaker sut = new CircuitBreaker(CircuitBreakerOptions.defaults()
+            .setSlidingWindowSize(4)
+            .setMinimumNumberOfCalls(4)
+            .setFailureRateThreshold(0.5)
+            .setWaitDurationInOpenState(Duration.ofSeconds(1L))
+            .setPermittedCallsInHalfOpenState(2)
+            .setTicker(time::get));
+
+    @Test
+    public void shouldStayClosedUntilMinimumNumberOfCallsIsRecorded() throws Exception {
+        sut.onError();
+        sut.onError();
+        sut.onError();
+        assertEquals(CircuitBreaker.State.CLOSED, sut.state());
+        assertTrue(sut.isCallPermitted());
+    }
+
+    @Test
+    public void shouldOpenWhenFailureRateExceedsThreshold() throws Exception {
+        sut.onSuccess();
+        sut.onSuccess();
+        sut.onError();
+        sut.onError();
+
+        assertEquals(CircuitBreaker.State.OPEN, sut.state());
+        assertFalse(sut.isCallPermitted());
+        assertFalse(sut.tryAcquirePermission());
+    }
+
+    @Test
+    public void shouldSlideWindowOverOldestCalls() throws Exception {
+        sut.onError();
+        sut.onSuccess();
+        sut.onSuccess();
+        sut.onSuccess();
+        assertEquals(0.25, sut.failureRate(), 0.0001);
+
+        sut.onSuccess();
+        assertEquals(0.0, sut.failureRate(), 0.0001);
+        assertEquals(CircuitBreaker.State.CLOSED, sut.state());
+    }
+
+    @Test
+    public void shouldCloseAfterSuccessfulProbes() throws Exception {
+        openBreaker();
+
+        time.set(Duration.ofSeconds(1L).toNanos());
+        assertTrue(sut.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, sut.state());
+        assertTrue(sut.tryAcquirePermission());
+        assertFalse("Only permitted number of probes should go through", sut.tryAcquirePermission());
+
+        sut.onSuccess();
+        sut.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, sut.state());
+        assertEquals(0.0, sut.failureRate(), 0.0001);
+    }
+
+    @Test
+    public void shouldOpenAgainWhenProbeFails() throws Exception {
+        openBreaker();
+
+        time.set(Duration.ofSeconds(1L).toNanos());
+        assertTrue(sut.tryAcquirePermission());
+        sut.onError();
+
+        assertEquals(CircuitBreaker.State.OPEN, sut.state());
+        time.set(Duration.ofMillis(1500L).toNanos());
+        assertFalse(sut.isCallPermitted());
+    }
+
+    @Test
+    public void shouldReleaseProbePermissionWhenCancelled() throws Exception {
+        openBreaker();
+
+        time.set(Duration.ofSeconds(1L).toNanos());
+        assertTrue(sut.tryAcquirePermission());
+        assertTrue(sut.tryAcquirePermission());
+        sut.release();
+        assertTrue(sut.tryAcquirePermission());
+    }
+
+    private void openBreaker() {
+        for (int i = 0; i < 4; i++) {
+            sut.onError();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, sut.state());
+    }
+}
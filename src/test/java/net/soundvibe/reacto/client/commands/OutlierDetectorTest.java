@@ -0,0 +1,181 @@
+package net.soundvibe.reacto.client.commands;
+
+import io.reactivex.Flowable;
+import net.soundvibe.reacto.client.events.CommandHandler;
+import net.soundvibe.reacto.discovery.types.*;
+import net.soundvibe.reacto.types.*;
+import net.soundvibe.reacto.types.json.JsonObject;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class OutlierDetectorTest {
+
+    private final AtomicLong time = new AtomicLong(0L);
+
+    private final OutlierDetector sut = new OutlierDetector(OutlierDetectionOptions.defaults()
+            .setMinimumSamples(10)
+            .setMaxEjectionPercent(25)
+            .setInterval(Duration.ofSeconds(1L))
+            .setBaseEjectionTime(Duration.ofSeconds(10L))
+            .setTicker(time::get));
+
+    @Test
+    public void shouldEjectSlowHandlerAndReadmitAfterEjectionTime() throws Exception {
+        final List<CommandHandler> handlers = handlers(4);
+        recordLatencies(handlers, 2L, 2L, 2L, 50L);
+
+        time.set(TimeUnit.SECONDS.toNanos(1L));
+        final List<CommandHandler> actual = sut.filter(handlers);
+
+        assertEquals(3, actual.size());
+        assertFalse(actual.contains(handlers.get(3)));
+        assertTrue(sut.isEjected(handlers.get(3)));
+
+        time.set(TimeUnit.SECONDS.toNanos(11L));
+        assertFalse(sut.isEjected(handlers.get(3)));
+        assertEquals(0, sut.latencyOf(handlers.get(3)).map(LatencyStats::count).orElse(-1).intValue());
+    }
+
+    @Test
+    public void shouldDoubleEjectionTimeOfConsecutiveEjections() throws Exception {
+        final List<CommandHandler> handlers = handlers(4);
+        recordLatencies(handlers, 2L, 2L, 2L, 50L);
+        time.set(TimeUnit.SECONDS.toNanos(1L));
+        sut.filter(handlers);
+
+        time.set(TimeUnit.SECONDS.toNanos(11L));
+        recordLatencies(handlers, 2L, 2L, 2L, 50L);
+        sut.filter(handlers);
+        assertTrue(sut.isEjected(handlers.get(3)));
+
+        time.set(TimeUnit.SECONDS.toNanos(21L));
+        assertTrue("Second ejection should last twice as long", sut.isEjected(handlers.get(3)));
+        time.set(TimeUnit.SECONDS.toNanos(31L));
+        assertFalse(sut.isEjected(handlers.get(3)));
+    }
+
+    @Test
+    public void shouldCapEjectedHandlers() throws Exception {
+        final List<CommandHandler> handlers = handlers(5);
+        recordLatencies(handlers, 2L, 2L, 2L, 50L, 60L);
+
+        time.set(TimeUnit.SECONDS.toNanos(1L));
+        final List<CommandHandler> actual = sut.filter(handlers);
+
+        assertEquals("Only 25% of handlers could be ejected", 4, actual.size());
+        assertTrue(sut.isEjected(handlers.get(4)));
+        assertFalse(sut.isEjected(handlers.get(3)));
+    }
+
+    @Test
+    public void shouldNotEjectWhenPeersAreSimilar() throws Exception {
+        final List<CommandHandler> handlers = handlers(4);
+        recordLatencies(handlers, 20L, 22L, 25L, 30L);
+
+        time.set(TimeUnit.SECONDS.toNanos(1L));
+        assertEquals(4, sut.filter(handlers).size());
+    }
+
+    @Test
+    public void shouldNotEvaluateWithoutEnoughPeers() throws Exception {
+        final List<CommandHandler> handlers = handlers(2);
+        recordLatencies(handlers, 2L, 50L);
+
+        time.set(TimeUnit.SECONDS.toNanos(1L));
+        assertEquals(2, sut.filter(handlers).size());
+    }
+
+    @Test
+    public void shouldEvaluateEveryServiceInTheSameInterval() throws Exception {
+        final List<CommandHandler> handlers = handlers("test", 4);
+        final List<CommandHandler> otherHandlers = handlers("other", 4);
+        recordLatencies(handlers, 2L, 2L, 2L, 50L);
+        recordLatencies(otherHandlers, 2L, 2L, 2L, 2L);
+
+        time.set(TimeUnit.SECONDS.toNanos(1L));
+        assertEquals(4, sut.filter(otherHandlers).size());
+        final List<CommandHandler> actual = sut.filter(handlers);
+
+        assertEquals(3, actual.size());
+        assertTrue(sut.isEjected(handlers.get(3)));
+    }
+
+    @Test
+    public void shouldEvaluateEverySubsetOfServiceInTheSameInterval() throws Exception {
+        final List<CommandHandler> allHandlers = handlers("test", 8);
+        final List<CommandHandler> handlers = allHandlers.subList(0, 4);
+        final List<CommandHandler> otherHandlers = allHandlers.subList(4, 8);
+        recordLatencies(handlers, 2L, 2L, 2L, 50L);
+        recordLatencies(otherHandlers, 2L, 2L, 2L, 2L);
+
+        time.set(TimeUnit.SECONDS.toNanos(1L));
+        assertEquals(4, sut.filter(otherHandlers).size());
+        final List<CommandHandler> actual = sut.filter(handlers);
+
+        assertEquals(3, actual.size());
+        assertTrue(sut.isEjected(handlers.get(3)));
+    }
+
+    @Test
+    public void shouldEvaluateHandlersWithoutServiceRecords() throws Exception {
+        final List<CommandHandler> handlers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            handlers.add(new CommandHandler() {
+                @Override
+                public Flowable<Event> observe(Command command) {
+                    return Flowable.empty();
+                }
+
+                @Override
+                public ServiceRecord serviceRecord() {
+                    return null;
+                }
+            });
+        }
+        recordLatencies(handlers, 2L, 2L, 2L, 50L);
+
+        time.set(TimeUnit.SECONDS.toNanos(1L));
+        final List<CommandHandler> actual = sut.filter(handlers);
+
+        assertEquals(3, actual.size());
+        assertTrue(sut.isEjected(handlers.get(3)));
+    }
+
+    private void recordLatencies(List<CommandHandler> handlers, long... latenciesInMs) {
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < handlers.size(); j++) {
+                sut.record(handlers.get(j), TimeUnit.MILLISECONDS.toNanos(latenciesInMs[j]));
+            }
+        }
+    }
+
+    private static List<CommandHandler> handlers(int count) {
+        return handlers("test", count);
+    }
+
+    private static List<CommandHandler> handlers(String serviceName, int count) {
+        final List<CommandHandler> handlers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final ServiceRecord serviceRecord = ServiceRecord.create(serviceName, Status.UP, ServiceType.WEBSOCKET,
+                    serviceName + i, JsonObject.empty(), JsonObject.empty());
+            handlers.add(new CommandHandler() {
+                @Override
+                public Flowable<Event> observe(Command command) {
+                    return Flowable.empty();
+                }
+
+                @Override
+                public ServiceRecord serviceRecord() {
+                    return serviceRecord;
+                }
+            });
+        }
+        return handlers;
+    }
+}
@@ -0,0 +1,204 @@
+package net.soundvibe.reacto.client.commands;
+
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.TestScheduler;
+import net.soundvibe.reacto.client.events.CommandHandler;
+import net.soundvibe.reacto.discovery.types.*;
+import net.soundvibe.reacto.types.*;
+import net.soundvibe.reacto.types.json.JsonObject;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PassiveHealthCheckerTest {
+
+    private final TestScheduler scheduler = new TestScheduler();
+    private final PassiveHealthChecker sut = new PassiveHealthChecker(PassiveHealthOptions.defaults()
+            .setConsecutiveFailures(3)
+            .setLatencySlo(Duration.ofMillis(100L))
+            .setConsecutiveSlowCalls(2)
+            .setProbeInterval(Duration.ofSeconds(1L))
+            .setProbeTimeout(Duration.ofMillis(500L))
+            .setScheduler(scheduler));
+
+    @Test
+    public void shouldTakeHandlerOutOfServiceAfterConsecutiveFailures() throws Exception {
+        final CommandHandler handler = handler("1", Flowable.just(Any.VOID));
+
+        sut.onError(handler, new IllegalStateException("error"));
+        sut.onError(handler, new IllegalStateException("error"));
+        sut.onSuccess(handler, 0L);
+        sut.onError(handler, new IllegalStateException("error"));
+        sut.onError(handler, new IllegalStateException("error"));
+        assertEquals(Status.UP, sut.statusOf(handler));
+
+        sut.onError(handler, new IllegalStateException("error"));
+        assertEquals(Status.OUT_OF_SERVICE, sut.statusOf(handler));
+    }
+
+    @Test
+    public void shouldTakeHandlerOutOfServiceAfterConnectionError() throws Exception {
+        final CommandHandler handler = handler("1", Flowable.just(Any.VOID));
+
+        sut.onError(handler, new ConnectException("Connection refused"));
+
+        assertFalse(sut.isInService(handler));
+    }
+
+    @Test
+    public void shouldTakeHandlerOutOfServiceAfterConsecutiveSlowCalls() throws Exception {
+        final CommandHandler handler = handler("1", Flowable.just(Any.VOID));
+
+        sut.onSuccess(handler, TimeUnit.MILLISECONDS.toNanos(150L));
+        sut.onSuccess(handler, TimeUnit.MILLISECONDS.toNanos(50L));
+        sut.onSuccess(handler, TimeUnit.MILLISECONDS.toNanos(150L));
+        assertTrue(sut.isInService(handler));
+
+        sut.onSuccess(handler, TimeUnit.MILLISECONDS.toNanos(150L));
+        assertFalse(sut.isInService(handler));
+    }
+
+    @Test
+    public void shouldPutHandlerBackIntoServiceWhenProbeSucceeds() throws Exception {
+        final AtomicInteger probes = new AtomicInteger(0);
+        final CommandHandler handler = handler("1", Flowable.defer(() -> probes.incrementAndGet() < 3 ?
+                Flowable.error(new ConnectException("Connection refused")) :
+                Flowable.just(Any.VOID)));
+        sut.onError(handler, new ConnectException("Connection refused"));
+
+        scheduler.advanceTimeBy(1L, TimeUnit.SECONDS);
+        assertEquals(1, probes.get());
+        assertFalse(sut.isInService(handler));
+
+        scheduler.advanceTimeBy(1L, TimeUnit.SECONDS);
+        assertEquals(2, probes.get());
+        assertFalse(sut.isInService(handler));
+
+        scheduler.advanceTimeBy(1L, TimeUnit.SECONDS);
+        assertEquals(3, probes.get());
+        assertTrue(sut.isInService(handler));
+        assertEquals(Status.UP, sut.statusOf(handler));
+
+        scheduler.advanceTimeBy(10L, TimeUnit.SECONDS);
+        assertEquals(3, probes.get());
+    }
+
+    @Test
+    public void shouldKeepHandlerOutOfServiceWhenProbeTimesOut() throws Exception {
+        final AtomicInteger probes = new AtomicInteger(0);
+        final CommandHandler handler = handler("1", Flowable.defer(() -> {
+            probes.incrementAndGet();
+            return Flowable.never();
+        }));
+        sut.onError(handler, new ConnectException("Connection refused"));
+
+        scheduler.advanceTimeBy(1500L, TimeUnit.MILLISECONDS);
+        assertFalse(sut.isInService(handler));
+
+        scheduler.advanceTimeBy(1L, TimeUnit.SECONDS);
+        assertEquals(2, probes.get());
+        assertFalse(sut.isInService(handler));
+    }
+
+    @Test
+    public void shouldKeepHandlerOutOfServiceUntilTrialCommandSucceedsWhenItCannotBeProbed() throws Exception {
+        final CommandHandler first = handler("1", Flowable.empty());
+        final CommandHandler second = handler("2", Flowable.empty());
+        final List<CommandHandler> handlers = Arrays.asList(first, second);
+        sut.onError(first, new ConnectException("Connection refused"));
+
+        scheduler.advanceTimeBy(10L, TimeUnit.SECONDS);
+        assertFalse(sut.isInService(first));
+        assertSame(handlers, sut.filter(handlers));
+
+        sut.onRequestStart(first);
+        assertEquals(Collections.singletonList(second), sut.filter(handlers));
+        sut.onCancel(first);
+        assertSame(handlers, sut.filter(handlers));
+
+        sut.onRequestStart(first);
+        sut.onSuccess(first, 0L);
+        assertTrue(sut.isInService(first));
+        assertSame(handlers, sut.filter(handlers));
+    }
+
+    @Test
+    public void shouldKeepHandlerOutOfServiceWhenTrialCommandFails() throws Exception {
+        final AtomicInteger probes = new AtomicInteger(0);
+        final CommandHandler first = handler("1", Flowable.defer(() -> {
+            probes.incrementAndGet();
+            return Flowable.empty();
+        }));
+        final CommandHandler second = handler("2", Flowable.empty());
+        final List<CommandHandler> handlers = Arrays.asList(first, second);
+        sut.onError(first, new ConnectException("Connection refused"));
+        scheduler.advanceTimeBy(1L, TimeUnit.SECONDS);
+        assertEquals(1, probes.get());
+
+        sut.onRequestStart(first);
+        sut.onError(first, new ConnectException("Connection refused"));
+        assertFalse(sut.isInService(first));
+        assertEquals(Collections.singletonList(second), sut.filter(handlers));
+
+        scheduler.advanceTimeBy(1L, TimeUnit.SECONDS);
+        assertEquals(2, probes.get());
+        assertSame(handlers, sut.filter(handlers));
+    }
+
+    @Test
+    public void shouldStopProbingRemovedHandler() throws Exception {
+        final AtomicInteger probes = new AtomicInteger(0);
+        final CommandHandler handler = handler("1", Flowable.defer(() -> {
+            probes.incrementAndGet();
+            return Flowable.just(Any.VOID);
+        }));
+        sut.onError(handler, new ConnectException("Connection refused"));
+
+        sut.remove(handler);
+        scheduler.advanceTimeBy(10L, TimeUnit.SECONDS);
+
+        assertEquals(0, probes.get());
+        assertTrue(sut.isInService(handler));
+    }
+
+    @Test
+    public void shouldFilterOutHandlersOutOfService() throws Exception {
+        final CommandHandler first = handler("1", Flowable.just(Any.VOID));
+        final CommandHandler second = handler("2", Flowable.just(Any.VOID));
+        final List<CommandHandler> handlers = Arrays.asList(first, second);
+        assertSame(handlers, sut.filter(handlers));
+
+        sut.onError(first, new ConnectException("Connection refused"));
+        assertEquals(Collections.singletonList(second), sut.filter(handlers));
+
+        sut.onError(second, new ConnectException("Connection refused"));
+        assertSame(handlers, sut.filter(handlers));
+    }
+
+    private static CommandHandler handler(String registrationId, Flowable<Any> probe) {
+        final ServiceRecord serviceRecord = ServiceRecord.create("test", Status.UP, ServiceType.WEBSOCKET, registrationId,
+                JsonObject.empty(), JsonObject.empty());
+        return new CommandHandler() {
+            @Override
+            public Flowable<Event> observe(Command command) {
+                return Flowable.just(Event.create("foo"));
+            }
+
+            @Override
+            public ServiceRecord serviceRecord() {
+                return serviceRecord;
+            }
+
+            @Override
+            public Flowable<Any> probe() {
+                return probe;
+            }
+        };
+    }
+}
@@ -1,20 +1,24 @@
 package net.soundvibe.reacto.client.commands;
 
 import io.reactivex.Flowable;
+import io.reactivex.schedulers.TestScheduler;
 import io.reactivex.subscribers.TestSubscriber;
 import net.soundvibe.reacto.client.events.CommandHandler;
-import net.soundvibe.reacto.discovery.LoadBalancers;
+import net.soundvibe.reacto.discovery.*;
 import net.soundvibe.reacto.discovery.types.*;
 import net.soundvibe.reacto.errors.CannotFindEventHandlers;
 import net.soundvibe.reacto.types.*;
 import net.soundvibe.reacto.types.json.JsonObject;
 import org.junit.Test;
 
+import java.net.ConnectException;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.*;
 
 import static java.util.Collections.singletonList;
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 /**
  * @author OZY on 2017.01.24.
@@ -72,6 +76,194 @@ public class ReactoCommandExecutorTest {
         assertEquals("Error should have been emitted but was not",1, counter.get());
     }
 
+    @Test
+    public void shouldNotRemoveHandlerAfterTransientError() throws Exception {
+        AtomicInteger counter = new AtomicInteger(0);
+        final CommandHandler flakyHandler = testHandler(Flowable.defer(() -> counter.incrementAndGet() == 1 ?
+                Flowable.<Event>error(new RuntimeException("error")) :
+                Flowable.just(Event.create("foo"))));
+
+        final CommandExecutor sut = ReactoCommandExecutor.Builder.create()
+                .circuitBreakers(new CircuitBreakers(CircuitBreakerOptions.defaults()))
+                .retryPolicy(new RetryPolicy(2, Duration.ofMillis(1L), Duration.ofMillis(5L)))
+                .build()
+                .create(singletonList(flakyHandler), LoadBalancers.ROUND_ROBIN);
+
+        final TestSubscriber<Event> testSubscriber = new TestSubscriber<>();
+        sut.execute(Command.create("new"))
+                .subscribe(testSubscriber);
+
+        testSubscriber.awaitTerminalEvent();
+        testSubscriber.assertNoErrors();
+        testSubscriber.assertValue(Event.create("foo"));
+        assertEquals(2, counter.get());
+    }
+
+    @Test
+    public void shouldStopRetryingWhenRetriesAreExhausted() throws Exception {
+        AtomicInteger counter = new AtomicInteger(0);
+        final CommandHandler failingHandler = testHandler(
+                Flowable.<Event>error(new RuntimeException("error")).doOnError(e -> counter.incrementAndGet()));
+
+        final CommandExecutor sut = ReactoCommandExecutor.Builder.create()
+                .circuitBreakers(new CircuitBreakers(CircuitBreakerOptions.defaults()))
+                .retryPolicy(new RetryPolicy(2, Duration.ofMillis(1L), Duration.ofMillis(5L)))
+                .build()
+                .create(singletonList(failingHandler), LoadBalancers.ROUND_ROBIN);
+
+        final TestSubscriber<Event> testSubscriber = new TestSubscriber<>();
+        sut.execute(Command.create("new"))
+                .subscribe(testSubscriber);
+
+        testSubscriber.awaitTerminalEvent();
+        testSubscriber.assertError(RuntimeException.class);
+        assertEquals(3, counter.get());
+    }
+
+    @Test
+    public void shouldSkipHandlerWithOpenCircuitBreaker() throws Exception {
+        AtomicInteger counter = new AtomicInteger(0);
+        final CommandHandler failingHandler = testHandler(
+                Flowable.<Event>error(new RuntimeException("error")).doOnError(e -> counter.incrementAndGet()));
+        final CommandHandler healthyHandler = testHandler(Flowable.just(Event.create("foo")));
+        final CircuitBreakers circuitBreakers = new CircuitBreakers(CircuitBreakerOptions.defaults()
+                .setMinimumNumberOfCalls(1)
+                .setSlidingWindowSize(1));
+
+        final CommandExecutor sut = ReactoCommandExecutor.Builder.create()
+                .circuitBreakers(circuitBreakers)
+                .build()
+                .create(Arrays.asList(failingHandler, healthyHandler), handlers -> handlers.get(0));
+
+        for (int i = 0; i < 3; i++) {
+            final TestSubscriber<Event> testSubscriber = new TestSubscriber<>();
+            sut.execute(Command.create("new"))
+                    .subscribe(testSubscriber);
+
+            testSubscriber.awaitTerminalEvent();
+            testSubscriber.assertNoErrors();
+            testSubscriber.assertValue(Event.create("foo"));
+        }
+
+        assertEquals(1, counter.get());
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreakers.of(failingHandler).state());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreakers.of(healthyHandler).state());
+    }
+
+    @Test
+    public void shouldSkipEjectedSlowHandler() throws Exception {
+        final AtomicLong time = new AtomicLong(0L);
+        final CommandHandler slowHandler = testHandler(Flowable.defer(() -> {
+            time.addAndGet(TimeUnit.MILLISECONDS.toNanos(100L));
+            return Flowable.just(Event.create("slow"));
+        }));
+        final CommandHandler fastHandler1 = testHandler(Flowable.defer(() -> {
+            time.addAndGet(TimeUnit.MILLISECONDS.toNanos(1L));
+            return Flowable.just(Event.create("fast"));
+        }));
+        final CommandHandler fastHandler2 = testHandler(Flowable.defer(() -> {
+            time.addAndGet(TimeUnit.MILLISECONDS.toNanos(1L));
+            return Flowable.just(Event.create("fast"));
+        }));
+        final OutlierDetector outlierDetector = new OutlierDetector(OutlierDetectionOptions.defaults()
+                .setMinimumSamples(5)
+                .setInterval(Duration.ZERO)
+                .setTicker(time::get));
+        final AtomicInteger counter = new AtomicInteger(0);
+        final CommandExecutor sut = ReactoCommandExecutor.Builder.create()
+                .outlierDetector(outlierDetector)
+                .ticker(time::get)
+                .build()
+                .create(Arrays.asList(slowHandler, fastHandler1, fastHandler2),
+                        handlers -> handlers.get(counter.getAndIncrement() % handlers.size()));
+
+        for (int i = 0; i < 18; i++) {
+            sut.execute(Command.create("new")).blockingLast();
+        }
+        assertTrue(outlierDetector.isEjected(slowHandler));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Event.create("fast"), sut.execute(Command.create("new")).blockingLast());
+        }
+    }
+
+    @Test
+    public void shouldSkipHandlerTakenOutOfServiceByPassiveHealthChecks() throws Exception {
+        final AtomicInteger counter = new AtomicInteger(0);
+        final CommandHandler unreachableHandler = testHandler(Flowable.<Event>error(new ConnectException("Connection refused"))
+                .doOnError(e -> counter.incrementAndGet()));
+        final CommandHandler healthyHandler = testHandler(Flowable.just(Event.create("foo")));
+        final PassiveHealthChecker passiveHealthChecker = new PassiveHealthChecker(PassiveHealthOptions.defaults()
+                .setScheduler(new TestScheduler()));
+
+        final CommandExecutor sut = ReactoCommandExecutor.Builder.create()
+                .circuitBreakers(new CircuitBreakers(CircuitBreakerOptions.defaults()))
+                .passiveHealthChecker(passiveHealthChecker)
+                .build()
+                .create(Arrays.asList(unreachableHandler, healthyHandler), handlers -> handlers.get(0));
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Event.create("foo"), sut.execute(Command.create("new")).blockingLast());
+        }
+
+        assertEquals(1, counter.get());
+        assertEquals(Status.OUT_OF_SERVICE, passiveHealthChecker.statusOf(unreachableHandler));
+        assertEquals(Status.UP, passiveHealthChecker.statusOf(healthyHandler));
+    }
+
+    @Test
+    public void shouldKeepRoundRobinPositionWhenHandlerIsFilteredOut() throws Exception {
+        final CommandHandler unreachableHandler = testHandler(Flowable.error(new ConnectException("Connection refused")));
+        final CommandHandler firstHandler = testHandler(Flowable.just(Event.create("first")));
+        final CommandHandler secondHandler = testHandler(Flowable.just(Event.create("second")));
+        final PassiveHealthChecker passiveHealthChecker = new PassiveHealthChecker(PassiveHealthOptions.defaults()
+                .setScheduler(new TestScheduler()));
+        passiveHealthChecker.onError(unreachableHandler, new ConnectException("Connection refused"));
+        final List<CommandHandler> handlers = Arrays.asList(unreachableHandler, firstHandler, secondHandler);
+        final CommandExecutorFactory factory = ReactoCommandExecutor.Builder.create()
+                .passiveHealthChecker(passiveHealthChecker)
+                .build();
+        final LoadBalancer<CommandHandler> loadBalancer = new RoundRobinLoadBalancer<>();
+
+        final List<String> events = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            events.add(factory.create(handlers, loadBalancer).execute(Command.create("new")).blockingLast().name);
+        }
+
+        assertEquals(Arrays.asList("first", "second", "first", "second"), events);
+    }
+
+    @Test
+    public void shouldNotifyLoadBalancerAboutStartedAndFinishedRequests() throws Exception {
+        final CommandHandler failingHandler = testHandler(Flowable.error(new RuntimeException("error")));
+        final CommandHandler healthyHandler = testHandler(Flowable.just(Event.create("foo")));
+        final List<String> calls = new ArrayList<>();
+        final LoadBalancer<CommandHandler> loadBalancer = new LoadBalancer<CommandHandler>() {
+            @Override
+            public CommandHandler balance(List<CommandHandler> records) {
+                return records.get(0);
+            }
+
+            @Override
+            public void onRequestStart(CommandHandler record) {
+                calls.add("start:" + (record == failingHandler ? "failing" : "healthy"));
+            }
+
+            @Override
+            public void onRequestFinish(CommandHandler record, long latencyInNanos, boolean isSuccessful) {
+                calls.add("finish:" + (record == failingHandler ? "failing" : "healthy") + ":" + isSuccessful);
+            }
+        };
+
+        final CommandExecutor sut = ReactoCommandExecutor.Builder.create()
+                .circuitBreakers(new CircuitBreakers(CircuitBreakerOptions.defaults()))
+                .build()
+                .create(Arrays.asList(failingHandler, healthyHandler), loadBalancer);
+
+        assertEquals(Event.create("foo"), sut.execute(Command.create("new")).blockingLast());
+        assertEquals(Arrays.asList("start:failing", "finish:failing:false", "start:healthy", "finish:healthy:true"), calls);
+    }
+
 
     private CommandHandler testHandler(Flowable<Event> observable) {
         return new CommandHandler() {
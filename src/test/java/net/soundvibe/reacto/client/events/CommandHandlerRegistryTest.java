@@ -4,13 +4,14 @@ import io.reactivex.Flowable;
 import net.soundvibe.reacto.discovery.types.*;
 import net.soundvibe.reacto.server.ServiceOptions;
 import net.soundvibe.reacto.types.*;
+import net.soundvibe.reacto.types.json.JsonObject;
 import org.junit.Test;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 /**
  * @author OZY on 2017.01.19.
@@ -87,6 +88,51 @@ public class CommandHandlerRegistryTest {
     }
 
 
+    @Test
+    public void shouldCloseHandlerWhenRecordChanges() throws Exception {
+        final List<CommandHandler> closedHandlers = new ArrayList<>();
+        final CommandHandlerRegistry sut = CommandHandlerRegistry.Builder.create()
+                .register(ServiceType.LOCAL, serviceRecord -> getEventHandler(serviceRecord, Flowable.empty(), 1))
+                .onRemoval(closedHandlers::add)
+                .build();
+        final ServiceRecord record = ServiceRecord.create("service", Status.UP, ServiceType.LOCAL, "1",
+                JsonObject.empty(), JsonObject.empty());
+        final CommandHandler handler = sut.find(record).findFirst().orElseThrow(AssertionError::new);
+        assertSame(handler, sut.find(ServiceRecord.create("service", Status.UP, ServiceType.LOCAL, "1",
+                JsonObject.empty(), JsonObject.empty())).findFirst().orElseThrow(AssertionError::new));
+
+        final ServiceRecord changedRecord = ServiceRecord.create("service", Status.DOWN, ServiceType.LOCAL, "1",
+                JsonObject.empty(), JsonObject.empty());
+        final CommandHandler newHandler = sut.find(changedRecord).findFirst().orElseThrow(AssertionError::new);
+
+        assertNotSame(handler, newHandler);
+        assertEquals(changedRecord, newHandler.serviceRecord());
+        assertEquals(Collections.singletonList(handler), closedHandlers);
+        assertEquals(1L, sut.size());
+    }
+
+    @Test
+    public void shouldEvictHandlersOfRemovedRecords() throws Exception {
+        final List<String> closedHandlers = new ArrayList<>();
+        final CommandHandlerRegistry sut = CommandHandlerRegistry.Builder.create()
+                .register(ServiceType.LOCAL, serviceRecord -> getEventHandler(serviceRecord, Flowable.empty(), 1))
+                .onRemoval(handler -> closedHandlers.add(handler.serviceRecord().registrationId))
+                .maximumSize(2L)
+                .build();
+        for (String registrationId : Arrays.asList("1", "2", "3")) {
+            sut.find(ServiceRecord.create("service", Status.UP, ServiceType.LOCAL, registrationId,
+                    JsonObject.empty(), JsonObject.empty())).count();
+        }
+        assertEquals(Collections.singletonList("1"), closedHandlers);
+
+        sut.remove("2");
+        assertEquals(Arrays.asList("1", "2"), closedHandlers);
+
+        sut.retainIf(registrationId -> false);
+        assertEquals(Arrays.asList("1", "2", "3"), closedHandlers);
+        assertEquals(0L, sut.size());
+    }
+
     private CommandHandler getEventHandler(ServiceRecord serviceRecord, Flowable<Event> observable, int hashCode) {
         return new CommandHandler() {
             @Override
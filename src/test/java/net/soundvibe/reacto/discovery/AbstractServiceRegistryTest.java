@@ -2,23 +2,29 @@ package net.soundvibe.reacto.discovery;
 
 import com.codahale.metrics.ConsoleReporter;
 import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
 import io.reactivex.subscribers.TestSubscriber;
 import net.soundvibe.reacto.client.commands.*;
 import net.soundvibe.reacto.client.events.*;
 import net.soundvibe.reacto.discovery.types.*;
-import net.soundvibe.reacto.errors.CannotFindEventHandlers;
+import net.soundvibe.reacto.errors.*;
 import net.soundvibe.reacto.mappers.ServiceRegistryMapper;
-import net.soundvibe.reacto.mappers.jackson.JacksonMapper;
-import net.soundvibe.reacto.metric.Metrics;
+import net.soundvibe.reacto.mappers.jackson.*;
+import net.soundvibe.reacto.metric.*;
 import net.soundvibe.reacto.server.*;
 import net.soundvibe.reacto.types.*;
-import net.soundvibe.reacto.types.json.JsonObject;
+import net.soundvibe.reacto.types.json.*;
 import org.junit.Test;
 
+import java.nio.file.*;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.*;
 import java.util.stream.Stream;
 
+import static org.junit.Assert.*;
+
 /**
  * @author OZY on 2017.01.19.
  */
@@ -84,12 +90,441 @@ public class AbstractServiceRegistryTest {
         reporter.report();
     }
 
+    @Test
+    public void shouldUseSubsetOfRecords() throws Exception {
+        final CommandRegistry commandRegistry = CommandRegistry.of("simple", command -> Flowable.just(Event.create("one")));
+        final TestServiceRegistry sut = new TestServiceRegistry(CommandHandlerRegistry.Builder.create()
+                .register(ServiceType.LOCAL, serviceRecord -> new LocalCommandHandler(serviceRecord, commandRegistry))
+                .build(),
+                new JacksonMapper(JacksonMapper.JSON),
+                ServiceRegistryOptions.defaults().setSubsetSize(2).setClientId(3));
+
+        final List<ServiceRecord> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            records.add(ServiceRecord.create("test", Status.UP, ServiceType.LOCAL, "id-" + i, JsonObject.empty(), JsonObject.empty()));
+        }
+        final List<CommandHandler> handlers = new ArrayList<>();
+        final TestSubscriber<CommandExecutor> testSubscriber = new TestSubscriber<>();
+        sut.findExecutor(Flowable.just(records), "simple", LoadBalancers.ROUND_ROBIN,
+                (commandHandlers, loadBalancer) -> {
+                    handlers.addAll(commandHandlers);
+                    return ReactoCommandExecutor.FACTORY.create(commandHandlers, loadBalancer);
+                })
+                .subscribe(testSubscriber);
+
+        testSubscriber.awaitTerminalEvent();
+        testSubscriber.assertNoErrors();
+        assertEquals(2, handlers.size());
+    }
+
+    @Test
+    public void shouldApplyPushedServiceRecordChanges() throws Exception {
+        final ServiceRecord first = compatibleRecord("first");
+        final ServiceRecord second = compatibleRecord("second");
+        final PublishProcessor<ServiceRecordChange> changes = PublishProcessor.create();
+        final AtomicInteger discoveries = new AtomicInteger(0);
+        final AbstractServiceRegistry sut = new AbstractServiceRegistry(CommandHandlerRegistry.Builder.create()
+                .register(ServiceType.LOCAL, serviceRecord -> new CommandHandler() {
+                    @Override
+                    public Flowable<Event> observe(Command command) {
+                        return Flowable.just(Event.create(serviceRecord.registrationId));
+                    }
+
+                    @Override
+                    public ServiceRecord serviceRecord() {
+                        return serviceRecord;
+                    }
+                })
+                .build(), new JacksonMapper(JacksonMapper.JSON)) {
+            @Override
+            protected Flowable<List<ServiceRecord>> findRecordsOf(Command command) {
+                return Flowable.fromCallable(() -> {
+                    discoveries.incrementAndGet();
+                    return Collections.singletonList(first);
+                });
+            }
+
+            @Override
+            protected Flowable<ServiceRecordChange> watch() {
+                return changes;
+            }
+
+            @Override
+            public Flowable<Any> register() {
+                return Flowable.just(Any.VOID);
+            }
+
+            @Override
+            public Flowable<Any> unregister() {
+                return Flowable.just(Any.VOID);
+            }
+        };
+
+        assertEquals("first", sut.execute(Command.create("simple")).blockingFirst().name);
+
+        changes.onNext(ServiceRecordChange.added(second));
+        changes.onNext(ServiceRecordChange.removed(first));
+        assertEquals("second", sut.execute(Command.create("simple")).blockingFirst().name);
+
+        changes.onNext(ServiceRecordChange.updated(ServiceRecord.create("test", Status.DOWN, ServiceType.LOCAL,
+                "second", JsonObject.empty(), second.metadata)));
+        assertEquals("first", sut.execute(Command.create("simple")).blockingFirst().name);
+        assertEquals(2, discoveries.get());
+    }
+
+    @Test
+    public void shouldRediscoverNegativelyCachedCommandWhenCompatibleRecordIsPushed() throws Exception {
+        final ServiceRecord first = compatibleRecord("first");
+        final PublishProcessor<ServiceRecordChange> changes = PublishProcessor.create();
+        final AtomicReference<List<ServiceRecord>> discovered = new AtomicReference<>();
+        final AbstractServiceRegistry sut = new AbstractServiceRegistry(CommandHandlerRegistry.empty(),
+                new JacksonMapper(JacksonMapper.JSON)) {
+            @Override
+            protected Flowable<List<ServiceRecord>> findRecordsOf(Command command) {
+                final List<ServiceRecord> records = discovered.get();
+                return records == null ? Flowable.error(new CannotDiscoverService("Unable to find service")) : Flowable.just(records);
+            }
+
+            @Override
+            protected Flowable<ServiceRecordChange> watch() {
+                return changes;
+            }
+
+            @Override
+            public Flowable<Any> register() {
+                return Flowable.just(Any.VOID);
+            }
+
+            @Override
+            public Flowable<Any> unregister() {
+                return Flowable.just(Any.VOID);
+            }
+        };
+        sut.cachedRecordsOf(Command.create("simple")).test().assertError(CannotDiscoverService.class);
+
+        discovered.set(Collections.singletonList(first));
+        changes.onNext(ServiceRecordChange.added(first));
+
+        sut.cachedRecordsOf(Command.create("simple")).test().assertValue(Collections.singletonList(first));
+    }
+
+    @Test
+    public void shouldKeepSameRecordsWhenChangeIsNotRelevant() throws Exception {
+        final List<ServiceRecord> records = Collections.singletonList(compatibleRecord("first"));
+        final CommandDescriptor descriptor = CommandDescriptor.of("simple");
+
+        assertSame(records, AbstractServiceRegistry.applyChange(
+                ServiceRecordChange.added(compatibleRecord("first")), descriptor, records));
+        assertSame(records, AbstractServiceRegistry.applyChange(
+                ServiceRecordChange.removed(compatibleRecord("other")), descriptor, records));
+        assertNull(AbstractServiceRegistry.applyChange(
+                ServiceRecordChange.removed(compatibleRecord("first")), descriptor, records));
+    }
+
+    @Test
+    public void shouldIgnoreChangeOfOlderGeneration() throws Exception {
+        final List<ServiceRecord> records = Collections.singletonList(compatibleRecord("first").withGeneration(2L));
+        final CommandDescriptor descriptor = CommandDescriptor.of("simple");
+        final ServiceRecord down = ServiceRecord.create("test", Status.DOWN, ServiceType.LOCAL, "first",
+                JsonObject.empty(), compatibleRecord("first").metadata);
+
+        assertSame(records, AbstractServiceRegistry.applyChange(
+                ServiceRecordChange.updated(down.withGeneration(1L)), descriptor, records));
+        assertSame(records, AbstractServiceRegistry.applyChange(
+                ServiceRecordChange.removed(compatibleRecord("first").withGeneration(1L)), descriptor, records));
+        assertNull(AbstractServiceRegistry.applyChange(
+                ServiceRecordChange.updated(down.withGeneration(3L)), descriptor, records));
+    }
+
+    @Test
+    public void shouldReturnChangesSinceVersion() throws Exception {
+        final TestServiceRegistry sut = new TestServiceRegistry(CommandHandlerRegistry.Builder.create()
+                .register(ServiceType.LOCAL, serviceRecord -> new LocalCommandHandler(serviceRecord,
+                        CommandRegistry.of("simple", command -> Flowable.just(Event.create("one")))))
+                .build(),
+                new JacksonMapper(JacksonMapper.JSON),
+                ServiceRegistryOptions.defaults().setChangeLogSize(2));
+        assertEquals(0L, sut.version());
+        assertTrue(sut.changesSince(0L).isEmpty());
+
+        assertEquals("one", sut.execute(Command.create("simple")).blockingFirst().name);
+        final ServiceRecord discovered = sut.cachedRecordsOf(Command.create("simple")).blockingFirst().get(0);
+        assertEquals(1L, sut.version());
+        assertEquals(ServiceRecordsDelta.of(0L, 1L, Collections.singletonList(ServiceRecordChange.added(discovered))),
+                sut.changesSince(0L));
+
+        final ServiceRecord second = compatibleRecord("second");
+        sut.apply(ServiceRecordChange.added(second));
+        sut.apply(ServiceRecordChange.added(second));
+        assertEquals(2L, sut.version());
+        assertEquals(ServiceRecordsDelta.of(1L, 2L, Collections.singletonList(ServiceRecordChange.added(second))),
+                sut.changesSince(1L));
+
+        sut.apply(ServiceRecordChange.removed(second));
+        assertEquals(Arrays.asList(ServiceRecordChange.added(second), ServiceRecordChange.removed(second)),
+                sut.changesSince(1L).changes);
+        assertEquals(ServiceRecordsDelta.reset(0L, 3L, Collections.singletonList(discovered)), sut.changesSince(0L));
+        assertTrue(sut.changesSince(3L).isEmpty());
+        try {
+            sut.changesSince(4L);
+            fail("Should reject version from the future");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+        sut.close();
+    }
+
+    @Test
+    public void shouldPatchHandlersOfChangedRecords() throws Exception {
+        final CommandRegistry commandRegistry = CommandRegistry.of("simple", command -> Flowable.just(Event.create("one")));
+        final AtomicInteger createdHandlers = new AtomicInteger(0);
+        final TestServiceRegistry sut = new TestServiceRegistry(CommandHandlerRegistry.Builder.create()
+                .register(ServiceType.LOCAL, serviceRecord -> {
+                    createdHandlers.incrementAndGet();
+                    return new LocalCommandHandler(serviceRecord, commandRegistry);
+                })
+                .build(), new JacksonMapper(JacksonMapper.JSON));
+        final List<List<CommandHandler>> usedHandlers = new ArrayList<>();
+        final CommandExecutorFactory factory = (commandHandlers, loadBalancer) -> {
+            usedHandlers.add(commandHandlers);
+            return ReactoCommandExecutor.FACTORY.create(commandHandlers, loadBalancer);
+        };
+
+        sut.execute(Command.create("simple"), Event.class, LoadBalancers.ROUND_ROBIN, factory).blockingFirst();
+        sut.apply(ServiceRecordChange.added(compatibleRecord("second")));
+        sut.execute(Command.create("simple"), Event.class, LoadBalancers.ROUND_ROBIN, factory).blockingFirst();
+
+        assertEquals(2, usedHandlers.size());
+        assertEquals(2, usedHandlers.get(1).size());
+        assertSame(usedHandlers.get(0).get(0), usedHandlers.get(1).get(0));
+        assertEquals("second", usedHandlers.get(1).get(1).serviceRecord().registrationId);
+        assertEquals(2, createdHandlers.get());
+        sut.close();
+    }
+
+    @Test
+    public void shouldUseSnapshotWhenDiscoveryIsDown() throws Exception {
+        final Path snapshot = Files.createTempFile("discovery", ".snapshot");
+        try {
+            DiscoverySnapshot.write(snapshot, Collections.singletonMap(CommandDescriptor.of("simple"),
+                    Collections.singletonList(compatibleRecord("fromSnapshot"))));
+            final CommandRegistry commandRegistry = CommandRegistry.of("simple", command -> Flowable.just(Event.create("one")));
+            final TestServiceRegistry sut = new TestServiceRegistry(CommandHandlerRegistry.Builder.create()
+                    .register(ServiceType.LOCAL, serviceRecord -> new LocalCommandHandler(serviceRecord, commandRegistry))
+                    .build(),
+                    new JacksonMapper(JacksonMapper.JSON),
+                    ServiceRegistryOptions.defaults().setSnapshotPath(snapshot)) {
+                @Override
+                protected Flowable<List<ServiceRecord>> findRecordsOf(Command command) {
+                    return Flowable.error(new CannotDiscoverService("discovery is down"));
+                }
+            };
+
+            sut.execute(Command.create("simple")).test()
+                    .awaitDone(5L, TimeUnit.SECONDS)
+                    .assertValue(event -> event.name.equals("one"));
+
+            Files.delete(snapshot);
+            sut.saveSnapshot();
+            assertEquals(Collections.singletonList(compatibleRecord("fromSnapshot")),
+                    DiscoverySnapshot.read(snapshot).orElseThrow(AssertionError::new).records.get(CommandDescriptor.of("simple")));
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    public void shouldCloseHandlersOfRecordsWhichAreNotDiscoveredAnymore() throws Exception {
+        final List<String> closedHandlers = new ArrayList<>();
+        final CommandRegistry commandRegistry = CommandRegistry.of("simple", command -> Flowable.just(Event.create("one")));
+        final CommandHandlerRegistry commandHandlerRegistry = CommandHandlerRegistry.Builder.create()
+                .register(ServiceType.LOCAL, serviceRecord -> new LocalCommandHandler(serviceRecord, commandRegistry))
+                .onRemoval(handler -> closedHandlers.add(handler.serviceRecord().registrationId))
+                .build();
+        final TestServiceRegistry sut = new TestServiceRegistry(commandHandlerRegistry, new JacksonMapper(JacksonMapper.JSON));
+        commandHandlerRegistry.find(compatibleRecord("gone")).count();
+        assertEquals("one", sut.execute(Command.create("simple")).blockingFirst().name);
+
+        sut.evictRemovedHandlers();
+        assertEquals(Collections.emptyList(), closedHandlers);
+
+        sut.evictRemovedHandlers();
+        assertEquals(Collections.singletonList("gone"), closedHandlers);
+        assertEquals(1L, commandHandlerRegistry.size());
+
+        sut.apply(ServiceRecordChange.removed(ServiceRecord.create("test", Status.UP, ServiceType.LOCAL,
+                "111", JsonObject.empty(), JsonObject.empty())));
+        assertEquals(Arrays.asList("gone", "111"), closedHandlers);
+        sut.close();
+    }
+
+    @Test
+    public void shouldNotRestartBackgroundTasksAfterClose() throws Exception {
+        final CommandRegistry commandRegistry = CommandRegistry.of("simple", command -> Flowable.just(Event.create("one")));
+        final PublishProcessor<ServiceRecordChange> changes = PublishProcessor.create();
+        final AtomicInteger watches = new AtomicInteger(0);
+        final TestServiceRegistry sut = new TestServiceRegistry(CommandHandlerRegistry.Builder.create()
+                .register(ServiceType.LOCAL, serviceRecord -> new LocalCommandHandler(serviceRecord, commandRegistry))
+                .build(), new JacksonMapper(JacksonMapper.JSON)) {
+            @Override
+            protected Flowable<ServiceRecordChange> watch() {
+                return changes.doOnSubscribe(subscription -> watches.incrementAndGet());
+            }
+        };
+
+        assertEquals("one", sut.execute(Command.create("simple")).blockingFirst().name);
+        assertEquals(1, watches.get());
+        assertTrue(changes.hasSubscribers());
+
+        sut.close();
+        assertFalse(changes.hasSubscribers());
+
+        assertEquals("one", sut.execute(Command.create("simple")).blockingFirst().name);
+        assertEquals(1, watches.get());
+        assertFalse(changes.hasSubscribers());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveEvictionInterval() throws Exception {
+        ServiceRegistryOptions.defaults().setEvictionInterval(Duration.ZERO);
+    }
+
+    @Test
+    public void shouldForgetStateOfRemovedHandlersInUsedLoadBalancerAndExecutor() throws Exception {
+        final CommandRegistry commandRegistry = CommandRegistry.of("simple", command -> Flowable.just(Event.create("one")));
+        final CommandHandlerRegistry commandHandlerRegistry = CommandHandlerRegistry.Builder.create()
+                .register(ServiceType.LOCAL, serviceRecord -> new LocalCommandHandler(serviceRecord, commandRegistry))
+                .build();
+        final List<String> removedFromLoadBalancer = new ArrayList<>();
+        final LoadBalancer<CommandHandler> loadBalancer = new LoadBalancer<CommandHandler>() {
+            @Override
+            public CommandHandler balance(List<CommandHandler> records) {
+                return records.get(0);
+            }
+
+            @Override
+            public void remove(CommandHandler record) {
+                removedFromLoadBalancer.add(record.serviceRecord().registrationId);
+            }
+        };
+        final CircuitBreakers circuitBreakers = new CircuitBreakers(CircuitBreakerOptions.defaults());
+        final CommandExecutorFactory commandExecutorFactory = ReactoCommandExecutor.Builder.create()
+                .circuitBreakers(circuitBreakers)
+                .build();
+        final TestServiceRegistry sut = new TestServiceRegistry(commandHandlerRegistry, new JacksonMapper(JacksonMapper.JSON));
+
+        sut.execute(Command.create("simple"), Event.class, loadBalancer, commandExecutorFactory).test()
+                .assertValue(Event.create("one"));
+        final CommandHandler handler = commandHandlerRegistry.find(ServiceRecord.create("test", Status.UP, ServiceType.LOCAL,
+                "111", JsonObject.empty(), JsonObject.empty())).findFirst().orElseThrow(AssertionError::new);
+        final CircuitBreaker circuitBreaker = circuitBreakers.of(handler);
+
+        sut.apply(ServiceRecordChange.removed(handler.serviceRecord()));
+
+        assertEquals(Collections.singletonList("111"), removedFromLoadBalancer);
+        assertNotSame(circuitBreaker, circuitBreakers.of(handler));
+        sut.close();
+    }
+
+    @Test
+    public void shouldExecuteLocalTypedCommandWithoutMapping() throws Exception {
+        final ServiceRegistryMapper failingMapper = new ServiceRegistryMapper() {
+            @Override
+            public <C, E> TypedCommand toCommand(C genericCommand, Class<? extends E> eventClass) {
+                throw new AssertionError("Local command should not be mapped");
+            }
+
+            @Override
+            public <E> E toGenericEvent(Event event, Class<? extends E> eventClass) {
+                throw new AssertionError("Local event should not be mapped");
+            }
+        };
+        final JacksonCommand command = new JacksonCommand("foo");
+        final CommandRegistry localCommands = CommandRegistry.ofTyped(JacksonCommand.class, JacksonEvent.class,
+                cmd -> Flowable.just(new JacksonEvent(cmd.name), new JacksonEvent(String.valueOf(cmd == command))),
+                new JacksonMapper(JacksonMapper.JSON));
+        final TestServiceRegistry sut = new TestServiceRegistry(CommandHandlerRegistry.empty(), failingMapper,
+                ServiceRegistryOptions.defaults().setLocalCommands(localCommands));
+
+        sut.execute(command, JacksonEvent.class).test()
+                .assertValues(new JacksonEvent("foo"), new JacksonEvent("true"))
+                .assertComplete();
+    }
+
+    @Test
+    public void shouldSendShareOfLocalCommandsToDiscoveredServices() throws Exception {
+        final CommandRegistry localCommands = CommandRegistry.of("simple", command -> Flowable.just(Event.create("local")));
+        final CommandRegistry remoteCommands = CommandRegistry.of("simple", command -> Flowable.just(Event.create("remote")));
+        final TestServiceRegistry sut = new TestServiceRegistry(CommandHandlerRegistry.Builder.create()
+                .register(ServiceType.LOCAL, serviceRecord -> new LocalCommandHandler(serviceRecord, remoteCommands))
+                .build(),
+                new JacksonMapper(JacksonMapper.JSON),
+                ServiceRegistryOptions.defaults().setLocalCommands(localCommands).setRemoteShare(1.0));
+
+        assertEquals("remote", sut.execute(Command.create("simple")).blockingFirst().name);
+        assertEquals("local", new TestServiceRegistry(CommandHandlerRegistry.empty(), new JacksonMapper(JacksonMapper.JSON),
+                ServiceRegistryOptions.defaults().setLocalCommands(localCommands))
+                .execute(Command.create("simple")).blockingFirst().name);
+    }
+
+    @Test
+    public void shouldSplitLocalCommandsUsingGivenRandomSource() throws Exception {
+        final CommandRegistry localCommands = CommandRegistry.of("simple", command -> Flowable.just(Event.create("local")));
+        final CommandRegistry remoteCommands = CommandRegistry.of("simple", command -> Flowable.just(Event.create("remote")));
+        final Iterator<Double> randoms = Arrays.asList(0.4, 0.6).iterator();
+        final TestServiceRegistry sut = new TestServiceRegistry(CommandHandlerRegistry.Builder.create()
+                .register(ServiceType.LOCAL, serviceRecord -> new LocalCommandHandler(serviceRecord, remoteCommands))
+                .build(),
+                new JacksonMapper(JacksonMapper.JSON),
+                ServiceRegistryOptions.defaults().setLocalCommands(localCommands).setRemoteShare(0.5).setRandom(randoms::next));
+
+        assertEquals("remote", sut.execute(Command.create("simple")).blockingFirst().name);
+        assertEquals("local", sut.execute(Command.create("simple")).blockingFirst().name);
+        sut.close();
+    }
+
+    @Test
+    public void shouldExecuteLocalCommandOnSubscriptionAndRecordItsMetrics() throws Exception {
+        final AtomicInteger executions = new AtomicInteger(0);
+        final CommandRegistry localCommands = CommandRegistry.of("timedLocal", command -> {
+            executions.incrementAndGet();
+            return Flowable.just(Event.create("local"));
+        });
+        final TestServiceRegistry sut = new TestServiceRegistry(CommandHandlerRegistry.empty(), new JacksonMapper(JacksonMapper.JSON),
+                ServiceRegistryOptions.defaults().setLocalCommands(localCommands));
+        final com.codahale.metrics.Timer timer = Metrics.REGISTRY.timer(
+                ObserverMetric.getName(CommandDescriptor.of("timedLocal"), ObserverMetric.NAME_TIMER_COMMAND));
+        final long timedCommands = timer.getCount();
+
+        final Flowable<Event> events = sut.execute(Command.create("timedLocal"));
+        assertEquals(0, executions.get());
+
+        events.test().assertValue(Event.create("local")).assertComplete();
+        assertEquals(1, executions.get());
+        assertEquals(timedCommands + 1L, timer.getCount());
+    }
+
+    private static ServiceRecord compatibleRecord(String registrationId) {
+        return ServiceRecord.create("test", Status.UP, ServiceType.LOCAL, registrationId, JsonObject.empty(),
+                JsonObjectBuilder.create()
+                        .putArray(ServiceRecord.METADATA_COMMANDS, array -> array.add(JsonObjectBuilder.create()
+                                .put(CommandDescriptor.COMMAND, "simple")
+                                .put(CommandDescriptor.EVENT, "")
+                                .build()))
+                        .build());
+    }
+
     public class TestServiceRegistry extends AbstractServiceRegistry {
 
         TestServiceRegistry(CommandHandlerRegistry commandHandlerRegistry, ServiceRegistryMapper mapper) {
             super(commandHandlerRegistry, mapper);
         }
 
+        TestServiceRegistry(CommandHandlerRegistry commandHandlerRegistry, ServiceRegistryMapper mapper,
+                            ServiceRegistryOptions options) {
+            super(commandHandlerRegistry, mapper, options);
+        }
+
         @Override
         protected Flowable<List<ServiceRecord>> findRecordsOf(Command command) {
             return Flowable.just(Collections.singletonList(ServiceRecord.create("test", Status.UP, ServiceType.LOCAL,
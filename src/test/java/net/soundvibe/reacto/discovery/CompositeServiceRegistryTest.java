@@ -0,0 +1,200 @@
+package net.soundvibe.reacto.discovery;
+
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
+import net.soundvibe.reacto.client.events.*;
+import net.soundvibe.reacto.discovery.types.*;
+import net.soundvibe.reacto.errors.CannotDiscoverService;
+import net.soundvibe.reacto.mappers.jackson.JacksonMapper;
+import net.soundvibe.reacto.server.CommandRegistry;
+import net.soundvibe.reacto.types.*;
+import net.soundvibe.reacto.types.json.*;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+
+public class CompositeServiceRegistryTest {
+
+    private static final JacksonMapper mapper = new JacksonMapper(JacksonMapper.JSON);
+    private static final Command command = Command.create("simple");
+
+    @Test
+    public void shouldUseFirstTierWithRecords() throws Exception {
+        final CompositeServiceRegistry sut = CompositeServiceRegistry.Builder.create()
+                .tier(tier(Flowable.error(new CannotDiscoverService("tier is down"))))
+                .tier(tier(Flowable.just(Collections.emptyList())))
+                .tier(tier(Flowable.just(singletonList(record("second", "1")))))
+                .tier(tier(Flowable.just(singletonList(record("third", "2")))))
+                .mapper(mapper)
+                .commandHandlerRegistry(CommandHandlerRegistry.empty())
+                .build();
+
+        sut.findRecordsOf(command).test()
+                .assertValue(singletonList(record("second", "1")))
+                .assertComplete();
+    }
+
+    @Test
+    public void shouldNotWaitForSlowTierInParallel() throws Exception {
+        final CompositeServiceRegistry sut = CompositeServiceRegistry.Builder.create()
+                .tier(tier(Flowable.never()))
+                .tier(tier(Flowable.just(singletonList(record("fast", "1")))))
+                .mode(CompositeServiceRegistry.Mode.PARALLEL)
+                .mapper(mapper)
+                .commandHandlerRegistry(CommandHandlerRegistry.empty())
+                .build();
+
+        sut.findRecordsOf(command).test()
+                .awaitDone(1L, TimeUnit.SECONDS)
+                .assertValue(singletonList(record("fast", "1")))
+                .assertComplete();
+    }
+
+    @Test
+    public void shouldMergeAndDeduplicateRecordsOfTiers() throws Exception {
+        final CompositeServiceRegistry sut = CompositeServiceRegistry.Builder.create()
+                .tier(tier(Flowable.just(asList(record("first", "1"), record("first", "2")))))
+                .tier(tier(Flowable.just(asList(record("second", "2"), record("second", "3")))))
+                .tier(tier(Flowable.never()))
+                .mode(CompositeServiceRegistry.Mode.MERGE)
+                .mergeWindow(Duration.ofMillis(20L))
+                .mapper(mapper)
+                .commandHandlerRegistry(CommandHandlerRegistry.empty())
+                .build();
+
+        sut.findRecordsOf(command).test()
+                .awaitDone(1L, TimeUnit.SECONDS)
+                .assertValue(asList(record("first", "1"), record("first", "2"), record("second", "3")))
+                .assertComplete();
+    }
+
+    @Test
+    public void shouldExecuteCommandUsingRecordsOfTiers() throws Exception {
+        final CommandRegistry commandRegistry = CommandRegistry.of("simple", cmd -> Flowable.just(Event.create("one")));
+        final CompositeServiceRegistry sut = CompositeServiceRegistry.Builder.create()
+                .tier(tier(Flowable.just(Collections.emptyList())))
+                .tier(tier(Flowable.just(singletonList(record("local", "1")))))
+                .mapper(mapper)
+                .commandHandlerRegistry(CommandHandlerRegistry.Builder.create()
+                        .register(ServiceType.LOCAL, serviceRecord -> new LocalCommandHandler(serviceRecord, commandRegistry))
+                        .build())
+                .build();
+
+        assertEquals("one", sut.execute(command).blockingFirst().name);
+        assertEquals(Any.VOID, sut.register().blockingFirst());
+    }
+
+    @Test
+    public void shouldApplyChangesPushedByTierWhichRecordsAreUsed() throws Exception {
+        final PublishProcessor<ServiceRecordChange> firstChanges = PublishProcessor.create();
+        final PublishProcessor<ServiceRecordChange> secondChanges = PublishProcessor.create();
+        final AtomicReference<List<ServiceRecord>> firstRecords = new AtomicReference<>(singletonList(compatibleRecord("1")));
+        final AtomicReference<List<ServiceRecord>> secondRecords = new AtomicReference<>(Collections.emptyList());
+        final CompositeServiceRegistry sut = CompositeServiceRegistry.Builder.create()
+                .tier(tier(Flowable.fromCallable(firstRecords::get), firstChanges))
+                .tier(tier(Flowable.fromCallable(secondRecords::get), secondChanges))
+                .mapper(mapper)
+                .commandHandlerRegistry(CommandHandlerRegistry.empty())
+                .build();
+        sut.cachedRecordsOf(command).test()
+                .assertValue(singletonList(compatibleRecord("1")));
+
+        secondRecords.set(singletonList(compatibleRecord("2")));
+        secondChanges.onNext(ServiceRecordChange.added(compatibleRecord("2")));
+        sut.cachedRecordsOf(command).test()
+                .assertValue(singletonList(compatibleRecord("1")));
+
+        firstChanges.onNext(ServiceRecordChange.added(compatibleRecord("3")));
+        sut.cachedRecordsOf(command).test()
+                .assertValue(asList(compatibleRecord("1"), compatibleRecord("3")));
+
+        firstRecords.set(Collections.emptyList());
+        firstChanges.onNext(ServiceRecordChange.removed(compatibleRecord("1")));
+        firstChanges.onNext(ServiceRecordChange.removed(compatibleRecord("3")));
+        sut.cachedRecordsOf(command).test()
+                .assertValue(singletonList(compatibleRecord("2")));
+    }
+
+    @Test
+    public void shouldNotLetLowerTierChangeMergedRecordsOfHigherTier() throws Exception {
+        final ServiceRecord record = compatibleRecord("1");
+        final ServiceRecord lowerRecord = ServiceRecord.create("test", Status.DOWN, ServiceType.LOCAL, "1",
+                JsonObject.empty(), record.metadata);
+        final PublishProcessor<ServiceRecordChange> secondChanges = PublishProcessor.create();
+        final List<String> closedHandlers = new ArrayList<>();
+        final CommandRegistry commandRegistry = CommandRegistry.of("simple", cmd -> Flowable.just(Event.create("one")));
+        final CommandHandlerRegistry commandHandlerRegistry = CommandHandlerRegistry.Builder.create()
+                .register(ServiceType.LOCAL, serviceRecord -> new LocalCommandHandler(serviceRecord, commandRegistry))
+                .onRemoval(handler -> closedHandlers.add(handler.serviceRecord().registrationId))
+                .build();
+        final CompositeServiceRegistry sut = CompositeServiceRegistry.Builder.create()
+                .tier(tier(Flowable.just(singletonList(record))))
+                .tier(tier(Flowable.just(singletonList(lowerRecord)), secondChanges))
+                .mode(CompositeServiceRegistry.Mode.MERGE)
+                .mergeWindow(Duration.ofMillis(20L))
+                .mapper(mapper)
+                .commandHandlerRegistry(commandHandlerRegistry)
+                .build();
+        assertEquals("one", sut.execute(command).blockingFirst().name);
+
+        secondChanges.onNext(ServiceRecordChange.updated(lowerRecord));
+        sut.cachedRecordsOf(command).test()
+                .awaitDone(1L, TimeUnit.SECONDS)
+                .assertValue(singletonList(record));
+
+        secondChanges.onNext(ServiceRecordChange.removed(lowerRecord));
+        sut.cachedRecordsOf(command).test()
+                .awaitDone(1L, TimeUnit.SECONDS)
+                .assertValue(singletonList(record));
+        assertEquals(Collections.emptyList(), closedHandlers);
+    }
+
+    private static ServiceRecord record(String name, String registrationId) {
+        return ServiceRecord.create(name, Status.UP, ServiceType.LOCAL, registrationId, JsonObject.empty(), JsonObject.empty());
+    }
+
+    private static ServiceRecord compatibleRecord(String registrationId) {
+        return ServiceRecord.create("test", Status.UP, ServiceType.LOCAL, registrationId, JsonObject.empty(),
+                JsonObjectBuilder.create()
+                        .putArray(ServiceRecord.METADATA_COMMANDS, array -> array.add(JsonObjectBuilder.create()
+                                .put(CommandDescriptor.COMMAND, "simple")
+                                .put(CommandDescriptor.EVENT, "")
+                                .build()))
+                        .build());
+    }
+
+    private static AbstractServiceRegistry tier(Flowable<List<ServiceRecord>> records) {
+        return tier(records, Flowable.empty());
+    }
+
+    private static AbstractServiceRegistry tier(Flowable<List<ServiceRecord>> records, Flowable<ServiceRecordChange> changes) {
+        return new AbstractServiceRegistry(CommandHandlerRegistry.empty(), mapper) {
+            @Override
+            protected Flowable<List<ServiceRecord>> findRecordsOf(Command command) {
+                return records;
+            }
+
+            @Override
+            protected Flowable<ServiceRecordChange> watch() {
+                return changes;
+            }
+
+            @Override
+            public Flowable<Any> register() {
+                return Flowable.just(Any.VOID);
+            }
+
+            @Override
+            public Flowable<Any> unregister() {
+                return Flowable.just(Any.VOID);
+            }
+        };
+    }
+}
@@ -0,0 +1,53 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.discovery.types.*;
+import net.soundvibe.reacto.types.json.JsonObject;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class DeterministicSubsetterTest {
+
+    @Test
+    public void shouldSpreadClientsEvenlyOverRecords() throws Exception {
+        final List<ServiceRecord> records = records(100);
+        final Map<ServiceRecord, Integer> clientsPerRecord = new HashMap<>();
+        for (int clientId = 0; clientId < 50; clientId++) {
+            final List<ServiceRecord> subset = new DeterministicSubsetter(10, clientId).subsetOf(records);
+            assertEquals(10, subset.size());
+            assertEquals(10, new HashSet<>(subset).size());
+            subset.forEach(record -> clientsPerRecord.merge(record, 1, Integer::sum));
+        }
+
+        assertEquals(100, clientsPerRecord.size());
+        clientsPerRecord.values().forEach(clients -> assertEquals(Integer.valueOf(5), clients));
+    }
+
+    @Test
+    public void shouldSelectSameSubsetRegardlessOfOrder() throws Exception {
+        final List<ServiceRecord> records = records(30);
+        final List<ServiceRecord> shuffled = new ArrayList<>(records);
+        Collections.shuffle(shuffled);
+        final DeterministicSubsetter sut = new DeterministicSubsetter(5, 7);
+
+        assertEquals(sut.subsetOf(records), sut.subsetOf(shuffled));
+        assertEquals(sut.subsetOf(records), new DeterministicSubsetter(5, 7).subsetOf(records));
+    }
+
+    @Test
+    public void shouldUseAllRecordsWhenThereAreNotEnoughOfThem() throws Exception {
+        final List<ServiceRecord> records = records(3);
+        assertSame(records, new DeterministicSubsetter(5, 1).subsetOf(records));
+    }
+
+    private static List<ServiceRecord> records(int count) {
+        final List<ServiceRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(ServiceRecord.create("test", Status.UP, ServiceType.LOCAL, "id-" + i,
+                    JsonObject.empty(), JsonObject.empty()));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,58 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.discovery.types.*;
+import net.soundvibe.reacto.types.CommandDescriptor;
+import net.soundvibe.reacto.types.json.*;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class DiscoverySnapshotTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldWriteAndReadSnapshot() throws Exception {
+        final ServiceRecord first = record("first");
+        final ServiceRecord second = record("second");
+        final Map<CommandDescriptor, List<ServiceRecord>> records = new LinkedHashMap<>();
+        records.put(CommandDescriptor.of("foo"), Arrays.asList(first, second));
+        records.put(CommandDescriptor.ofNames("bar", "baz"), Collections.singletonList(second));
+        final Path path = folder.getRoot().toPath().resolve("snapshots").resolve("discovery.snapshot");
+
+        DiscoverySnapshot.write(path, records);
+        final DiscoverySnapshot actual = DiscoverySnapshot.read(path).orElseThrow(AssertionError::new);
+
+        assertEquals(records, actual.records);
+        assertSame(actual.records.get(CommandDescriptor.of("foo")).get(1), actual.records.get(CommandDescriptor.ofNames("bar", "baz")).get(0));
+        assertNotNull(actual.writtenAt);
+    }
+
+    @Test
+    public void shouldReturnEmptyWhenSnapshotDoesNotExist() throws Exception {
+        assertFalse(DiscoverySnapshot.read(folder.getRoot().toPath().resolve("missing")).isPresent());
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void shouldFailWhenFileIsNotSnapshot() throws Exception {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, "not a snapshot".getBytes());
+        DiscoverySnapshot.read(path);
+    }
+
+    static ServiceRecord record(String registrationId) {
+        return ServiceRecord.create("test", Status.UP, ServiceType.LOCAL, registrationId, JsonObject.empty(),
+                JsonObjectBuilder.create()
+                        .putArray(ServiceRecord.METADATA_COMMANDS, array -> array.add(JsonObjectBuilder.create()
+                                .put(CommandDescriptor.COMMAND, "simple")
+                                .put(CommandDescriptor.EVENT, "")
+                                .build()))
+                        .build());
+    }
+}
@@ -0,0 +1,69 @@
+package net.soundvibe.reacto.discovery;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures throughput of built-in load balancers when 1 to 64 threads balance the same list of records.
+ * Run it manually with {@code main}, it is not part of the test suite.
+ */
+public final class LoadBalancerContentionBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+    private static final long WARM_UP_MILLIS = 500L;
+    private static final long MEASURE_MILLIS = 1000L;
+
+    public static void main(String[] args) throws Exception {
+        final List<Name> records = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            records.add(new Name("node-" + i, "localhost/" + i));
+        }
+        final List<Name> immutableRecords = Collections.unmodifiableList(records);
+
+        final Map<String, LoadBalancer<Name>> loadBalancers = new LinkedHashMap<>();
+        loadBalancers.put("Random", new RandomLoadBalancer<>());
+        loadBalancers.put("RoundRobin", new RoundRobinLoadBalancer<>());
+        loadBalancers.put("PowerOfTwoChoices", new PowerOfTwoChoicesLoadBalancer<>());
+        loadBalancers.put("PeakEwma", new PeakEwmaLoadBalancer<>());
+        loadBalancers.put("WeightedRoundRobin", new WeightedRoundRobinLoadBalancer<>(name -> 100));
+        loadBalancers.put("WeightedRandom", new WeightedRandomLoadBalancer<>(name -> 100));
+
+        System.out.printf("%-20s %8s %16s%n", "LoadBalancer", "Threads", "ops/s");
+        for (Map.Entry<String, LoadBalancer<Name>> entry : loadBalancers.entrySet()) {
+            for (int threads : THREADS) {
+                run(entry.getValue(), immutableRecords, threads, WARM_UP_MILLIS);
+                final long operations = run(entry.getValue(), immutableRecords, threads, MEASURE_MILLIS);
+                System.out.printf("%-20s %8d %16d%n", entry.getKey(), threads, operations * 1000L / MEASURE_MILLIS);
+            }
+        }
+    }
+
+    private static long run(LoadBalancer<Name> loadBalancer, List<Name> records, int threads, long millis) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final LongAdder operations = new LongAdder();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                long count = 0L;
+                while ((count & 1023L) != 0L || System.nanoTime() < deadline) {
+                    final Name record = loadBalancer.balance(records);
+                    loadBalancer.onRequestStart(record);
+                    loadBalancer.onRequestFinish(record, 1000L, true);
+                    count++;
+                }
+                operations.add(count);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        return operations.sum();
+    }
+}
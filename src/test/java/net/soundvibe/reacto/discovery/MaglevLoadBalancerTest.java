@@ -0,0 +1,104 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.types.Command;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.soundvibe.reacto.discovery.LoadBalancersTestUtils.*;
+import static net.soundvibe.reacto.discovery.RendezvousHashLoadBalancerTest.*;
+import static org.junit.Assert.*;
+
+public class MaglevLoadBalancerTest {
+
+    private final MaglevLoadBalancer<Name> sut = new MaglevLoadBalancer<>(
+            CommandHashKey.metaData("user"), Name::name, 5003, AbstractHashLoadBalancer.DEFAULT_BALANCE_FACTOR);
+
+    @Test
+    public void shouldRouteSameKeyToSameRecord() throws Exception {
+        final List<Name> records = names(10);
+        for (int key = 0; key < 100; key++) {
+            final Name expected = sut.balance(records, command(key));
+            assertRecords(expected, sut.balance(new ArrayList<>(records), command(key)), "Same key should be routed to the same record");
+        }
+    }
+
+    @Test
+    public void shouldNotDependOnOrderOfRecords() throws Exception {
+        final List<Name> records = names(10);
+        final List<Name> reversed = new ArrayList<>(records);
+        Collections.reverse(reversed);
+        for (int key = 0; key < 100; key++) {
+            assertRecords(sut.balance(records, command(key)), sut.balance(reversed, command(key)), "Order of records should not matter");
+        }
+    }
+
+    @Test
+    public void shouldSpreadKeysEvenly() throws Exception {
+        final List<Name> records = names(10);
+        final Map<Name, Integer> counts = new HashMap<>();
+        for (int key = 0; key < 10000; key++) {
+            counts.merge(sut.balance(records, command(key)), 1, Integer::sum);
+        }
+        assertEquals(10, counts.size());
+        counts.values().forEach(count -> assertTrue("Unbalanced count: " + count, count > 700 && count < 1300));
+    }
+
+    @Test
+    public void shouldRemapAboutOneNthOfKeysWhenRecordIsRemoved() throws Exception {
+        final List<Name> records = names(10);
+        final List<Name> remaining = new ArrayList<>(records);
+        remaining.remove(5);
+
+        int moved = 0;
+        for (int key = 0; key < 10000; key++) {
+            if (!sut.balance(records, command(key)).equals(sut.balance(remaining, command(key)))) {
+                moved++;
+            }
+        }
+        assertTrue("About 1/10 of keys should move but was " + moved, moved > 700 && moved < 2000);
+    }
+
+    @Test
+    public void shouldBuildTableOncePerSetOfRecords() throws Exception {
+        final AtomicInteger nodeIds = new AtomicInteger(0);
+        final MaglevLoadBalancer<Name> sut = new MaglevLoadBalancer<>(CommandHashKey.metaData("user"), name -> {
+            nodeIds.incrementAndGet();
+            return name.name();
+        }, 5003, AbstractHashLoadBalancer.DEFAULT_BALANCE_FACTOR);
+        final List<Name> records = names(10);
+        final List<Name> remaining = new ArrayList<>(records);
+        remaining.remove(5);
+
+        for (int key = 0; key < 100; key++) {
+            sut.balance(new ArrayList<>(records), command(key));
+            sut.balance(new ArrayList<>(remaining), command(key));
+        }
+
+        assertEquals(records.size() + remaining.size(), nodeIds.get());
+    }
+
+    @Test
+    public void shouldSpillOverWhenPreferredRecordIsFull() throws Exception {
+        final List<Name> records = names(4);
+        final Name preferred = sut.balance(records, command(1));
+        sut.onRequestStart(preferred);
+        sut.onRequestStart(preferred);
+
+        assertNotEquals(preferred, sut.balance(records, command(1)));
+    }
+
+    @Test
+    public void shouldBalanceCommandsWithoutKey() throws Exception {
+        final List<Name> records = Arrays.asList(record1, record2, record3);
+        for (int i = 0; i < 10; i++) {
+            assertOneOf(sut.balance(records, Command.create("foo")), records);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailWhenTableSizeIsNotPrime() throws Exception {
+        new MaglevLoadBalancer<Name>(CommandHashKey.payload(), Name::name, 1000, 1.25);
+    }
+}
@@ -0,0 +1,149 @@
+package net.soundvibe.reacto.discovery;
+
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subscribers.TestSubscriber;
+import net.soundvibe.reacto.client.events.*;
+import net.soundvibe.reacto.discovery.types.*;
+import net.soundvibe.reacto.mappers.jackson.JacksonMapper;
+import net.soundvibe.reacto.server.CommandRegistry;
+import net.soundvibe.reacto.types.*;
+import net.soundvibe.reacto.types.json.*;
+import org.junit.*;
+
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+
+public class MappedFileServiceRegistryTest {
+
+    private static final Command command = Command.create("simple");
+    private static final CommandRegistry commandRegistry = CommandRegistry.of("simple", cmd -> Flowable.just(Event.create("one")));
+
+    private final AtomicLong now = new AtomicLong(1_000L);
+    private final TestScheduler scheduler = new TestScheduler();
+    private final List<MappedFileServiceRegistry> registries = new ArrayList<>();
+    private Path path;
+
+    @Before
+    public void setUp() throws Exception {
+        path = Files.createTempDirectory("reacto").resolve("services.slots");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        registries.forEach(MappedFileServiceRegistry::close);
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(path.getParent());
+    }
+
+    @Test
+    public void shouldDiscoverRecordsRegisteredByOtherRegistry() throws Exception {
+        final MappedFileServiceRegistry server = registry(compatibleRecord("server"));
+        final MappedFileServiceRegistry sut = registry(null);
+        sut.findRecordsOf(command).test().assertNoValues().assertComplete();
+
+        server.register().blockingFirst();
+        sut.findRecordsOf(command).test().assertNoValues().assertComplete();
+        scheduler.advanceTimeBy(MappedFileServiceRegistry.DEFAULT_POLL_INTERVAL.toNanos(), TimeUnit.NANOSECONDS);
+        sut.findRecordsOf(command).test().assertValue(singletonList(compatibleRecord("server")));
+        assertEquals("one", sut.execute(command).blockingFirst().name);
+
+        server.unregister().blockingFirst();
+        scheduler.advanceTimeBy(MappedFileServiceRegistry.DEFAULT_POLL_INTERVAL.toNanos(), TimeUnit.NANOSECONDS);
+        sut.findRecordsOf(command).test().assertNoValues().assertComplete();
+    }
+
+    @Test
+    public void shouldPushPolledChanges() throws Exception {
+        final MappedFileServiceRegistry server = registry(compatibleRecord("server"));
+        final MappedFileServiceRegistry sut = registry(null);
+        final TestSubscriber<ServiceRecordChange> changes = sut.watch().test();
+
+        server.register().blockingFirst();
+        scheduler.advanceTimeBy(MappedFileServiceRegistry.DEFAULT_POLL_INTERVAL.toNanos(), TimeUnit.NANOSECONDS);
+        server.unregister().blockingFirst();
+        scheduler.advanceTimeBy(MappedFileServiceRegistry.DEFAULT_POLL_INTERVAL.toNanos(), TimeUnit.NANOSECONDS);
+
+        changes.assertValues(ServiceRecordChange.added(compatibleRecord("server")), ServiceRecordChange.removed(compatibleRecord("server")));
+    }
+
+    @Test
+    public void shouldNotDiscoverRecordsWithExpiredHeartbeat() throws Exception {
+        final MappedFileServiceRegistry server = registry(compatibleRecord("server"));
+        final MappedFileServiceRegistry sut = registry(null);
+        server.register().blockingFirst();
+
+        now.addAndGet(Duration.ofSeconds(3L).toMillis());
+        assertEquals(singletonList(compatibleRecord("server")), sut.aliveRecords());
+
+        now.incrementAndGet();
+        assertEquals(Collections.emptyList(), sut.aliveRecords());
+    }
+
+    @Test
+    public void shouldReuseReleasedSlots() throws Exception {
+        final MappedFileServiceRegistry first = registry(compatibleRecord("first"), 2);
+        final MappedFileServiceRegistry second = registry(compatibleRecord("second"), 2);
+        final MappedFileServiceRegistry third = registry(compatibleRecord("third"), 2);
+        first.register().blockingFirst();
+        second.register().blockingFirst();
+        third.register().test().assertError(IllegalStateException.class);
+
+        first.unregister().blockingFirst();
+        third.register().blockingFirst();
+
+        final Set<String> registrationIds = new HashSet<>();
+        first.aliveRecords().forEach(record -> registrationIds.add(record.registrationId));
+        assertEquals(new HashSet<>(Arrays.asList("second", "third")), registrationIds);
+    }
+
+    @Test
+    public void shouldFindChangesBetweenPolls() throws Exception {
+        final ServiceRecord first = compatibleRecord("first");
+        final ServiceRecord second = compatibleRecord("second");
+        final ServiceRecord updatedSecond = ServiceRecord.create("test", Status.DOWN, ServiceType.LOCAL, "second",
+                JsonObject.empty(), second.metadata);
+
+        final List<ServiceRecordChange> changes = MappedFileServiceRegistry.changesBetween(
+                Collections.singletonMap("first", first), Collections.singletonMap("second", updatedSecond));
+        assertEquals(Arrays.asList(ServiceRecordChange.added(updatedSecond), ServiceRecordChange.removed(first)), changes);
+        assertEquals(Collections.emptyList(), MappedFileServiceRegistry.changesBetween(
+                Collections.singletonMap("first", first), Collections.singletonMap("first", first)));
+    }
+
+    private MappedFileServiceRegistry registry(ServiceRecord serviceRecord) {
+        return registry(serviceRecord, MappedFileServiceRegistry.DEFAULT_SLOT_COUNT);
+    }
+
+    private MappedFileServiceRegistry registry(ServiceRecord serviceRecord, int slotCount) {
+        final MappedFileServiceRegistry registry = MappedFileServiceRegistry.Builder.create()
+                .path(path)
+                .serviceRecord(serviceRecord)
+                .slots(slotCount, 4096)
+                .clock(now::get)
+                .scheduler(scheduler)
+                .commandHandlerRegistry(CommandHandlerRegistry.Builder.create()
+                        .register(ServiceType.LOCAL, record -> new LocalCommandHandler(record, commandRegistry))
+                        .build())
+                .mapper(new JacksonMapper(JacksonMapper.JSON))
+                .build();
+        registries.add(registry);
+        return registry;
+    }
+
+    private static ServiceRecord compatibleRecord(String registrationId) {
+        return ServiceRecord.create("test", Status.UP, ServiceType.LOCAL, registrationId, JsonObject.empty(),
+                JsonObjectBuilder.create()
+                        .putArray(ServiceRecord.METADATA_COMMANDS, array -> array.add(JsonObjectBuilder.create()
+                                .put(CommandDescriptor.COMMAND, "simple")
+                                .put(CommandDescriptor.EVENT, "")
+                                .build()))
+                        .build());
+    }
+}
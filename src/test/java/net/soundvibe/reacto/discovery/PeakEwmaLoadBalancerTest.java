@@ -0,0 +1,79 @@
+package net.soundvibe.reacto.discovery;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.soundvibe.reacto.discovery.LoadBalancersTestUtils.*;
+import static org.junit.Assert.*;
+
+public class PeakEwmaLoadBalancerTest {
+
+    private final AtomicLong time = new AtomicLong(0L);
+    private final PeakEwmaLoadBalancer<Name> sut = new PeakEwmaLoadBalancer<>(Duration.ofSeconds(10L), time::get);
+
+    private final Name fast = new Name("fast", "localhost/1");
+    private final Name slow = new Name("slow", "localhost/2");
+
+    @Test
+    public void shouldPreferRecordWithLowerLatency() throws Exception {
+        request(fast, 1L);
+        request(slow, 100L);
+
+        final List<Name> records = Arrays.asList(fast, slow);
+        for (int i = 0; i < 10; i++) {
+            assertRecords(fast, sut.balance(records), "Faster record should be selected");
+        }
+    }
+
+    @Test
+    public void shouldReactToLatencyPeakImmediately() throws Exception {
+        request(fast, 1L);
+        request(fast, 200L);
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200L), sut.load(fast), 1.0);
+    }
+
+    @Test
+    public void shouldMultiplyCostByOutstandingRequests() throws Exception {
+        request(fast, 10L);
+        final double idleLoad = sut.load(fast);
+
+        sut.onRequestStart(fast);
+        sut.onRequestStart(fast);
+
+        assertEquals(idleLoad * 3, sut.load(fast), 1.0);
+    }
+
+    @Test
+    public void shouldDecayCostWhenIdle() throws Exception {
+        request(slow, 100L);
+        final double initialLoad = sut.load(slow);
+
+        time.addAndGet(TimeUnit.SECONDS.toNanos(10L));
+        final double decayedLoad = sut.load(slow);
+
+        assertEquals(initialLoad / Math.E, decayedLoad, 1.0);
+        time.addAndGet(TimeUnit.SECONDS.toNanos(100L));
+        assertTrue(sut.load(slow) < TimeUnit.MILLISECONDS.toNanos(1L));
+    }
+
+    @Test
+    public void shouldPenalizeRecordWithPendingRequestsAndNoLatencyYet() throws Exception {
+        request(slow, 100L);
+        sut.onRequestStart(fast);
+
+        final List<Name> records = Arrays.asList(fast, slow);
+        for (int i = 0; i < 10; i++) {
+            assertRecords(slow, sut.balance(records), "Record without latency samples but with pending requests should be penalized");
+        }
+    }
+
+    private void request(Name record, long latencyInMs) {
+        sut.onRequestStart(record);
+        sut.onRequestFinish(record, TimeUnit.MILLISECONDS.toNanos(latencyInMs), true);
+    }
+}
@@ -0,0 +1,60 @@
+package net.soundvibe.reacto.discovery;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static net.soundvibe.reacto.discovery.LoadBalancersTestUtils.*;
+import static org.junit.Assert.*;
+
+public class PowerOfTwoChoicesLoadBalancerTest {
+
+    private final PowerOfTwoChoicesLoadBalancer<Name> sut = new PowerOfTwoChoicesLoadBalancer<>();
+
+    private final Name first = new Name("first", "localhost/1");
+    private final Name second = new Name("second", "localhost/2");
+
+    @Test
+    public void shouldBalance() throws Exception {
+        final List<Name> records = Arrays.asList(record1, record2, record3, record4, record5);
+
+        for (int i = 0; i < 10; i++) {
+            assertOneOf(sut.balance(records), records);
+        }
+    }
+
+    @Test
+    public void shouldPickRecordWithFewerOutstandingRequests() throws Exception {
+        final List<Name> records = Arrays.asList(first, second);
+        sut.onRequestStart(first);
+        sut.onRequestStart(first);
+
+        for (int i = 0; i < 10; i++) {
+            assertRecords(second, sut.balance(records), "Least loaded record should be selected");
+        }
+
+        sut.onRequestFinish(first, 1L, true);
+        sut.onRequestFinish(first, 1L, false);
+        sut.onRequestStart(second);
+        for (int i = 0; i < 10; i++) {
+            assertRecords(first, sut.balance(records), "Least loaded record should be selected");
+        }
+    }
+
+    @Test
+    public void shouldTrackOutstandingRequests() throws Exception {
+        sut.onRequestStart(record3);
+        sut.onRequestStart(record3);
+        assertEquals(2, sut.outstandingRequests(record3));
+
+        sut.onRequestFinish(record3, 1L, true);
+        sut.onRequestFinish(record3, 1L, true);
+        sut.onRequestFinish(record3, 1L, true);
+        assertEquals(0, sut.outstandingRequests(record3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailWhenThereAreNoRecords() throws Exception {
+        sut.balance(Collections.emptyList());
+    }
+}
@@ -0,0 +1,86 @@
+package net.soundvibe.reacto.discovery;
+
+import net.soundvibe.reacto.types.*;
+import org.junit.Test;
+
+import java.util.*;
+
+import static net.soundvibe.reacto.discovery.LoadBalancersTestUtils.*;
+import static org.junit.Assert.*;
+
+public class RendezvousHashLoadBalancerTest {
+
+    private final RendezvousHashLoadBalancer<Name> sut = new RendezvousHashLoadBalancer<>(
+            CommandHashKey.metaData("user"), Name::name);
+
+    @Test
+    public void shouldRouteSameKeyToSameRecord() throws Exception {
+        final List<Name> records = names(10);
+        for (int key = 0; key < 100; key++) {
+            final Name expected = sut.balance(records, command(key));
+            for (int i = 0; i < 5; i++) {
+                assertRecords(expected, sut.balance(records, command(key)), "Same key should be routed to the same record");
+            }
+        }
+    }
+
+    @Test
+    public void shouldRemapOnlyKeysOfRemovedRecord() throws Exception {
+        final List<Name> records = names(10);
+        final Name removed = records.get(3);
+        final List<Name> remaining = new ArrayList<>(records);
+        remaining.remove(removed);
+
+        int moved = 0;
+        for (int key = 0; key < 10000; key++) {
+            final Name before = sut.balance(records, command(key));
+            final Name after = sut.balance(remaining, command(key));
+            if (before.equals(removed)) {
+                moved++;
+            } else {
+                assertRecords(before, after, "Key of remaining record should not be remapped");
+            }
+        }
+        assertTrue("About 1/10 of keys should move but was " + moved, moved > 700 && moved < 1300);
+    }
+
+    @Test
+    public void shouldSpillOverWhenPreferredRecordIsFull() throws Exception {
+        final List<Name> records = names(4);
+        final Name preferred = sut.balance(records, command(1));
+        sut.onRequestStart(preferred);
+        sut.onRequestStart(preferred);
+
+        final Name actual = sut.balance(records, command(1));
+        assertNotEquals(preferred, actual);
+
+        sut.onRequestFinish(preferred, 1L, true);
+        sut.onRequestFinish(preferred, 1L, true);
+        assertRecords(preferred, sut.balance(records, command(1)), "Key should return to preferred record");
+    }
+
+    @Test
+    public void shouldBalanceCommandsWithoutKey() throws Exception {
+        final List<Name> records = Arrays.asList(record1, record2, record3);
+        for (int i = 0; i < 10; i++) {
+            assertOneOf(sut.balance(records, Command.create("foo")), records);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailWhenThereAreNoRecords() throws Exception {
+        sut.balance(Collections.emptyList(), command(1));
+    }
+
+    static List<Name> names(int count) {
+        final List<Name> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(new Name("node-" + i, "localhost/" + i));
+        }
+        return names;
+    }
+
+    static Command command(int key) {
+        return Command.create("foo", Pair.of("user", "user-" + key));
+    }
+}
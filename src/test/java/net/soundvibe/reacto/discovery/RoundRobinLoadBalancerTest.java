@@ -3,8 +3,10 @@ package net.soundvibe.reacto.discovery;
 import org.junit.Test;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static net.soundvibe.reacto.discovery.LoadBalancersTestUtils.*;
+import static org.junit.Assert.assertEquals;
 
 /**
  * @author OZY on 2016.08.26.
@@ -59,4 +61,78 @@ public class RoundRobinLoadBalancerTest {
         final Name newRecord = sut.balance(newRecords);
         assertRecords(record1, newRecord,"new3");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldKeepPositionPerList() throws Exception {
+        final List<Name> first = Arrays.asList(record1, record2, record3);
+        final List<Name> second = Arrays.asList(record4, record5);
+
+        assertRecords(record1, sut.balance(first), "first1");
+        assertRecords(record4, sut.balance(second), "second1");
+        assertRecords(record2, sut.balance(first), "first2");
+        assertRecords(record5, sut.balance(second), "second2");
+        assertRecords(record3, sut.balance(first), "first3");
+    }
+
+    @Test
+    public void shouldKeepPositionWhenListIsBuiltForEveryCall() throws Exception {
+        final List<Name> records = Arrays.asList(record1, record2, record3);
+
+        assertRecords(record1, sut.balance(new ArrayList<>(records)), "1");
+        assertRecords(record2, sut.balance(new ArrayList<>(records)), "2");
+        assertRecords(record3, sut.balance(new ArrayList<>(records)), "3");
+        assertRecords(record1, sut.balance(new ArrayList<>(records)), "4");
+    }
+
+    @Test
+    public void shouldKeepPositionWhenManyListsAreAlive() throws Exception {
+        final List<List<Name>> lists = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            lists.add(Arrays.asList(new Name("a" + i, "1"), new Name("b" + i, "2"), new Name("c" + i, "3")));
+        }
+        final Map<Name, Integer> counts = new HashMap<>();
+        for (int round = 0; round < 3; round++) {
+            lists.forEach(records -> counts.merge(sut.balance(new ArrayList<>(records)), 1, Integer::sum));
+        }
+
+        lists.forEach(records -> records.forEach(record -> assertEquals(record.name, Integer.valueOf(1), counts.get(record))));
+    }
+
+    @Test
+    public void shouldRotateWithinTierOfZoneAwareLoadBalancer() throws Exception {
+        final Name sameZone1 = new Name("sameZone1", "host2/zoneA");
+        final Name sameZone2 = new Name("sameZone2", "host3/zoneA");
+        final Name remote = new Name("remote", "host4/zoneB");
+        final LoadBalancer<Name> zoneAware = new ZoneAwareLoadBalancer<>(sut, "host1", "zoneA",
+                name -> name.surname.split("/")[0], name -> name.surname.split("/")[1]);
+        final List<Name> records = Arrays.asList(sameZone1, remote, sameZone2);
+
+        final Map<Name, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            counts.merge(zoneAware.balance(records), 1, Integer::sum);
+        }
+
+        assertEquals(Integer.valueOf(150), counts.get(sameZone1));
+        assertEquals(Integer.valueOf(150), counts.get(sameZone2));
+    }
+
+    @Test
+    public void shouldSpreadEvenlyUnderContention() throws Exception {
+        final List<Name> records = Arrays.asList(new Name("a", "1"), new Name("b", "2"), new Name("c", "3"), new Name("d", "4"));
+        final Map<Name, Integer> counts = new ConcurrentHashMap<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    counts.merge(sut.balance(records), 1, Integer::sum);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        records.forEach(record -> assertEquals(Integer.valueOf(2000), counts.get(record)));
+    }
+}
@@ -33,6 +33,15 @@ public class ServiceExecutorTest {
         testSubscriber2.assertComplete();
         testSubscriber2.assertNoErrors();
         testSubscriber2.assertValue(Event.create("bar"));
+
+        final TestSubscriber<Event> testSubscriber3 = new TestSubscriber<>();
+        sut.execute(Command.create("bar"), Event.class, LoadBalancers.PEAK_EWMA)
+                .subscribe(testSubscriber3);
+
+        testSubscriber3.awaitTerminalEvent();
+        testSubscriber3.assertComplete();
+        testSubscriber3.assertNoErrors();
+        testSubscriber3.assertValue(Event.create("bar"));
     }
 
     private ServiceExecutor getRegistry() {
@@ -0,0 +1,43 @@
+package net.soundvibe.reacto.discovery;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static net.soundvibe.reacto.discovery.LoadBalancersTestUtils.*;
+import static org.junit.Assert.*;
+
+public class WeightedRandomLoadBalancerTest {
+
+    private final Name heavy = new Name("heavy", "localhost/1");
+    private final Name light = new Name("light", "localhost/2");
+    private final Name disabled = new Name("disabled", "localhost/3");
+    private final Map<Name, Integer> weights = new HashMap<>();
+
+    private final WeightedRandomLoadBalancer<Name> sut = new WeightedRandomLoadBalancer<>(weights::get);
+
+    @Test
+    public void shouldSelectProportionallyToWeight() throws Exception {
+        weights.put(heavy, 3);
+        weights.put(light, 1);
+        weights.put(disabled, 0);
+        final List<Name> records = Arrays.asList(heavy, light, disabled);
+
+        final Map<Name, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            counts.merge(sut.balance(records), 1, Integer::sum);
+        }
+
+        assertNull(counts.get(disabled));
+        assertTrue("Unexpected distribution " + counts, counts.get(heavy) > 7000 && counts.get(heavy) < 8000);
+    }
+
+    @Test
+    public void shouldSelectAnyRecordWhenAllWeightsAreZero() throws Exception {
+        final List<Name> records = Arrays.asList(record1, record2);
+        weights.put(record1, 0);
+        for (int i = 0; i < 10; i++) {
+            assertOneOf(sut.balance(records), records);
+        }
+    }
+}
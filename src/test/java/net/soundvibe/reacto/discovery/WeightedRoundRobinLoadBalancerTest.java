@@ -0,0 +1,116 @@
+package net.soundvibe.reacto.discovery;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class WeightedRoundRobinLoadBalancerTest {
+
+    private final Name heavy = new Name("heavy", "localhost/1");
+    private final Name light1 = new Name("light1", "localhost/2");
+    private final Name light2 = new Name("light2", "localhost/3");
+    private final Map<Name, Integer> weights = new HashMap<>();
+
+    @Test
+    public void shouldInterleaveRecordsSmoothly() throws Exception {
+        weights.put(heavy, 5);
+        weights.put(light1, 1);
+        weights.put(light2, 1);
+        final WeightedRoundRobinLoadBalancer<Name> sut = new WeightedRoundRobinLoadBalancer<>(weights::get);
+        final List<Name> records = Arrays.asList(heavy, light1, light2);
+
+        final List<Name> actual = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            actual.add(sut.balance(records));
+        }
+
+        assertEquals(Arrays.asList(heavy, heavy, light1, heavy, light2, heavy, heavy), actual);
+    }
+
+    @Test
+    public void shouldInterleaveRecordsWhenListIsBuiltForEveryCall() throws Exception {
+        weights.put(heavy, 5);
+        weights.put(light1, 1);
+        weights.put(light2, 1);
+        final WeightedRoundRobinLoadBalancer<Name> sut = new WeightedRoundRobinLoadBalancer<>(weights::get);
+
+        final List<Name> actual = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            actual.add(sut.balance(Arrays.asList(heavy, light1, light2)));
+        }
+
+        assertEquals(Arrays.asList(heavy, heavy, light1, heavy, light2, heavy, heavy), actual);
+    }
+
+    @Test
+    public void shouldSelectProportionallyToWeight() throws Exception {
+        weights.put(heavy, 32);
+        weights.put(light1, 8);
+        weights.put(light2, 0);
+        final WeightedRoundRobinLoadBalancer<Name> sut = new WeightedRoundRobinLoadBalancer<>(weights::get);
+        final List<Name> records = Arrays.asList(heavy, light1, light2);
+
+        final Map<Name, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 400; i++) {
+            counts.merge(sut.balance(records), 1, Integer::sum);
+        }
+
+        assertEquals(Integer.valueOf(320), counts.get(heavy));
+        assertEquals(Integer.valueOf(80), counts.get(light1));
+        assertNull(counts.get(light2));
+    }
+
+    @Test
+    public void shouldRampUpNewRecord() throws Exception {
+        weights.put(heavy, 1);
+        weights.put(light1, 1);
+        final AtomicLong now = new AtomicLong(0L);
+        final WeightedRoundRobinLoadBalancer<Name> sut = new WeightedRoundRobinLoadBalancer<>(weights::get,
+                new SlowStart<>(Duration.ofSeconds(10L), 0.1, now::get));
+
+        sut.balance(Collections.singletonList(heavy));
+        final List<Name> records = Arrays.asList(heavy, light1);
+        assertEquals(10, countOf(light1, sut, records, 110));
+
+        now.set(Duration.ofSeconds(5L).toNanos());
+        assertEquals(50, countOf(light1, sut, records, 150));
+
+        now.set(Duration.ofSeconds(10L).toNanos());
+        assertEquals(50, countOf(light1, sut, records, 100));
+    }
+
+    @Test
+    public void shouldConsiderRecordsOfEveryNewServiceWarm() throws Exception {
+        final Name other = new Name("other", "localhost/3");
+        weights.put(heavy, 1);
+        weights.put(light1, 1);
+        weights.put(other, 1);
+        final AtomicLong now = new AtomicLong(0L);
+        final WeightedRoundRobinLoadBalancer<Name> sut = new WeightedRoundRobinLoadBalancer<>(weights::get,
+                new SlowStart<>(Duration.ofSeconds(10L), 0.1, now::get));
+        sut.balance(Collections.singletonList(heavy));
+
+        now.set(Duration.ofSeconds(1L).toNanos());
+        sut.balance(Collections.singletonList(light1));
+
+        now.set(Duration.ofSeconds(5L).toNanos());
+        assertEquals(10, countOf(other, sut, Arrays.asList(light1, other), 110));
+    }
+
+    private static int countOf(Name record, LoadBalancer<Name> sut, List<Name> records, int times) {
+        int count = 0;
+        for (int i = 0; i < times; i++) {
+            if (sut.balance(records).equals(record)) count++;
+        }
+        return count;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailWhenThereAreNoRecords() throws Exception {
+        new WeightedRoundRobinLoadBalancer<Name>(name -> 1).balance(Collections.emptyList());
+    }
+}
@@ -0,0 +1,84 @@
+package net.soundvibe.reacto.discovery;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static net.soundvibe.reacto.discovery.LoadBalancersTestUtils.*;
+import static org.junit.Assert.*;
+
+public class ZoneAwareLoadBalancerTest {
+
+    private final Name sameHost = new Name("sameHost", "host1/zoneA");
+    private final Name sameZone = new Name("sameZone", "host2/zoneA");
+    private final Name remote1 = new Name("remote1", "host3/zoneB");
+    private final Name remote2 = new Name("remote2", "host4/zoneB");
+    private final List<Name> records = Arrays.asList(remote1, sameZone, remote2, sameHost);
+
+    private final ZoneAwareLoadBalancer<Name> sut = new ZoneAwareLoadBalancer<>(new RoundRobinLoadBalancer<>(),
+            "host1", "zoneA", name -> name.surname.split("/")[0], name -> name.surname.split("/")[1], 1, 2);
+
+    @Test
+    public void shouldPreferSameHost() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertRecords(sameHost, sut.balance(records), "Record on the same host should be selected");
+        }
+    }
+
+    @Test
+    public void shouldPreferSameZoneWhenSameHostIsUnavailable() throws Exception {
+        final List<Name> available = Arrays.asList(remote1, sameZone, remote2);
+        for (int i = 0; i < 5; i++) {
+            assertRecords(sameZone, sut.balance(available), "Record in the same zone should be selected");
+        }
+    }
+
+    @Test
+    public void shouldFailOverToSameZoneWhenSameHostIsSaturated() throws Exception {
+        sut.onRequestStart(sameHost);
+        sut.onRequestStart(sameHost);
+        assertEquals(Arrays.asList(sameZone, sameHost), sut.closestTierOf(records));
+
+        sut.onRequestFinish(sameHost, 1L, true);
+        assertEquals(Collections.singletonList(sameHost), sut.closestTierOf(records));
+    }
+
+    @Test
+    public void shouldFailOverToRemoteZoneWhenLocalZoneIsSaturated() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            sut.onRequestStart(sameHost);
+            sut.onRequestStart(sameZone);
+        }
+        assertEquals(records, sut.closestTierOf(records));
+    }
+
+    @Test
+    public void shouldFailOverToRemoteZoneWhenLocalZoneIsUnavailable() throws Exception {
+        final List<Name> available = Arrays.asList(remote1, remote2);
+        assertEquals(available, sut.closestTierOf(available));
+    }
+
+    @Test
+    public void shouldPassTheSameTierListToDelegateOnEveryRequest() throws Exception {
+        final List<List<Name>> balancedLists = new ArrayList<>();
+        final ZoneAwareLoadBalancer<Name> sut = new ZoneAwareLoadBalancer<>(list -> {
+            balancedLists.add(list);
+            return list.get(0);
+        }, "host1", "zoneA", name -> name.surname.split("/")[0], name -> name.surname.split("/")[1]);
+
+        sut.balance(records);
+        sut.balance(records);
+        sut.balance(new ArrayList<>(records));
+
+        assertEquals(Collections.singletonList(sameHost), balancedLists.get(0));
+        assertSame(balancedLists.get(0), balancedLists.get(1));
+        assertSame(balancedLists.get(0), balancedLists.get(2));
+    }
+
+    @Test
+    public void shouldRequireMinimumRecordsInTier() throws Exception {
+        final ZoneAwareLoadBalancer<Name> sut = new ZoneAwareLoadBalancer<>(new RoundRobinLoadBalancer<>(),
+                "host1", "zoneA", name -> name.surname.split("/")[0], name -> name.surname.split("/")[1], 3, 2);
+        assertEquals(records, sut.closestTierOf(records));
+    }
+}
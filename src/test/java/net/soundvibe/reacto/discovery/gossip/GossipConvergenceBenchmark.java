@@ -0,0 +1,84 @@
+package net.soundvibe.reacto.discovery.gossip;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Measures how long it takes for 4 to 64 gossip members on loopback to converge after they join the cluster,
+ * after one of them updates its record and after one of them leaves the cluster.
+ * Run it manually with {@code main}, it is not part of the test suite.
+ */
+public final class GossipConvergenceBenchmark {
+
+    private static final int[] CLUSTER_SIZES = {4, 8, 16, 32, 64};
+    private static final Duration PROTOCOL_PERIOD = Duration.ofMillis(100L);
+    private static final long TIMEOUT_MILLIS = 60_000L;
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-8s %12s %12s %12s %12s%n", "Members", "join ms", "update ms", "leave ms", "periods");
+        for (int clusterSize : CLUSTER_SIZES) {
+            run(clusterSize);
+        }
+    }
+
+    private static void run(int clusterSize) throws Exception {
+        final List<GossipNode> nodes = new ArrayList<>();
+        final List<Map<String, Member>> views = new ArrayList<>();
+        try {
+            final long joinStart = System.nanoTime();
+            for (int i = 0; i < clusterSize; i++) {
+                final Map<String, Member> view = new ConcurrentHashMap<>();
+                final List<InetSocketAddress> seeds = nodes.isEmpty() ? Collections.emptyList() : singletonList(nodes.get(0).address());
+                final GossipNode node = new GossipNode(GossipServiceRegistryTest.fastOptions(seeds)
+                        .setProtocolPeriod(PROTOCOL_PERIOD)
+                        .setAckTimeout(PROTOCOL_PERIOD.dividedBy(3L))
+                        .setSyncInterval(PROTOCOL_PERIOD.multipliedBy(5L))
+                        .setSuspicionTimeout(PROTOCOL_PERIOD.multipliedBy(10L)), (previous, current) -> {
+                    if (current == null) view.remove(previous.id);
+                    else view.put(current.id, current);
+                });
+                node.start();
+                node.publish(GossipServiceRegistryTest.compatibleRecord("member-" + i));
+                nodes.add(node);
+                views.add(view);
+            }
+            final long join = awaitAll(views, view -> view.values().stream().filter(member -> member.record != null).count() == clusterSize, joinStart);
+
+            final long updateStart = System.nanoTime();
+            final GossipNode updated = nodes.get(clusterSize - 1);
+            updated.publish(GossipServiceRegistryTest.compatibleRecord("updated"));
+            final long update = awaitAll(views, view -> {
+                final Member member = view.get(updated.id());
+                return member != null && member.record != null && member.record.registrationId.equals("updated");
+            }, updateStart);
+
+            final long leaveStart = System.nanoTime();
+            final GossipNode leaving = nodes.remove(1);
+            views.remove(1);
+            leaving.close();
+            final long leave = awaitAll(views, view -> {
+                final Member member = view.get(leaving.id());
+                return member == null || member.state == Member.State.DEAD;
+            }, leaveStart);
+
+            System.out.printf("%-8d %12d %12d %12d %12.1f%n", clusterSize, join, update, leave,
+                    (double) update / PROTOCOL_PERIOD.toMillis());
+        } finally {
+            nodes.forEach(GossipNode::close);
+        }
+    }
+
+    private static long awaitAll(List<Map<String, Member>> views, Predicate<Map<String, Member>> condition, long start) throws Exception {
+        final long deadline = start + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (!views.stream().allMatch(condition)) {
+            if (System.nanoTime() > deadline) return -1L;
+            Thread.sleep(1L);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,66 @@
+package net.soundvibe.reacto.discovery.gossip;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+
+public class GossipMessageTest {
+
+    // magic, version, type, sender id "a" and sequence precede the member count
+    private static final int MEMBER_COUNT_OFFSET = 2 + 1 + 1 + 3 + 8;
+    // id "m", host "127.0.0.1", port, incarnation and state precede the record length
+    private static final int RECORD_LENGTH_OFFSET = MEMBER_COUNT_OFFSET + 4 + 3 + 11 + 4 + 8 + 1;
+
+    @Test
+    public void shouldDecodeEncodedMessage() throws Exception {
+        final byte[] bytes = message().encode();
+
+        final GossipMessage sut = GossipMessage.decode(bytes, bytes.length);
+
+        assertEquals(GossipMessage.Type.PING, sut.type);
+        assertEquals("a", sut.senderId);
+        assertEquals(1, sut.members.size());
+        assertEquals("m", sut.members.get(0).id);
+    }
+
+    @Test
+    public void shouldRejectCountsLargerThanDatagram() throws Exception {
+        assertMalformed(withIntAt(MEMBER_COUNT_OFFSET, Integer.MAX_VALUE));
+        assertMalformed(withIntAt(MEMBER_COUNT_OFFSET, -1));
+        assertMalformed(withIntAt(RECORD_LENGTH_OFFSET, Integer.MAX_VALUE));
+        assertMalformed(withIntAt(RECORD_LENGTH_OFFSET, -1));
+    }
+
+    @Test
+    public void shouldRejectUnknownMessageType() throws Exception {
+        final byte[] bytes = message().encode();
+        bytes[3] = (byte) 0xFF;
+
+        assertMalformed(bytes);
+    }
+
+    private static GossipMessage message() {
+        final Member member = new Member("m", new InetSocketAddress("127.0.0.1", 9000), 1L, Member.State.ALIVE, null);
+        return GossipMessage.of(GossipMessage.Type.PING, "a", 1L, singletonList(member));
+    }
+
+    private static byte[] withIntAt(int offset, int value) {
+        final byte[] bytes = message().encode();
+        ByteBuffer.wrap(bytes).putInt(offset, value);
+        return bytes;
+    }
+
+    private static void assertMalformed(byte[] bytes) {
+        try {
+            GossipMessage.decode(bytes, bytes.length);
+            fail("Should reject malformed message");
+        } catch (IOException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+}
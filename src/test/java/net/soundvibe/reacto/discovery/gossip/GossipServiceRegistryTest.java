@@ -0,0 +1,179 @@
+package net.soundvibe.reacto.discovery.gossip;
+
+import io.reactivex.Flowable;
+import net.soundvibe.reacto.client.events.*;
+import net.soundvibe.reacto.discovery.types.*;
+import net.soundvibe.reacto.mappers.jackson.JacksonMapper;
+import net.soundvibe.reacto.server.CommandRegistry;
+import net.soundvibe.reacto.types.*;
+import net.soundvibe.reacto.types.json.*;
+import org.junit.*;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+
+public class GossipServiceRegistryTest {
+
+    private static final Command command = Command.create("simple");
+    private static final CommandRegistry commandRegistry = CommandRegistry.of("simple", cmd -> Flowable.just(Event.create("one")));
+
+    private final List<GossipServiceRegistry> registries = new ArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        registries.forEach(GossipServiceRegistry::close);
+    }
+
+    @Test
+    public void shouldConvergeOnRecordsOfAllMembers() throws Exception {
+        final GossipServiceRegistry seed = registry(compatibleRecord("member-0"), Collections.emptyList());
+        for (int i = 1; i < 6; i++) {
+            registry(compatibleRecord("member-" + i), singletonList(seed.localAddress()));
+        }
+        registries.forEach(registry -> registry.register().blockingFirst());
+
+        for (GossipServiceRegistry registry : registries) {
+            await(() -> registry.knownRecords().size() == 6);
+        }
+        final GossipServiceRegistry sut = registries.get(5);
+        assertEquals("one", sut.execute(command).blockingFirst().name);
+    }
+
+    @Test
+    public void shouldForgetRecordsOfUnregisteredMembers() throws Exception {
+        final GossipServiceRegistry server = registry(compatibleRecord("server"), Collections.emptyList());
+        final GossipServiceRegistry sut = registry(null, singletonList(server.localAddress()));
+        server.register().blockingFirst();
+        await(() -> sut.knownRecords().size() == 1);
+        sut.findRecordsOf(command).test().assertValue(singletonList(compatibleRecord("server")));
+
+        server.unregister().blockingFirst();
+        await(() -> sut.knownRecords().isEmpty());
+        sut.findRecordsOf(command).test().assertNoValues().assertComplete();
+    }
+
+    @Test
+    public void shouldDiscoverRecordsOfLeftMembersAsDown() throws Exception {
+        final GossipServiceRegistry server = registry(compatibleRecord("server"), Collections.emptyList());
+        final GossipServiceRegistry sut = registry(null, singletonList(server.localAddress()));
+        server.register().blockingFirst();
+        await(() -> sut.knownRecords().size() == 1);
+
+        server.close();
+        await(() -> sut.knownRecords().stream().allMatch(record -> record.status == Status.DOWN));
+        sut.findRecordsOf(command).test().assertNoValues().assertComplete();
+    }
+
+    @Test
+    public void shouldDeclareMembersWhichDoNotAnswerProbesDead() throws Exception {
+        final GossipServiceRegistry sut = registry(null, Collections.emptyList());
+        try (DatagramChannel silentMember = DatagramChannel.open()) {
+            silentMember.bind(new InetSocketAddress("127.0.0.1", 0));
+            final Member member = new Member("silent", (InetSocketAddress) silentMember.getLocalAddress(), 1L,
+                    Member.State.ALIVE, compatibleRecord("silent"));
+            silentMember.send(ByteBuffer.wrap(GossipMessage.of(GossipMessage.Type.UPDATES, "silent", 1L,
+                    singletonList(member)).encode()), sut.localAddress());
+
+            await(() -> sut.knownRecords().size() == 1);
+            assertEquals(Status.UP, sut.knownRecords().iterator().next().status);
+            await(() -> sut.knownRecords().iterator().next().status == Status.DOWN);
+        }
+    }
+
+    @Test
+    public void shouldRefuteSuspicion() throws Exception {
+        final GossipServiceRegistry server = registry(compatibleRecord("server"), Collections.emptyList());
+        final GossipServiceRegistry sut = registry(null, singletonList(server.localAddress()));
+        server.register().blockingFirst();
+        await(() -> sut.knownRecords().size() == 1);
+
+        try (DatagramChannel gossiper = DatagramChannel.open()) {
+            final Member self = serverMember(server);
+            gossiper.send(ByteBuffer.wrap(GossipMessage.of(GossipMessage.Type.UPDATES, "gossiper", 1L,
+                    singletonList(self.withState(Member.State.SUSPECT))).encode()), server.localAddress());
+            await(() -> serverMember(server).incarnation > self.incarnation);
+            assertEquals(Member.State.ALIVE, serverMember(server).state);
+        }
+        assertEquals(Status.UP, sut.knownRecords().iterator().next().status);
+    }
+
+    @Test
+    public void shouldEncodeAndDecodeMessages() throws Exception {
+        final Member member = new Member("member", new InetSocketAddress("127.0.0.1", 7000), 3L,
+                Member.State.SUSPECT, compatibleRecord("member"));
+        final Member withoutRecord = new Member("other", new InetSocketAddress("127.0.0.1", 7001), 4L,
+                Member.State.ALIVE, null);
+        final GossipMessage message = new GossipMessage(GossipMessage.Type.PING_REQ, "sender", 42L,
+                "member", member.address, Arrays.asList(member, withoutRecord),
+                singletonList(GossipMessage.Digest.of(member)), singletonList("other"));
+
+        final byte[] bytes = message.encode();
+        final GossipMessage actual = GossipMessage.decode(bytes, bytes.length);
+
+        assertEquals(GossipMessage.Type.PING_REQ, actual.type);
+        assertEquals("sender", actual.senderId);
+        assertEquals(42L, actual.sequence);
+        assertEquals("member", actual.targetId);
+        assertEquals(member.address, actual.targetAddress);
+        assertEquals(Arrays.asList(member, withoutRecord), actual.members);
+        assertEquals(3L, actual.digests.get(0).incarnation);
+        assertEquals(Member.State.SUSPECT, actual.digests.get(0).state);
+        assertEquals(singletonList("other"), actual.requestedIds);
+    }
+
+    private static Member serverMember(GossipServiceRegistry server) {
+        return server.node().members().stream()
+                .filter(member -> member.record != null && member.record.registrationId.equals("server"))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+    }
+
+    static GossipOptions fastOptions(List<InetSocketAddress> seeds) {
+        return GossipOptions.defaults()
+                .setBindHost("127.0.0.1")
+                .setAdvertisedHost("127.0.0.1")
+                .setSeeds(seeds)
+                .setProtocolPeriod(Duration.ofMillis(50L))
+                .setAckTimeout(Duration.ofMillis(20L))
+                .setSuspicionTimeout(Duration.ofMillis(300L))
+                .setSyncInterval(Duration.ofMillis(200L));
+    }
+
+    private GossipServiceRegistry registry(ServiceRecord serviceRecord, List<InetSocketAddress> seeds) {
+        final GossipServiceRegistry registry = GossipServiceRegistry.Builder.create()
+                .options(fastOptions(seeds))
+                .serviceRecord(serviceRecord)
+                .commandHandlerRegistry(CommandHandlerRegistry.Builder.create()
+                        .register(ServiceType.LOCAL, record -> new LocalCommandHandler(record, commandRegistry))
+                        .build())
+                .mapper(new JacksonMapper(JacksonMapper.JSON))
+                .build();
+        registries.add(registry);
+        return registry;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + Duration.ofSeconds(10L).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) fail("Condition was not met in 10 seconds");
+            Thread.sleep(10L);
+        }
+    }
+
+    static ServiceRecord compatibleRecord(String registrationId) {
+        return ServiceRecord.create("test", Status.UP, ServiceType.LOCAL, registrationId, JsonObject.empty(),
+                JsonObjectBuilder.create()
+                        .putArray(ServiceRecord.METADATA_COMMANDS, array -> array.add(JsonObjectBuilder.create()
+                                .put(CommandDescriptor.COMMAND, "simple")
+                                .put(CommandDescriptor.EVENT, "")
+                                .build()))
+                        .build());
+    }
+}
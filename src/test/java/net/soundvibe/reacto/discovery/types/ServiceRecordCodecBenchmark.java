@@ -0,0 +1,70 @@
+package net.soundvibe.reacto.discovery.types;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Compares size and decode time of 1000 service records (10 services of 100 instances with 30 commands each)
+ * encoded as json, by {@link ServiceRecordCodec} one by one and by {@link ServiceRecordCodec} in a single batch.
+ * Decode time includes parsing of commands, which discovery needs to match records with commands.
+ * Run it manually with {@code main}, it is not part of the test suite.
+ */
+public final class ServiceRecordCodecBenchmark {
+
+    private static final int SERVICES = 10;
+    private static final int INSTANCES = 100;
+    private static final int COMMANDS = 30;
+    private static final int WARM_UP_ITERATIONS = 500;
+    private static final int MEASURE_ITERATIONS = 200;
+
+    public static void main(String[] args) {
+        final List<ServiceRecord> records = new ArrayList<>();
+        for (int service = 0; service < SERVICES; service++) {
+            for (int instance = 0; instance < INSTANCES; instance++) {
+                final ServiceRecord record = ServiceRecordCodecTest.record("instance-" + service + "-" + instance, COMMANDS);
+                records.add(ServiceRecord.create("service-" + service, record.status, record.type, record.registrationId,
+                        record.location, record.metadata));
+            }
+        }
+
+        final List<String> json = new ArrayList<>();
+        final List<byte[]> binary = new ArrayList<>();
+        records.forEach(record -> {
+            json.add(record.toJson());
+            binary.add(ServiceRecordCodec.encode(record));
+        });
+        final byte[] batch = ServiceRecordCodec.encodeAll(records);
+
+        System.out.printf("%-16s %12s %16s%n", "Encoding", "bytes", "decode ns/record");
+        print("json", json.stream().mapToLong(value -> value.getBytes(StandardCharsets.UTF_8).length).sum(), () -> {
+            final List<ServiceRecord> decoded = new ArrayList<>(json.size());
+            json.forEach(value -> {
+                final ServiceRecord record = ServiceRecord.fromJson(value);
+                record.commands();
+                decoded.add(record);
+            });
+            return decoded;
+        }, records.size());
+        print("binary", binary.stream().mapToLong(value -> value.length).sum(), () -> {
+            final List<ServiceRecord> decoded = new ArrayList<>(binary.size());
+            binary.forEach(value -> decoded.add(ServiceRecordCodec.decode(value)));
+            return decoded;
+        }, records.size());
+        print("binary batch", batch.length, () -> ServiceRecordCodec.decodeAll(batch), records.size());
+    }
+
+    private static void print(String encoding, long bytes, Supplier<List<ServiceRecord>> decode, int recordCount) {
+        long blackhole = 0L;
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            blackhole += decode.get().size();
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            blackhole += decode.get().size();
+        }
+        final long elapsed = System.nanoTime() - start;
+        System.out.printf("%-16s %12d %16d%n", encoding, bytes, elapsed / ((long) MEASURE_ITERATIONS * recordCount));
+        if (blackhole == 42L) System.out.println();
+    }
+}
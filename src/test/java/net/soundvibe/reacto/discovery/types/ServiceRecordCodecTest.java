@@ -0,0 +1,138 @@
+package net.soundvibe.reacto.discovery.types;
+
+import net.soundvibe.reacto.types.CommandDescriptor;
+import net.soundvibe.reacto.types.json.*;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ServiceRecordCodecTest {
+
+    @Test
+    public void shouldDecodeRecordEqualToRecordDecodedFromJson() throws Exception {
+        final ServiceRecord record = record("id", 3);
+        final ServiceRecord expected = ServiceRecord.fromJson(record.toJson());
+
+        final ServiceRecord actual = ServiceRecordCodec.decode(ServiceRecordCodec.encode(record));
+
+        assertEquals(expected, actual);
+        assertEquals(expected, ServiceRecord.fromJson(actual.toJson()));
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(expected.commands(), actual.commands());
+        assertEquals(7, actual.weight());
+        assertEquals("zone-a", actual.zone());
+    }
+
+    @Test
+    public void shouldKeepValueTypes() throws Exception {
+        final ServiceRecord record = ServiceRecord.create("values", Status.OUT_OF_SERVICE, ServiceType.LOCAL, "id",
+                JsonObject.empty(),
+                JsonObjectBuilder.create()
+                        .put("int", -42)
+                        .put("long", Long.MIN_VALUE)
+                        .put("double", 0.25)
+                        .put("boolean", true)
+                        .put("string", "ąčę")
+                        .put("big", new BigInteger("123456789012345678901234567890"))
+                        .putObject("object", object -> object.put("nested", 1))
+                        .putArray("array", array -> array.add("one").add(2))
+                        .build());
+
+        final ServiceRecord actual = ServiceRecordCodec.decode(ServiceRecordCodec.encode(record));
+
+        assertEquals(Status.OUT_OF_SERVICE, actual.status);
+        assertEquals(Optional.of(-42), actual.metadata.asInteger("int"));
+        assertEquals(Optional.of(Long.MIN_VALUE), actual.metadata.asLong("long"));
+        assertEquals(Optional.of(0.25), actual.metadata.asDouble("double"));
+        assertEquals(Optional.of(true), actual.metadata.asBoolean("boolean"));
+        assertEquals(Optional.of("ąčę"), actual.metadata.asString("string"));
+        assertEquals(Optional.of(new BigInteger("123456789012345678901234567890")), actual.metadata.valueOf("big", BigInteger.class));
+        assertEquals(Optional.of(1), actual.metadata.asObject("object").flatMap(object -> object.asInteger("nested")));
+        assertEquals(Arrays.asList("one", 2), actual.metadata.asArray("array").map(JsonArray::toList).orElse(null));
+        assertEquals(Collections.emptySet(), actual.commands());
+    }
+
+    @Test
+    public void shouldInternCommandsAndStringsWithinBatch() throws Exception {
+        final List<ServiceRecord> records = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            records.add(record("id-" + i, 20));
+        }
+
+        final byte[] batch = ServiceRecordCodec.encodeAll(records);
+        final List<ServiceRecord> actual = ServiceRecordCodec.decodeAll(batch);
+
+        assertEquals(records.size(), actual.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(ServiceRecord.fromJson(records.get(i).toJson()), actual.get(i));
+        }
+        assertSame(actual.get(0).commands(), actual.get(99).commands());
+        assertSame(actual.get(0).name, actual.get(99).name);
+        final int single = ServiceRecordCodec.encode(records.get(0)).length;
+        assertTrue("batch of 100 records was " + batch.length + " bytes, single record " + single,
+                batch.length < single + 99 * 40);
+        final int json = records.get(0).toJson().getBytes(StandardCharsets.UTF_8).length;
+        assertTrue("single record was " + single + " bytes, json " + json, single < json * 3 / 4);
+    }
+
+    @Test
+    public void shouldRejectMalformedBytes() throws Exception {
+        final byte[] bytes = ServiceRecordCodec.encode(record("id", 3));
+        assertRejected(Arrays.copyOf(bytes, bytes.length - 1));
+        assertRejected(Arrays.copyOf(bytes, bytes.length + 1));
+        assertRejected(new byte[] {9, 1});
+        assertRejected(ServiceRecordCodec.encodeAll(Collections.emptyList()));
+    }
+
+    @Test
+    public void shouldRejectCountsLargerThanInput() throws Exception {
+        final byte[] hugeRecordCount = {1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        final byte[] hugeLocationSize = {1, 1, 2, 'a', 4, 'U', 'P', 2, 'x', 2, 'i',
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        for (byte[] bytes : Arrays.asList(hugeRecordCount, hugeLocationSize)) {
+            try {
+                ServiceRecordCodec.decodeAll(bytes);
+                fail("Should reject " + Arrays.toString(bytes));
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+        }
+    }
+
+    private static void assertRejected(byte[] bytes) {
+        try {
+            ServiceRecordCodec.decode(bytes);
+            fail("Should reject " + Arrays.toString(bytes));
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    static ServiceRecord record(String registrationId, int commandCount) {
+        return ServiceRecord.create("service", Status.UP, ServiceType.WEBSOCKET, registrationId,
+                JsonObjectBuilder.create()
+                        .put(ServiceRecord.LOCATION_HOST, "10.0.0.1")
+                        .put(ServiceRecord.LOCATION_PORT, 8181)
+                        .put(ServiceRecord.LOCATION_ROOT, "/service/")
+                        .put(ServiceRecord.LOCATION_SSL, false)
+                        .put(ServiceRecord.LOCATION_ZONE, "zone-a")
+                        .build(),
+                JsonObjectBuilder.create()
+                        .put(ServiceRecord.METADATA_VERSION, "1.2.3")
+                        .put(ServiceRecord.METADATA_WEIGHT, 7)
+                        .putArray(ServiceRecord.METADATA_COMMANDS, array -> {
+                            for (int i = 0; i < commandCount; i++) {
+                                array.add(JsonObjectBuilder.create()
+                                        .put(CommandDescriptor.COMMAND, "net.soundvibe.reacto.commands.Command" + i)
+                                        .put(CommandDescriptor.EVENT, "net.soundvibe.reacto.events.Event" + i)
+                                        .build());
+                            }
+                            return array;
+                        })
+                        .build());
+    }
+}
@@ -0,0 +1,76 @@
+package net.soundvibe.reacto.discovery.types;
+
+import net.soundvibe.reacto.types.*;
+import net.soundvibe.reacto.types.json.*;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ServiceRecordIndexTest {
+
+    private final CommandDescriptor foo = CommandDescriptor.of("foo");
+    private final CommandDescriptor bar = CommandDescriptor.of("bar");
+
+    @Test
+    public void shouldFindRecordsByCommand() throws Exception {
+        final ServiceRecord first = record("first", Status.UP, "foo", "bar");
+        final ServiceRecord second = record("second", Status.UP, "foo");
+        final ServiceRecord down = record("down", Status.DOWN, "foo");
+        final ServiceRecordIndex sut = ServiceRecordIndex.of(Arrays.asList(first, second, down));
+
+        assertEquals(Arrays.asList(first, second), sut.find(foo));
+        assertEquals(Collections.singletonList(first), sut.find(Command.create("bar")));
+        assertTrue(sut.find(CommandDescriptor.of("baz")).isEmpty());
+        assertEquals(3, sut.size());
+        assertEquals(Optional.of(down), sut.findById("down"));
+    }
+
+    @Test
+    public void shouldApplyChangesAndShareUnaffectedLists() throws Exception {
+        final ServiceRecord first = record("first", Status.UP, "foo");
+        final ServiceRecord second = record("second", Status.UP, "bar");
+        final ServiceRecordIndex sut = ServiceRecordIndex.of(Arrays.asList(first, second));
+
+        final ServiceRecord third = record("third", Status.UP, "foo");
+        final ServiceRecordIndex added = sut.apply(ServiceRecordChange.added(third));
+        assertEquals(Arrays.asList(first, third), added.find(foo));
+        assertSame(sut.find(bar), added.find(bar));
+
+        final ServiceRecordIndex updated = added.apply(ServiceRecordChange.updated(record("first", Status.OUT_OF_SERVICE, "foo")));
+        assertEquals(Collections.singletonList(third), updated.find(foo));
+        assertEquals(3, updated.size());
+
+        final ServiceRecordIndex removed = updated.apply(ServiceRecordChange.removed(second));
+        assertTrue(removed.find(bar).isEmpty());
+        assertEquals(2, removed.size());
+
+        assertSame(removed, removed.apply(ServiceRecordChange.removed(second)));
+    }
+
+    @Test
+    public void shouldParseCommandsOnce() throws Exception {
+        final ServiceRecord sut = record("first", Status.UP, "foo", "bar");
+
+        assertEquals(new HashSet<>(Arrays.asList(foo, bar)), sut.commands());
+        assertSame(sut.commands(), sut.commands());
+        assertTrue(sut.isCompatibleWith(foo));
+        assertFalse(record("down", Status.DOWN, "foo").isCompatibleWith(foo));
+    }
+
+    private static ServiceRecord record(String registrationId, Status status, String... commands) {
+        return ServiceRecord.create("test", status, ServiceType.LOCAL, registrationId, JsonObject.empty(),
+                JsonObjectBuilder.create()
+                        .putArray(ServiceRecord.METADATA_COMMANDS, array -> {
+                            for (String command : commands) {
+                                array.add(JsonObjectBuilder.create()
+                                        .put(CommandDescriptor.COMMAND, command)
+                                        .put(CommandDescriptor.EVENT, "")
+                                        .build());
+                            }
+                            return array;
+                        })
+                        .build());
+    }
+}
@@ -144,4 +144,25 @@ public class ServiceRecordTest {
         assertTrue(actual.isCompatibleWith(command));
         assertFalse(actual.isCompatibleWith(command2));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldAdvertiseWeight() throws Exception {
+        final ServiceRecord sut = ServiceRecord.createWebSocketEndpoint(
+                new ServiceOptions("service", "/", "1", false, 8181, 32), CommandRegistry.empty());
+
+        assertEquals(32, sut.weight());
+        assertEquals(32, ServiceRecord.fromJson(sut.toJson()).weight());
+        assertEquals(ServiceOptions.DEFAULT_WEIGHT, getServiceRecord().weight());
+    }
+
+    @Test
+    public void shouldAdvertiseZone() throws Exception {
+        final ServiceRecord sut = ServiceRecord.createWebSocketEndpoint(
+                new ServiceOptions("service", "/", "1", false, 8181, 32, "eu-west-1a"), CommandRegistry.empty());
+
+        assertEquals("eu-west-1a", sut.zone());
+        assertEquals("eu-west-1a", ServiceRecord.fromJson(sut.toJson()).zone());
+        assertFalse(sut.host().isEmpty());
+        assertEquals(ServiceOptions.DEFAULT_ZONE, getServiceRecord().zone());
+    }
+}
@@ -0,0 +1,145 @@
+package net.soundvibe.reacto.internal;
+
+import io.reactivex.schedulers.TestScheduler;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.Assert.*;
+
+public class BoundedCacheTest {
+
+    private final AtomicLong now = new AtomicLong(0L);
+
+    @Test
+    public void shouldComputeValueOnce() throws Exception {
+        final BoundedCache<String, String> sut = BoundedCache.Builder.create().ticker(now::get).build();
+        final AtomicInteger computations = new AtomicInteger(0);
+
+        assertEquals("foo", sut.computeIfAbsent("key", key -> { computations.incrementAndGet(); return "foo"; }));
+        assertEquals("foo", sut.computeIfAbsent("key", key -> "bar" + computations.getAndIncrement()));
+        assertEquals(1, computations.get());
+
+        final CacheStats stats = sut.stats();
+        assertEquals(1L, stats.hits);
+        assertEquals(1L, stats.misses);
+        assertEquals(0.5, stats.hitRate(), 0.0);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntry() throws Exception {
+        final BoundedCache<String, String> sut = BoundedCache.Builder.create().maximumSize(3L).ticker(now::get).build();
+        sut.computeIfAbsent("a", key -> "a");
+        sut.computeIfAbsent("b", key -> "b");
+        sut.computeIfAbsent("c", key -> "c");
+        sut.computeIfAbsent("a", key -> "a1");
+
+        sut.computeIfAbsent("d", key -> "d");
+
+        assertEquals(3L, sut.size());
+        assertEquals(Optional.empty(), sut.getIfPresent("b"));
+        assertEquals(Optional.of("a"), sut.getIfPresent("a"));
+        assertEquals(Optional.of("c"), sut.getIfPresent("c"));
+        assertEquals(Optional.of("d"), sut.getIfPresent("d"));
+        assertEquals(1L, sut.stats().evictions);
+    }
+
+    @Test
+    public void shouldRecomputeExpiredValue() throws Exception {
+        final BoundedCache<String, String> sut = BoundedCache.Builder.create()
+                .expireAfterWrite(Duration.ofSeconds(10L))
+                .ticker(now::get)
+                .build();
+        assertEquals("foo", sut.computeIfAbsent("key", key -> "foo"));
+
+        now.set(Duration.ofSeconds(9L).toNanos());
+        assertEquals("foo", sut.computeIfAbsent("key", key -> "bar"));
+
+        now.set(Duration.ofSeconds(10L).toNanos());
+        assertEquals(Optional.empty(), sut.getIfPresent("key"));
+        assertEquals("bar", sut.computeIfAbsent("key", key -> "bar"));
+    }
+
+    @Test
+    public void shouldRemoveExpiredEntriesInBackground() throws Exception {
+        final TestScheduler scheduler = new TestScheduler();
+        final BoundedCache<String, String> sut = BoundedCache.Builder.create()
+                .expireAfterWrite(Duration.ofSeconds(10L))
+                .sweepInterval(Duration.ofSeconds(5L))
+                .scheduler(scheduler)
+                .ticker(now::get)
+                .build();
+        sut.computeIfAbsent("old", key -> "old");
+        now.set(Duration.ofSeconds(6L).toNanos());
+        sut.computeIfAbsent("new", key -> "new");
+
+        now.set(Duration.ofSeconds(10L).toNanos());
+        scheduler.advanceTimeBy(10L, TimeUnit.SECONDS);
+
+        assertEquals(1L, sut.size());
+        assertEquals(Optional.of("new"), sut.getIfPresent("new"));
+        assertEquals(1L, sut.stats().expirations);
+
+        sut.dispose();
+        assertTrue(sut.isDisposed());
+    }
+
+    @Test
+    public void shouldNotifyAboutRemovedEntries() throws Exception {
+        final List<String> removed = new ArrayList<>();
+        final BoundedCache<String, String> sut = BoundedCache.Builder.create()
+                .maximumSize(2L)
+                .expireAfterWrite(Duration.ofSeconds(10L))
+                .ticker(now::get)
+                .build((key, value) -> removed.add(value));
+        sut.computeIfAbsent("a", key -> "a");
+        sut.computeIfAbsent("b", key -> "b");
+        sut.computeIfAbsent("c", key -> "c");
+        assertEquals(Collections.singletonList("a"), removed);
+
+        assertFalse(sut.invalidate("b", "other"));
+        assertTrue(sut.invalidate("b", sut.computeIfAbsent("b", key -> "b1")));
+        assertEquals(Arrays.asList("a", "b"), removed);
+
+        now.set(Duration.ofSeconds(10L).toNanos());
+        assertEquals("c1", sut.computeIfAbsent("c", key -> "c1"));
+        assertEquals(Arrays.asList("a", "b", "c"), removed);
+
+        sut.retainIf((key, value) -> false);
+        assertEquals(Arrays.asList("a", "b", "c", "c1"), removed);
+    }
+
+    @Test
+    public void shouldNotCacheNullValues() throws Exception {
+        final BoundedCache<String, String> sut = BoundedCache.Builder.create().ticker(now::get).build();
+
+        assertNull(sut.computeIfAbsent("key", key -> null));
+        assertEquals(0L, sut.size());
+    }
+
+    @Test
+    public void shouldStayWithinMaximumSizeUnderContention() throws Exception {
+        final BoundedCache<Integer, Integer> sut = BoundedCache.Builder.create().maximumSize(100L).build();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    final int key = ThreadLocalRandom.current().nextInt(1_000);
+                    assertEquals(Integer.valueOf(key), sut.computeIfAbsent(key, k -> k));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(10L, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        sut.cleanUp();
+        assertTrue("Size should be bounded but was " + sut.size(), sut.size() <= 100L);
+        assertEquals(40_000L, sut.stats().requests());
+    }
+}
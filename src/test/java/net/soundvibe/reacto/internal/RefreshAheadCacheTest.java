@@ -0,0 +1,195 @@
+package net.soundvibe.reacto.internal;
+
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.schedulers.*;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.Assert.*;
+
+public class RefreshAheadCacheTest {
+
+    private final AtomicLong now = new AtomicLong(0L);
+    private final AtomicInteger loads = new AtomicInteger(0);
+    private final RefreshAheadCache<String, String> sut = new RefreshAheadCache<>(Duration.ofSeconds(10L), 0.0,
+            Duration.ZERO, Duration.ZERO, now::get, (key, previous, current) -> {}, Schedulers.trampoline());
+
+    @Test
+    public void shouldLoadValueOnce() throws Exception {
+        assertEquals("value1", sut.get("key", this::load).blockingFirst());
+        assertEquals("value1", sut.get("key", this::load).blockingFirst());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void shouldServeStaleValueWhileRefreshing() throws Exception {
+        assertEquals("value1", sut.get("key", this::load).blockingFirst());
+        final PublishProcessor<String> refresh = PublishProcessor.create();
+        now.set(Duration.ofSeconds(10L).toNanos());
+
+        assertEquals("value1", sut.get("key", key -> refreshWith(refresh)).blockingFirst());
+        assertEquals("value1", sut.get("key", key -> refreshWith(refresh)).blockingFirst());
+        assertEquals(2, loads.get());
+
+        refresh.onNext("value2");
+        refresh.onComplete();
+        assertEquals("value2", sut.get("key", this::load).blockingFirst());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void shouldRefreshOnRefreshScheduler() throws Exception {
+        final TestScheduler scheduler = new TestScheduler();
+        final RefreshAheadCache<String, String> sut = new RefreshAheadCache<>(Duration.ofSeconds(10L), 0.0,
+                Duration.ZERO, Duration.ZERO, now::get, (key, previous, current) -> {}, scheduler);
+        assertEquals("value1", sut.get("key", this::load).blockingFirst());
+        now.set(Duration.ofSeconds(10L).toNanos());
+
+        assertEquals("value1", sut.get("key", this::load).blockingFirst());
+        assertEquals(1, loads.get());
+
+        scheduler.triggerActions();
+        assertEquals(2, loads.get());
+        assertEquals("value2", sut.get("key", this::load).blockingFirst());
+    }
+
+    @Test
+    public void shouldKeepUpdatedValueWhenRefreshStartedBeforeUpdate() throws Exception {
+        assertEquals("value1", sut.get("key", this::load).blockingFirst());
+        final PublishProcessor<String> refresh = PublishProcessor.create();
+        now.set(Duration.ofSeconds(10L).toNanos());
+        assertEquals("value1", sut.get("key", key -> refreshWith(refresh)).blockingFirst());
+
+        sut.updateAll((key, value) -> "pushed");
+        refresh.onNext("refreshed");
+        refresh.onComplete();
+
+        assertEquals("pushed", sut.get("key", this::load).blockingFirst());
+        now.set(Duration.ofSeconds(20L).toNanos());
+        assertEquals("pushed", sut.get("key", this::load).blockingFirst());
+        assertEquals("value3", sut.get("key", this::load).blockingFirst());
+    }
+
+    @Test
+    public void shouldKeepStaleValueWhenRefreshFails() throws Exception {
+        assertEquals("value1", sut.get("key", this::load).blockingFirst());
+        now.set(Duration.ofSeconds(10L).toNanos());
+
+        assertEquals("value1", sut.get("key", key -> failure()).blockingFirst());
+        assertEquals("value1", sut.get("key", key -> failure()).blockingFirst());
+        assertEquals(2, loads.get());
+
+        now.set(Duration.ofSeconds(20L).toNanos());
+        assertEquals("value1", sut.get("key", this::load).blockingFirst());
+        assertEquals("value3", sut.get("key", this::load).blockingFirst());
+    }
+
+    @Test
+    public void shouldRetryInitialLoadAfterFailure() throws Exception {
+        sut.get("key", key -> failure()).test().assertError(IllegalStateException.class);
+        assertEquals("value2", sut.get("key", this::load).blockingFirst());
+    }
+
+    @Test
+    public void shouldInvalidateWhenRefreshHasNoValue() throws Exception {
+        assertEquals("value1", sut.get("key", this::load).blockingFirst());
+        now.set(Duration.ofSeconds(10L).toNanos());
+
+        sut.get("key", key -> Flowable.empty());
+        assertFalse(sut.getIfPresent("key").isPresent());
+    }
+
+    private Flowable<String> load(String key) {
+        return Flowable.fromCallable(() -> "value" + loads.incrementAndGet());
+    }
+
+    private Flowable<String> refreshWith(PublishProcessor<String> refresh) {
+        return Flowable.defer(() -> {
+            loads.incrementAndGet();
+            return refresh;
+        });
+    }
+
+    private Flowable<String> failure() {
+        return Flowable.defer(() -> {
+            loads.incrementAndGet();
+            return Flowable.error(new IllegalStateException("discovery is down"));
+        });
+    }
+
+    @Test
+    public void shouldCacheFailureWithBackoff() throws Exception {
+        final RefreshAheadCache<String, String> sut = new RefreshAheadCache<>(Duration.ofSeconds(10L), 0.0,
+                Duration.ofSeconds(1L), Duration.ofSeconds(3L), now::get);
+
+        sut.get("key", key -> failure()).test().assertError(IllegalStateException.class);
+        sut.get("key", key -> failure()).test().assertError(IllegalStateException.class);
+        assertEquals(1, loads.get());
+
+        now.set(Duration.ofSeconds(1L).toNanos());
+        sut.get("key", key -> failure()).test().assertError(IllegalStateException.class);
+        assertEquals(2, loads.get());
+
+        now.set(Duration.ofMillis(2500L).toNanos());
+        sut.get("key", key -> failure()).test().assertError(IllegalStateException.class);
+        assertEquals(2, loads.get());
+
+        now.set(Duration.ofSeconds(3L).toNanos());
+        sut.get("key", this::load).test().assertValue("value3");
+        sut.get("key", this::load).test().assertValue("value3");
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void shouldCacheEmptyResult() throws Exception {
+        final RefreshAheadCache<String, String> sut = new RefreshAheadCache<>(Duration.ofSeconds(10L), 0.0,
+                Duration.ofSeconds(1L), Duration.ofSeconds(30L), now::get);
+
+        sut.get("key", key -> empty()).test().assertNoValues().assertComplete();
+        sut.get("key", key -> empty()).test().assertNoValues().assertComplete();
+        assertEquals(1, loads.get());
+
+        now.set(Duration.ofSeconds(1L).toNanos());
+        sut.get("key", this::load).test().assertValue("value2");
+    }
+
+    @Test
+    public void shouldRetryNegativelyCachedKeyWhenItIsAffected() throws Exception {
+        final RefreshAheadCache<String, String> sut = new RefreshAheadCache<>(Duration.ofSeconds(10L), 0.0,
+                Duration.ofSeconds(1L), Duration.ofSeconds(30L), now::get);
+        sut.get("key", key -> empty()).test().assertNoValues().assertComplete();
+        sut.get("other", key -> empty()).test().assertNoValues().assertComplete();
+
+        sut.retryNegativeIf("key"::equals);
+
+        sut.get("key", this::load).test().assertValue("value3");
+        sut.get("other", this::load).test().assertNoValues().assertComplete();
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void shouldNotifyListenerAboutChanges() throws Exception {
+        final List<String> changes = new ArrayList<>();
+        final RefreshAheadCache<String, String> sut = new RefreshAheadCache<>(Duration.ofSeconds(10L), 0.0,
+                Duration.ZERO, Duration.ZERO, now::get, (key, previous, current) -> changes.add(previous + "->" + current));
+
+        sut.get("key", this::load).blockingFirst();
+        sut.updateAll((key, value) -> value);
+        sut.updateAll((key, value) -> value + "a");
+        sut.putStale("stale", "value");
+        sut.invalidate("key");
+
+        assertEquals(Arrays.asList("null->value1", "value1->value1a", "null->value", "value1a->null"), changes);
+    }
+
+    private Flowable<String> empty() {
+        return Flowable.defer(() -> {
+            loads.incrementAndGet();
+            return Flowable.empty();
+        });
+    }
+}
@@ -0,0 +1,40 @@
+package net.soundvibe.reacto.internal;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class WeakIdentityCacheTest {
+
+    private final WeakIdentityCache<List<String>, Object> sut = new WeakIdentityCache<>(16);
+
+    @Test
+    public void shouldComputeValueOncePerKey() throws Exception {
+        final List<String> key = Arrays.asList("a", "b");
+        final Object value = sut.computeIfAbsent(key, k -> new Object());
+
+        assertSame(value, sut.computeIfAbsent(key, k -> new Object()));
+    }
+
+    @Test
+    public void shouldDistinguishEqualKeysByIdentity() throws Exception {
+        final List<String> key1 = Arrays.asList("a", "b");
+        final List<String> key2 = Arrays.asList("a", "b");
+
+        assertNotSame(sut.computeIfAbsent(key1, k -> new Object()), sut.computeIfAbsent(key2, k -> new Object()));
+    }
+
+    @Test
+    public void shouldKeepRecentlyUsedKeysWhenFull() throws Exception {
+        final List<List<String>> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final List<String> key = Collections.singletonList("key" + i);
+            keys.add(key);
+            sut.computeIfAbsent(key, k -> k.get(0));
+        }
+        final List<String> last = keys.get(keys.size() - 1);
+        assertEquals("key99", sut.computeIfAbsent(last, k -> "recomputed"));
+    }
+}
@@ -42,4 +42,17 @@ public class ServiceOptionsTest {
 
         assertTrue(sut.toString().startsWith("ServiceOptions{"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldCreateWithWeight() throws Exception {
+        final ServiceOptions sut = new ServiceOptions("test", "/", "1", false, 8080, 32);
+        assertEquals(32, sut.weight);
+        assertEquals(ServiceOptions.DEFAULT_WEIGHT, new ServiceOptions("test", "/").weight);
+        assertNotEquals(sut, new ServiceOptions("test", "/", "1", false, 8080));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailWhenWeightIsNegative() throws Exception {
+        new ServiceOptions("test", "/", "1", false, 8080, -1);
+    }
+}
@@ -0,0 +1,37 @@
+package net.soundvibe.reacto.simulation;
+
+import java.time.Duration;
+
+/**
+ * Compares built-in load balancers on a cluster of 10 nodes, where one node is slow and one node has long GC pauses,
+ * under open-loop load of 2000 requests per second.
+ * Run it manually with {@code main}, it is not part of the test suite.
+ */
+public final class ClusterSimulationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final ClusterSimulator.Builder builder = ClusterSimulator.Builder.create()
+                .requestsPerSecond(2000.0)
+                .warmUp(Duration.ofSeconds(2L))
+                .duration(Duration.ofSeconds(10L));
+        for (int i = 0; i < 8; i++) {
+            builder.node(SimulatedNodeOptions.defaults("node-" + i)
+                    .setLatency(LatencyDistribution.logNormal(Duration.ofMillis(5L), Duration.ofMillis(20L)))
+                    .setCapacity(4)
+                    .setFailureRate(0.001));
+        }
+        builder.node(SimulatedNodeOptions.defaults("slow-node")
+                .setLatency(LatencyDistribution.logNormal(Duration.ofMillis(25L), Duration.ofMillis(100L)))
+                .setCapacity(4));
+        builder.node(SimulatedNodeOptions.defaults("gc-node")
+                .setLatency(LatencyDistribution.logNormal(Duration.ofMillis(5L), Duration.ofMillis(20L)))
+                .setCapacity(4)
+                .setGcPauses(Duration.ofSeconds(2L), Duration.ofMillis(300L)));
+        final ClusterSimulator simulator = builder.build();
+
+        System.out.println(SimulationReport.header());
+        for (RoutingPolicy policy : RoutingPolicy.builtInLoadBalancers()) {
+            System.out.println(simulator.run(policy).format());
+        }
+    }
+}
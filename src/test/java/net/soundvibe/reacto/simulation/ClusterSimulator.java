@@ -0,0 +1,196 @@
+package net.soundvibe.reacto.simulation;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import net.soundvibe.reacto.client.commands.CommandExecutorFactory;
+import net.soundvibe.reacto.client.events.CommandHandler;
+import net.soundvibe.reacto.discovery.LoadBalancer;
+import net.soundvibe.reacto.types.*;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Runs simulated nodes in this JVM in real time and drives them with open-loop load: requests are sent at
+ * exponentially distributed intervals of the given rate no matter how fast previous requests complete,
+ * so that slow nodes make queues grow instead of slowing the load down. Every routing policy runs against
+ * freshly created nodes with the same seeds and is reported separately.
+ */
+public final class ClusterSimulator {
+
+    private static final Command COMMAND = Command.create("simulated");
+
+    private final List<SimulatedNodeOptions> nodes;
+    private final double requestsPerSecond;
+    private final Duration warmUp;
+    private final Duration duration;
+    private final Duration drainTimeout;
+    private final long seed;
+    private final int threads;
+
+    private ClusterSimulator(Builder builder) {
+        if (builder.nodes.isEmpty()) throw new IllegalArgumentException("nodes cannot be empty");
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(builder.nodes));
+        this.requestsPerSecond = builder.requestsPerSecond;
+        this.warmUp = builder.warmUp;
+        this.duration = builder.duration;
+        this.drainTimeout = builder.drainTimeout;
+        this.seed = builder.seed;
+        this.threads = builder.threads;
+    }
+
+    public List<SimulationReport> runAll(List<RoutingPolicy> policies) throws InterruptedException {
+        final List<SimulationReport> reports = new ArrayList<>(policies.size());
+        for (RoutingPolicy policy : policies) {
+            reports.add(run(policy));
+        }
+        return reports;
+    }
+
+    public SimulationReport run(RoutingPolicy policy) throws InterruptedException {
+        final ScheduledExecutorService executor = Executors.newScheduledThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "reacto-simulated-node");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final Scheduler scheduler = Schedulers.from(executor);
+        final List<SimulatedNode> simulatedNodes = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            simulatedNodes.add(new SimulatedNode(nodes.get(i), scheduler, seed + i));
+        }
+        simulatedNodes.forEach(SimulatedNode::start);
+        try (SimulatedServiceRegistry registry = new SimulatedServiceRegistry(simulatedNodes)) {
+            return run(policy.name, registry, simulatedNodes, policy.createLoadBalancer(SimulationClock.REAL_TIME),
+                    policy.createCommandExecutorFactory(SimulationClock.REAL_TIME));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private SimulationReport run(String policy, SimulatedServiceRegistry registry, List<SimulatedNode> simulatedNodes,
+                                 LoadBalancer<CommandHandler> loadBalancer,
+                                 CommandExecutorFactory commandExecutorFactory) throws InterruptedException {
+        final Random random = new Random(seed);
+        final double meanIntervalInNanos = TimeUnit.SECONDS.toNanos(1L) / requestsPerSecond;
+        final LatencyRecorder latencies = new LatencyRecorder((int) (requestsPerSecond * duration.getSeconds() * 1.2) + 16);
+        final AtomicLong failed = new AtomicLong(0L);
+        final AtomicInteger pending = new AtomicInteger(0);
+        long requests = 0L;
+
+        final long startedAt = System.nanoTime();
+        final long measureFrom = startedAt + warmUp.toNanos();
+        final long measureUntil = measureFrom + duration.toNanos();
+        boolean isMeasuring = false;
+        long dueAt = startedAt;
+        while (dueAt < measureUntil) {
+            final long delay = dueAt - System.nanoTime();
+            if (delay > 0L) LockSupport.parkNanos(delay);
+            if (!isMeasuring && dueAt >= measureFrom) {
+                simulatedNodes.forEach(SimulatedNode::resetStats);
+                isMeasuring = true;
+            }
+            final long sentAt = dueAt;
+            final boolean isMeasured = isMeasuring;
+            if (isMeasured) {
+                requests++;
+                pending.incrementAndGet();
+            }
+            registry.execute(COMMAND, Event.class, loadBalancer, commandExecutorFactory)
+                    .subscribe(event -> {}, error -> {
+                        if (!isMeasured) return;
+                        failed.incrementAndGet();
+                        pending.decrementAndGet();
+                    }, () -> {
+                        if (!isMeasured) return;
+                        latencies.record(System.nanoTime() - sentAt);
+                        pending.decrementAndGet();
+                    });
+            dueAt += (long) (-Math.log(1.0 - random.nextDouble()) * meanIntervalInNanos);
+        }
+        final List<NodeStats> nodeStats = simulatedNodes.stream().map(SimulatedNode::stats).collect(toList());
+
+        final long drainUntil = System.nanoTime() + drainTimeout.toNanos();
+        while (pending.get() > 0 && System.nanoTime() < drainUntil) {
+            Thread.sleep(10L);
+        }
+        return new SimulationReport(policy, requests, failed.get(), measureUntil - measureFrom, latencies.sorted(), nodeStats);
+    }
+
+    public static final class Builder {
+
+        private final List<SimulatedNodeOptions> nodes = new ArrayList<>();
+        private double requestsPerSecond = 1000.0;
+        private Duration warmUp = Duration.ofSeconds(1L);
+        private Duration duration = Duration.ofSeconds(5L);
+        private Duration drainTimeout = Duration.ofSeconds(10L);
+        private long seed = 42L;
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        public static Builder create() {
+            return new Builder();
+        }
+
+        public Builder node(SimulatedNodeOptions node) {
+            Objects.requireNonNull(node, "node cannot be null");
+            nodes.add(node);
+            return this;
+        }
+
+        public Builder requestsPerSecond(double requestsPerSecond) {
+            if (requestsPerSecond <= 0.0) throw new IllegalArgumentException("requestsPerSecond should be positive but was " + requestsPerSecond);
+            this.requestsPerSecond = requestsPerSecond;
+            return this;
+        }
+
+        /**
+         * @param warmUp time during which the load is sent, but not measured
+         * @return Builder
+         */
+        public Builder warmUp(Duration warmUp) {
+            Objects.requireNonNull(warmUp, "warmUp cannot be null");
+            this.warmUp = warmUp;
+            return this;
+        }
+
+        public Builder duration(Duration duration) {
+            Objects.requireNonNull(duration, "duration cannot be null");
+            if (duration.isNegative() || duration.isZero()) throw new IllegalArgumentException("duration should be positive but was " + duration);
+            this.duration = duration;
+            return this;
+        }
+
+        /**
+         * @param drainTimeout how long to wait for requests, which are still in flight when the load stops
+         * @return Builder
+         */
+        public Builder drainTimeout(Duration drainTimeout) {
+            Objects.requireNonNull(drainTimeout, "drainTimeout cannot be null");
+            this.drainTimeout = drainTimeout;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param threads number of threads, which complete requests of all nodes
+         * @return Builder
+         */
+        public Builder threads(int threads) {
+            if (threads < 1) throw new IllegalArgumentException("threads cannot be less than 1 but was " + threads);
+            this.threads = threads;
+            return this;
+        }
+
+        public ClusterSimulator build() {
+            return new ClusterSimulator(this);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package net.soundvibe.reacto.simulation;
+
+import net.soundvibe.reacto.discovery.RoundRobinLoadBalancer;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class ClusterSimulatorTest {
+
+    private final ClusterSimulator sut = ClusterSimulator.Builder.create()
+            .node(SimulatedNodeOptions.defaults("fast-1").setLatency(LatencyDistribution.constant(Duration.ofMillis(2L))))
+            .node(SimulatedNodeOptions.defaults("fast-2").setLatency(LatencyDistribution.constant(Duration.ofMillis(2L))))
+            .node(SimulatedNodeOptions.defaults("slow").setLatency(LatencyDistribution.constant(Duration.ofMillis(50L))))
+            .requestsPerSecond(300.0)
+            .warmUp(Duration.ofMillis(300L))
+            .duration(Duration.ofSeconds(1L))
+            .threads(2)
+            .build();
+
+    @Test
+    public void shouldCompleteEveryRequestInRealTime() throws Exception {
+        final SimulationReport report = sut.run(RoutingPolicy.of("RoundRobin", RoundRobinLoadBalancer::new));
+
+        assertTrue(report.toString(), report.requests > 0L);
+        assertEquals(report.toString(), report.requests, report.completed);
+        assertEquals(0L, report.failed);
+        assertEquals(3, report.nodes.size());
+    }
+
+    @Test
+    public void shouldRetryRequestsFailedBySimulatedNode() throws Exception {
+        final ClusterSimulator sut = ClusterSimulator.Builder.create()
+                .node(SimulatedNodeOptions.defaults("healthy"))
+                .node(SimulatedNodeOptions.defaults("failing").setFailureRate(1.0))
+                .requestsPerSecond(200.0)
+                .warmUp(Duration.ZERO)
+                .duration(Duration.ofMillis(500L))
+                .threads(2)
+                .build();
+
+        final SimulationReport report = sut.run(RoutingPolicy.of("RoundRobin", RoundRobinLoadBalancer::new));
+
+        assertEquals(report.toString(), 0L, report.failed);
+        assertEquals(report.toString(), report.requests, report.completed);
+    }
+}
@@ -0,0 +1,28 @@
+package net.soundvibe.reacto.simulation;
+
+/**
+ * Replays every scenario with built-in load balancers in virtual time and prints reports together with
+ * the number of simulated requests per second of wall-clock time.
+ * Run it manually with {@code main}, optionally passing scenario file names, it is not part of the test suite.
+ */
+public final class DiscreteEventSimulationBenchmark {
+
+    private static final String[] SCENARIOS = {"one-slow-node.json", "rolling-restart.json", "zone-outage.json"};
+
+    public static void main(String[] args) {
+        for (String resource : args.length == 0 ? SCENARIOS : args) {
+            final Scenario scenario = Scenario.load(resource);
+            final DiscreteEventSimulator simulator = new DiscreteEventSimulator(scenario);
+            System.out.println(scenario);
+            System.out.println(SimulationReport.header());
+            for (RoutingPolicy policy : RoutingPolicy.builtInLoadBalancers()) {
+                final long startedAt = System.nanoTime();
+                final SimulationReport report = simulator.run(policy);
+                final double elapsedSeconds = (System.nanoTime() - startedAt) / 1_000_000_000.0;
+                System.out.println(report.format());
+                System.out.printf("    simulated %.0f requests per second of wall-clock time%n", report.requests / elapsedSeconds);
+            }
+            System.out.println();
+        }
+    }
+}
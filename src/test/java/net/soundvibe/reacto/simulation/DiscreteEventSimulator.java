@@ -0,0 +1,129 @@
+package net.soundvibe.reacto.simulation;
+
+import io.reactivex.schedulers.TestScheduler;
+import net.soundvibe.reacto.client.commands.*;
+import net.soundvibe.reacto.client.events.CommandHandler;
+import net.soundvibe.reacto.discovery.LoadBalancer;
+import net.soundvibe.reacto.types.Command;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Replays a {@link Scenario} in virtual time: simulated nodes, arrivals of requests, events of the scenario and
+ * timers of the routing policy are scheduled on a single {@link TestScheduler}, which jumps from one event to the next,
+ * so that minutes of traffic are simulated in seconds. Arrivals, nodes and random numbers of the policy are seeded,
+ * so that a run of a policy gives the same report every time.
+ * <p>
+ * Commands are executed by the command executor of the policy directly, as {@link ClusterSimulator} does through
+ * a service registry, and the list of handlers changes {@link Scenario#discoveryDelay} after a node is stopped or started.
+ */
+public final class DiscreteEventSimulator {
+
+    private static final Command COMMAND = Command.create("simulated");
+
+    private final Scenario scenario;
+
+    public DiscreteEventSimulator(Scenario scenario) {
+        Objects.requireNonNull(scenario, "scenario cannot be null");
+        this.scenario = scenario;
+    }
+
+    public List<SimulationReport> runAll(List<RoutingPolicy> policies) {
+        final List<SimulationReport> reports = new ArrayList<>(policies.size());
+        for (RoutingPolicy policy : policies) {
+            reports.add(run(policy));
+        }
+        return reports;
+    }
+
+    public SimulationReport run(RoutingPolicy policy) {
+        Objects.requireNonNull(policy, "policy cannot be null");
+        return new Run(policy).execute();
+    }
+
+    private final class Run {
+
+        private final String policy;
+        private final TestScheduler scheduler = new TestScheduler();
+        private final LoadBalancer<CommandHandler> loadBalancer;
+        private final CommandExecutorFactory commandExecutorFactory;
+        private final List<SimulatedNode> nodes;
+        private final Random random = new Random(scenario.seed);
+        private final double meanIntervalInNanos = TimeUnit.SECONDS.toNanos(1L) / scenario.requestsPerSecond;
+        private final long measureFrom = scenario.warmUp.toNanos();
+        private final long measureUntil = measureFrom + scenario.duration.toNanos();
+        private final LatencyRecorder latencies = new LatencyRecorder(
+                (int) Math.min(Integer.MAX_VALUE - 8, scenario.requestsPerSecond * scenario.duration.getSeconds() * 1.2) + 16);
+
+        private CommandExecutor commandExecutor;
+        private long requests;
+        private long failed;
+        private List<NodeStats> nodeStats = Collections.emptyList();
+
+        private Run(RoutingPolicy policy) {
+            final SimulationClock clock = SimulationClock.virtual(scheduler, scenario.seed);
+            this.policy = policy.name;
+            this.loadBalancer = policy.createLoadBalancer(clock);
+            this.commandExecutorFactory = policy.createCommandExecutorFactory(clock);
+            this.nodes = new ArrayList<>(scenario.nodes.size());
+            for (int i = 0; i < scenario.nodes.size(); i++) {
+                nodes.add(new SimulatedNode(scenario.nodes.get(i), scheduler, scenario.seed + i));
+            }
+        }
+
+        private SimulationReport execute() {
+            nodes.forEach(SimulatedNode::start);
+            discover();
+            for (Scenario.Action action : scenario.actions) {
+                schedule(action.at.toNanos(), () -> {
+                    action.applyTo(nodes);
+                    schedule(scenario.discoveryDelay.toNanos(), this::discover);
+                });
+            }
+            schedule(measureFrom, () -> nodes.forEach(SimulatedNode::resetStats));
+            schedule(measureUntil, () -> nodeStats = nodes.stream().map(SimulatedNode::stats).collect(toList()));
+            schedule(0L, this::send);
+
+            scheduler.advanceTimeTo(measureUntil + scenario.drainTimeout.toNanos(), TimeUnit.NANOSECONDS);
+            final long failedRequests = failed;
+            final long[] sortedLatencies = latencies.sorted();
+            nodes.forEach(SimulatedNode::close);
+            return new SimulationReport(policy, requests, failedRequests, measureUntil - measureFrom, sortedLatencies, nodeStats);
+        }
+
+        /**
+         * Replaces handlers with nodes, which are running now, as a refresh of a service registry would
+         */
+        private void discover() {
+            final List<CommandHandler> handlers = nodes.stream()
+                    .filter(node -> !node.isStopped())
+                    .collect(toList());
+            commandExecutor = commandExecutorFactory.create(Collections.unmodifiableList(handlers), loadBalancer);
+        }
+
+        private void send() {
+            final long sentAt = now();
+            final boolean isMeasured = sentAt >= measureFrom;
+            if (isMeasured) requests++;
+            commandExecutor.execute(COMMAND)
+                    .subscribe(event -> {}, error -> {
+                        if (isMeasured) failed++;
+                    }, () -> {
+                        if (isMeasured) latencies.record(now() - sentAt);
+                    });
+            final long interval = (long) (-Math.log(1.0 - random.nextDouble()) * meanIntervalInNanos);
+            if (sentAt + interval < measureUntil) schedule(interval, this::send);
+        }
+
+        private void schedule(long delayInNanos, Runnable task) {
+            scheduler.scheduleDirect(task, delayInNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private long now() {
+            return scheduler.now(TimeUnit.NANOSECONDS);
+        }
+    }
+}
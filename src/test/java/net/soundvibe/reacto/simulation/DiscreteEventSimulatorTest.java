@@ -0,0 +1,143 @@
+package net.soundvibe.reacto.simulation;
+
+import net.soundvibe.reacto.client.commands.*;
+import net.soundvibe.reacto.discovery.*;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+public class DiscreteEventSimulatorTest {
+
+    private static final Scenario ONE_SLOW_OF_THREE = Scenario.parse("{" +
+            "\"name\": \"one slow of three\", \"requestsPerSecond\": 300, \"warmUpMillis\": 300, \"durationMillis\": 10000," +
+            "\"nodes\": [" +
+            "{\"name\": \"fast\", \"count\": 2, \"latency\": {\"type\": \"constant\", \"millis\": 2}}," +
+            "{\"name\": \"slow\", \"latency\": {\"type\": \"constant\", \"millis\": 50}}]}");
+
+    private static final RoutingPolicy ROUND_ROBIN_WITHOUT_RETRIES = RoutingPolicy.onClock("RoundRobin",
+            clock -> new RoundRobinLoadBalancer<>(),
+            clock -> ReactoCommandExecutor.Builder.create()
+                    .circuitBreakers(new CircuitBreakers(CircuitBreakerOptions.defaults().setTicker(clock.ticker)))
+                    .outlierDetector(new OutlierDetector(OutlierDetectionOptions.defaults().setTicker(clock.ticker)))
+                    .passiveHealthChecker(new PassiveHealthChecker(PassiveHealthOptions.defaults().setScheduler(clock.scheduler)))
+                    .retryPolicy(RetryPolicy.NONE)
+                    .ticker(clock.ticker)
+                    .build());
+
+    @Test
+    public void shouldReportLatencyAndUtilizationOfRoundRobin() throws Exception {
+        final SimulationReport report = new DiscreteEventSimulator(ONE_SLOW_OF_THREE)
+                .run(RoutingPolicy.onClock("RoundRobin", clock -> new RoundRobinLoadBalancer<>(), DiscreteEventSimulatorTest::withoutOutlierDetection));
+
+        assertTrue(report.toString(), report.requests > 2500L);
+        assertEquals(report.toString(), report.requests, report.completed);
+        assertEquals(0L, report.failed);
+        assertEquals(1.0 / 3.0, report.shareOf("slow"), 0.01);
+        assertTrue(report.toString(), report.p50Nanos < Duration.ofMillis(40L).toNanos());
+        assertTrue(report.toString(), report.p999Nanos >= Duration.ofMillis(50L).toNanos());
+        assertTrue(report.format(), report.utilizationOf("slow") > report.utilizationOf("fast-1"));
+    }
+
+    @Test
+    public void shouldSendLessLoadToSlowNodeWithLatencyAwareLoadBalancer() throws Exception {
+        final SimulationReport report = new DiscreteEventSimulator(ONE_SLOW_OF_THREE)
+                .run(RoutingPolicy.onClock("PeakEwma", clock -> new PeakEwmaLoadBalancer<>(PeakEwmaLoadBalancer.DEFAULT_DECAY_TIME, clock.ticker),
+                        DiscreteEventSimulatorTest::withoutOutlierDetection));
+
+        assertEquals(report.toString(), report.requests, report.completed);
+        assertTrue(report.format(), report.shareOf("slow") < 0.2);
+    }
+
+    @Test
+    public void shouldMeetExpectationsWhenOneNodeIsSlow() throws Exception {
+        assertExpectationsAreMet(Scenario.load("one-slow-node.json"));
+    }
+
+    @Test
+    public void shouldMeetExpectationsDuringRollingRestart() throws Exception {
+        assertExpectationsAreMet(Scenario.load("rolling-restart.json"));
+    }
+
+    @Test
+    public void shouldMeetExpectationsDuringZoneOutage() throws Exception {
+        assertExpectationsAreMet(Scenario.load("zone-outage.json"));
+    }
+
+    @Test
+    public void shouldReportTheSameWhenRunWithTheSameSeed() throws Exception {
+        final DiscreteEventSimulator sut = new DiscreteEventSimulator(Scenario.load("rolling-restart.json"));
+
+        final SimulationReport first = sut.run(ROUND_ROBIN_WITHOUT_RETRIES);
+        final SimulationReport second = sut.run(ROUND_ROBIN_WITHOUT_RETRIES);
+
+        assertTrue(first.toString(), first.requests > 100_000L);
+        assertTrue("Stopped nodes should fail requests without retries: " + first, first.failed > 0L);
+        assertEquals(first.toString(), second.toString());
+        assertEquals(first.format(), second.format());
+    }
+
+    @Test
+    public void shouldReportTheSameForEveryBuiltInLoadBalancerWhenRunWithTheSameSeed() throws Exception {
+        final DiscreteEventSimulator sut = new DiscreteEventSimulator(ONE_SLOW_OF_THREE);
+
+        final List<SimulationReport> first = sut.runAll(RoutingPolicy.builtInLoadBalancers());
+        final List<SimulationReport> second = sut.runAll(RoutingPolicy.builtInLoadBalancers());
+
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).format(), second.get(i).format());
+        }
+    }
+
+    @Test
+    public void shouldSendNoRequestsToStoppedNodesAfterDiscovery() throws Exception {
+        final Scenario scenario = Scenario.parse("{" +
+                "\"name\": \"stopped node\", \"requestsPerSecond\": 1000, \"warmUpMillis\": 2000, \"durationMillis\": 5000," +
+                "\"discoveryDelayMillis\": 1000," +
+                "\"nodes\": [{\"name\": \"node\", \"count\": 2}, {\"name\": \"stopped\"}]," +
+                "\"events\": [{\"atMillis\": 0, \"type\": \"stop\", \"node\": \"stopped\"}]}");
+        final DiscreteEventSimulator sut = new DiscreteEventSimulator(scenario);
+
+        final SimulationReport report = sut.run(ROUND_ROBIN_WITHOUT_RETRIES);
+
+        assertEquals(report.toString(), 0L, report.failed);
+        assertEquals(report.toString(), report.requests, report.completed);
+        assertEquals(0.0, report.shareOf("stopped"), 0.0);
+        assertEquals(0.5, report.shareOf("node-1"), 0.01);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEventOfUnknownNode() throws Exception {
+        Scenario.parse("{\"name\": \"unknown node\", \"requestsPerSecond\": 1000, \"durationMillis\": 1000," +
+                "\"nodes\": [{\"name\": \"node\"}]," +
+                "\"events\": [{\"atMillis\": 0, \"type\": \"stop\", \"node\": \"other\"}]}");
+    }
+
+    private static CommandExecutorFactory withoutOutlierDetection(SimulationClock clock) {
+        return ReactoCommandExecutor.Builder.create()
+                .circuitBreakers(new CircuitBreakers(CircuitBreakerOptions.defaults().setTicker(clock.ticker)))
+                .outlierDetector(new OutlierDetector(OutlierDetectionOptions.defaults()
+                        .setMinimumHosts(Integer.MAX_VALUE)
+                        .setTicker(clock.ticker)))
+                .passiveHealthChecker(new PassiveHealthChecker(PassiveHealthOptions.defaults().setScheduler(clock.scheduler)))
+                .retryPolicy(new RetryPolicy(RetryPolicy.DEFAULT.maxRetries, RetryPolicy.DEFAULT.initialBackoff,
+                        RetryPolicy.DEFAULT.maxBackoff, clock.scheduler, clock.random))
+                .ticker(clock.ticker)
+                .build();
+    }
+
+    private static void assertExpectationsAreMet(Scenario scenario) {
+        final List<RoutingPolicy> policies = RoutingPolicy.builtInLoadBalancers().stream()
+                .filter(policy -> scenario.expectationOf(policy.name).isPresent())
+                .collect(toList());
+        assertFalse("Scenario should have expectations: " + scenario, policies.isEmpty());
+
+        for (SimulationReport report : new DiscreteEventSimulator(scenario).runAll(policies)) {
+            final List<String> violations = scenario.expectationOf(report.policy).get().violationsOf(report);
+            assertTrue(scenario.name + ", " + report.policy + ": " + violations + "\n" + report.format(), violations.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package net.soundvibe.reacto.simulation;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Distribution of service time of simulated requests
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    /**
+     * z-score of the 99th percentile of the standard normal distribution
+     */
+    double Z_99 = 2.326;
+
+    long sampleInNanos(Random random);
+
+    static LatencyDistribution constant(Duration latency) {
+        Objects.requireNonNull(latency, "latency cannot be null");
+        final long latencyInNanos = latency.toNanos();
+        return random -> latencyInNanos;
+    }
+
+    static LatencyDistribution uniform(Duration min, Duration max) {
+        Objects.requireNonNull(min, "min cannot be null");
+        Objects.requireNonNull(max, "max cannot be null");
+        if (max.compareTo(min) < 0) throw new IllegalArgumentException("max cannot be less than min " + min + " but was " + max);
+        final long minInNanos = min.toNanos();
+        final long rangeInNanos = max.toNanos() - minInNanos;
+        return random -> minInNanos + (long) (random.nextDouble() * rangeInNanos);
+    }
+
+    static LatencyDistribution exponential(Duration mean) {
+        Objects.requireNonNull(mean, "mean cannot be null");
+        final double meanInNanos = mean.toNanos();
+        return random -> (long) (-Math.log(1.0 - random.nextDouble()) * meanInNanos);
+    }
+
+    /**
+     * @param median median latency
+     * @param p99 99th percentile of latency, not less than median
+     * @return log-normal distribution, which models long tail of real services
+     */
+    static LatencyDistribution logNormal(Duration median, Duration p99) {
+        Objects.requireNonNull(median, "median cannot be null");
+        Objects.requireNonNull(p99, "p99 cannot be null");
+        if (median.isNegative() || median.isZero()) throw new IllegalArgumentException("median should be positive but was " + median);
+        if (p99.compareTo(median) < 0) throw new IllegalArgumentException("p99 cannot be less than median " + median + " but was " + p99);
+        final double mu = Math.log(median.toNanos());
+        final double sigma = (Math.log(p99.toNanos()) - mu) / Z_99;
+        return random -> (long) Math.exp(mu + sigma * random.nextGaussian());
+    }
+}
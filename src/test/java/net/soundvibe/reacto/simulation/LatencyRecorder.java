@@ -0,0 +1,27 @@
+package net.soundvibe.reacto.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Keeps every recorded latency, so that exact percentiles could be calculated at the end of a simulation
+ */
+final class LatencyRecorder {
+
+    private long[] latencies;
+    private int size;
+
+    LatencyRecorder(int initialCapacity) {
+        this.latencies = new long[Math.max(16, initialCapacity)];
+    }
+
+    synchronized void record(long latencyInNanos) {
+        if (size == latencies.length) latencies = Arrays.copyOf(latencies, size * 2);
+        latencies[size++] = latencyInNanos;
+    }
+
+    synchronized long[] sorted() {
+        final long[] sorted = Arrays.copyOf(latencies, size);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
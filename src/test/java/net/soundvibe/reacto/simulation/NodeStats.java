@@ -0,0 +1,40 @@
+package net.soundvibe.reacto.simulation;
+
+/**
+ * Requests served by a simulated node
+ */
+public final class NodeStats {
+
+    public final String name;
+    public final long requests;
+    public final long failures;
+    public final long busyNanos;
+    public final int capacity;
+
+    NodeStats(String name, long requests, long failures, long busyNanos, int capacity) {
+        this.name = name;
+        this.requests = requests;
+        this.failures = failures;
+        this.busyNanos = busyNanos;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param elapsedNanos time over which the statistics were collected
+     * @return share of the node capacity, which was busy serving requests
+     */
+    public double utilization(long elapsedNanos) {
+        return elapsedNanos <= 0L ? 0.0 : (double) busyNanos / ((double) elapsedNanos * capacity);
+    }
+
+    @Override
+    public String toString() {
+        return "NodeStats{" +
+                "name='" + name + '\'' +
+                ", requests=" + requests +
+                ", failures=" + failures +
+                ", busyNanos=" + busyNanos +
+                ", capacity=" + capacity +
+                '}';
+    }
+}
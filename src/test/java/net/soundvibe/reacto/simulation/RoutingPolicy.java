@@ -0,0 +1,95 @@
+package net.soundvibe.reacto.simulation;
+
+import net.soundvibe.reacto.client.commands.*;
+import net.soundvibe.reacto.client.events.CommandHandler;
+import net.soundvibe.reacto.discovery.*;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Load balancer and command executor compared by a simulation. Both of them are created for every run
+ * with the clock of the simulation, so that state kept by one run does not leak into another
+ * and time based decisions follow virtual time of a discrete event simulation.
+ */
+public final class RoutingPolicy {
+
+    public final String name;
+    private final Function<SimulationClock, LoadBalancer<CommandHandler>> loadBalancer;
+    private final Function<SimulationClock, CommandExecutorFactory> commandExecutorFactory;
+
+    private RoutingPolicy(String name, Function<SimulationClock, LoadBalancer<CommandHandler>> loadBalancer,
+                          Function<SimulationClock, CommandExecutorFactory> commandExecutorFactory) {
+        Objects.requireNonNull(name, "name cannot be null");
+        Objects.requireNonNull(loadBalancer, "loadBalancer cannot be null");
+        Objects.requireNonNull(commandExecutorFactory, "commandExecutorFactory cannot be null");
+        this.name = name;
+        this.loadBalancer = loadBalancer;
+        this.commandExecutorFactory = commandExecutorFactory;
+    }
+
+    /**
+     * @return policy, which executes commands with {@link #reactoExecutor(SimulationClock)}
+     */
+    public static RoutingPolicy of(String name, Supplier<LoadBalancer<CommandHandler>> loadBalancer) {
+        return new RoutingPolicy(name, clock -> loadBalancer.get(), RoutingPolicy::reactoExecutor);
+    }
+
+    public static RoutingPolicy of(String name, Supplier<LoadBalancer<CommandHandler>> loadBalancer,
+                                   Supplier<CommandExecutorFactory> commandExecutorFactory) {
+        return new RoutingPolicy(name, clock -> loadBalancer.get(), clock -> commandExecutorFactory.get());
+    }
+
+    /**
+     * @return policy, whose load balancer and command executor read time from the clock of the simulation
+     */
+    public static RoutingPolicy onClock(String name, Function<SimulationClock, LoadBalancer<CommandHandler>> loadBalancer,
+                                        Function<SimulationClock, CommandExecutorFactory> commandExecutorFactory) {
+        return new RoutingPolicy(name, loadBalancer, commandExecutorFactory);
+    }
+
+    /**
+     * @return built-in load balancers executed with {@link #reactoExecutor(SimulationClock)},
+     * which draw random numbers from the clock, so that every run with the same seed is the same
+     */
+    public static List<RoutingPolicy> builtInLoadBalancers() {
+        return Arrays.asList(
+                onClock("Random", clock -> new RandomLoadBalancer<>(clock.random), RoutingPolicy::reactoExecutor),
+                onClock("RoundRobin", clock -> new RoundRobinLoadBalancer<>(), RoutingPolicy::reactoExecutor),
+                onClock("PowerOfTwoChoices", clock -> new PowerOfTwoChoicesLoadBalancer<>(clock.random), RoutingPolicy::reactoExecutor),
+                onClock("PeakEwma", clock -> new PeakEwmaLoadBalancer<>(PeakEwmaLoadBalancer.DEFAULT_DECAY_TIME, clock.ticker, clock.random),
+                        RoutingPolicy::reactoExecutor),
+                onClock("WeightedRoundRobin", clock -> new WeightedRoundRobinLoadBalancer<>(
+                        handler -> handler.serviceRecord().weight(), SlowStart.disabled(), clock.random), RoutingPolicy::reactoExecutor),
+                onClock("WeightedRandom", clock -> new WeightedRandomLoadBalancer<>(
+                        handler -> handler.serviceRecord().weight(), SlowStart.disabled(), clock.random), RoutingPolicy::reactoExecutor));
+    }
+
+    /**
+     * @return {@link ReactoCommandExecutor} with default circuit breakers, outlier detection, passive health checks
+     * and retries, which do not share their state with other runs and read time and jitter from the given clock
+     */
+    public static CommandExecutorFactory reactoExecutor(SimulationClock clock) {
+        return ReactoCommandExecutor.Builder.create()
+                .circuitBreakers(new CircuitBreakers(CircuitBreakerOptions.defaults().setTicker(clock.ticker)))
+                .outlierDetector(new OutlierDetector(OutlierDetectionOptions.defaults().setTicker(clock.ticker)))
+                .passiveHealthChecker(new PassiveHealthChecker(PassiveHealthOptions.defaults().setScheduler(clock.scheduler)))
+                .retryPolicy(new RetryPolicy(RetryPolicy.DEFAULT.maxRetries, RetryPolicy.DEFAULT.initialBackoff,
+                        RetryPolicy.DEFAULT.maxBackoff, clock.scheduler, clock.random))
+                .ticker(clock.ticker)
+                .build();
+    }
+
+    public LoadBalancer<CommandHandler> createLoadBalancer(SimulationClock clock) {
+        return loadBalancer.apply(clock);
+    }
+
+    public CommandExecutorFactory createCommandExecutorFactory(SimulationClock clock) {
+        return commandExecutorFactory.apply(clock);
+    }
+
+    @Override
+    public String toString() {
+        return "RoutingPolicy{" + name + '}';
+    }
+}
@@ -0,0 +1,337 @@
+package net.soundvibe.reacto.simulation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import net.soundvibe.reacto.mappers.jackson.JacksonMapper;
+
+import java.io.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.*;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Cluster, load and timeline of events, which a {@link DiscreteEventSimulator} replays, together with
+ * expectations every routing policy should meet. Scenarios are JSON files, e.g.:
+ * <pre>
+ * {
+ *   "name": "one slow node",
+ *   "seed": 42,
+ *   "requestsPerSecond": 2000,
+ *   "warmUpMillis": 1000,
+ *   "durationMillis": 60000,
+ *   "nodes": [
+ *     {"name": "node", "count": 9, "zone": "a", "latency": {"type": "logNormal", "medianMillis": 2, "p99Millis": 8}},
+ *     {"name": "slow", "zone": "b", "latency": {"type": "constant", "millis": 2}}
+ *   ],
+ *   "events": [
+ *     {"atMillis": 5000, "type": "latency", "node": "slow", "latency": {"type": "exponential", "meanMillis": 50}}
+ *   ],
+ *   "expectations": {
+ *     "PeakEwma": {"maxErrorRate": 0.001, "maxP99Millis": 20, "maxShare": {"slow": 0.05}}
+ *   }
+ * }
+ * </pre>
+ * Nodes with count greater than 1 are named name-1, name-2 and so on. Events are
+ * stop, start and latency of a node, stopZone and startZone, and rollingRestart of every node or of a zone.
+ * Times of events are measured from the start of the simulation, including warm-up.
+ */
+public final class Scenario {
+
+    public final String name;
+    public final long seed;
+    public final double requestsPerSecond;
+    public final Duration warmUp;
+    public final Duration duration;
+    public final Duration drainTimeout;
+    /**
+     * Time after which clients notice that a node was stopped or started
+     */
+    public final Duration discoveryDelay;
+    public final List<SimulatedNodeOptions> nodes;
+    public final List<Action> actions;
+    private final Map<String, Expectation> expectations;
+
+    private Scenario(String name, long seed, double requestsPerSecond, Duration warmUp, Duration duration,
+                     Duration drainTimeout, Duration discoveryDelay, List<SimulatedNodeOptions> nodes,
+                     List<Action> actions, Map<String, Expectation> expectations) {
+        if (requestsPerSecond <= 0.0) throw new IllegalArgumentException("requestsPerSecond should be positive but was " + requestsPerSecond);
+        if (duration.isNegative() || duration.isZero()) throw new IllegalArgumentException("duration should be positive but was " + duration);
+        if (nodes.isEmpty()) throw new IllegalArgumentException("nodes cannot be empty");
+        this.name = name;
+        this.seed = seed;
+        this.requestsPerSecond = requestsPerSecond;
+        this.warmUp = warmUp;
+        this.duration = duration;
+        this.drainTimeout = drainTimeout;
+        this.discoveryDelay = discoveryDelay;
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.actions = Collections.unmodifiableList(actions);
+        this.expectations = Collections.unmodifiableMap(expectations);
+    }
+
+    /**
+     * @param resource name of a scenario file in the scenarios directory of the classpath
+     * @return Scenario
+     */
+    public static Scenario load(String resource) {
+        Objects.requireNonNull(resource, "resource cannot be null");
+        try (InputStream inputStream = Scenario.class.getResourceAsStream("/scenarios/" + resource)) {
+            if (inputStream == null) throw new IllegalArgumentException("Scenario not found: " + resource);
+            return parse(JacksonMapper.JSON.readTree(inputStream));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read scenario " + resource, e);
+        }
+    }
+
+    public static Scenario parse(String json) {
+        Objects.requireNonNull(json, "json cannot be null");
+        try {
+            return parse(JacksonMapper.JSON.readTree(json));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to parse scenario", e);
+        }
+    }
+
+    private static Scenario parse(JsonNode json) {
+        final List<SimulatedNodeOptions> nodes = new ArrayList<>();
+        json.path("nodes").forEach(node -> nodes.addAll(nodesOf(node)));
+        final Set<String> names = new HashSet<>();
+        final Set<String> zones = new HashSet<>();
+        for (SimulatedNodeOptions node : nodes) {
+            if (!names.add(node.getName())) throw new IllegalArgumentException("Duplicate node name: " + node.getName());
+            zones.add(node.getZone());
+        }
+
+        final List<Action> actions = new ArrayList<>();
+        json.path("events").forEach(event -> actions.addAll(actionsOf(event, nodes, names, zones)));
+        actions.sort(Comparator.comparing(action -> action.at));
+
+        final Map<String, Expectation> expectations = new LinkedHashMap<>();
+        json.path("expectations").fields().forEachRemaining(entry -> expectations.put(entry.getKey(), expectationOf(entry.getValue())));
+
+        return new Scenario(
+                required(json, "name").asText(),
+                json.path("seed").asLong(42L),
+                required(json, "requestsPerSecond").asDouble(),
+                millis(json, "warmUpMillis", 1000.0),
+                millis(json, "durationMillis", Double.NaN),
+                millis(json, "drainMillis", 10_000.0),
+                millis(json, "discoveryDelayMillis", 0.0),
+                nodes, actions, expectations);
+    }
+
+    private static List<SimulatedNodeOptions> nodesOf(JsonNode json) {
+        final String name = required(json, "name").asText();
+        final int count = json.path("count").asInt(1);
+        if (count < 1) throw new IllegalArgumentException("count of nodes " + name + " cannot be less than 1 but was " + count);
+        final List<SimulatedNodeOptions> nodes = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            final SimulatedNodeOptions node = SimulatedNodeOptions.defaults(count == 1 ? name : name + "-" + i);
+            if (json.has("zone")) node.setZone(json.get("zone").asText());
+            if (json.has("weight")) node.setWeight(json.get("weight").asInt());
+            if (json.has("capacity")) node.setCapacity(json.get("capacity").asInt());
+            if (json.has("failureRate")) node.setFailureRate(json.get("failureRate").asDouble());
+            if (json.has("latency")) node.setLatency(latencyOf(json.get("latency")));
+            if (json.has("gc")) node.setGcPauses(millis(json.get("gc"), "intervalMillis", Double.NaN), millis(json.get("gc"), "pauseMillis", Double.NaN));
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    private static LatencyDistribution latencyOf(JsonNode json) {
+        final String type = required(json, "type").asText();
+        switch (type) {
+            case "constant":
+                return LatencyDistribution.constant(millis(json, "millis", Double.NaN));
+            case "uniform":
+                return LatencyDistribution.uniform(millis(json, "minMillis", Double.NaN), millis(json, "maxMillis", Double.NaN));
+            case "exponential":
+                return LatencyDistribution.exponential(millis(json, "meanMillis", Double.NaN));
+            case "logNormal":
+                return LatencyDistribution.logNormal(millis(json, "medianMillis", Double.NaN), millis(json, "p99Millis", Double.NaN));
+            default:
+                throw new IllegalArgumentException("Unknown latency type: " + type);
+        }
+    }
+
+    private static List<Action> actionsOf(JsonNode json, List<SimulatedNodeOptions> nodes, Set<String> names, Set<String> zones) {
+        final String type = required(json, "type").asText();
+        final Duration at = millis(json, "atMillis", Double.NaN);
+        switch (type) {
+            case "stop":
+                return Collections.singletonList(Action.of(at, type, nodeOf(json, names), SimulatedNode::stop));
+            case "start":
+                return Collections.singletonList(Action.of(at, type, nodeOf(json, names), SimulatedNode::start));
+            case "latency":
+                final LatencyDistribution latency = latencyOf(required(json, "latency"));
+                return Collections.singletonList(Action.of(at, type, nodeOf(json, names), node -> node.setLatency(latency)));
+            case "stopZone":
+                return Collections.singletonList(Action.of(at, type, zoneOf(json, zones), SimulatedNode::stop));
+            case "startZone":
+                return Collections.singletonList(Action.of(at, type, zoneOf(json, zones), SimulatedNode::start));
+            case "rollingRestart":
+                return rollingRestartOf(json, at, nodes, zones);
+            default:
+                throw new IllegalArgumentException("Unknown event type: " + type);
+        }
+    }
+
+    /**
+     * Restarts nodes one by one: every node is stopped for the given downtime and the next one is stopped after the given interval
+     */
+    private static List<Action> rollingRestartOf(JsonNode json, Duration at, List<SimulatedNodeOptions> nodes, Set<String> zones) {
+        final Duration downtime = millis(json, "downtimeMillis", Double.NaN);
+        final Duration interval = millis(json, "intervalMillis", Double.NaN);
+        final Predicate<SimulatedNodeOptions> isRestarted = json.has("zone") ?
+                zoneOf(json, zones) :
+                node -> true;
+        final List<String> restarted = nodes.stream()
+                .filter(isRestarted)
+                .map(SimulatedNodeOptions::getName)
+                .collect(toList());
+        final List<Action> actions = new ArrayList<>(restarted.size() * 2);
+        for (int i = 0; i < restarted.size(); i++) {
+            final String name = restarted.get(i);
+            final Duration stoppedAt = at.plus(interval.multipliedBy(i));
+            actions.add(Action.of(stoppedAt, "stop", node -> node.getName().equals(name), SimulatedNode::stop));
+            actions.add(Action.of(stoppedAt.plus(downtime), "start", node -> node.getName().equals(name), SimulatedNode::start));
+        }
+        return actions;
+    }
+
+    private static Predicate<SimulatedNodeOptions> nodeOf(JsonNode json, Set<String> names) {
+        final String name = required(json, "node").asText();
+        if (!names.contains(name)) throw new IllegalArgumentException("Unknown node: " + name);
+        return node -> node.getName().equals(name);
+    }
+
+    private static Predicate<SimulatedNodeOptions> zoneOf(JsonNode json, Set<String> zones) {
+        final String zone = required(json, "zone").asText();
+        if (!zones.contains(zone)) throw new IllegalArgumentException("Unknown zone: " + zone);
+        return node -> node.getZone().equals(zone);
+    }
+
+    private static Expectation expectationOf(JsonNode json) {
+        final Map<String, Double> maxShares = new LinkedHashMap<>();
+        json.path("maxShare").fields().forEachRemaining(entry -> maxShares.put(entry.getKey(), entry.getValue().asDouble()));
+        return new Expectation(
+                json.path("maxErrorRate").asDouble(1.0),
+                json.has("maxP99Millis") ? millis(json, "maxP99Millis", Double.NaN) : null,
+                json.has("maxP999Millis") ? millis(json, "maxP999Millis", Double.NaN) : null,
+                maxShares);
+    }
+
+    private static JsonNode required(JsonNode json, String field) {
+        final JsonNode value = json.get(field);
+        if (value == null || value.isNull()) throw new IllegalArgumentException(field + " cannot be null");
+        return value;
+    }
+
+    private static Duration millis(JsonNode json, String field, double defaultValue) {
+        final double millis = json.has(field) ? json.get(field).asDouble() : defaultValue;
+        if (Double.isNaN(millis)) throw new IllegalArgumentException(field + " cannot be null");
+        if (millis < 0.0) throw new IllegalArgumentException(field + " cannot be negative but was " + millis);
+        return Duration.ofNanos((long) (millis * 1_000_000.0));
+    }
+
+    public Optional<Expectation> expectationOf(String policy) {
+        return Optional.ofNullable(expectations.get(policy));
+    }
+
+    @Override
+    public String toString() {
+        return "Scenario{" +
+                "name='" + name + '\'' +
+                ", seed=" + seed +
+                ", requestsPerSecond=" + requestsPerSecond +
+                ", warmUp=" + warmUp +
+                ", duration=" + duration +
+                ", nodes=" + nodes.size() +
+                ", actions=" + actions.size() +
+                '}';
+    }
+
+    /**
+     * Change of the cluster at the given time of a simulation
+     */
+    public static final class Action {
+
+        public final Duration at;
+        public final String type;
+        private final Predicate<SimulatedNodeOptions> target;
+        private final Consumer<SimulatedNode> action;
+
+        private Action(Duration at, String type, Predicate<SimulatedNodeOptions> target, Consumer<SimulatedNode> action) {
+            this.at = at;
+            this.type = type;
+            this.target = target;
+            this.action = action;
+        }
+
+        private static Action of(Duration at, String type, Predicate<SimulatedNodeOptions> target, Consumer<SimulatedNode> action) {
+            return new Action(at, type, target, action);
+        }
+
+        void applyTo(List<SimulatedNode> nodes) {
+            for (SimulatedNode node : nodes) {
+                if (target.test(node.options())) action.accept(node);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Action{" + type + " at " + at + '}';
+        }
+    }
+
+    /**
+     * Limits, which a report of a routing policy should not exceed
+     */
+    public static final class Expectation {
+
+        public final double maxErrorRate;
+        private final Duration maxP99;
+        private final Duration maxP999;
+        private final Map<String, Double> maxShares;
+
+        private Expectation(double maxErrorRate, Duration maxP99, Duration maxP999, Map<String, Double> maxShares) {
+            this.maxErrorRate = maxErrorRate;
+            this.maxP99 = maxP99;
+            this.maxP999 = maxP999;
+            this.maxShares = Collections.unmodifiableMap(maxShares);
+        }
+
+        /**
+         * @return descriptions of exceeded limits, empty if the report meets the expectation
+         */
+        public List<String> violationsOf(SimulationReport report) {
+            final List<String> violations = new ArrayList<>();
+            final double errorRate = report.requests == 0L ? 0.0 : report.failed / (double) report.requests;
+            if (errorRate > maxErrorRate) {
+                violations.add("error rate should be at most " + maxErrorRate + " but was " + errorRate);
+            }
+            if (maxP99 != null && report.p99Nanos > maxP99.toNanos()) {
+                violations.add("p99 should be at most " + maxP99 + " but was " + Duration.ofNanos(report.p99Nanos));
+            }
+            if (maxP999 != null && report.p999Nanos > maxP999.toNanos()) {
+                violations.add("p999 should be at most " + maxP999 + " but was " + Duration.ofNanos(report.p999Nanos));
+            }
+            maxShares.forEach((node, maxShare) -> {
+                final double share = report.shareOf(node);
+                if (share > maxShare) violations.add("share of " + node + " should be at most " + maxShare + " but was " + share);
+            });
+            return violations;
+        }
+
+        @Override
+        public String toString() {
+            return "Expectation{" +
+                    "maxErrorRate=" + maxErrorRate +
+                    ", maxP99=" + maxP99 +
+                    ", maxP999=" + maxP999 +
+                    ", maxShares=" + maxShares +
+                    '}';
+        }
+    }
+}
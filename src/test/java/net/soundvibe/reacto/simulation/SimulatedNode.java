@@ -0,0 +1,225 @@
+package net.soundvibe.reacto.simulation;
+
+import io.reactivex.*;
+import io.reactivex.disposables.*;
+import net.soundvibe.reacto.client.events.CommandHandler;
+import net.soundvibe.reacto.discovery.types.ServiceRecord;
+import net.soundvibe.reacto.errors.ConnectionClosedUnexpectedly;
+import net.soundvibe.reacto.types.*;
+
+import java.net.ConnectException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service node, which serves commands after a sampled service time, queues requests above its capacity,
+ * stops the world during GC pauses and fails a share of requests. Time is read from and delays are scheduled on
+ * the given scheduler, so that the same node runs in real time or in virtual time of a {@link io.reactivex.schedulers.TestScheduler}.
+ * Randomness is seeded, so that a node driven by virtual time behaves the same in every run.
+ * A stopped node refuses new connections and fails requests, which it was serving, as a restarted process would.
+ */
+public final class SimulatedNode implements CommandHandler {
+
+    private final SimulatedNodeOptions options;
+    private final ServiceRecord serviceRecord;
+    private final Scheduler scheduler;
+    private final Random random;
+    private final Deque<Request> queue = new ArrayDeque<>();
+    private final Set<Request> running = new LinkedHashSet<>();
+    private final CompositeDisposable gcPauses = new CompositeDisposable();
+
+    private LatencyDistribution latency;
+    private boolean isStopped = true;
+    private long pausedUntil = Long.MIN_VALUE;
+    private long requests;
+    private long failures;
+    private long busyNanos;
+
+    public SimulatedNode(SimulatedNodeOptions options, Scheduler scheduler, long seed) {
+        Objects.requireNonNull(options, "options cannot be null");
+        Objects.requireNonNull(scheduler, "scheduler cannot be null");
+        this.options = options;
+        this.serviceRecord = options.toServiceRecord();
+        this.scheduler = scheduler;
+        this.random = new Random(seed);
+        this.latency = options.getLatency();
+    }
+
+    public SimulatedNodeOptions options() {
+        return options;
+    }
+
+    /**
+     * Starts serving requests and GC pauses, if the node has them. Does nothing if the node is already started.
+     */
+    public synchronized void start() {
+        if (!isStopped) return;
+        isStopped = false;
+        pausedUntil = Long.MIN_VALUE;
+        if (options.hasGcPauses()) scheduleGcPause();
+    }
+
+    /**
+     * Stops the node: requests in flight and queued requests fail with {@link ConnectionClosedUnexpectedly}
+     * and new requests are refused until the node is started again
+     */
+    public void stop() {
+        final List<Request> interrupted;
+        synchronized (this) {
+            if (isStopped) return;
+            isStopped = true;
+            gcPauses.clear();
+            interrupted = new ArrayList<>(running.size() + queue.size());
+            interrupted.addAll(running);
+            interrupted.addAll(queue);
+            running.clear();
+            queue.clear();
+            failures += interrupted.size();
+        }
+        interrupted.forEach(request -> request.emitter.onError(
+                new ConnectionClosedUnexpectedly("Simulated node " + options.getName() + " was stopped")));
+    }
+
+    public synchronized boolean isStopped() {
+        return isStopped;
+    }
+
+    /**
+     * Changes service time of requests started from now on
+     */
+    public synchronized void setLatency(LatencyDistribution latency) {
+        Objects.requireNonNull(latency, "latency cannot be null");
+        this.latency = latency;
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    @Override
+    public Flowable<Any> probe() {
+        return Flowable.defer(() -> isStopped() ?
+                Flowable.error(refused()) :
+                Flowable.just(Any.VOID));
+    }
+
+    @Override
+    public Flowable<Event> observe(Command command) {
+        return Flowable.create(emitter -> submit(new Request(emitter)), BackpressureStrategy.BUFFER);
+    }
+
+    @Override
+    public ServiceRecord serviceRecord() {
+        return serviceRecord;
+    }
+
+    /**
+     * @return statistics of requests received since the node was created or the statistics were reset
+     */
+    public synchronized NodeStats stats() {
+        return new NodeStats(options.getName(), requests, failures, busyNanos, options.getCapacity());
+    }
+
+    public synchronized void resetStats() {
+        requests = 0L;
+        failures = 0L;
+        busyNanos = 0L;
+    }
+
+    private void submit(Request request) {
+        synchronized (this) {
+            requests++;
+            if (!isStopped) {
+                final long now = now();
+                if (running.size() < options.getCapacity() && now >= pausedUntil) {
+                    start(request, now);
+                } else {
+                    queue.add(request);
+                }
+                return;
+            }
+            failures++;
+        }
+        request.emitter.onError(refused());
+    }
+
+    private void start(Request request, long now) {
+        running.add(request);
+        request.startedAt = now;
+        schedule(() -> complete(request), latency.sampleInNanos(random));
+    }
+
+    private void complete(Request request) {
+        final boolean isFailed;
+        synchronized (this) {
+            if (!running.contains(request)) return;
+            final long now = now();
+            if (now < pausedUntil) {
+                schedule(() -> complete(request), pausedUntil - now);
+                return;
+            }
+            running.remove(request);
+            busyNanos += now - request.startedAt;
+            isFailed = options.getFailureRate() > 0.0 && random.nextDouble() < options.getFailureRate();
+            if (isFailed) failures++;
+            startQueued(now);
+        }
+        if (isFailed) {
+            request.emitter.onError(new IllegalStateException("Simulated failure of " + options.getName()));
+        } else {
+            request.emitter.onNext(Event.create(options.getName()));
+            request.emitter.onComplete();
+        }
+    }
+
+    private void startQueued(long now) {
+        while (running.size() < options.getCapacity() && now >= pausedUntil && !queue.isEmpty()) {
+            start(queue.poll(), now);
+        }
+    }
+
+    private synchronized void scheduleGcPause() {
+        final long delay = (long) (-Math.log(1.0 - random.nextDouble()) * options.getGcInterval().toNanos());
+        gcPauses.add(scheduler.scheduleDirect(this::pause, delay, TimeUnit.NANOSECONDS));
+    }
+
+    private synchronized void pause() {
+        if (isStopped) return;
+        pausedUntil = now() + options.getGcPause().toNanos();
+        gcPauses.add(scheduler.scheduleDirect(this::resume, options.getGcPause().toNanos(), TimeUnit.NANOSECONDS));
+    }
+
+    private synchronized void resume() {
+        if (isStopped) return;
+        startQueued(now());
+        scheduleGcPause();
+    }
+
+    private ConnectException refused() {
+        return new ConnectException("Simulated node " + options.getName() + " refused connection");
+    }
+
+    private void schedule(Runnable task, long delayInNanos) {
+        scheduler.scheduleDirect(task, delayInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private long now() {
+        return scheduler.now(TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "SimulatedNode{" + options.getName() + '}';
+    }
+
+    private static final class Request {
+
+        private final FlowableEmitter<Event> emitter;
+        private long startedAt;
+
+        private Request(FlowableEmitter<Event> emitter) {
+            this.emitter = emitter;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package net.soundvibe.reacto.simulation;
+
+import net.soundvibe.reacto.discovery.types.*;
+import net.soundvibe.reacto.server.ServiceOptions;
+import net.soundvibe.reacto.types.json.JsonObjectBuilder;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Behaviour of a simulated service node
+ */
+public final class SimulatedNodeOptions {
+
+    private final String name;
+    private String zone = ServiceOptions.DEFAULT_ZONE;
+    private int weight = ServiceOptions.DEFAULT_WEIGHT;
+    private LatencyDistribution latency = LatencyDistribution.constant(Duration.ofMillis(1L));
+    private double failureRate = 0.0;
+    private int capacity = 16;
+    private Duration gcInterval = Duration.ZERO;
+    private Duration gcPause = Duration.ZERO;
+
+    private SimulatedNodeOptions(String name) {
+        this.name = name;
+    }
+
+    public static SimulatedNodeOptions defaults(String name) {
+        Objects.requireNonNull(name, "name cannot be null");
+        return new SimulatedNodeOptions(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getZone() {
+        return zone;
+    }
+
+    public SimulatedNodeOptions setZone(String zone) {
+        Objects.requireNonNull(zone, "zone cannot be null");
+        this.zone = zone;
+        return this;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * @param weight capacity weight advertised in the service record of the node
+     * @return SimulatedNodeOptions
+     */
+    public SimulatedNodeOptions setWeight(int weight) {
+        if (weight < 0) throw new IllegalArgumentException("weight cannot be negative but was " + weight);
+        this.weight = weight;
+        return this;
+    }
+
+    public LatencyDistribution getLatency() {
+        return latency;
+    }
+
+    /**
+     * @param latency service time of a request, excluding time spent waiting in the queue or in GC pauses
+     * @return SimulatedNodeOptions
+     */
+    public SimulatedNodeOptions setLatency(LatencyDistribution latency) {
+        Objects.requireNonNull(latency, "latency cannot be null");
+        this.latency = latency;
+        return this;
+    }
+
+    public double getFailureRate() {
+        return failureRate;
+    }
+
+    /**
+     * @param failureRate probability in range [0, 1] that a request fails after its service time
+     * @return SimulatedNodeOptions
+     */
+    public SimulatedNodeOptions setFailureRate(double failureRate) {
+        if (failureRate < 0.0 || failureRate > 1.0)
+            throw new IllegalArgumentException("failureRate should be in range [0, 1] but was " + failureRate);
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @param capacity number of requests served concurrently, the rest of them wait in a FIFO queue
+     * @return SimulatedNodeOptions
+     */
+    public SimulatedNodeOptions setCapacity(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity cannot be less than 1 but was " + capacity);
+        this.capacity = capacity;
+        return this;
+    }
+
+    public Duration getGcInterval() {
+        return gcInterval;
+    }
+
+    public Duration getGcPause() {
+        return gcPause;
+    }
+
+    /**
+     * Makes the node stop the world for given pause on average every given interval, zero interval disables pauses
+     * @param gcInterval mean time between the starts of two pauses, exponentially distributed
+     * @param gcPause duration of every pause
+     * @return SimulatedNodeOptions
+     */
+    public SimulatedNodeOptions setGcPauses(Duration gcInterval, Duration gcPause) {
+        Objects.requireNonNull(gcInterval, "gcInterval cannot be null");
+        Objects.requireNonNull(gcPause, "gcPause cannot be null");
+        if (gcInterval.isNegative()) throw new IllegalArgumentException("gcInterval cannot be negative but was " + gcInterval);
+        if (gcPause.isNegative()) throw new IllegalArgumentException("gcPause cannot be negative but was " + gcPause);
+        this.gcInterval = gcInterval;
+        this.gcPause = gcPause;
+        return this;
+    }
+
+    public boolean hasGcPauses() {
+        return !gcInterval.isZero() && !gcPause.isZero();
+    }
+
+    /**
+     * @return service record, which the node would register
+     */
+    public ServiceRecord toServiceRecord() {
+        return ServiceRecord.create("simulated-service", Status.UP, ServiceType.LOCAL, name,
+                JsonObjectBuilder.create()
+                        .put(ServiceRecord.LOCATION_HOST, name)
+                        .put(ServiceRecord.LOCATION_ZONE, zone)
+                        .build(),
+                JsonObjectBuilder.create()
+                        .put(ServiceRecord.METADATA_WEIGHT, weight)
+                        .build());
+    }
+
+    @Override
+    public String toString() {
+        return "SimulatedNodeOptions{" +
+                "name='" + name + '\'' +
+                ", zone='" + zone + '\'' +
+                ", weight=" + weight +
+                ", failureRate=" + failureRate +
+                ", capacity=" + capacity +
+                ", gcInterval=" + gcInterval +
+                ", gcPause=" + gcPause +
+                '}';
+    }
+}
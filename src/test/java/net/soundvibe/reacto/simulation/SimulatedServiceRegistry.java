@@ -0,0 +1,69 @@
+package net.soundvibe.reacto.simulation;
+
+import io.reactivex.Flowable;
+import net.soundvibe.reacto.client.events.*;
+import net.soundvibe.reacto.discovery.*;
+import net.soundvibe.reacto.discovery.types.*;
+import net.soundvibe.reacto.mappers.jackson.JacksonMapper;
+import net.soundvibe.reacto.types.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Service registry, which discovers simulated nodes in the same way as {@link LocalServiceRegistry} discovers
+ * the local service, so that commands go through the real discovery cache, command executor and load balancer
+ */
+public final class SimulatedServiceRegistry extends AbstractServiceRegistry {
+
+    private final Map<String, SimulatedNode> nodes;
+    private final List<ServiceRecord> records;
+
+    public SimulatedServiceRegistry(List<SimulatedNode> nodes) {
+        this(nodes, ServiceRegistryOptions.defaults());
+    }
+
+    public SimulatedServiceRegistry(List<SimulatedNode> nodes, ServiceRegistryOptions options) {
+        this(new ConcurrentHashMap<>(), nodes, options);
+    }
+
+    private SimulatedServiceRegistry(Map<String, SimulatedNode> nodesById, List<SimulatedNode> nodes,
+                                     ServiceRegistryOptions options) {
+        super(CommandHandlerRegistry.Builder.create()
+                        .register(ServiceType.LOCAL, serviceRecord -> nodesById.get(serviceRecord.registrationId))
+                        .build(),
+                new JacksonMapper(JacksonMapper.JSON),
+                options);
+        Objects.requireNonNull(nodes, "nodes cannot be null");
+        nodes.forEach(node -> nodesById.put(node.serviceRecord().registrationId, node));
+        this.nodes = nodesById;
+        this.records = Collections.unmodifiableList(nodes.stream().map(SimulatedNode::serviceRecord).collect(toList()));
+    }
+
+    public Collection<SimulatedNode> nodes() {
+        return nodes.values();
+    }
+
+    @Override
+    protected Flowable<List<ServiceRecord>> findRecordsOf(Command command) {
+        return Flowable.just(records);
+    }
+
+    @Override
+    public Flowable<Any> register() {
+        return Flowable.just(Any.VOID);
+    }
+
+    @Override
+    public Flowable<Any> unregister() {
+        return Flowable.just(Any.VOID);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        nodes.values().forEach(SimulatedNode::close);
+    }
+}
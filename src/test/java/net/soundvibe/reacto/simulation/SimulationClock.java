@@ -0,0 +1,38 @@
+package net.soundvibe.reacto.simulation;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.*;
+import net.soundvibe.reacto.utils.*;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time source, scheduler and source of random numbers, which routing policies of a simulation should use,
+ * so that the same policy runs in real time or in virtual time and its random decisions follow the seed of the simulation
+ */
+public final class SimulationClock {
+
+    public static final SimulationClock REAL_TIME = new SimulationClock(Ticker.SYSTEM, Schedulers.computation(),
+            RandomSource.THREAD_LOCAL);
+
+    public final Ticker ticker;
+    public final Scheduler scheduler;
+    public final RandomSource random;
+
+    private SimulationClock(Ticker ticker, Scheduler scheduler, RandomSource random) {
+        Objects.requireNonNull(ticker, "ticker cannot be null");
+        Objects.requireNonNull(scheduler, "scheduler cannot be null");
+        Objects.requireNonNull(random, "random cannot be null");
+        this.ticker = ticker;
+        this.scheduler = scheduler;
+        this.random = random;
+    }
+
+    /**
+     * @return clock, which advances only when given scheduler is advanced and draws random numbers seeded with given seed
+     */
+    public static SimulationClock virtual(TestScheduler scheduler, long seed) {
+        return new SimulationClock(() -> scheduler.now(TimeUnit.NANOSECONDS), scheduler, RandomSource.seeded(seed));
+    }
+}
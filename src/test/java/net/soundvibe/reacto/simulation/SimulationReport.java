@@ -0,0 +1,97 @@
+package net.soundvibe.reacto.simulation;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a routing policy in a simulation: throughput, latency percentiles and utilization of every node.
+ * Latency is measured from the moment a request was due to be sent, so that queueing in the client is included.
+ */
+public final class SimulationReport {
+
+    public final String policy;
+    public final long requests;
+    public final long completed;
+    public final long failed;
+    public final long elapsedNanos;
+    public final long p50Nanos;
+    public final long p99Nanos;
+    public final long p999Nanos;
+    public final List<NodeStats> nodes;
+
+    SimulationReport(String policy, long requests, long failed, long elapsedNanos, long[] sortedLatencies, List<NodeStats> nodes) {
+        this.policy = policy;
+        this.requests = requests;
+        this.completed = sortedLatencies.length;
+        this.failed = failed;
+        this.elapsedNanos = elapsedNanos;
+        this.p50Nanos = percentile(sortedLatencies, 0.5);
+        this.p99Nanos = percentile(sortedLatencies, 0.99);
+        this.p999Nanos = percentile(sortedLatencies, 0.999);
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+    }
+
+    /**
+     * @return successfully completed requests per second
+     */
+    public double throughput() {
+        return elapsedNanos <= 0L ? 0.0 : completed * (double) TimeUnit.SECONDS.toNanos(1L) / elapsedNanos;
+    }
+
+    /**
+     * @return share of the requests received by given node
+     */
+    public double shareOf(String node) {
+        final long total = nodes.stream().mapToLong(stats -> stats.requests).sum();
+        return total == 0L ? 0.0 : nodes.stream()
+                .filter(stats -> stats.name.equals(node))
+                .mapToLong(stats -> stats.requests)
+                .sum() / (double) total;
+    }
+
+    public double utilizationOf(String node) {
+        return nodes.stream()
+                .filter(stats -> stats.name.equals(node))
+                .mapToDouble(stats -> stats.utilization(elapsedNanos))
+                .findFirst()
+                .orElse(0.0);
+    }
+
+    public static String header() {
+        return String.format("%-24s %10s %10s %8s %10s %10s %10s", "Policy", "requests", "req/s", "failed", "p50 ms", "p99 ms", "p999 ms");
+    }
+
+    /**
+     * @return report formatted as a row of a table, followed by share and utilization of every node
+     */
+    public String format() {
+        final StringBuilder builder = new StringBuilder(String.format("%-24s %10d %10.1f %8d %10.2f %10.2f %10.2f",
+                policy, requests, throughput(), failed, millis(p50Nanos), millis(p99Nanos), millis(p999Nanos)));
+        nodes.forEach(stats -> builder.append(String.format("%n    %-20s share %5.1f%% utilization %5.1f%%",
+                stats.name, shareOf(stats.name) * 100.0, stats.utilization(elapsedNanos) * 100.0)));
+        return builder.toString();
+    }
+
+    private static long percentile(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) return 0L;
+        final int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, Math.min(sortedLatencies.length - 1, index))];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return "SimulationReport{" +
+                "policy='" + policy + '\'' +
+                ", requests=" + requests +
+                ", completed=" + completed +
+                ", failed=" + failed +
+                ", p50Nanos=" + p50Nanos +
+                ", p99Nanos=" + p99Nanos +
+                ", p999Nanos=" + p999Nanos +
+                '}';
+    }
+}